@@ -124,6 +124,14 @@ public class AlbumsRecyclerViewAdapter extends GenericRecyclerViewAdapter<AlbumM
         holder.itemView.setLongClickable(true);
     }
 
+    @Override
+    public void onViewRecycled(@NonNull GenericViewItemHolder holder) {
+        super.onViewRecycled(holder);
+
+        // the item shows another album next time
+        holder.cancelCoverImageTask();
+    }
+
     /**
      * Sets the itemsize for each item.
      * This value will adjust the height of a griditem and will be used for image loading.
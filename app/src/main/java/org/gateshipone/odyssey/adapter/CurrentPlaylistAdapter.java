@@ -35,8 +35,13 @@ import org.gateshipone.odyssey.artwork.ArtworkManager;
 import org.gateshipone.odyssey.models.TrackModel;
 import org.gateshipone.odyssey.playbackservice.NowPlayingInformation;
 import org.gateshipone.odyssey.playbackservice.PlaybackServiceConnection;
+import org.gateshipone.odyssey.playbackservice.PlaylistChangeEvent;
+import org.gateshipone.odyssey.playbackservice.PlaylistTracksChunk;
 import org.gateshipone.odyssey.viewitems.ListViewItem;
 
+import java.util.List;
+import java.util.Map;
+
 public class CurrentPlaylistAdapter extends BaseAdapter implements ScrollSpeedAdapter {
 
     /**
@@ -56,6 +61,11 @@ public class CurrentPlaylistAdapter extends BaseAdapter implements ScrollSpeedAd
 
     private static final int CACHE_SIZE = 250;
 
+    /**
+     * Number of tracks that are requested from the PBS around a position that is not cached.
+     */
+    private static final int PREFETCH_WINDOW = 60;
+
     private static final String TAG = CurrentPlaylistAdapter.class.getSimpleName();
 
     public enum VIEW_TYPES {
@@ -74,6 +84,11 @@ public class CurrentPlaylistAdapter extends BaseAdapter implements ScrollSpeedAd
 
     private int mPlaylistSize = 0;
 
+    /**
+     * Version of the playlist the cached tracks belong to.
+     */
+    private long mPlaylistVersion = -1;
+
     private boolean mHideArtwork;
 
     private final int mListItemHeight;
@@ -113,7 +128,7 @@ public class CurrentPlaylistAdapter extends BaseAdapter implements ScrollSpeedAd
 
     /**
      * Simple getter for the model data.
-     * This method will call the PBS to get the trackmodel from the current playlist.
+     * This method will call the PBS to get a window of trackmodels around the position from the current playlist.
      *
      * @param position Index of the track to get. No check for boundaries here.
      * @return The trackmodel at index position.
@@ -125,6 +140,11 @@ public class CurrentPlaylistAdapter extends BaseAdapter implements ScrollSpeedAd
                 // Check cache first for a hit
                 TrackModel track = mTrackCache.get(position);
                 if (track == null) {
+                    fetchTracks(Math.max(0, position - PREFETCH_WINDOW / 2), PREFETCH_WINDOW);
+                    track = mTrackCache.get(position);
+                }
+                if (track == null) {
+                    // position not available in the playlist, keep the old behaviour of an empty track
                     track = mPlaybackServiceConnection.getPBS().getPlaylistSong(position);
                     mTrackCache.put(position, track);
                 }
@@ -137,6 +157,41 @@ public class CurrentPlaylistAdapter extends BaseAdapter implements ScrollSpeedAd
         }
     }
 
+    /**
+     * Requests a range of tracks from the PBS and stores them in the cache.
+     * The PBS may return the range in multiple chunks. If the playlist version changed,
+     * all previously cached tracks are dropped.
+     *
+     * @param start Position of the first track to fetch.
+     * @param count Number of tracks to fetch.
+     */
+    private void fetchTracks(int start, int count) throws RemoteException {
+        int position = start;
+        final int end = Math.min(start + count, mPlaylistSize);
+
+        while (position < end) {
+            final PlaylistTracksChunk chunk = mPlaybackServiceConnection.getPBS().getPlaylistSongs(position, end - position);
+
+            if (chunk.getPlaylistVersion() != mPlaylistVersion) {
+                // cached tracks are outdated
+                mTrackCache.evictAll();
+                mPlaylistVersion = chunk.getPlaylistVersion();
+            }
+
+            final List<TrackModel> tracks = chunk.getTracks();
+            if (tracks.isEmpty()) {
+                break;
+            }
+
+            int index = chunk.getStartIndex();
+            for (TrackModel track : tracks) {
+                mTrackCache.put(index++, track);
+            }
+
+            position = index;
+        }
+    }
+
     /**
      * Simple position->id mapping here.
      *
@@ -244,16 +299,97 @@ public class CurrentPlaylistAdapter extends BaseAdapter implements ScrollSpeedAd
 
     /**
      * Update the playlist size and the index of the current track.
+     * Changes of the playlist should be applied with {@link #applyChanges(List)} before.
      *
      * @param info The NowplayingInformation object containing the new playlist size and the current track index
      */
     public void updateState(NowPlayingInformation info) {
         mCurrentPlayingIndex = info.getPlayingIndex();
         mPlaylistSize = info.getPlaylistLength();
-        mTrackCache.evictAll();
+
+        // only drop the cached tracks if the playlist itself changed
+        if (info.getPlaylistVersion() == -1 || info.getPlaylistVersion() != mPlaylistVersion) {
+            mTrackCache.evictAll();
+            mPlaylistVersion = info.getPlaylistVersion();
+        }
         notifyDataSetChanged();
     }
 
+    /**
+     * Applies the given playlist changes to the cached tracks so that unchanged tracks stay cached.
+     * If a change does not fit the version of the cached tracks all cached tracks are dropped.
+     *
+     * @param changes The playlist changes in the order they happened.
+     * @return True if all changes could be applied, false if the cached tracks were dropped.
+     */
+    public boolean applyChanges(List<PlaylistChangeEvent> changes) {
+        for (PlaylistChangeEvent change : changes) {
+            if (change.getType() == PlaylistChangeEvent.TYPE.RESET || change.getPreviousVersion() != mPlaylistVersion) {
+                mTrackCache.evictAll();
+                mPlaylistVersion = change.getVersion();
+                return false;
+            }
+
+            // Move the cached tracks to their new positions
+            final Map<Integer, TrackModel> cachedTracks = mTrackCache.snapshot();
+            mTrackCache.evictAll();
+            for (Map.Entry<Integer, TrackModel> entry : cachedTracks.entrySet()) {
+                final int newPosition = getPositionAfterChange(change, entry.getKey());
+                if (newPosition >= 0) {
+                    mTrackCache.put(newPosition, entry.getValue());
+                }
+            }
+
+            mPlaylistVersion = change.getVersion();
+        }
+        return true;
+    }
+
+    /**
+     * Calculates the position of a track after the given playlist changes. Replaced tracks keep their position.
+     *
+     * @param changes  The playlist changes in the order they were applied.
+     * @param position The position of the track before the changes.
+     * @return The new position or -1 if the track was removed.
+     */
+    public static int getPositionAfterChanges(List<PlaylistChangeEvent> changes, int position) {
+        for (PlaylistChangeEvent change : changes) {
+            if (position < 0) {
+                break;
+            }
+            if (change.getType() != PlaylistChangeEvent.TYPE.CHANGED) {
+                position = getPositionAfterChange(change, position);
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Calculates the position of a track after a playlist change.
+     *
+     * @param change   The playlist change.
+     * @param position The position of the track before the change.
+     * @return The new position or -1 if the track was removed or replaced.
+     */
+    private static int getPositionAfterChange(PlaylistChangeEvent change, int position) {
+        final int start = change.getPosition();
+        final int count = change.getCount();
+
+        switch (change.getType()) {
+            case INSERTED:
+                return position >= start ? position + count : position;
+            case REMOVED:
+                if (position < start) {
+                    return position;
+                }
+                return position >= start + count ? position - count : -1;
+            case CHANGED:
+                return (position >= start && position < start + count) ? -1 : position;
+            default:
+                return -1;
+        }
+    }
+
     public void hideArtwork(boolean enable) {
         mHideArtwork = enable;
         notifyDataSetChanged();
@@ -25,6 +25,7 @@ package org.gateshipone.odyssey.adapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import org.gateshipone.odyssey.models.GenericModel;
+import org.gateshipone.odyssey.utils.PagedModelList;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -49,7 +50,7 @@ public abstract class GenericRecyclerViewAdapter<T extends GenericModel, VH exte
     /**
      * Abstract list with model data used for this adapter.
      */
-    private final List<T> mModelData;
+    private List<T> mModelData;
 
     GenericRecyclerViewAdapter() {
         mModelData = new ArrayList<>();
@@ -64,11 +65,14 @@ public abstract class GenericRecyclerViewAdapter<T extends GenericModel, VH exte
      */
     public void swapModel(final List<T> data) {
         if (data == null) {
-            mModelData.clear();
+            mModelData = new ArrayList<>();
+            notifyDataSetChanged();
+        } else if (data instanceof PagedModelList) {
+            // Paged lists are immutable, copying them would create all models
+            mModelData = data;
             notifyDataSetChanged();
         } else {
-            mModelData.clear();
-            mModelData.addAll(data);
+            mModelData = new ArrayList<>(data);
             notifyDataSetChanged();
         }
     }
@@ -25,15 +25,15 @@ package org.gateshipone.odyssey.adapter;
 import android.widget.BaseAdapter;
 import android.widget.SectionIndexer;
 
-import androidx.core.util.Pair;
-
 import org.gateshipone.odyssey.models.GenericModel;
 import org.gateshipone.odyssey.utils.FilterTask;
+import org.gateshipone.odyssey.utils.PagedModelList;
+import org.gateshipone.odyssey.utils.SearchIndex;
 import org.gateshipone.odyssey.utils.SectionCreator;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public abstract class GenericSectionAdapter<T extends GenericModel> extends BaseAdapter implements SectionIndexer, ScrollSpeedAdapter {
     private static final String TAG = "GenericSectionAdapter";
@@ -54,11 +54,50 @@ public abstract class GenericSectionAdapter<T extends GenericModel> extends Base
     private long mAvgImageTime;
 
     /**
-     * Abstract list with model data used for this adapter.
+     * Immutable state of the adapter. Every change publishes a new state, so the lists can be read
+     * without locking from the UI thread and the filter task.
      */
-    private final List<T> mModelData;
+    private static class ModelState<T extends GenericModel> {
+        /**
+         * The model data used for this adapter.
+         */
+        final List<T> mModelData;
+
+        /**
+         * Sections of the model data, null if sections are disabled
+         */
+        final SectionCreator.Sections<T> mModelSections;
+
+        /**
+         * Result of the current filter, null if no filter is applied
+         */
+        final List<T> mFilteredModelData;
+
+        /**
+         * Sections of the filtered model data, null if sections are disabled
+         */
+        final SectionCreator.Sections<T> mFilteredSections;
+
+        ModelState(final List<T> modelData, final SectionCreator.Sections<T> modelSections, final List<T> filteredModelData, final SectionCreator.Sections<T> filteredSections) {
+            mModelData = modelData;
+            mModelSections = modelSections;
+            mFilteredModelData = filteredModelData;
+            mFilteredSections = filteredSections;
+        }
+
+        List<T> getVisibleData() {
+            return mFilteredModelData != null ? mFilteredModelData : mModelData;
+        }
+
+        SectionCreator.Sections<T> getVisibleSections() {
+            return mFilteredModelData != null ? mFilteredSections : mModelSections;
+        }
+    }
 
-    private final List<T> mFilteredModelData;
+    /**
+     * The current state, only replaced from the UI thread.
+     */
+    private volatile ModelState<T> mState;
 
     private String mFilterString;
 
@@ -68,18 +107,20 @@ public abstract class GenericSectionAdapter<T extends GenericModel> extends Base
      */
     private FilterTask<T> mFilterTask;
 
-    private final ReentrantReadWriteLock mLock;
+    /**
+     * Index used by the filter and the model data it was created for
+     */
+    private SearchIndex mSearchIndex;
+
+    private List<T> mSearchIndexModelData;
 
     private final SectionCreator<T> mSectionCreator;
 
     GenericSectionAdapter() {
         super();
 
-        mLock = new ReentrantReadWriteLock();
-
-        mModelData = new ArrayList<>();
+        mState = new ModelState<>(Collections.emptyList(), null, null, null);
 
-        mFilteredModelData = new ArrayList<>();
         mFilterString = "";
 
         mSectionsEnabled = true;
@@ -98,30 +139,29 @@ public abstract class GenericSectionAdapter<T extends GenericModel> extends Base
      * @param data Actual model data
      */
     public void swapModel(List<T> data) {
-        mLock.writeLock().lock();
-        mFilteredModelData.clear();
         if (data == null) {
-            mModelData.clear();
-            mLock.writeLock().unlock();
+            mState = new ModelState<>(Collections.emptyList(), null, mFilterString.isEmpty() ? null : Collections.<T>emptyList(), null);
             notifyDataSetChanged();
             return;
-        } else {
-            mModelData.clear();
-            mModelData.addAll(data);
         }
-        mLock.writeLock().unlock();
+
+        // Private copy that is never modified, so it can be shared with the filter task.
+        // Paged lists are immutable already and copying them would create all models.
+        final List<T> modelData = data instanceof PagedModelList ? data : new ArrayList<>(data);
 
         setScrollSpeed(0);
 
         if (mFilterString.isEmpty()) {
-            // create sectionlist for fastscrolling
-            if (mSectionsEnabled) {
-                createSections();
-            }
-
+            // the sections for fastscrolling are created by the filter task and published with its result
+            mState = new ModelState<>(modelData, null, null, null);
             notifyDataSetChanged();
         } else {
-            // Refilter the new data
+            // Keep showing the previous filter result until the new data is filtered
+            final ModelState<T> state = mState;
+            mState = new ModelState<>(modelData, null, state.mFilteredModelData, state.mFilteredSections);
+        }
+
+        if (mSectionsEnabled || !mFilterString.isEmpty()) {
             startFilterTask();
         }
     }
@@ -134,8 +174,9 @@ public abstract class GenericSectionAdapter<T extends GenericModel> extends Base
      */
     @Override
     public int getPositionForSection(int sectionIndex) {
-        if (mSectionsEnabled) {
-            return mSectionCreator.getPositionForIndex(sectionIndex);
+        final SectionCreator.Sections<T> sections = mState.getVisibleSections();
+        if (sections != null) {
+            return sections.getPositionForIndex(sectionIndex);
         } else {
             return 0;
         }
@@ -149,10 +190,12 @@ public abstract class GenericSectionAdapter<T extends GenericModel> extends Base
      */
     @Override
     public int getSectionForPosition(int pos) {
-        if (mSectionsEnabled) {
-            final T model = getItem(pos);
+        final ModelState<T> state = mState;
+        final SectionCreator.Sections<T> sections = state.getVisibleSections();
+        if (sections != null) {
+            final T model = state.getVisibleData().get(pos);
 
-            return mSectionCreator.getSectionPositionForModel(model);
+            return sections.getSectionPositionForModel(model);
         }
         return 0;
     }
@@ -162,8 +205,9 @@ public abstract class GenericSectionAdapter<T extends GenericModel> extends Base
      */
     @Override
     public Object[] getSections() {
-        if (mSectionsEnabled) {
-            return mSectionCreator.getSectionList().toArray();
+        final SectionCreator.Sections<T> sections = mState.getVisibleSections();
+        if (sections != null) {
+            return sections.getSectionList();
         }
         return null;
     }
@@ -173,12 +217,7 @@ public abstract class GenericSectionAdapter<T extends GenericModel> extends Base
      */
     @Override
     public int getCount() {
-        mLock.readLock().lock();
-        int filteredSize = mFilteredModelData.size();
-        int normalSize = mModelData.size();
-        mLock.readLock().unlock();
-
-        return (filteredSize > 0 || !mFilterString.isEmpty()) ? filteredSize : normalSize;
+        return mState.getVisibleData().size();
     }
 
     /**
@@ -189,15 +228,7 @@ public abstract class GenericSectionAdapter<T extends GenericModel> extends Base
      */
     @Override
     public T getItem(int position) {
-        mLock.readLock().lock();
-
-        int filteredSize = mFilteredModelData.size();
-
-        T obj = filteredSize > 0 ? mFilteredModelData.get(position) : mModelData.get(position);
-
-        mLock.readLock().unlock();
-
-        return obj;
+        return mState.getVisibleData().get(position);
     }
 
     /**
@@ -211,14 +242,6 @@ public abstract class GenericSectionAdapter<T extends GenericModel> extends Base
         return position;
     }
 
-
-    private void createSections() {
-        // Get write lock, to ensure count does not change during execution
-        mLock.writeLock().lock();
-        mSectionCreator.createSections(mFilteredModelData.size() > 0 ? mFilteredModelData : mModelData);
-        mLock.writeLock().unlock();
-    }
-
     public void applyFilter(String filterString) {
         if (!filterString.equals(mFilterString)) {
             mFilterString = filterString;
@@ -237,76 +260,93 @@ public abstract class GenericSectionAdapter<T extends GenericModel> extends Base
 
     public void removeFilter() {
         if (!mFilterString.isEmpty()) {
-            mLock.writeLock().lock();
-
-            mFilteredModelData.clear();
             mFilterString = "";
 
-            mLock.writeLock().unlock();
+            final ModelState<T> state = mState;
+            mState = new ModelState<>(state.mModelData, state.mModelSections, null, null);
 
-            if (mSectionsEnabled) {
-                createSections();
-            }
             notifyDataSetChanged();
+
+            if (mSectionsEnabled && state.mModelSections == null) {
+                // the sections of the model data are not created yet
+                startFilterTask();
+            }
         }
     }
 
-    private void updateAfterFiltering(final Pair<List<T>, String> result) {
-        if (result.first != null && mFilterString.equals(result.second)) {
-            mLock.writeLock().lock();
-
-            mFilteredModelData.clear();
-            mFilteredModelData.addAll(result.first);
-
-            mLock.writeLock().unlock();
-
-            setScrollSpeed(0);
+    private void updateAfterFiltering(final FilterTask.Result<T> result) {
+        final ModelState<T> state = mState;
+        // Ignore results for outdated model data or filters
+        if (result.mModelData == state.mModelData && mFilterString.equals(result.mFilterString)) {
             if (mSectionsEnabled) {
-                createSections();
+                mState = new ModelState<>(state.mModelData, result.mModelSections, result.mFilteredModelData, result.mSections);
+            } else {
+                mState = new ModelState<>(state.mModelData, null, result.mFilteredModelData, null);
             }
+
+            setScrollSpeed(0);
             notifyDataSetChanged();
         }
     }
 
     private void filteringAborted() {
-        // Do nothing for now (readLock gets unlocked by FilterTask)
+        // Do nothing for now
     }
 
     private FilterTask<T> provideFilterTask() {
-        return new FilterTask<>(mModelData, mLock.readLock(),
-                provideFilter(),
+        final ModelState<T> state = mState;
+        return new FilterTask<>(state.mModelData, state.mModelSections, this::getSearchIndex,
+                mSectionsEnabled ? mSectionCreator : null,
                 this::updateAfterFiltering, this::filteringAborted);
     }
 
-    protected FilterTask.Filter<T> provideFilter() {
-        return (elem, filterString) -> elem.getSectionTitle().toLowerCase().contains(filterString.toLowerCase());
+    /**
+     * Returns the index for the filter, it is created once for each model data
+     * unless the paged model data already provides one. Called from the filter task.
+     */
+    private synchronized SearchIndex getSearchIndex(final List<T> modelData) {
+        if (modelData instanceof PagedModelList) {
+            final SearchIndex searchIndex = ((PagedModelList<T>) modelData).getSearchIndex();
+            if (searchIndex != null) {
+                return searchIndex;
+            }
+        }
+
+        if (mSearchIndex == null || mSearchIndexModelData != modelData) {
+            final String[] keys = new String[modelData.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = PagedModelList.getSectionTitle(modelData, i);
+            }
+            mSearchIndex = new SearchIndex(keys);
+            mSearchIndexModelData = modelData;
+        }
+        return mSearchIndex;
     }
 
     protected SectionCreator<T> provideSectionCreator() {
-        return new SectionCreator<>(model -> {
-            final String sectionTitle = model.getSectionTitle();
-
-            return sectionTitle.isEmpty() ? ' ' : sectionTitle.toUpperCase().charAt(0);
-        });
+        return new SectionCreator<>(sectionTitle -> sectionTitle.isEmpty() ? ' ' : sectionTitle.toUpperCase().charAt(0));
     }
 
     /**
      * Allows to enable/disable the support for sections of this adapter.
-     * In case of enabling it creates the sections.
+     * In case of enabling it creates the sections in the filter task.
      * In case of disabling it will clear the data.
      *
      * @param enabled Flag to indicate if sections should be enabled.
      */
     public void enableSections(boolean enabled) {
+        if (mSectionsEnabled == enabled) {
+            return;
+        }
         mSectionsEnabled = enabled;
+
         if (mSectionsEnabled) {
-            createSections();
+            startFilterTask();
         } else {
-            mLock.writeLock().lock();
-            mSectionCreator.clearSections();
-            mLock.writeLock().unlock();
+            final ModelState<T> state = mState;
+            mState = new ModelState<>(state.mModelData, null, state.mFilteredModelData, null);
+            notifyDataSetChanged();
         }
-        notifyDataSetChanged();
     }
 
     /**
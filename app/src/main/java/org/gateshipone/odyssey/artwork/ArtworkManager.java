@@ -39,6 +39,7 @@ import android.util.Size;
 import androidx.preference.PreferenceManager;
 
 import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
 import com.android.volley.VolleyError;
 
 import org.gateshipone.odyssey.BuildConfig;
@@ -52,6 +53,8 @@ import org.gateshipone.odyssey.artwork.network.artprovider.FanartTVProvider;
 import org.gateshipone.odyssey.artwork.network.artprovider.LastFMProvider;
 import org.gateshipone.odyssey.artwork.network.artprovider.MusicBrainzProvider;
 import org.gateshipone.odyssey.artwork.storage.ArtworkDatabaseManager;
+import org.gateshipone.odyssey.artwork.storage.ArtworkIndex;
+import org.gateshipone.odyssey.artwork.storage.ArtworkThumbnailStore;
 import org.gateshipone.odyssey.artwork.storage.ImageNotFoundException;
 import org.gateshipone.odyssey.models.AlbumModel;
 import org.gateshipone.odyssey.models.ArtistModel;
@@ -64,6 +67,7 @@ import org.json.JSONException;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -131,6 +135,11 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
      */
     private final ArtworkDatabaseManager mDBManager;
 
+    /**
+     * Store for the small renditions of the downloaded images
+     */
+    private final ArtworkThumbnailStore mThumbnailStore;
+
     /**
      * List of observers that needs updating if a new ArtistImage is downloaded.
      */
@@ -153,6 +162,7 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
         mApplicationContext = context.getApplicationContext();
 
         mDBManager = ArtworkDatabaseManager.getInstance(mApplicationContext);
+        mThumbnailStore = ArtworkThumbnailStore.getInstance(mApplicationContext);
 
         mArtistListeners = new ArrayList<>();
         mAlbumListeners = new ArrayList<>();
@@ -239,6 +249,10 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
         fetchImage(artist);
     }
 
+    /**
+     * Returns the image of the artist. The returned bitmap counts as one use in the {@link BitmapCache},
+     * callers that do not show it must release it with {@link BitmapCache#releaseBitmap(Bitmap)}.
+     */
     public Bitmap getImage(final ArtistModel artist, int width, int height, boolean skipCache) throws ImageNotFoundException {
         if (null == artist) {
             return null;
@@ -251,25 +265,40 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
 
         if (!skipCache) {
             // Try cache first
-            Bitmap cacheImage = BitmapCache.getInstance().requestArtistImage(artist);
-            if (cacheImage != null && requestedWidth <= cacheImage.getWidth() &&
-                    requestedHeight <= cacheImage.getHeight()) {
+            Bitmap cacheImage = BitmapCache.getInstance().requestArtistImage(artist, requestedWidth, requestedHeight);
+            if (cacheImage != null) {
                 return cacheImage;
             }
         }
 
-        final String image = mDBManager.getArtistImage(artist);
+        final ArtworkIndex.Entry entry = mDBManager.findArtistImage(artist);
+        if (entry == null) {
+            // Not searched for before
+            throw new ImageNotFoundException();
+        }
 
         // Checks if the database has an image for the requested artist
-        if (null != image) {
-            // Create a bitmap from the data blob in the database
-            Bitmap bm = BitmapUtils.decodeSampledBitmapFromFile(image, requestedWidth, requestedHeight);
-            BitmapCache.getInstance().putArtistImage(artist, bm);
+        if (!entry.isNotFound()) {
+            // Artists with the same image share one cached bitmap
+            if (!skipCache) {
+                Bitmap cacheImage = BitmapCache.getInstance().requestArtistImage(artist, entry.getContentId(), requestedWidth, requestedHeight);
+                if (cacheImage != null) {
+                    return cacheImage;
+                }
+            }
+
+            // Create a bitmap from the image in the artwork pack
+            Bitmap bm = decodeClosestRendition(entry, requestedWidth, requestedHeight);
+            BitmapCache.getInstance().putArtistImage(artist, entry.getContentId(), bm);
             return bm;
         }
         return null;
     }
 
+    /**
+     * Returns the image of the album. The returned bitmap counts as one use in the {@link BitmapCache},
+     * callers that do not show it must release it with {@link BitmapCache#releaseBitmap(Bitmap)}.
+     */
     public Bitmap getImage(final AlbumModel album, int width, int height, boolean skipCache) throws ImageNotFoundException {
         if (null == album) {
             return null;
@@ -282,9 +311,8 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
 
         if (!skipCache) {
             // Try cache first
-            Bitmap cacheBitmap = BitmapCache.getInstance().requestAlbumBitmap(album);
-            if (cacheBitmap != null && requestedWidth <= cacheBitmap.getWidth()
-                    && requestedHeight <= cacheBitmap.getHeight()) {
+            Bitmap cacheBitmap = BitmapCache.getInstance().requestAlbumBitmap(album, requestedWidth, requestedHeight);
+            if (cacheBitmap != null) {
                 return cacheBitmap;
             }
         }
@@ -307,24 +335,68 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
 
             if (albumURL != null && !albumURL.isEmpty()) {
                 // Local album art found (android database)
-                Bitmap bm = BitmapUtils.decodeSampledBitmapFromFile(albumURL, requestedWidth, requestedHeight);
+                Bitmap bm = decodeClosestRendition(albumURL, requestedWidth, requestedHeight);
                 BitmapCache.getInstance().putAlbumBitmap(album, bm);
                 return bm;
             }
         }
 
-        final String image = mDBManager.getAlbumImage(album);
+        final ArtworkIndex.Entry entry = mDBManager.findAlbumImage(album);
+        if (entry == null) {
+            // Not searched for before
+            throw new ImageNotFoundException();
+        }
 
         // Checks if the database has an image for the requested album
-        if (null != image) {
-            // Create a bitmap from the data blob in the database
-            Bitmap bm = BitmapUtils.decodeSampledBitmapFromFile(image, requestedWidth, requestedHeight);
-            BitmapCache.getInstance().putAlbumBitmap(album, bm);
+        if (!entry.isNotFound()) {
+            // Albums with the same image share one cached bitmap
+            if (!skipCache) {
+                Bitmap cacheBitmap = BitmapCache.getInstance().requestAlbumBitmap(album, entry.getContentId(), requestedWidth, requestedHeight);
+                if (cacheBitmap != null) {
+                    return cacheBitmap;
+                }
+            }
+
+            // Create a bitmap from the image in the artwork pack
+            Bitmap bm = decodeClosestRendition(entry, requestedWidth, requestedHeight);
+            BitmapCache.getInstance().putAlbumBitmap(album, entry.getContentId(), bm);
             return bm;
         }
         return null;
     }
 
+    /**
+     * Decodes the smallest stored thumbnail that fits the requested size, falls back to the full image.
+     */
+    private Bitmap decodeClosestRendition(final String imagePath, final int width, final int height) {
+        final Bitmap thumbnail = mThumbnailStore.getThumbnail(imagePath, width, height);
+        if (thumbnail != null) {
+            return thumbnail;
+        }
+        return BitmapUtils.decodeSampledBitmapFromFile(imagePath, width, height);
+    }
+
+    /**
+     * Decodes the smallest stored thumbnail that fits the requested size, falls back to the full image
+     * that is decoded directly from the artwork pack.
+     */
+    private Bitmap decodeClosestRendition(final ArtworkIndex.Entry entry, final int width, final int height) {
+        final Bitmap thumbnail = mThumbnailStore.getThumbnail(entry.getNamespace(), entry.getFileName(), width, height);
+        if (thumbnail != null) {
+            return thumbnail;
+        }
+
+        final ByteBuffer image = mDBManager.getImageData(entry);
+        if (image == null) {
+            return null;
+        }
+        return BitmapUtils.decodeSampledBitmapFromBuffer(image, width, height);
+    }
+
+    /**
+     * Returns the image of the album of the track. The returned bitmap counts as one use in the {@link BitmapCache},
+     * callers that do not show it must release it with {@link BitmapCache#releaseBitmap(Bitmap)}.
+     */
     public Bitmap getImage(final TrackModel track, int width, int height, boolean skipCache) throws ImageNotFoundException {
         if (null == track) {
             return null;
@@ -343,10 +415,12 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
      * Starts an asynchronous fetch for the image of the given artist.
      *
      * @param artistModel        Artist to fetch an image for.
+     * @param priority           Priority of the network requests.
+     * @param owner              Owner of the network requests, can be used to cancel them. Can be null.
      * @param imageSavedCallback Callback if an image was saved.
      * @param errorCallback      Callback if an error occurred.
      */
-    void fetchImage(final ArtistModel artistModel,
+    void fetchImage(final ArtistModel artistModel, final Request.Priority priority, final Object owner,
                     final InsertImageTask.ImageSavedCallback imageSavedCallback,
                     final ArtProvider.ArtFetchError errorCallback) {
         if (!NetworkUtils.isDownloadAllowed(mApplicationContext, mWifiOnly)) {
@@ -354,6 +428,8 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
         }
 
         final ArtworkRequestModel requestModel = new ArtworkRequestModel(artistModel);
+        requestModel.setPriority(priority);
+        requestModel.setOwner(owner);
 
         if (mArtistProvider.equals(mApplicationContext.getString(R.string.pref_artwork_provider_fanarttv_key))) {
             FanartTVProvider.getInstance(mApplicationContext).fetchImage(requestModel,
@@ -369,17 +445,20 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
      * @param artistModel Artist to fetch an image for.
      */
     public void fetchImage(final ArtistModel artistModel) {
-        fetchImage(artistModel, this, this);
+        // The user is waiting for this image
+        fetchImage(artistModel, Request.Priority.HIGH, null, this, this);
     }
 
     /**
      * Starts an asynchronous fetch for the image of the given album.
      *
      * @param albumModel         Album to fetch an image for.
+     * @param priority           Priority of the network requests.
+     * @param owner              Owner of the network requests, can be used to cancel them. Can be null.
      * @param imageSavedCallback Callback if an image was saved.
      * @param errorCallback      Callback if an error occurred.
      */
-    void fetchImage(final AlbumModel albumModel,
+    void fetchImage(final AlbumModel albumModel, final Request.Priority priority, final Object owner,
                     final InsertImageTask.ImageSavedCallback imageSavedCallback,
                     final ArtProvider.ArtFetchError errorCallback) {
         if (!NetworkUtils.isDownloadAllowed(mApplicationContext, mWifiOnly)) {
@@ -387,6 +466,8 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
         }
 
         ArtworkRequestModel requestModel = new ArtworkRequestModel(albumModel);
+        requestModel.setPriority(priority);
+        requestModel.setOwner(owner);
 
         if (mAlbumProvider.equals(mApplicationContext.getString(R.string.pref_artwork_provider_musicbrainz_key))) {
             MusicBrainzProvider.getInstance(mApplicationContext).fetchImage(requestModel,
@@ -406,7 +487,8 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
      * @param albumModel Album to fetch an image for.
      */
     public void fetchImage(final AlbumModel albumModel) {
-        fetchImage(albumModel, this, this);
+        // The user is waiting for this image
+        fetchImage(albumModel, Request.Priority.HIGH, null, this, this);
     }
 
     /**
@@ -551,6 +633,17 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
         LimitingRequestQueue.getInstance(mApplicationContext).cancelAll(request -> true);
     }
 
+    /**
+     * Cancels all requests that were started for the given owner.
+     *
+     * @param owner The owner that was used to fetch the images.
+     */
+    public void cancelRequests(final Object owner) {
+        if (null != owner) {
+            LimitingRequestQueue.getInstance(mApplicationContext).cancelAll(owner);
+        }
+    }
+
     /**
      * Used to broadcast information about new available artwork to {@link BroadcastReceiver} like
      * the {@link org.gateshipone.odyssey.widget.OdysseyWidgetProvider} to reload its artwork.
@@ -23,19 +23,34 @@
 package org.gateshipone.odyssey.artwork;
 
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.util.Log;
 
-import androidx.annotation.NonNull;
-import androidx.collection.LruCache;
+import androidx.collection.LongSparseArray;
 
 import org.gateshipone.odyssey.models.AlbumModel;
 import org.gateshipone.odyssey.models.ArtistModel;
 
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Simple LRU-based caching for album & artist images. This could reduce CPU usage
- * for the cost of memory usage by caching decoded {@link Bitmap} objects in a {@link LruCache}.
+ * LRU-based caching for album & artist images. This could reduce CPU usage
+ * for the cost of memory usage by caching decoded {@link Bitmap} objects.
+ * <p>
+ * Entries are keyed by a primitive long derived from the album or artist id, so a lookup does not
+ * allocate a key. Each entry can hold multiple renditions of the same image (e.g. list and
+ * detail size) so that a larger request does not evict a smaller one. The cache is split into
+ * segments with separate locks to reduce contention between the decode threads.
+ * <p>
+ * Images from the artwork database are cached by the id of their content instead. Albums and
+ * artists are linked to that entry, so all albums that share the same cover also share one
+ * cached bitmap.
+ * <p>
+ * Bitmaps that are evicted and no longer used by any view are kept in a small reuse pool and
+ * passed as {@link BitmapFactory.Options#inBitmap} to later decodes.
  */
 public class BitmapCache {
     private static final String TAG = BitmapCache.class.getSimpleName();
@@ -48,19 +63,65 @@ public class BitmapCache {
     private static final int mCacheSize = mMaxMemory / 4;
 
     /**
-     * Hash prefix for album images
+     * Maximum size of the reuse pool in kilobytes
      */
-    private static final String ALBUM_PREFIX = "A_";
+    private static final int mPoolSize = mCacheSize / 8;
 
     /**
-     * Hash prefix for artist images
+     * Number of independently locked segments, must be a power of two
      */
-    private static final String ARTIST_PREFIX = "B_";
+    private static final int SEGMENT_COUNT = 8;
 
     /**
-     * Private cache instance
+     * Maximum number of renditions kept for one image
      */
-    private final LruCache<String, Bitmap> mCache;
+    private static final int MAX_RENDITIONS = 3;
+
+    /**
+     * Key type bit for artist images, album images use 0
+     */
+    private static final long ARTIST_TYPE = 1L;
+
+    /**
+     * Key flag for keys calculated from names because no id is available
+     */
+    private static final long NAME_FLAG = 1L << 62;
+
+    /**
+     * Key flag for keys of shared image content
+     */
+    private static final long CONTENT_FLAG = 1L << 61;
+
+    /**
+     * Cache segments, selected by the key
+     */
+    private final Segment[] mSegments;
+
+    /**
+     * Content keys by album and artist keys, guarded by its own lock
+     */
+    private final LongSparseArray<Long> mContentKeys = new LongSparseArray<>();
+
+    /**
+     * Usage count of bitmaps handed out by the cache. Weak so that bitmaps that are not referenced
+     * anymore do not stay in here. Its lock may be taken while a segment lock is held, never the other way around.
+     */
+    private final WeakHashMap<Bitmap, Usage> mUsages = new WeakHashMap<>();
+
+    /**
+     * Bitmaps that can be reused for decoding, oldest first
+     */
+    private final ArrayList<Bitmap> mReusePool = new ArrayList<>();
+
+    private int mReusePoolSize;
+
+    private final AtomicLong mHitCount = new AtomicLong();
+
+    private final AtomicLong mMissCount = new AtomicLong();
+
+    private final AtomicLong mEvictionCount = new AtomicLong();
+
+    private final AtomicLong mReuseCount = new AtomicLong();
 
     /**
      * Singleton instance
@@ -68,15 +129,10 @@ public class BitmapCache {
     private static BitmapCache mInstance;
 
     private BitmapCache() {
-        mCache = new LruCache<String, Bitmap>(mCacheSize) {
-            @Override
-            protected int sizeOf(@NonNull String key, @NonNull Bitmap bitmap) {
-                // The cache size will be measured in kilobytes rather than
-                // number of items.
-                return bitmap.getByteCount() / 1024;
-            }
-
-        };
+        mSegments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            mSegments[i] = new Segment(mCacheSize / SEGMENT_COUNT);
+        }
     }
 
     public static synchronized BitmapCache getInstance() {
@@ -90,10 +146,36 @@ public class BitmapCache {
      * Tries to get an album image from the cache
      *
      * @param album Album object to try
-     * @return Bitmap if cache hit, null otherwise
+     * @return The largest cached rendition if cache hit, null otherwise
+     */
+    public Bitmap requestAlbumBitmap(AlbumModel album) {
+        return get(resolveKey(getAlbumKey(album)), 0, 0, true);
+    }
+
+    /**
+     * Tries to get an album image with at least the given size from the cache
+     *
+     * @param album  Album object to try
+     * @param width  Minimum width of the image
+     * @param height Minimum height of the image
+     * @return The smallest cached rendition that is large enough, null otherwise
      */
-    public synchronized Bitmap requestAlbumBitmap(AlbumModel album) {
-        return mCache.get(getAlbumHash(album));
+    public Bitmap requestAlbumBitmap(AlbumModel album, int width, int height) {
+        return get(resolveKey(getAlbumKey(album)), width, height, false);
+    }
+
+    /**
+     * Tries to get an album image with at least the given size from the cache. The album is linked
+     * to the image content, so the image can be shared with other albums.
+     *
+     * @param album     Album object to try
+     * @param contentId Id of the image content
+     * @param width     Minimum width of the image
+     * @param height    Minimum height of the image
+     * @return The smallest cached rendition that is large enough, null otherwise
+     */
+    public Bitmap requestAlbumBitmap(AlbumModel album, long contentId, int width, int height) {
+        return get(linkContent(getAlbumKey(album), contentId), width, height, false);
     }
 
     /**
@@ -102,43 +184,51 @@ public class BitmapCache {
      * @param album Album object to use for cache key
      * @param bm    Bitmap to store in cache
      */
-    public synchronized void putAlbumBitmap(AlbumModel album, Bitmap bm) {
+    public void putAlbumBitmap(AlbumModel album, Bitmap bm) {
+        if (bm != null) {
+            put(resolveKey(getAlbumKey(album)), bm);
+        }
+    }
+
+    /**
+     * Puts an album image to the cache that is shared by all albums with the same image content
+     *
+     * @param album     Album object to use for cache key
+     * @param contentId Id of the image content
+     * @param bm        Bitmap to store in cache
+     */
+    public void putAlbumBitmap(AlbumModel album, long contentId, Bitmap bm) {
         if (bm != null) {
-            mCache.put(getAlbumHash(album), bm);
+            put(linkContent(getAlbumKey(album), contentId), bm);
         }
     }
 
     /**
-     * Removes an album image from the cache
+     * Removes all renditions of an album image from the cache. A shared image stays cached
+     * for the other albums.
      *
      * @param album Album object to use for cache key
      */
-    public synchronized void removeAlbumBitmap(AlbumModel album) {
-        mCache.remove(getAlbumHash(album));
+    public void removeAlbumBitmap(AlbumModel album) {
+        removeKey(getAlbumKey(album));
     }
 
     /**
      * Private hash method for cache key
      *
      * @param album Album to calculate the key from
-     * @return Hash string for cache key
+     * @return Key for the cache
      */
-    private String getAlbumHash(AlbumModel album) {
-        String hashString = ALBUM_PREFIX;
+    private static long getAlbumKey(AlbumModel album) {
         final long albumId = album.getAlbumId();
 
         // Use albumId as key if available
         if (albumId != -1) {
-            hashString += String.valueOf(albumId);
-            return hashString;
+            return albumId << 1;
         }
 
         // Else use artist and album name
-        final String albumArtist = album.getArtistName();
-        final String albumName = album.getAlbumName();
-
-        hashString += albumArtist + '_' + albumName;
-        return hashString;
+        return getNameKey(album.getArtistName(), album.getAlbumName()) << 1;
     }
 
     /*
@@ -149,10 +239,36 @@ public class BitmapCache {
      * Tries to get an artist image from the cache
      *
      * @param artist Artist object to check in cache
-     * @return Bitmap if cache hit, null otherwise
+     * @return The largest cached rendition if cache hit, null otherwise
+     */
+    public Bitmap requestArtistImage(ArtistModel artist) {
+        return get(resolveKey(getArtistKey(artist)), 0, 0, true);
+    }
+
+    /**
+     * Tries to get an artist image with at least the given size from the cache
+     *
+     * @param artist Artist object to check in cache
+     * @param width  Minimum width of the image
+     * @param height Minimum height of the image
+     * @return The smallest cached rendition that is large enough, null otherwise
      */
-    public synchronized Bitmap requestArtistImage(ArtistModel artist) {
-        return mCache.get(getArtistHash(artist));
+    public Bitmap requestArtistImage(ArtistModel artist, int width, int height) {
+        return get(resolveKey(getArtistKey(artist)), width, height, false);
+    }
+
+    /**
+     * Tries to get an artist image with at least the given size from the cache. The artist is linked
+     * to the image content, so the image can be shared with other artists.
+     *
+     * @param artist    Artist object to check in cache
+     * @param contentId Id of the image content
+     * @param width     Minimum width of the image
+     * @param height    Minimum height of the image
+     * @return The smallest cached rendition that is large enough, null otherwise
+     */
+    public Bitmap requestArtistImage(ArtistModel artist, long contentId, int width, int height) {
+        return get(linkContent(getArtistKey(artist), contentId), width, height, false);
     }
 
     /**
@@ -161,63 +277,526 @@ public class BitmapCache {
      * @param artist Artist object used as cache key
      * @param bm     Bitmap to store in cache
      */
-    public synchronized void putArtistImage(ArtistModel artist, Bitmap bm) {
+    public void putArtistImage(ArtistModel artist, Bitmap bm) {
+        if (bm != null) {
+            put(resolveKey(getArtistKey(artist)), bm);
+        }
+    }
+
+    /**
+     * Puts an artist image to the cache that is shared by all artists with the same image content
+     *
+     * @param artist    Artist object used as cache key
+     * @param contentId Id of the image content
+     * @param bm        Bitmap to store in cache
+     */
+    public void putArtistImage(ArtistModel artist, long contentId, Bitmap bm) {
         if (bm != null) {
-            mCache.put(getArtistHash(artist), bm);
+            put(linkContent(getArtistKey(artist), contentId), bm);
         }
     }
 
     /**
-     * Removes an artist image from the cache
+     * Removes all renditions of an artist image from the cache. A shared image stays cached
+     * for the other artists.
      *
      * @param artist Artist object used as cache key
      */
-    public synchronized void removeArtistImage(ArtistModel artist) {
-        mCache.remove(getArtistHash(artist));
+    public void removeArtistImage(ArtistModel artist) {
+        removeKey(getArtistKey(artist));
     }
 
     /**
      * Private hash method for cache key
      *
      * @param artist Artist used as cache key
-     * @return Hash string for cache key
+     * @return Key for the cache
      */
-    private String getArtistHash(ArtistModel artist) {
-        String hashString = ARTIST_PREFIX;
-
+    private static long getArtistKey(ArtistModel artist) {
         final long artistId = artist.getArtistID();
 
-        // Use albumId as key if available
+        // Use artistId as key if available
         if (artistId != -1) {
-            hashString += String.valueOf(artistId);
-            return hashString;
+            return (artistId << 1) | ARTIST_TYPE;
+        }
+
+        return (getNameKey(artist.getArtistName(), null) << 1) | ARTIST_TYPE;
+    }
+
+    /**
+     * Creates a key from the given names. The two string hashes are combined to a 61 bit value and
+     * flagged so that they can not collide with id based keys.
+     */
+    private static long getNameKey(String first, String second) {
+        final long high = first == null ? 0 : first.hashCode();
+        final long low = second == null ? 0 : second.hashCode();
+        return NAME_FLAG | (((high << 32) ^ (low & 0xFFFFFFFFL) ^ (high >>> 3)) & (NAME_FLAG - 1));
+    }
+
+    /*
+     * Begin of shared content handling
+     */
+
+    /**
+     * Links an album or artist key to the key of the image content.
+     *
+     * @return The content key
+     */
+    private long linkContent(long key, long contentId) {
+        final long contentKey = CONTENT_FLAG | (contentId & (CONTENT_FLAG - 1));
+        synchronized (mContentKeys) {
+            final Long linkedKey = mContentKeys.get(key);
+            if (linkedKey == null || linkedKey != contentKey) {
+                mContentKeys.put(key, contentKey);
+            }
+        }
+        return contentKey;
+    }
+
+    /**
+     * @return The content key if the album or artist key is linked to one, the key itself otherwise
+     */
+    private long resolveKey(long key) {
+        synchronized (mContentKeys) {
+            final Long contentKey = mContentKeys.get(key);
+            return contentKey == null ? key : contentKey;
+        }
+    }
+
+    /**
+     * Removes the link to the image content or, for unshared images, the cache entry.
+     */
+    private void removeKey(long key) {
+        final Long contentKey;
+        synchronized (mContentKeys) {
+            contentKey = mContentKeys.get(key);
+            mContentKeys.remove(key);
+        }
+
+        if (contentKey == null) {
+            remove(key);
+        }
+    }
+
+    /*
+     * Begin of bitmap reuse handling
+     */
+
+    /**
+     * Marks a bitmap returned by the cache as used by one more consumer. Consumers that do not
+     * release the bitmap again can use this to make sure that it is never reused for decoding.
+     *
+     * @param bm Bitmap that was returned by the cache
+     */
+    public void retainBitmap(Bitmap bm) {
+        if (bm == null) {
+            return;
+        }
+
+        synchronized (mUsages) {
+            final Usage usage = mUsages.get(bm);
+            if (usage != null) {
+                usage.mCount++;
+            }
         }
+    }
 
-        hashString += artist.getArtistName();
+    /**
+     * Tells the cache that a consumer does not show the given bitmap anymore.
+     * If it was already evicted and no other consumer uses it, it will be reused for decoding.
+     *
+     * @param bm Bitmap that was returned by the cache
+     */
+    public void releaseBitmap(Bitmap bm) {
+        if (bm == null) {
+            return;
+        }
 
-        return hashString;
+        boolean reusable = false;
+        synchronized (mUsages) {
+            final Usage usage = mUsages.get(bm);
+            if (usage != null && usage.mCount > 0) {
+                usage.mCount--;
+                if (usage.mCount == 0 && !usage.mCached) {
+                    mUsages.remove(bm);
+                    reusable = true;
+                }
+            }
+        }
+
+        if (reusable) {
+            addReusableBitmap(bm);
+        }
+    }
+
+    /**
+     * Sets a bitmap from the reuse pool as {@link BitmapFactory.Options#inBitmap} if one is
+     * large enough for the decode described by the given options. The options must contain
+     * the bounds and the sample size of the image.
+     *
+     * @param options Options used for the next decode
+     */
+    public void setReusableBitmap(BitmapFactory.Options options) {
+        final int sampleSize = Math.max(1, options.inSampleSize);
+        final int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        final int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        final long requiredBytes = (long) width * height * 4;
+
+        // Decoded bitmaps must be mutable to be reusable later
+        options.inMutable = true;
+
+        if (requiredBytes <= 0) {
+            return;
+        }
+
+        synchronized (mReusePool) {
+            // Use the smallest bitmap that is large enough to not waste the larger ones
+            Bitmap bestMatch = null;
+            for (Bitmap candidate : mReusePool) {
+                final int candidateBytes = candidate.getAllocationByteCount();
+                if (candidateBytes >= requiredBytes && candidate.getConfig() == Bitmap.Config.ARGB_8888
+                        && (bestMatch == null || candidateBytes < bestMatch.getAllocationByteCount())) {
+                    bestMatch = candidate;
+                }
+            }
+
+            if (bestMatch != null) {
+                mReusePool.remove(bestMatch);
+                mReusePoolSize -= bestMatch.getAllocationByteCount() / 1024;
+                mReuseCount.incrementAndGet();
+                options.inBitmap = bestMatch;
+            }
+        }
+    }
+
+    private void addReusableBitmap(Bitmap bm) {
+        if (!bm.isMutable() || bm.isRecycled() || bm.getConfig() != Bitmap.Config.ARGB_8888) {
+            return;
+        }
+
+        final int size = bm.getAllocationByteCount() / 1024;
+        if (size > mPoolSize) {
+            return;
+        }
+
+        synchronized (mReusePool) {
+            mReusePool.add(bm);
+            mReusePoolSize += size;
+
+            // Drop the oldest bitmaps, the garbage collector takes care of them
+            final Iterator<Bitmap> iterator = mReusePool.iterator();
+            while (mReusePoolSize > mPoolSize && iterator.hasNext()) {
+                final Bitmap oldest = iterator.next();
+                iterator.remove();
+                mReusePoolSize -= oldest.getAllocationByteCount() / 1024;
+            }
+        }
+    }
+
+    /*
+     * Begin of statistics
+     */
+
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    public long getEvictionCount() {
+        return mEvictionCount.get();
+    }
+
+    public long getReuseCount() {
+        return mReuseCount.get();
+    }
+
+    /*
+     * Begin of the segment handling
+     */
+
+    private Segment getSegment(long key) {
+        final long hash = key * 0x9E3779B97F4A7C15L;
+        return mSegments[(int) (hash >>> 32) & (SEGMENT_COUNT - 1)];
+    }
+
+    private Bitmap get(long key, int width, int height, boolean largest) {
+        // The segment marks the bitmap as used before it releases its lock, so a concurrent
+        // eviction can not move it to the reuse pool
+        final Bitmap bm = getSegment(key).get(key, width, height, largest);
+
+        if (bm == null) {
+            mMissCount.incrementAndGet();
+            return null;
+        }
+
+        mHitCount.incrementAndGet();
+        return bm;
+    }
+
+    private void put(long key, Bitmap bm) {
+        final ArrayList<Bitmap> evicted = new ArrayList<>();
+        getSegment(key).put(key, bm, evicted);
+        evict(evicted);
+    }
+
+    private void remove(long key) {
+        final ArrayList<Bitmap> evicted = new ArrayList<>();
+        getSegment(key).remove(key, evicted);
+        evict(evicted);
+    }
+
+    private void markUsed(Bitmap bm, boolean cached) {
+        synchronized (mUsages) {
+            Usage usage = mUsages.get(bm);
+            if (usage == null) {
+                usage = new Usage();
+                mUsages.put(bm, usage);
+            }
+            usage.mCount++;
+            usage.mCached = cached;
+        }
+    }
+
+    /**
+     * Moves evicted bitmaps to the reuse pool if no consumer uses them anymore.
+     */
+    private void evict(ArrayList<Bitmap> evicted) {
+        for (Bitmap bm : evicted) {
+            mEvictionCount.incrementAndGet();
+
+            boolean reusable;
+            synchronized (mUsages) {
+                final Usage usage = mUsages.get(bm);
+                if (usage != null) {
+                    usage.mCached = false;
+                }
+                reusable = usage == null || usage.mCount == 0;
+                if (reusable) {
+                    mUsages.remove(bm);
+                }
+            }
+
+            if (reusable) {
+                addReusableBitmap(bm);
+            }
+        }
     }
 
     /**
      * Debug method to provide performance evaluation metrics
      */
     private void printUsage() {
-        Log.v(TAG, "Cache usage: " + ((mCache.size() * 100) / mCache.maxSize()) + '%');
-        int missCount = mCache.missCount();
-        int hitCount = mCache.hitCount();
-        if (missCount > 0) {
-            Log.v(TAG, "Cache hit count: " + hitCount + " miss count: " + missCount + " Miss rate: " + ((hitCount * 100) / missCount) + '%');
+        long size = 0;
+        for (Segment segment : mSegments) {
+            synchronized (segment) {
+                size += segment.mSize;
+            }
         }
-        Log.v(TAG, "Memory usage: " + (getMemoryUsage() / (1024 * 1024)) + " MB");
+        Log.v(TAG, "Cache usage: " + ((size * 100) / mCacheSize) + '%');
+        final long missCount = getMissCount();
+        final long hitCount = getHitCount();
+        if (hitCount + missCount > 0) {
+            Log.v(TAG, "Cache hit count: " + hitCount + " miss count: " + missCount + " Miss rate: " + ((missCount * 100) / (hitCount + missCount)) + '%');
+        }
+        Log.v(TAG, "Evictions: " + getEvictionCount() + " reused bitmaps: " + getReuseCount());
+        Log.v(TAG, "Memory usage: " + (size / 1024) + " MB");
     }
 
-    private long getMemoryUsage() {
-        Map<String, Bitmap> snapShot = mCache.snapshot();
-        long bytes = 0;
-        for (Bitmap bitmap : snapShot.values()) {
-            bytes += bitmap.getAllocationByteCount();
+    private static class Usage {
+        int mCount;
+
+        boolean mCached;
+    }
+
+    /**
+     * All renditions of one image, linked in the LRU list of its segment.
+     */
+    private static class Entry {
+        final long mKey;
+
+        /**
+         * Renditions sorted by ascending width
+         */
+        final ArrayList<Bitmap> mRenditions = new ArrayList<>(MAX_RENDITIONS);
+
+        int mSize;
+
+        Entry mPrevious;
+
+        Entry mNext;
+
+        Entry(long key) {
+            mKey = key;
+        }
+    }
+
+    /**
+     * Part of the cache with its own lock, map and LRU list.
+     * Bitmaps are marked as used while the lock is held.
+     */
+    private class Segment {
+        private final LongSparseArray<Entry> mEntries = new LongSparseArray<>();
+
+        private final int mMaxSize;
+
+        /**
+         * Size of all renditions in kilobytes
+         */
+        private int mSize;
+
+        /**
+         * Most recently used entry
+         */
+        private Entry mHead;
+
+        /**
+         * Least recently used entry
+         */
+        private Entry mTail;
+
+        Segment(int maxSize) {
+            mMaxSize = maxSize;
+        }
+
+        synchronized Bitmap get(long key, int width, int height, boolean largest) {
+            final Entry entry = mEntries.get(key);
+            if (entry == null) {
+                return null;
+            }
+
+            Bitmap result = null;
+            if (largest) {
+                result = entry.mRenditions.get(entry.mRenditions.size() - 1);
+            } else {
+                for (Bitmap rendition : entry.mRenditions) {
+                    if (rendition.getWidth() >= width && rendition.getHeight() >= height) {
+                        result = rendition;
+                        break;
+                    }
+                }
+            }
+
+            if (result != null) {
+                moveToHead(entry);
+                markUsed(result, true);
+            }
+            return result;
         }
 
-        return bytes;
+        /**
+         * Adds the bitmap and marks it as used, because the caller hands it to its consumer.
+         * Bitmaps that are already cached are not marked again.
+         */
+        synchronized void put(long key, Bitmap bm, ArrayList<Bitmap> evicted) {
+            Entry entry = mEntries.get(key);
+            if (entry == null) {
+                entry = new Entry(key);
+                mEntries.put(key, entry);
+            } else {
+                unlink(entry);
+            }
+            linkHead(entry);
+
+            final ArrayList<Bitmap> renditions = entry.mRenditions;
+            int index = 0;
+            while (index < renditions.size() && renditions.get(index).getWidth() < bm.getWidth()) {
+                index++;
+            }
+
+            if (renditions.contains(bm)) {
+                return;
+            }
+
+            if (index < renditions.size() && renditions.get(index).getWidth() == bm.getWidth()
+                    && renditions.get(index).getHeight() == bm.getHeight()) {
+                // Replace a rendition with the same size
+                evicted.add(removeRendition(entry, index));
+            }
+
+            renditions.add(index, bm);
+            final int size = sizeOf(bm);
+            entry.mSize += size;
+            mSize += size;
+
+            // This needs to be noted before the eviction in case the bitmap does not fit into the cache
+            markUsed(bm, true);
+
+            // Keep the largest renditions
+            while (renditions.size() > MAX_RENDITIONS) {
+                evicted.add(removeRendition(entry, 0));
+            }
+
+            trimToSize(evicted);
+        }
+
+        synchronized void remove(long key, ArrayList<Bitmap> evicted) {
+            final Entry entry = mEntries.get(key);
+            if (entry != null) {
+                removeEntry(entry, evicted);
+            }
+        }
+
+        private Bitmap removeRendition(Entry entry, int index) {
+            final Bitmap bm = entry.mRenditions.remove(index);
+            final int size = sizeOf(bm);
+            entry.mSize -= size;
+            mSize -= size;
+            return bm;
+        }
+
+        private void removeEntry(Entry entry, ArrayList<Bitmap> evicted) {
+            unlink(entry);
+            mEntries.remove(entry.mKey);
+            mSize -= entry.mSize;
+            evicted.addAll(entry.mRenditions);
+        }
+
+        private void trimToSize(ArrayList<Bitmap> evicted) {
+            while (mSize > mMaxSize && mTail != null) {
+                removeEntry(mTail, evicted);
+            }
+        }
+
+        private void moveToHead(Entry entry) {
+            if (mHead != entry) {
+                unlink(entry);
+                linkHead(entry);
+            }
+        }
+
+        private void linkHead(Entry entry) {
+            entry.mPrevious = null;
+            entry.mNext = mHead;
+            if (mHead != null) {
+                mHead.mPrevious = entry;
+            }
+            mHead = entry;
+            if (mTail == null) {
+                mTail = entry;
+            }
+        }
+
+        private void unlink(Entry entry) {
+            if (entry.mPrevious != null) {
+                entry.mPrevious.mNext = entry.mNext;
+            } else if (mHead == entry) {
+                mHead = entry.mNext;
+            }
+            if (entry.mNext != null) {
+                entry.mNext.mPrevious = entry.mPrevious;
+            } else if (mTail == entry) {
+                mTail = entry.mPrevious;
+            }
+            entry.mPrevious = null;
+            entry.mNext = null;
+        }
+    }
+
+    private static int sizeOf(Bitmap bm) {
+        // The cache size will be measured in kilobytes rather than number of items.
+        return bm.getAllocationByteCount() / 1024;
     }
 }
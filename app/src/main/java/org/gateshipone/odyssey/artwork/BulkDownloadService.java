@@ -31,6 +31,7 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.os.Build;
 import android.os.Bundle;
@@ -43,6 +44,7 @@ import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 
 import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
 import com.android.volley.VolleyError;
 
 import org.gateshipone.odyssey.BuildConfig;
@@ -52,13 +54,13 @@ import org.gateshipone.odyssey.artwork.network.ImageResponse;
 import org.gateshipone.odyssey.artwork.network.InsertImageTask;
 import org.gateshipone.odyssey.artwork.network.artprovider.ArtProvider;
 import org.gateshipone.odyssey.artwork.storage.ArtworkDatabaseManager;
-import org.gateshipone.odyssey.artwork.storage.ImageNotFoundException;
 import org.gateshipone.odyssey.models.AlbumModel;
 import org.gateshipone.odyssey.models.ArtistModel;
 import org.gateshipone.odyssey.utils.MusicLibraryHelper;
 import org.gateshipone.odyssey.utils.NetworkUtils;
 import org.json.JSONException;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -79,6 +81,30 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
 
     public static final String BUNDLE_KEY_WIFI_ONLY = "org.gateshipone.odyssey.wifi_only";
 
+    /**
+     * Number of artwork requests that are processed at the same time. The request queue limits the rate for each service.
+     */
+    private static final int MAX_REQUESTS_IN_FLIGHT = 4;
+
+    /**
+     * Number of finished requests after which the progress is saved
+     */
+    private static final int CHECKPOINT_INTERVAL = 10;
+
+    private static final String CHECKPOINT_PREFERENCES_NAME = "bulk_download_checkpoint";
+
+    private static final String CHECKPOINT_KEY_ACTIVE = "active";
+
+    private static final String CHECKPOINT_KEY_ARTIST_PROVIDER = "artist_provider";
+
+    private static final String CHECKPOINT_KEY_ALBUM_PROVIDER = "album_provider";
+
+    private static final String CHECKPOINT_KEY_WIFI_ONLY = "wifi_only";
+
+    private static final String CHECKPOINT_KEY_SUM_REQUESTS = "sum_requests";
+
+    private static final String CHECKPOINT_KEY_FINISHED_REQUESTS = "finished_requests";
+
     private static final int PENDING_INTENT_UPDATE_CURRENT_FLAG =
             Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE : PendingIntent.FLAG_UPDATE_CURRENT;
 
@@ -88,6 +114,19 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
 
     private int mSumArtworkRequests;
 
+    /**
+     * Requests finished in this and earlier, interrupted runs
+     */
+    private int mFinishedArtworkRequests;
+
+    private int mRequestsInFlight;
+
+    private boolean mRunning;
+
+    private String mArtistProvider;
+
+    private String mAlbumProvider;
+
     private ActionReceiver mBroadcastReceiver;
 
     private PowerManager.WakeLock mWakelock;
@@ -136,16 +175,19 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
+        final SharedPreferences checkpoint = getSharedPreferences(CHECKPOINT_PREFERENCES_NAME, MODE_PRIVATE);
+
+        String artistProvider = null;
+        String albumProvider = null;
+        boolean resume = false;
+
         if (intent != null && ACTION_START_BULKDOWNLOAD.equals(intent.getAction())) {
             if (BuildConfig.DEBUG) {
                 Log.v(TAG, "Starting bulk download in service with thread id: " + Thread.currentThread().getId());
             }
 
-            // reset counter
-            mSumArtworkRequests = 0;
-
-            String artistProvider = getString(R.string.pref_artwork_provider_artist_default);
-            String albumProvider = getString(R.string.pref_artwork_provider_album_default);
+            artistProvider = getString(R.string.pref_artwork_provider_artist_default);
+            albumProvider = getString(R.string.pref_artwork_provider_album_default);
             mWifiOnly = true;
 
             // read setting from extras
@@ -156,30 +198,54 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
                 mWifiOnly = intent.getBooleanExtra(BUNDLE_KEY_WIFI_ONLY, true);
             }
 
-            if (artistProvider.equals(getString(R.string.pref_artwork_provider_none_key)) && albumProvider.equals(getString(R.string.pref_artwork_provider_none_key))) {
-                return START_NOT_STICKY;
-            }
+            // continue the progress of an interrupted run with the same providers
+            resume = checkpoint.getBoolean(CHECKPOINT_KEY_ACTIVE, false)
+                    && artistProvider.equals(checkpoint.getString(CHECKPOINT_KEY_ARTIST_PROVIDER, null))
+                    && albumProvider.equals(checkpoint.getString(CHECKPOINT_KEY_ALBUM_PROVIDER, null));
+        } else if (intent == null && checkpoint.getBoolean(CHECKPOINT_KEY_ACTIVE, false)) {
+            // the service was restarted by the system, resume the interrupted run
+            artistProvider = checkpoint.getString(CHECKPOINT_KEY_ARTIST_PROVIDER, getString(R.string.pref_artwork_provider_artist_default));
+            albumProvider = checkpoint.getString(CHECKPOINT_KEY_ALBUM_PROVIDER, getString(R.string.pref_artwork_provider_album_default));
+            mWifiOnly = checkpoint.getBoolean(CHECKPOINT_KEY_WIFI_ONLY, true);
+            resume = true;
+        }
 
-            if (!NetworkUtils.isDownloadAllowed(this, mWifiOnly)) {
-                return START_NOT_STICKY;
-            }
+        if (artistProvider == null || mRunning) {
+            return START_STICKY;
+        }
 
-            PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
-            mWakelock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "odyssey:wakelock:bulkdownloader");
+        if (artistProvider.equals(getString(R.string.pref_artwork_provider_none_key)) && albumProvider.equals(getString(R.string.pref_artwork_provider_none_key))) {
+            return START_NOT_STICKY;
+        }
 
-            // FIXME do some timeout checking. e.g. 5 minutes no new image then cancel the process
-            mWakelock.acquire();
+        if (!NetworkUtils.isDownloadAllowed(this, mWifiOnly)) {
+            return START_NOT_STICKY;
+        }
 
-            mArtworkManager = ArtworkManager.getInstance(getApplicationContext());
-            mArtworkManager.initialize(artistProvider, albumProvider, mWifiOnly);
+        // reset counter
+        mSumArtworkRequests = resume ? checkpoint.getInt(CHECKPOINT_KEY_SUM_REQUESTS, 0) : 0;
+        mFinishedArtworkRequests = resume ? checkpoint.getInt(CHECKPOINT_KEY_FINISHED_REQUESTS, 0) : 0;
+        mRequestsInFlight = 0;
+        mArtistProvider = artistProvider;
+        mAlbumProvider = albumProvider;
+        mRunning = true;
 
-            mDatabaseManager = ArtworkDatabaseManager.getInstance(getApplicationContext());
+        PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
+        mWakelock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "odyssey:wakelock:bulkdownloader");
 
-            runAsForeground();
+        // FIXME do some timeout checking. e.g. 5 minutes no new image then cancel the process
+        mWakelock.acquire();
+
+        mArtworkManager = ArtworkManager.getInstance(getApplicationContext());
+        mArtworkManager.initialize(artistProvider, albumProvider, mWifiOnly);
+
+        mDatabaseManager = ArtworkDatabaseManager.getInstance(getApplicationContext());
+
+        runAsForeground();
+
+        createArtworkRequestQueue(!albumProvider.equals(getApplicationContext().getString((R.string.pref_artwork_provider_none_key))),
+                !artistProvider.equals(getApplicationContext().getString((R.string.pref_artwork_provider_none_key))));
 
-            createArtworkRequestQueue(!albumProvider.equals(getApplicationContext().getString((R.string.pref_artwork_provider_none_key))),
-                    !artistProvider.equals(getApplicationContext().getString((R.string.pref_artwork_provider_none_key))));
-        }
         return START_STICKY;
     }
 
@@ -187,6 +253,20 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
     public void onImageSaved(final ArtworkRequestModel artworkRequestModel) {
         mArtworkManager.onImageSaved(artworkRequestModel);
 
+        synchronized (mArtworkRequestQueue) {
+            if (!mRunning) {
+                // Late result of a cancelled run
+                return;
+            }
+
+            mRequestsInFlight--;
+            mFinishedArtworkRequests++;
+
+            if (mFinishedArtworkRequests % CHECKPOINT_INTERVAL == 0) {
+                saveCheckpoint();
+            }
+        }
+
         performNextRequest();
     }
 
@@ -212,7 +292,7 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
         if (error != null) {
             NetworkResponse networkResponse = error.networkResponse;
             if (networkResponse != null && networkResponse.statusCode == 503) {
-                finishedLoading();
+                finishedLoading(false);
                 return;
             }
         }
@@ -279,10 +359,17 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
     private void createArtworkRequestQueue(final boolean fetchAlbums, final boolean fetchArtists) {
         mArtworkRequestQueue.clear();
 
+        // Only request images that were never searched for, images of finished requests
+        // of an interrupted run are already in the database.
         if (fetchAlbums) {
-            List<AlbumModel> albums = MusicLibraryHelper.getAllAlbums(getApplicationContext());
+            final List<AlbumModel> albums = new ArrayList<>();
+            for (AlbumModel album : MusicLibraryHelper.getAllAlbums(getApplicationContext())) {
+                if (needsAlbumImage(album)) {
+                    albums.add(album);
+                }
+            }
 
-            for (AlbumModel album : albums) {
+            for (AlbumModel album : mDatabaseManager.getAlbumsWithoutImageEntry(albums)) {
                 mArtworkRequestQueue.add(new ArtworkRequestModel(album));
             }
         }
@@ -290,7 +377,7 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
         if (fetchArtists) {
             List<ArtistModel> artists = MusicLibraryHelper.getAllArtists(false, getApplicationContext());
 
-            for (ArtistModel artist : artists) {
+            for (ArtistModel artist : mDatabaseManager.getArtistsWithoutImageEntry(artists)) {
                 mArtworkRequestQueue.add(new ArtworkRequestModel(artist));
             }
         }
@@ -303,71 +390,76 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
             Log.v(TAG, "Bulkloading started with: " + mArtworkRequestQueue.size());
         }
 
-        mSumArtworkRequests = mArtworkRequestQueue.size();
+        // A resumed run keeps the progress of the previous runs
+        mSumArtworkRequests = mFinishedArtworkRequests + mArtworkRequestQueue.size();
 
         mBuilder.setContentTitle(getString(R.string.downloader_notification_remaining_images));
 
         if (mArtworkRequestQueue.isEmpty()) {
-            finishedLoading();
+            finishedLoading(true);
         } else {
+            saveCheckpoint();
             performNextRequest();
         }
     }
 
+    /**
+     * Starts requests until the maximum number of requests is in flight.
+     */
     private void performNextRequest() {
-        ArtworkRequestModel requestModel;
         while (true) {
+            ArtworkRequestModel requestModel;
             synchronized (mArtworkRequestQueue) {
-                updateNotification(mArtworkRequestQueue.size());
+                if (!mRunning || mRequestsInFlight >= MAX_REQUESTS_IN_FLIGHT) {
+                    return;
+                }
+
+                updateNotification();
 
                 requestModel = mArtworkRequestQueue.pollFirst();
-            }
 
-            if (requestModel != null) {
-                if (checkRequest(requestModel)) {
-                    createRequest(requestModel);
+                if (requestModel == null) {
+                    if (mRequestsInFlight == 0) {
+                        // All requests are done
+                        finishedLoading(true);
+                    }
                     return;
                 }
-            } else {
-                finishedLoading();
-                return;
+
+                if (!checkRequest(requestModel)) {
+                    // Image was fetched in the meantime, e.g. for a visible item
+                    mFinishedArtworkRequests++;
+                    continue;
+                }
+
+                mRequestsInFlight++;
             }
+
+            createRequest(requestModel);
+        }
+    }
+
+    /**
+     * @return True if the album needs an image from the artwork providers
+     */
+    private boolean needsAlbumImage(final AlbumModel album) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            // TODO check if an image can be open via the android media framework
+            // would be required for android 10 or later
+
+            // for now just download images for every album regardless
+            // if an image is present in the android media framework
+            return true;
         }
+        return album.getAlbumArtURL() == null || album.getAlbumArtURL().isEmpty();
     }
 
     private boolean checkRequest(@NonNull final ArtworkRequestModel requestModel) {
         switch (requestModel.getType()) {
-            case ALBUM: {
-                AlbumModel album = (AlbumModel) requestModel.getGenericModel();
-
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                    // TODO check if an image can be open via the android media framework
-                    // would be required for android 10 or later
-
-                    // for now just download images for every album regardless
-                    // if an image is present in the android media framework
-                    try {
-                        mDatabaseManager.getAlbumImage(album);
-                    } catch (ImageNotFoundException e2) {
-                        return true;
-                    }
-                } else if (album.getAlbumArtURL() == null || album.getAlbumArtURL().isEmpty()) {
-                    try {
-                        mDatabaseManager.getAlbumImage(album);
-                    } catch (ImageNotFoundException e) {
-                        return true;
-                    }
-                }
-            }
-            break;
-            case ARTIST: {
-                try {
-                    mDatabaseManager.getArtistImage((ArtistModel) requestModel.getGenericModel());
-                } catch (ImageNotFoundException e) {
-                    return true;
-                }
-            }
-            break;
+            case ALBUM:
+                return mDatabaseManager.findAlbumImage((AlbumModel) requestModel.getGenericModel()) == null;
+            case ARTIST:
+                return mDatabaseManager.findArtistImage((ArtistModel) requestModel.getGenericModel()) == null;
         }
         return false;
     }
@@ -375,19 +467,38 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
     private void createRequest(final ArtworkRequestModel requestModel) {
         switch (requestModel.getType()) {
             case ALBUM:
-                mArtworkManager.fetchImage((AlbumModel) requestModel.getGenericModel(), this, this);
+                mArtworkManager.fetchImage((AlbumModel) requestModel.getGenericModel(), Request.Priority.LOW, this, this, this);
                 break;
             case ARTIST:
-                mArtworkManager.fetchImage((ArtistModel) requestModel.getGenericModel(), this, this);
+                mArtworkManager.fetchImage((ArtistModel) requestModel.getGenericModel(), Request.Priority.LOW, this, this, this);
                 break;
         }
 
     }
 
-    private void finishedLoading() {
-        mArtworkRequestQueue.clear();
+    /**
+     * Stops the download.
+     *
+     * @param completed True if all requests are done, false if the run was interrupted and should be resumed later.
+     */
+    private void finishedLoading(final boolean completed) {
+        synchronized (mArtworkRequestQueue) {
+            if (!mRunning) {
+                return;
+            }
+            mRunning = false;
 
-        ArtworkManager.getInstance(getApplicationContext()).cancelAllRequests();
+            if (completed) {
+                clearCheckpoint();
+            } else {
+                // Save the progress so that the next run continues it
+                saveCheckpoint();
+            }
+            mArtworkRequestQueue.clear();
+        }
+
+        // Only cancel the own requests, requests for visible items should continue
+        ArtworkManager.getInstance(getApplicationContext()).cancelRequests(this);
 
         mNotificationManager.cancel(NOTIFICATION_ID);
         stopForeground(true);
@@ -397,12 +508,31 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
         }
     }
 
-    private void updateNotification(final int pendingRequests) {
+    /**
+     * Saves the progress and the settings of the current run, so that an interrupted run can be resumed.
+     */
+    private void saveCheckpoint() {
+        getSharedPreferences(CHECKPOINT_PREFERENCES_NAME, MODE_PRIVATE).edit()
+                .putBoolean(CHECKPOINT_KEY_ACTIVE, true)
+                .putString(CHECKPOINT_KEY_ARTIST_PROVIDER, mArtistProvider)
+                .putString(CHECKPOINT_KEY_ALBUM_PROVIDER, mAlbumProvider)
+                .putBoolean(CHECKPOINT_KEY_WIFI_ONLY, mWifiOnly)
+                .putInt(CHECKPOINT_KEY_SUM_REQUESTS, mSumArtworkRequests)
+                .putInt(CHECKPOINT_KEY_FINISHED_REQUESTS, mFinishedArtworkRequests)
+                .apply();
+    }
+
+    private void clearCheckpoint() {
+        getSharedPreferences(CHECKPOINT_PREFERENCES_NAME, MODE_PRIVATE).edit().clear().apply();
+    }
+
+    private void updateNotification() {
+        final int pendingRequests = mSumArtworkRequests - mFinishedArtworkRequests;
         if (BuildConfig.DEBUG) {
             Log.v(TAG, "Remaining requests: " + pendingRequests);
         }
 
-        int finishedRequests = mSumArtworkRequests - pendingRequests;
+        int finishedRequests = mFinishedArtworkRequests;
 
         if (finishedRequests % 10 == 0) {
             mBuilder.setProgress(mSumArtworkRequests, finishedRequests, false);
@@ -444,7 +574,7 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
                     Log.e(TAG, "Cancel requested");
                 }
 
-                finishedLoading();
+                finishedLoading(false);
             }
         }
     }
@@ -459,7 +589,7 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
                 }
 
                 // Cancel all downloads
-                finishedLoading();
+                finishedLoading(false);
             }
 
         }
@@ -24,6 +24,8 @@ package org.gateshipone.odyssey.artwork.network;
 
 import android.net.Uri;
 
+import com.android.volley.Request;
+
 import org.gateshipone.odyssey.models.AlbumModel;
 import org.gateshipone.odyssey.models.ArtistModel;
 import org.gateshipone.odyssey.models.GenericModel;
@@ -40,6 +42,16 @@ public class ArtworkRequestModel {
 
     private final ArtworkRequestType mType;
 
+    /**
+     * Priority of the network requests for this model
+     */
+    private Request.Priority mPriority = Request.Priority.NORMAL;
+
+    /**
+     * Owner of the network requests, used as the request tag to cancel all requests of an owner
+     */
+    private Object mOwner;
+
     public ArtworkRequestModel(ArtistModel artistModel) {
         this(artistModel, ArtworkRequestType.ARTIST);
     }
@@ -57,6 +69,22 @@ public class ArtworkRequestModel {
         return mType;
     }
 
+    public Request.Priority getPriority() {
+        return mPriority;
+    }
+
+    public void setPriority(final Request.Priority priority) {
+        mPriority = priority;
+    }
+
+    public Object getOwner() {
+        return mOwner;
+    }
+
+    public void setOwner(final Object owner) {
+        mOwner = owner;
+    }
+
     public void setMBId(final String mbid) {
         switch (mType) {
             case ALBUM:
@@ -28,6 +28,8 @@ import android.graphics.BitmapFactory;
 import android.os.AsyncTask;
 
 import org.gateshipone.odyssey.artwork.storage.ArtworkDatabaseManager;
+import org.gateshipone.odyssey.artwork.storage.ArtworkIndex;
+import org.gateshipone.odyssey.artwork.storage.ArtworkThumbnailStore;
 import org.gateshipone.odyssey.models.AlbumModel;
 import org.gateshipone.odyssey.models.ArtistModel;
 
@@ -56,10 +58,13 @@ public class InsertImageTask extends AsyncTask<ImageResponse, Object, ArtworkReq
 
     private final ArtworkDatabaseManager mArtworkDatabaseManager;
 
+    private final ArtworkThumbnailStore mArtworkThumbnailStore;
+
     private final ImageSavedCallback mImageSavedCallback;
 
     public InsertImageTask(final Context context, final ImageSavedCallback imageSavedCallback) {
         mArtworkDatabaseManager = ArtworkDatabaseManager.getInstance(context);
+        mArtworkThumbnailStore = ArtworkThumbnailStore.getInstance(context);
         mImageSavedCallback = imageSavedCallback;
     }
 
@@ -88,15 +93,17 @@ public class InsertImageTask extends AsyncTask<ImageResponse, Object, ArtworkReq
                 return response.model;
             }
             ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-            Bitmap.createScaledBitmap(bm, (int) (options.outWidth * factor), (int) (options.outHeight * factor), true)
-                    .compress(Bitmap.CompressFormat.JPEG, IMAGE_COMPRESSION_SETTING, byteStream);
+            final Bitmap scaledBitmap = Bitmap.createScaledBitmap(bm, (int) (options.outWidth * factor), (int) (options.outHeight * factor), true);
+            scaledBitmap.compress(Bitmap.CompressFormat.JPEG, IMAGE_COMPRESSION_SETTING, byteStream);
 
             if (byteStream.size() <= MAXIMUM_IMAGE_SIZE) {
                 insertImage(response.model, byteStream.toByteArray());
+                createThumbnails(response.model, scaledBitmap);
             }
         } else {
             if (response.image.length <= MAXIMUM_IMAGE_SIZE) {
                 insertImage(response.model, response.image);
+                createThumbnails(response.model, BitmapFactory.decodeByteArray(response.image, 0, response.image.length));
             }
         }
 
@@ -108,6 +115,30 @@ public class InsertImageTask extends AsyncTask<ImageResponse, Object, ArtworkReq
         mImageSavedCallback.onImageSaved(artworkRequestModel);
     }
 
+    /**
+     * Creates the thumbnails for the grid and list views while the image is still decoded.
+     */
+    private void createThumbnails(final ArtworkRequestModel model, final Bitmap image) {
+        if (image == null) {
+            return;
+        }
+
+        ArtworkIndex.Entry entry = null;
+        switch (model.getType()) {
+            case ALBUM:
+                entry = mArtworkDatabaseManager.findAlbumImage((AlbumModel) model.getGenericModel());
+                break;
+            case ARTIST:
+                entry = mArtworkDatabaseManager.findArtistImage((ArtistModel) model.getGenericModel());
+                break;
+        }
+
+        // Without an entry the image was not saved
+        if (entry != null && !entry.isNotFound()) {
+            mArtworkThumbnailStore.createThumbnails(entry.getNamespace(), entry.getFileName(), image);
+        }
+    }
+
     private void insertImage(final ArtworkRequestModel model, final byte[] image) {
         switch (model.getType()) {
             case ALBUM:
@@ -25,6 +25,8 @@ package org.gateshipone.odyssey.artwork.network;
 import static com.android.volley.RequestQueue.RequestEvent.REQUEST_FINISHED;
 
 import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.android.volley.Cache;
@@ -37,30 +39,66 @@ import com.android.volley.toolbox.HurlStack;
 
 import org.gateshipone.odyssey.BuildConfig;
 
-import java.util.Queue;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.concurrent.LinkedBlockingQueue;
 
+/**
+ * Request queue that limits the request rate for each host with a token bucket, so that every
+ * artwork service is used within its own rate limit while requests to different services run in parallel.
+ * <p>
+ * Waiting requests are ordered by their {@link Request.Priority}, so requests for visible items
+ * overtake the requests of the bulk download. Requests can be cancelled by their owner via
+ * {@link #cancelAll(Object)} as the owner is used as the request tag.
+ */
 public class LimitingRequestQueue extends RequestQueue implements RequestQueue.RequestEventListener {
 
     private static final String TAG = LimitingRequestQueue.class.getSimpleName();
 
-    private Timer mLimiterTimer;
-
     private static LimitingRequestQueue mInstance;
 
-    private final Queue<Request<?>> mLimitingRequestQueue;
+    /**
+     * Number of parallel network threads. The per host limits keep the load on each service low.
+     */
+    private static final int NETWORK_THREAD_POOL_SIZE = 4;
+
+    /**
+     * Requests per second and burst size for hosts without a specific limit
+     */
+    private static final double[] DEFAULT_HOST_LIMIT = {2.0, 2.0};
 
     /**
-     * Wait 1000ms between every request
+     * Requests per second and burst size for the known artwork services
      */
-    private static final int REQUEST_RATE = 1000;
+    private static final HashMap<String, double[]> HOST_LIMITS = new HashMap<>();
+
+    static {
+        // MusicBrainz allows one request per second
+        HOST_LIMITS.put("musicbrainz.org", new double[]{1.0, 1.0});
+        HOST_LIMITS.put("coverartarchive.org", new double[]{2.0, 2.0});
+        HOST_LIMITS.put("webservice.fanart.tv", new double[]{2.0, 2.0});
+        HOST_LIMITS.put("ws.audioscrobbler.com", new double[]{4.0, 4.0});
+    }
+
+    /**
+     * Waiting requests for each host
+     */
+    private final HashMap<String, HostLane> mHostLanes;
+
+    private Timer mLimiterTimer;
+
+    /**
+     * Time of the next scheduled dispatch, -1 if none is scheduled
+     */
+    private long mNextDispatchTime;
 
     private LimitingRequestQueue(Cache cache, Network network) {
-        super(cache, network, 1);
-        mLimitingRequestQueue = new LinkedBlockingQueue<>();
+        super(cache, network, NETWORK_THREAD_POOL_SIZE);
+        mHostLanes = new HashMap<>();
         mLimiterTimer = null;
+        mNextDispatchTime = -1;
         addRequestEventListener(this);
     }
 
@@ -85,13 +123,18 @@ public class LimitingRequestQueue extends RequestQueue implements RequestQueue.R
             Log.v(TAG, "RATE LIMITING REQUEST ADDED");
         }
 
-        synchronized (mLimitingRequestQueue) {
-            mLimitingRequestQueue.add(request);
-            if (null == mLimiterTimer) {
-                // Timer currently not running
-                mLimiterTimer = new Timer();
-                mLimiterTimer.schedule(new LimitingRequestQueue.LimiterTask(), 0, REQUEST_RATE);
+        final String host = getHost(request.getUrl());
+
+        synchronized (mHostLanes) {
+            HostLane lane = mHostLanes.get(host);
+            if (null == lane) {
+                final double[] limit = HOST_LIMITS.containsKey(host) ? HOST_LIMITS.get(host) : DEFAULT_HOST_LIMIT;
+                lane = new HostLane(limit[0], limit[1]);
+                mHostLanes.put(host, lane);
             }
+            lane.add(request);
+
+            dispatchRequests();
         }
         return request;
     }
@@ -109,28 +152,64 @@ public class LimitingRequestQueue extends RequestQueue implements RequestQueue.R
         }
     }
 
+    /**
+     * Forwards all requests for which their host has a token left and schedules the next dispatch.
+     * Must be called with the lane lock held.
+     */
+    private void dispatchRequests() {
+        final long now = SystemClock.elapsedRealtime();
+        long nextDelay = Long.MAX_VALUE;
+
+        for (HostLane lane : mHostLanes.values()) {
+            lane.refill(now);
+
+            Request<?> request;
+            while (lane.hasToken() && null != (request = lane.poll())) {
+                lane.takeToken();
+                realAddRequest(request);
+
+                if (BuildConfig.DEBUG) {
+                    Log.v(TAG, "RATE LIMITING FORWARED");
+                }
+            }
+
+            if (lane.hasPending()) {
+                nextDelay = Math.min(nextDelay, lane.getTimeUntilToken());
+            }
+        }
+
+        if (nextDelay == Long.MAX_VALUE) {
+            // Stop the timer, no requests left
+            if (null != mLimiterTimer) {
+                mLimiterTimer.cancel();
+                mLimiterTimer.purge();
+                mLimiterTimer = null;
+                mNextDispatchTime = -1;
+
+                if (BuildConfig.DEBUG) {
+                    Log.v(TAG, "RATE LIMITING EMPTY, STOPPING");
+                }
+            }
+            return;
+        }
+
+        final long dispatchTime = now + nextDelay;
+        if (mNextDispatchTime == -1 || dispatchTime < mNextDispatchTime) {
+            if (null == mLimiterTimer) {
+                // Timer currently not running
+                mLimiterTimer = new Timer();
+            }
+            mLimiterTimer.schedule(new LimiterTask(), nextDelay);
+            mNextDispatchTime = dispatchTime;
+        }
+    }
 
     private class LimiterTask extends TimerTask {
         @Override
         public void run() {
-            synchronized (mLimitingRequestQueue) {
-                Request<?> request = mLimitingRequestQueue.poll();
-                if (null != request) {
-                    realAddRequest(request);
-
-                    if (BuildConfig.DEBUG) {
-                        Log.v(TAG, "RATE LIMITING FORWARED");
-                    }
-                } else {
-                    // Stop the timer, no requests left
-                    mLimiterTimer.cancel();
-                    mLimiterTimer.purge();
-                    mLimiterTimer = null;
-
-                    if (BuildConfig.DEBUG) {
-                        Log.v(TAG, "RATE LIMITING EMPTY, STOPPING");
-                    }
-                }
+            synchronized (mHostLanes) {
+                mNextDispatchTime = -1;
+                dispatchRequests();
             }
         }
     }
@@ -140,21 +219,111 @@ public class LimitingRequestQueue extends RequestQueue implements RequestQueue.R
      *
      * @param filter The filtering function to use
      */
+    @Override
     public void cancelAll(RequestFilter filter) {
         super.cancelAll(filter);
-        synchronized (mLimitingRequestQueue) {
-            for (Request<?> request : mLimitingRequestQueue) {
-                if (filter.apply(request)) {
-                    if (BuildConfig.DEBUG) {
-                        Log.v(TAG, "Canceling request: " + request);
+        synchronized (mHostLanes) {
+            for (HostLane lane : mHostLanes.values()) {
+                lane.cancelAll(filter);
+            }
+        }
+    }
+
+    private static String getHost(final String url) {
+        final String host = Uri.parse(url).getHost();
+        return null == host ? "" : host.toLowerCase();
+    }
+
+    /**
+     * Token bucket and waiting requests of one host.
+     */
+    private static class HostLane {
+        /**
+         * Waiting requests, one queue for each {@link Request.Priority}
+         */
+        private final ArrayDeque<Request<?>>[] mQueues;
+
+        private final double mTokensPerMillisecond;
+
+        private final double mCapacity;
+
+        private double mTokens;
+
+        private long mLastRefill;
+
+        @SuppressWarnings("unchecked")
+        HostLane(final double requestsPerSecond, final double burst) {
+            mQueues = new ArrayDeque[Request.Priority.values().length];
+            for (int i = 0; i < mQueues.length; i++) {
+                mQueues[i] = new ArrayDeque<>();
+            }
+
+            mTokensPerMillisecond = requestsPerSecond / 1000.0;
+            mCapacity = burst;
+            mTokens = burst;
+            mLastRefill = SystemClock.elapsedRealtime();
+        }
+
+        void add(final Request<?> request) {
+            mQueues[request.getPriority().ordinal()].add(request);
+        }
+
+        /**
+         * @return The oldest request with the highest priority or null if none is waiting
+         */
+        Request<?> poll() {
+            for (int i = mQueues.length - 1; i >= 0; i--) {
+                Request<?> request;
+                while (null != (request = mQueues[i].poll())) {
+                    if (!request.isCanceled()) {
+                        return request;
                     }
+                }
+            }
+            return null;
+        }
 
-                    request.cancel();
-                    mLimitingRequestQueue.remove(request);
+        boolean hasPending() {
+            for (ArrayDeque<Request<?>> queue : mQueues) {
+                if (!queue.isEmpty()) {
+                    return true;
                 }
             }
+            return false;
         }
-    }
 
-}
+        void refill(final long now) {
+            mTokens = Math.min(mCapacity, mTokens + (now - mLastRefill) * mTokensPerMillisecond);
+            mLastRefill = now;
+        }
+
+        boolean hasToken() {
+            return mTokens >= 1.0;
+        }
 
+        void takeToken() {
+            mTokens -= 1.0;
+        }
+
+        long getTimeUntilToken() {
+            return Math.max(1, (long) Math.ceil((1.0 - mTokens) / mTokensPerMillisecond));
+        }
+
+        void cancelAll(final RequestFilter filter) {
+            for (ArrayDeque<Request<?>> queue : mQueues) {
+                final Iterator<Request<?>> iterator = queue.iterator();
+                while (iterator.hasNext()) {
+                    final Request<?> request = iterator.next();
+                    if (filter.apply(request)) {
+                        if (BuildConfig.DEBUG) {
+                            Log.v(TAG, "Canceling request: " + request);
+                        }
+
+                        request.cancel();
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -102,7 +102,7 @@ public class FanartTVProvider extends ArtProvider {
                 // not used for this provider
                 break;
             case ARTIST:
-                getArtists(model.getLuceneEscapedEncodedArtistName(),
+                getArtists(model,
                         response -> parseMusicBrainzArtistsJSON(model, response, listener, errorListener),
                         error -> errorListener.fetchVolleyError(model, error));
                 break;
@@ -135,7 +135,7 @@ public class FanartTVProvider extends ArtProvider {
                 if (isMatching) {
                     final String artistMBId = artistObj.getString("id");
 
-                    getArtistImageURL(artistMBId, response1 -> {
+                    getArtistImageURL(model, artistMBId, response1 -> {
                         JSONArray thumbImages;
                         try {
                             thumbImages = response1.getJSONArray("artistthumb");
@@ -167,11 +167,12 @@ public class FanartTVProvider extends ArtProvider {
     /**
      * Gets a list of possible artists from Musicbrainz database.
      *
-     * @param artistName    Name of the artist to search for
+     * @param model         The model representing the artist to search for
      * @param listener      Response listener to handle the artist list
      * @param errorListener Error listener
      */
-    private void getArtists(final String artistName, final Response.Listener<JSONObject> listener, final Response.ErrorListener errorListener) {
+    private void getArtists(final ArtworkRequestModel model, final Response.Listener<JSONObject> listener, final Response.ErrorListener errorListener) {
+        final String artistName = model.getLuceneEscapedEncodedArtistName();
 
         String url = MUSICBRAINZ_API_URL + "/" + "artist/?query=artist:" + artistName + MUSICBRAINZ_LIMIT_RESULT + MUSICBRAINZ_FORMAT_JSON;
 
@@ -179,7 +180,7 @@ public class FanartTVProvider extends ArtProvider {
             Log.v(TAG, "Requesting release mbid for: " + url);
         }
 
-        OdysseyJsonObjectRequest jsonObjectRequest = new OdysseyJsonObjectRequest(url, null, listener, errorListener);
+        OdysseyJsonObjectRequest jsonObjectRequest = new OdysseyJsonObjectRequest(model, url, null, listener, errorListener);
 
         mRequestQueue.add(jsonObjectRequest);
     }
@@ -187,11 +188,12 @@ public class FanartTVProvider extends ArtProvider {
     /**
      * Retrieves all available information (Artist image url, fanart url, ...) for an artist with an MBID of fanart.tv
      *
+     * @param model         The model representing the artist
      * @param artistMBId    Artists MBID to query
      * @param listener      Response listener to handle the artists information from fanart.tv
      * @param errorListener Error listener
      */
-    private void getArtistImageURL(final String artistMBId, final Response.Listener<JSONObject> listener, final Response.ErrorListener errorListener) {
+    private void getArtistImageURL(final ArtworkRequestModel model, final String artistMBId, final Response.Listener<JSONObject> listener, final Response.ErrorListener errorListener) {
 
         String url = FANART_TV_API_URL + "/" + artistMBId + "?api_key=" + API_KEY;
 
@@ -199,7 +201,7 @@ public class FanartTVProvider extends ArtProvider {
             Log.v(TAG, "Requesting artist image url for: " + url);
         }
 
-        OdysseyJsonObjectRequest jsonObjectRequest = new OdysseyJsonObjectRequest(url, null, listener, errorListener);
+        OdysseyJsonObjectRequest jsonObjectRequest = new OdysseyJsonObjectRequest(model, url, null, listener, errorListener);
 
         mRequestQueue.add(jsonObjectRequest);
     }
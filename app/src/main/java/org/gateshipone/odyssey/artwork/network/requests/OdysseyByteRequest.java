@@ -46,6 +46,13 @@ public class OdysseyByteRequest extends Request<ImageResponse> {
 
         mModel = model;
         mListener = listener;
+
+        setTag(model.getOwner());
+    }
+
+    @Override
+    public Priority getPriority() {
+        return mModel.getPriority();
     }
 
     @Override
@@ -26,6 +26,7 @@ import com.android.volley.Response;
 import com.android.volley.toolbox.JsonObjectRequest;
 
 import org.gateshipone.odyssey.BuildConfig;
+import org.gateshipone.odyssey.artwork.network.ArtworkRequestModel;
 import org.json.JSONObject;
 
 import java.util.HashMap;
@@ -33,8 +34,18 @@ import java.util.Map;
 
 public class OdysseyJsonObjectRequest extends JsonObjectRequest {
 
-    public OdysseyJsonObjectRequest(String url, JSONObject jsonRequest, Response.Listener<JSONObject> listener, Response.ErrorListener errorListener) {
+    private final Priority mPriority;
+
+    public OdysseyJsonObjectRequest(ArtworkRequestModel model, String url, JSONObject jsonRequest, Response.Listener<JSONObject> listener, Response.ErrorListener errorListener) {
         super(Method.GET, url, jsonRequest, listener, errorListener);
+
+        mPriority = model.getPriority();
+        setTag(model.getOwner());
+    }
+
+    @Override
+    public Priority getPriority() {
+        return mPriority;
     }
 
     @Override
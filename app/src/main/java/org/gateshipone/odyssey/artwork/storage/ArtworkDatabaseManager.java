@@ -25,6 +25,7 @@ package org.gateshipone.odyssey.artwork.storage;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
@@ -33,8 +34,10 @@ import org.gateshipone.odyssey.models.ArtistModel;
 import org.gateshipone.odyssey.utils.FileUtils;
 import org.gateshipone.odyssey.utils.MusicLibraryHelper;
 
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class ArtworkDatabaseManager extends SQLiteOpenHelper {
 
@@ -50,16 +53,31 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
 
     private static ArtworkDatabaseManager mInstance;
 
-    private static final String DIRECTORY_ALBUM_IMAGES = "albumArt";
+    private final Context mApplicationContext;
 
-    private static final String DIRECTORY_ARTIST_IMAGES = "artistArt";
+    /**
+     * Storage of the image files, the tables only contain their names
+     */
+    private final ArtworkPackStore mPackStore;
 
-    private final Context mApplicationContext;
+    /**
+     * In-memory copy of the artwork tables used for lookups, guarded by its own lock.
+     * To avoid deadlocks the lock of this manager must be taken first if both are needed.
+     */
+    private final ArtworkIndex mIndex = new ArtworkIndex();
+
+    private boolean mIndexLoaded = false;
+
+    /**
+     * Reset count of the pack store when the index was loaded
+     */
+    private int mIndexPackResetCount;
 
     private ArtworkDatabaseManager(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
 
         mApplicationContext = context.getApplicationContext();
+        mPackStore = ArtworkPackStore.getInstance(mApplicationContext);
     }
 
     public static synchronized ArtworkDatabaseManager getInstance(Context context) {
@@ -99,114 +117,255 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
     }
 
     /**
-     * Tries to fetch an image for the album, by id (android album id), by album name and artist name or only by album name.
+     * Looks up the album in the in-memory index without touching the database.
      *
      * @param album The album to search for.
-     * @return The byte[] containing the raw image file. This can be decoded with BitmapFactory.
-     * @throws ImageNotFoundException If the image is not in the database and it was not searched for before.
+     * @return The index entry or null if the image was not searched for before.
      */
-    public synchronized String getAlbumImage(final AlbumModel album) throws ImageNotFoundException {
-        final SQLiteDatabase database = getReadableDatabase();
-
-        final long albumId = album.getAlbumId();
-        final String albumName = album.getAlbumName();
-        final String artistName = album.getArtistName();
+    public ArtworkIndex.Entry findAlbumImage(final AlbumModel album) {
+        synchronized (mIndex) {
+            if (isIndexValid()) {
+                return mIndex.getAlbum(album.getAlbumId(), album.getAlbumName(), album.getArtistName());
+            }
+        }
 
-        String selection;
-        String[] selectionArguments;
+        loadIndex();
 
-        if (albumId != -1) {
-            selection = AlbumArtTable.COLUMN_ALBUM_ID + "=?";
-            selectionArguments = new String[]{String.valueOf(albumId)};
-        } else if (!artistName.isEmpty()) {
-            selection = AlbumArtTable.COLUMN_ALBUM_NAME + "=? AND " + AlbumArtTable.COLUMN_ARTIST_NAME + "=?";
-            selectionArguments = new String[]{albumName, artistName};
-        } else {
-            selection = AlbumArtTable.COLUMN_ALBUM_NAME + "=?";
-            selectionArguments = new String[]{albumName};
+        synchronized (mIndex) {
+            return mIndex.getAlbum(album.getAlbumId(), album.getAlbumName(), album.getArtistName());
         }
+    }
 
-        final Cursor requestCursor = database.query(AlbumArtTable.TABLE_NAME, new String[]{AlbumArtTable.COLUMN_IMAGE_FILE_PATH, AlbumArtTable.COLUMN_IMAGE_NOT_FOUND, AlbumArtTable.COLUMN_IMAGE_HAS_FULL_PATH},
-                selection, selectionArguments, null, null, null);
-
-        // Check if an image was found
-        if (requestCursor.moveToFirst()) {
-            // If the not_found flag is set then return null here, to indicate that the image is not here but was searched for before.
-            if (requestCursor.getInt(requestCursor.getColumnIndexOrThrow(AlbumArtTable.COLUMN_IMAGE_NOT_FOUND)) == 1) {
-                requestCursor.close();
-                database.close();
-                return null;
+    /**
+     * Looks up the artist in the in-memory index without touching the database.
+     *
+     * @param artist The artist to search for.
+     * @return The index entry or null if the image was not searched for before.
+     */
+    public ArtworkIndex.Entry findArtistImage(final ArtistModel artist) {
+        synchronized (mIndex) {
+            if (isIndexValid()) {
+                return mIndex.getArtist(artist.getArtistID(), artist.getArtistName());
             }
-            final String artworkFilename = requestCursor.getString(requestCursor.getColumnIndexOrThrow(AlbumArtTable.COLUMN_IMAGE_FILE_PATH));
+        }
 
-            final boolean hasFullImagePath = requestCursor.getInt(requestCursor.getColumnIndexOrThrow(AlbumArtTable.COLUMN_IMAGE_HAS_FULL_PATH)) == 1;
+        loadIndex();
 
-            requestCursor.close();
-            database.close();
+        synchronized (mIndex) {
+            return mIndex.getArtist(artist.getArtistID(), artist.getArtistName());
+        }
+    }
 
-            // only try to retrieve the artwork path if the entry wasn't created for a full path
-            // since the support for local images was dropped we won't load the image and instead
-            // throw a not found exception
-            if (!hasFullImagePath) {
-                return FileUtils.getFullArtworkFilePath(mApplicationContext, artworkFilename, DIRECTORY_ALBUM_IMAGES);
+    /**
+     * Returns all albums of the given list whose image was never searched for.
+     * All albums are checked against the in-memory index in one pass.
+     *
+     * @param albums The albums to check.
+     * @return The albums without an entry, in the same order.
+     */
+    public List<AlbumModel> getAlbumsWithoutImageEntry(final List<AlbumModel> albums) {
+        loadIndex();
+
+        final List<AlbumModel> missingAlbums = new ArrayList<>();
+        synchronized (mIndex) {
+            for (AlbumModel album : albums) {
+                if (mIndex.getAlbum(album.getAlbumId(), album.getAlbumName(), album.getArtistName()) == null) {
+                    missingAlbums.add(album);
+                }
             }
         }
+        return missingAlbums;
+    }
 
-        // If we reach this, no entry was found for the given request. Throw an exception
-        requestCursor.close();
-        database.close();
-        throw new ImageNotFoundException();
+    /**
+     * Returns all artists of the given list whose image was never searched for.
+     * All artists are checked against the in-memory index in one pass.
+     *
+     * @param artists The artists to check.
+     * @return The artists without an entry, in the same order.
+     */
+    public List<ArtistModel> getArtistsWithoutImageEntry(final List<ArtistModel> artists) {
+        loadIndex();
+
+        final List<ArtistModel> missingArtists = new ArrayList<>();
+        synchronized (mIndex) {
+            for (ArtistModel artist : artists) {
+                if (mIndex.getArtist(artist.getArtistID(), artist.getArtistName()) == null) {
+                    missingArtists.add(artist);
+                }
+            }
+        }
+        return missingArtists;
     }
 
     /**
-     * Tries to fetch an image for the artist, by id (android artist id) or by the artist name.
+     * Returns the encoded image of an index entry as read-only mapped slice of the artwork pack.
      *
-     * @param artist The artist to search for.
-     * @return The byte[] containing the raw image file. This can be decoded with BitmapFactory.
-     * @throws ImageNotFoundException If the image is not found and it was not searched for before.
+     * @param entry The entry returned by {@link #findAlbumImage(AlbumModel)} or {@link #findArtistImage(ArtistModel)}.
+     * @return The image or null if the image was searched for before but not found.
      */
-    public synchronized String getArtistImage(ArtistModel artist) throws ImageNotFoundException {
-        final SQLiteDatabase database = getReadableDatabase();
+    public ByteBuffer getImageData(final ArtworkIndex.Entry entry) {
+        if (entry.isNotFound()) {
+            return null;
+        }
 
-        final String artistName = artist.getArtistName();
-        final long artistId = artist.getArtistID();
+        return mPackStore.get(entry.getNamespace(), entry.getFileName());
+    }
+
+    /**
+     * Reads both artwork tables into the in-memory index.
+     */
+    private synchronized void loadIndex() {
+        synchronized (mIndex) {
+            if (isIndexValid()) {
+                return;
+            }
 
-        String selection;
-        String[] selectionArguments;
+            mIndex.clearAlbums();
+            mIndex.clearArtists();
 
-        if (artistId != -1) {
-            selection = ArtistArtTable.COLUMN_ARTIST_ID + "=?";
-            selectionArguments = new String[]{String.valueOf(artistId)};
-        } else {
-            selection = ArtistArtTable.COLUMN_ARTIST_NAME + "=?";
-            selectionArguments = new String[]{artistName};
-        }
+            final SQLiteDatabase database = getReadableDatabase();
 
-        final Cursor requestCursor = database.query(ArtistArtTable.TABLE_NAME, new String[]{ArtistArtTable.COLUMN_IMAGE_FILE_PATH, ArtistArtTable.COLUMN_IMAGE_NOT_FOUND},
-                selection, selectionArguments, null, null, null);
+            final Cursor albumCursor = database.query(AlbumArtTable.TABLE_NAME, new String[]{AlbumArtTable.COLUMN_ALBUM_ID, AlbumArtTable.COLUMN_ALBUM_NAME,
+                            AlbumArtTable.COLUMN_ARTIST_NAME, AlbumArtTable.COLUMN_IMAGE_FILE_PATH, AlbumArtTable.COLUMN_IMAGE_NOT_FOUND, AlbumArtTable.COLUMN_IMAGE_HAS_FULL_PATH},
+                    null, null, null, null, null);
 
-        // Check if an image was found
-        if (requestCursor.moveToFirst()) {
-            // If the not_found flag is set then return null here, to indicate that the image is not here but was searched for before.
-            if (requestCursor.getInt(requestCursor.getColumnIndexOrThrow(ArtistArtTable.COLUMN_IMAGE_NOT_FOUND)) == 1) {
-                requestCursor.close();
-                database.close();
-                return null;
+            if (albumCursor.moveToFirst()) {
+                final int idColumn = albumCursor.getColumnIndexOrThrow(AlbumArtTable.COLUMN_ALBUM_ID);
+                final int nameColumn = albumCursor.getColumnIndexOrThrow(AlbumArtTable.COLUMN_ALBUM_NAME);
+                final int artistColumn = albumCursor.getColumnIndexOrThrow(AlbumArtTable.COLUMN_ARTIST_NAME);
+                final int fileColumn = albumCursor.getColumnIndexOrThrow(AlbumArtTable.COLUMN_IMAGE_FILE_PATH);
+                final int notFoundColumn = albumCursor.getColumnIndexOrThrow(AlbumArtTable.COLUMN_IMAGE_NOT_FOUND);
+                final int fullPathColumn = albumCursor.getColumnIndexOrThrow(AlbumArtTable.COLUMN_IMAGE_HAS_FULL_PATH);
+
+                do {
+                    final boolean notFound = albumCursor.getInt(notFoundColumn) == 1;
+
+                    // entries for full paths are not supported anymore and are treated as never searched for
+                    if (!notFound && albumCursor.getInt(fullPathColumn) == 1) {
+                        continue;
+                    }
+
+                    final String artworkFilename = albumCursor.getString(fileColumn);
+
+                    // images lost by the pack are treated as never searched for, so they are downloaded again
+                    if (!notFound && !mPackStore.contains(ArtworkPackStore.NAMESPACE_ALBUM_IMAGES, artworkFilename)) {
+                        continue;
+                    }
+
+                    mIndex.putAlbum(new ArtworkIndex.Entry(parseId(albumCursor.getString(idColumn)), albumCursor.getString(nameColumn),
+                            albumCursor.getString(artistColumn), notFound ? null : artworkFilename, ArtworkPackStore.NAMESPACE_ALBUM_IMAGES));
+                } while (albumCursor.moveToNext());
+            }
+
+            albumCursor.close();
+
+            final Cursor artistCursor = database.query(ArtistArtTable.TABLE_NAME, new String[]{ArtistArtTable.COLUMN_ARTIST_ID, ArtistArtTable.COLUMN_ARTIST_NAME,
+                            ArtistArtTable.COLUMN_IMAGE_FILE_PATH, ArtistArtTable.COLUMN_IMAGE_NOT_FOUND},
+                    null, null, null, null, null);
+
+            if (artistCursor.moveToFirst()) {
+                final int idColumn = artistCursor.getColumnIndexOrThrow(ArtistArtTable.COLUMN_ARTIST_ID);
+                final int nameColumn = artistCursor.getColumnIndexOrThrow(ArtistArtTable.COLUMN_ARTIST_NAME);
+                final int fileColumn = artistCursor.getColumnIndexOrThrow(ArtistArtTable.COLUMN_IMAGE_FILE_PATH);
+                final int notFoundColumn = artistCursor.getColumnIndexOrThrow(ArtistArtTable.COLUMN_IMAGE_NOT_FOUND);
+
+                do {
+                    final boolean notFound = artistCursor.getInt(notFoundColumn) == 1;
+
+                    final String artworkFilename = artistCursor.getString(fileColumn);
+
+                    // images lost by the pack are treated as never searched for, so they are downloaded again
+                    if (!notFound && !mPackStore.contains(ArtworkPackStore.NAMESPACE_ARTIST_IMAGES, artworkFilename)) {
+                        continue;
+                    }
+
+                    mIndex.putArtist(new ArtworkIndex.Entry(parseId(artistCursor.getString(idColumn)), artistCursor.getString(nameColumn),
+                            null, notFound ? null : artworkFilename, ArtworkPackStore.NAMESPACE_ARTIST_IMAGES));
+                } while (artistCursor.moveToNext());
             }
 
-            // get the filename for the image
-            final String artworkFilename = requestCursor.getString(requestCursor.getColumnIndexOrThrow(ArtistArtTable.COLUMN_IMAGE_FILE_PATH));
+            artistCursor.close();
 
-            requestCursor.close();
             database.close();
 
-            return FileUtils.getFullArtworkFilePath(mApplicationContext, artworkFilename, DIRECTORY_ARTIST_IMAGES);
+            // read after the lookups above, which open the pack and may reset it
+            mIndexPackResetCount = mPackStore.getResetCount();
+            mIndexLoaded = true;
         }
+    }
 
-        // If we reach this, no entry was found for the given request. Throw an exception
-        requestCursor.close();
-        database.close();
-        throw new ImageNotFoundException();
+    /**
+     * The index is outdated if the pack store discarded its content after the index was loaded.
+     * Must be called with the lock of the index held.
+     */
+    private boolean isIndexValid() {
+        return mIndexLoaded && mIndexPackResetCount == mPackStore.getResetCount();
+    }
+
+    /**
+     * Marks the index as outdated, it will be reloaded with the next lookup.
+     */
+    private void invalidateIndex() {
+        synchronized (mIndex) {
+            mIndexLoaded = false;
+        }
+    }
+
+    private static long parseId(final String id) {
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Saves an image under a hash of its content. An identical image that is already stored
+     * is not saved a second time, the rows of both albums or artists reference the same image.
+     *
+     * @return The name of the image or null if it could not be saved
+     */
+    private String storeImage(final int namespace, final byte[] image) {
+        final String artworkFilename;
+        try {
+            artworkFilename = FileUtils.createSHA256HashForBytes(image) + ".jpg";
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        if (mPackStore.getTimestamp(namespace, artworkFilename) == 0 && !mPackStore.put(namespace, artworkFilename, image)) {
+            return null;
+        }
+        return artworkFilename;
+    }
+
+    /**
+     * @return The image name of the first row that matches, null if there is none
+     */
+    private static String queryImageName(final SQLiteDatabase database, final String table, final String fileColumn, final String where, final String[] whereArgs) {
+        final Cursor cursor = database.query(table, new String[]{fileColumn}, where, whereArgs, null, null, null);
+
+        String artworkFilename = null;
+        if (cursor.moveToFirst()) {
+            artworkFilename = cursor.getString(0);
+        }
+
+        cursor.close();
+        return artworkFilename;
+    }
+
+    /**
+     * Drops a reference to an image. The image is removed once no row of the table references it anymore.
+     */
+    private void releaseImage(final SQLiteDatabase database, final String table, final String fileColumn, final int namespace, final String artworkFilename) {
+        final long references = DatabaseUtils.queryNumEntries(database, table, fileColumn + "=?", new String[]{artworkFilename});
+
+        if (references == 0) {
+            ArtworkThumbnailStore.getInstance(mApplicationContext).removeThumbnails(namespace, artworkFilename);
+            mPackStore.remove(namespace, artworkFilename);
+        }
     }
 
     /**
@@ -217,8 +376,6 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
      *               the database entry will have the not_found flag set.
      */
     public synchronized void insertArtistImage(final ArtistModel artist, final byte[] image) {
-        final SQLiteDatabase database = getWritableDatabase();
-
         long artistId = artist.getArtistID();
         if (artistId == -1) {
             // Try to get the artistId manually because it seems to be missing
@@ -231,21 +388,18 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
 
         String artworkFilename = null;
         if (image != null) {
-            try {
-                artworkFilename = FileUtils.createSHA256HashForString(artistIdString, artistMBId, artistName) + ".jpg";
-            } catch (NoSuchAlgorithmException e) {
-                e.printStackTrace();
-                return;
-            }
-
-            try {
-                FileUtils.saveArtworkFile(mApplicationContext, artworkFilename, DIRECTORY_ARTIST_IMAGES, image);
-            } catch (IOException e) {
-                e.printStackTrace();
+            artworkFilename = storeImage(ArtworkPackStore.NAMESPACE_ARTIST_IMAGES, image);
+            if (artworkFilename == null) {
                 return;
             }
         }
 
+        // opened after the image is stored, so the early return above does not leave the database open
+        final SQLiteDatabase database = getWritableDatabase();
+
+        final String previousFilename = queryImageName(database, ArtistArtTable.TABLE_NAME, ArtistArtTable.COLUMN_IMAGE_FILE_PATH,
+                ArtistArtTable.COLUMN_ARTIST_ID + "=?", new String[]{artistIdString});
+
         final ContentValues values = new ContentValues();
         values.put(ArtistArtTable.COLUMN_ARTIST_ID, artistIdString);
         values.put(ArtistArtTable.COLUMN_ARTIST_MBID, artistMBId);
@@ -257,7 +411,17 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
 
         database.replace(ArtistArtTable.TABLE_NAME, "", values);
 
+        if (previousFilename != null && !previousFilename.equals(artworkFilename)) {
+            releaseImage(database, ArtistArtTable.TABLE_NAME, ArtistArtTable.COLUMN_IMAGE_FILE_PATH, ArtworkPackStore.NAMESPACE_ARTIST_IMAGES, previousFilename);
+        }
+
         database.close();
+
+        synchronized (mIndex) {
+            if (mIndexLoaded) {
+                mIndex.putArtist(new ArtworkIndex.Entry(artistId, artistName, null, artworkFilename, ArtworkPackStore.NAMESPACE_ARTIST_IMAGES));
+            }
+        }
     }
 
     /**
@@ -268,8 +432,6 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
      *                             the database entry will have the not_found flag set if artworkFullImagePath is null as well.
      */
     public synchronized void insertAlbumImage(final AlbumModel album, final byte[] image) {
-        final SQLiteDatabase database = getWritableDatabase();
-
         final String albumId = String.valueOf(album.getAlbumId());
         final String albumMBId = album.getMBId();
         final String albumName = album.getAlbumName();
@@ -277,21 +439,18 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
 
         String artworkFilename = null;
         if (image != null) {
-            try {
-                artworkFilename = FileUtils.createSHA256HashForString(albumId, albumMBId, albumName, albumArtistName) + ".jpg";
-            } catch (NoSuchAlgorithmException e) {
-                e.printStackTrace();
-                return;
-            }
-
-            try {
-                FileUtils.saveArtworkFile(mApplicationContext, artworkFilename, DIRECTORY_ALBUM_IMAGES, image);
-            } catch (IOException e) {
-                e.printStackTrace();
+            artworkFilename = storeImage(ArtworkPackStore.NAMESPACE_ALBUM_IMAGES, image);
+            if (artworkFilename == null) {
                 return;
             }
         }
 
+        // opened after the image is stored, so the early return above does not leave the database open
+        final SQLiteDatabase database = getWritableDatabase();
+
+        final String previousFilename = queryImageName(database, AlbumArtTable.TABLE_NAME, AlbumArtTable.COLUMN_IMAGE_FILE_PATH,
+                AlbumArtTable.COLUMN_ALBUM_ID + "=? AND " + AlbumArtTable.COLUMN_IMAGE_HAS_FULL_PATH + "=0", new String[]{albumId});
+
         final ContentValues values = new ContentValues();
         values.put(AlbumArtTable.COLUMN_ALBUM_ID, albumId);
         values.put(AlbumArtTable.COLUMN_ALBUM_MBID, albumMBId);
@@ -306,7 +465,17 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
 
         database.replace(AlbumArtTable.TABLE_NAME, "", values);
 
+        if (previousFilename != null && !previousFilename.equals(artworkFilename)) {
+            releaseImage(database, AlbumArtTable.TABLE_NAME, AlbumArtTable.COLUMN_IMAGE_FILE_PATH, ArtworkPackStore.NAMESPACE_ALBUM_IMAGES, previousFilename);
+        }
+
         database.close();
+
+        synchronized (mIndex) {
+            if (mIndexLoaded) {
+                mIndex.putAlbum(new ArtworkIndex.Entry(album.getAlbumId(), albumName, albumArtistName, artworkFilename, ArtworkPackStore.NAMESPACE_ALBUM_IMAGES));
+            }
+        }
     }
 
     /**
@@ -319,7 +488,12 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
 
         database.close();
 
-        FileUtils.removeArtworkDirectory(mApplicationContext, DIRECTORY_ARTIST_IMAGES);
+        synchronized (mIndex) {
+            mIndex.clearArtists();
+        }
+
+        mPackStore.removeNamespace(ArtworkPackStore.NAMESPACE_ARTIST_IMAGES);
+        ArtworkThumbnailStore.getInstance(mApplicationContext).clearThumbnails();
     }
 
     /**
@@ -332,7 +506,12 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
 
         database.close();
 
-        FileUtils.removeArtworkDirectory(mApplicationContext, DIRECTORY_ALBUM_IMAGES);
+        synchronized (mIndex) {
+            mIndex.clearAlbums();
+        }
+
+        mPackStore.removeNamespace(ArtworkPackStore.NAMESPACE_ALBUM_IMAGES);
+        ArtworkThumbnailStore.getInstance(mApplicationContext).clearThumbnails();
     }
 
     /**
@@ -347,6 +526,8 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
         database.delete(ArtistArtTable.TABLE_NAME, where, whereArgs);
 
         database.close();
+
+        invalidateIndex();
     }
 
     /**
@@ -361,6 +542,8 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
         database.delete(AlbumArtTable.TABLE_NAME, where, whereArgs);
 
         database.close();
+
+        invalidateIndex();
     }
 
     /**
@@ -377,18 +560,29 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
         final Cursor requestCursor = database.query(ArtistArtTable.TABLE_NAME, new String[]{ArtistArtTable.COLUMN_IMAGE_FILE_PATH},
                 where, whereArgs, null, null, null);
 
+        final List<String> artworkFilenames = new ArrayList<>();
         if (requestCursor.moveToFirst()) {
-
-            final String artworkFilename = requestCursor.getString(requestCursor.getColumnIndexOrThrow(ArtistArtTable.COLUMN_IMAGE_FILE_PATH));
-
-            FileUtils.removeArtworkFile(mApplicationContext, artworkFilename, DIRECTORY_ARTIST_IMAGES);
+            final int fileColumn = requestCursor.getColumnIndexOrThrow(ArtistArtTable.COLUMN_IMAGE_FILE_PATH);
+            do {
+                final String artworkFilename = requestCursor.getString(fileColumn);
+                if (artworkFilename != null) {
+                    artworkFilenames.add(artworkFilename);
+                }
+            } while (requestCursor.moveToNext());
         }
 
         requestCursor.close();
 
         database.delete(ArtistArtTable.TABLE_NAME, where, whereArgs);
 
+        // The images might still be used by other artists
+        for (String artworkFilename : artworkFilenames) {
+            releaseImage(database, ArtistArtTable.TABLE_NAME, ArtistArtTable.COLUMN_IMAGE_FILE_PATH, ArtworkPackStore.NAMESPACE_ARTIST_IMAGES, artworkFilename);
+        }
+
         database.close();
+
+        invalidateIndex();
     }
 
     /**
@@ -420,21 +614,31 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
         final Cursor requestCursor = database.query(AlbumArtTable.TABLE_NAME, new String[]{AlbumArtTable.COLUMN_IMAGE_FILE_PATH, AlbumArtTable.COLUMN_IMAGE_HAS_FULL_PATH},
                 where, whereArgs, null, null, null);
 
+        final List<String> artworkFilenames = new ArrayList<>();
         if (requestCursor.moveToFirst()) {
-
-            final String artworkFilename = requestCursor.getString(requestCursor.getColumnIndexOrThrow(AlbumArtTable.COLUMN_IMAGE_FILE_PATH));
-
-            final boolean hasFullImagePath = requestCursor.getInt(requestCursor.getColumnIndexOrThrow(AlbumArtTable.COLUMN_IMAGE_HAS_FULL_PATH)) == 1;
-
-            if (!hasFullImagePath) {
-                FileUtils.removeArtworkFile(mApplicationContext, artworkFilename, DIRECTORY_ALBUM_IMAGES);
-            }
+            final int fileColumn = requestCursor.getColumnIndexOrThrow(AlbumArtTable.COLUMN_IMAGE_FILE_PATH);
+            final int fullPathColumn = requestCursor.getColumnIndexOrThrow(AlbumArtTable.COLUMN_IMAGE_HAS_FULL_PATH);
+            do {
+                final String artworkFilename = requestCursor.getString(fileColumn);
+                final boolean hasFullImagePath = requestCursor.getInt(fullPathColumn) == 1;
+
+                if (!hasFullImagePath && artworkFilename != null) {
+                    artworkFilenames.add(artworkFilename);
+                }
+            } while (requestCursor.moveToNext());
         }
 
         requestCursor.close();
 
         database.delete(AlbumArtTable.TABLE_NAME, where, whereArgs);
 
+        // The images might still be used by other albums
+        for (String artworkFilename : artworkFilenames) {
+            releaseImage(database, AlbumArtTable.TABLE_NAME, AlbumArtTable.COLUMN_IMAGE_FILE_PATH, ArtworkPackStore.NAMESPACE_ALBUM_IMAGES, artworkFilename);
+        }
+
         database.close();
+
+        invalidateIndex();
     }
 }
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.artwork.storage;
+
+import androidx.collection.LongSparseArray;
+
+import java.util.HashMap;
+
+/**
+ * In-memory copy of the artwork tables. It maps album and artist ids (or names if no id is available)
+ * to their artwork state, so that a lookup does not need a database query.
+ * <p>
+ * The lookup rules are the same as for the SQL queries in {@link ArtworkDatabaseManager}.
+ * All methods must be called with the lock of the {@link ArtworkDatabaseManager} held.
+ */
+public class ArtworkIndex {
+
+    /**
+     * One row of an artwork table.
+     */
+    public static final class Entry {
+        private final long mId;
+
+        private final String mName;
+
+        /**
+         * Artist name of an album entry, null for artist entries
+         */
+        private final String mArtistName;
+
+        /**
+         * Name of the image in the {@link ArtworkPackStore}
+         */
+        private final String mFileName;
+
+        private final int mNamespace;
+
+        Entry(final long id, final String name, final String artistName, final String fileName, final int namespace) {
+            mId = id;
+            mName = name;
+            mArtistName = artistName;
+            mFileName = fileName;
+            mNamespace = namespace;
+        }
+
+        /**
+         * @return True if the image was searched for before but not found
+         */
+        public boolean isNotFound() {
+            return mFileName == null;
+        }
+
+        public String getFileName() {
+            return mFileName;
+        }
+
+        public int getNamespace() {
+            return mNamespace;
+        }
+
+        /**
+         * Id of the image content, equal for all entries with the same image.
+         * The file names are hex encoded hashes, the first 60 bits are used as id.
+         */
+        public long getContentId() {
+            try {
+                return Long.parseLong(mFileName.substring(0, 15), 16);
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                return mFileName.hashCode() & 0xFFFFFFFFL;
+            }
+        }
+    }
+
+    private final LongSparseArray<Entry> mAlbumsById = new LongSparseArray<>();
+
+    /**
+     * Album entries by artist name and album name
+     */
+    private final HashMap<String, HashMap<String, Entry>> mAlbumsByArtistAndName = new HashMap<>();
+
+    private final HashMap<String, Entry> mAlbumsByName = new HashMap<>();
+
+    private final LongSparseArray<Entry> mArtistsById = new LongSparseArray<>();
+
+    private final HashMap<String, Entry> mArtistsByName = new HashMap<>();
+
+    /**
+     * Finds the entry for an album.
+     *
+     * @return The entry or null if the album image was never searched for
+     */
+    Entry getAlbum(final long albumId, final String albumName, final String artistName) {
+        if (albumId != -1) {
+            return mAlbumsById.get(albumId);
+        } else if (!artistName.isEmpty()) {
+            final HashMap<String, Entry> albums = mAlbumsByArtistAndName.get(artistName);
+            return albums == null ? null : albums.get(albumName);
+        } else {
+            return mAlbumsByName.get(albumName);
+        }
+    }
+
+    /**
+     * Finds the entry for an artist.
+     *
+     * @return The entry or null if the artist image was never searched for
+     */
+    Entry getArtist(final long artistId, final String artistName) {
+        if (artistId != -1) {
+            return mArtistsById.get(artistId);
+        } else {
+            return mArtistsByName.get(artistName);
+        }
+    }
+
+    /**
+     * Adds an album entry, replacing an entry with the same id.
+     */
+    void putAlbum(final Entry entry) {
+        final Entry previous = mAlbumsById.get(entry.mId);
+        if (previous != null) {
+            removeAlbumNames(previous);
+        }
+        mAlbumsById.put(entry.mId, entry);
+
+        if (entry.mName != null) {
+            if (entry.mArtistName != null) {
+                HashMap<String, Entry> albums = mAlbumsByArtistAndName.get(entry.mArtistName);
+                if (albums == null) {
+                    albums = new HashMap<>();
+                    mAlbumsByArtistAndName.put(entry.mArtistName, albums);
+                }
+                albums.put(entry.mName, entry);
+            }
+            mAlbumsByName.put(entry.mName, entry);
+        }
+    }
+
+    /**
+     * Adds an artist entry, replacing an entry with the same id.
+     */
+    void putArtist(final Entry entry) {
+        final Entry previous = mArtistsById.get(entry.mId);
+        if (previous != null && previous.mName != null && mArtistsByName.get(previous.mName) == previous) {
+            mArtistsByName.remove(previous.mName);
+        }
+        mArtistsById.put(entry.mId, entry);
+
+        if (entry.mName != null) {
+            mArtistsByName.put(entry.mName, entry);
+        }
+    }
+
+    void clearAlbums() {
+        mAlbumsById.clear();
+        mAlbumsByArtistAndName.clear();
+        mAlbumsByName.clear();
+    }
+
+    void clearArtists() {
+        mArtistsById.clear();
+        mArtistsByName.clear();
+    }
+
+    /**
+     * Removes the name mappings of an album entry. Another album with the same names
+     * takes its place so that name lookups still find a row like the SQL query would.
+     */
+    private void removeAlbumNames(final Entry entry) {
+        if (entry.mName == null) {
+            return;
+        }
+
+        Entry replacement = null;
+        for (int i = 0; i < mAlbumsById.size(); i++) {
+            final Entry candidate = mAlbumsById.valueAt(i);
+            if (candidate != entry && entry.mName.equals(candidate.mName)) {
+                if (replacement == null || (entry.mArtistName != null && entry.mArtistName.equals(candidate.mArtistName))) {
+                    replacement = candidate;
+                }
+            }
+        }
+
+        if (mAlbumsByName.get(entry.mName) == entry) {
+            if (replacement != null) {
+                mAlbumsByName.put(entry.mName, replacement);
+            } else {
+                mAlbumsByName.remove(entry.mName);
+            }
+        }
+
+        if (entry.mArtistName != null) {
+            final HashMap<String, Entry> albums = mAlbumsByArtistAndName.get(entry.mArtistName);
+            if (albums != null && albums.get(entry.mName) == entry) {
+                if (replacement != null && entry.mArtistName.equals(replacement.mArtistName)) {
+                    albums.put(entry.mName, replacement);
+                } else {
+                    albums.remove(entry.mName);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,942 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.artwork.storage;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.collection.LongSparseArray;
+
+import org.gateshipone.odyssey.BuildConfig;
+import org.gateshipone.odyssey.utils.FileUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Stores all artwork images in one append-only pack file instead of one file per image.
+ * <p>
+ * The offsets of the images are kept in a separate index file with fixed size records that is
+ * memory-mapped, so adding an image only appends to the pack and writes one record. Images are
+ * read as read-only mapped slices of the pack file without copying them to the heap.
+ * Removed and replaced images leave unused space in the pack, which is reclaimed by a
+ * compaction in the background.
+ * <p>
+ * Images are addressed by a namespace and a name. Images that are still stored as single files
+ * by older versions are moved into the pack in the background.
+ */
+public class ArtworkPackStore {
+    private static final String TAG = ArtworkPackStore.class.getSimpleName();
+
+    public static final int NAMESPACE_ALBUM_IMAGES = 1;
+
+    public static final int NAMESPACE_ARTIST_IMAGES = 2;
+
+    public static final int NAMESPACE_THUMBNAILS = 3;
+
+    /**
+     * Directories of the single files of older versions, by namespace
+     */
+    private static final String[] LEGACY_DIRECTORIES = {null, "albumArt", "artistArt", "thumbnails"};
+
+    private static final String DIRECTORY_PACK = "pack";
+
+    private static final String PACK_FILE_NAME = "artwork.pack";
+
+    private static final String INDEX_FILE_NAME = "artwork.idx";
+
+    private static final String COMPACTION_SUFFIX = ".compact";
+
+    private static final int INDEX_MAGIC = 0x4f445049;
+
+    private static final int PACK_MAGIC = 0x4f44504b;
+
+    /**
+     * Version of the pack and the index file
+     */
+    private static final int FORMAT_VERSION = 2;
+
+    private static final int PACK_RECORD_MAGIC = 0x4f445041;
+
+    /**
+     * Pack header: magic, version, reserved, generation
+     */
+    private static final int PACK_HEADER_SIZE = 16;
+
+    /**
+     * Index header: magic, version, record count, generation
+     */
+    private static final int INDEX_HEADER_SIZE = 16;
+
+    /**
+     * Position of the generation in both headers
+     */
+    private static final int HEADER_GENERATION_POSITION = 12;
+
+    /**
+     * Index record: key hash, offset, header length, data length, timestamp, flags, reserved
+     */
+    private static final int INDEX_RECORD_SIZE = 40;
+
+    private static final int INDEX_INITIAL_CAPACITY = 1024;
+
+    private static final int FLAG_DELETED = 1;
+
+    /**
+     * Compaction starts if at least this many bytes and half of the pack are unused
+     */
+    private static final long COMPACTION_MINIMUM_UNUSED_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Size of the mapped windows of the pack
+     */
+    private static final int PACK_WINDOW_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Number of mapped windows that are kept, this limits the used address space
+     */
+    private static final int PACK_WINDOW_COUNT = 4;
+
+    private static final Charset KEY_CHARSET = Charset.forName("UTF-8");
+
+    private static ArtworkPackStore mInstance;
+
+    private final Context mApplicationContext;
+
+    /**
+     * Background thread for the migration and the compaction
+     */
+    private final ExecutorService mMaintenanceExecutor;
+
+    /**
+     * Live records by the hash of their key
+     */
+    private final LongSparseArray<Record> mRecords = new LongSparseArray<>();
+
+    private FileChannel mPackChannel;
+
+    /**
+     * Read-only mappings of complete windows of the pack by window number, least recently used first.
+     * Returned slices are views of them, so reading an image mostly does not create a new mapping.
+     */
+    private final LinkedHashMap<Long, MappedByteBuffer> mPackWindows = new LinkedHashMap<>(PACK_WINDOW_COUNT, 0.75f, true);
+
+    private FileChannel mIndexChannel;
+
+    private MappedByteBuffer mIndexBuffer;
+
+    private int mIndexCapacity;
+
+    private int mRecordCount;
+
+    private long mPackSize;
+
+    private long mUnusedSize;
+
+    /**
+     * Generation of the pack and the index, changed by each compaction. Both files must have the same generation.
+     */
+    private int mGeneration;
+
+    private boolean mCompactionScheduled;
+
+    private boolean mOpened;
+
+    /**
+     * Number of times the content of the pack was discarded
+     */
+    private volatile int mResetCount;
+
+    private ArtworkPackStore(final Context context) {
+        mApplicationContext = context.getApplicationContext();
+        mMaintenanceExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "OdysseyArtworkPack"));
+    }
+
+    public static synchronized ArtworkPackStore getInstance(final Context context) {
+        if (null == mInstance) {
+            mInstance = new ArtworkPackStore(context);
+        }
+        return mInstance;
+    }
+
+    /**
+     * Adds an image to the pack. An existing image with the same name will be replaced.
+     *
+     * @param namespace The namespace of the image
+     * @param name      The name of the image
+     * @param data      The encoded image
+     * @return True if the image was saved
+     */
+    public boolean put(final int namespace, final String name, final byte[] data) {
+        return put(namespace, name, data, System.currentTimeMillis());
+    }
+
+    /**
+     * Returns an image as read-only slice of the pack file.
+     *
+     * @param namespace The namespace of the image
+     * @param name      The name of the image
+     * @return The encoded image or null if it is not stored
+     */
+    public ByteBuffer get(final int namespace, final String name) {
+        synchronized (this) {
+            if (!open()) {
+                return null;
+            }
+
+            final Record record = mRecords.get(getKeyHash(namespace, name));
+            if (null != record) {
+                try {
+                    final ByteBuffer buffer = getPackSlice(record.mOffset, record.mHeaderLength + record.mDataLength);
+                    if (isMatchingKey(buffer, namespace, name)) {
+                        buffer.position(record.mHeaderLength);
+                        return buffer.slice();
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Could not read image: " + e.getMessage());
+                    return null;
+                }
+            }
+        }
+
+        // The image could still be a single file of an older version
+        if (migrateLegacyFile(namespace, name)) {
+            return get(namespace, name);
+        }
+        return null;
+    }
+
+    /**
+     * Checks if an image is stored without reading it.
+     *
+     * @return True if the image is stored in the pack or as single file of an older version
+     */
+    public boolean contains(final int namespace, final String name) {
+        if (null == name) {
+            return false;
+        }
+
+        synchronized (this) {
+            if (!open()) {
+                return false;
+            }
+
+            if (null != mRecords.get(getKeyHash(namespace, name))) {
+                return true;
+            }
+        }
+
+        final File legacyFile = getLegacyFile(namespace, name);
+        return null != legacyFile && legacyFile.isFile();
+    }
+
+    /**
+     * Returns a counter that is increased each time the stored images are discarded because the
+     * pack could not be read. Users that keep their own list of stored images must check it again.
+     */
+    public int getResetCount() {
+        return mResetCount;
+    }
+
+    /**
+     * Returns a view of a part of the pack. Parts of a complete window are read from the kept mapping
+     * of the window. Parts that cross a window border or are in the last, still growing window are
+     * mapped on their own, so a mapping never has to grow. Must be called with the lock held.
+     */
+    private ByteBuffer getPackSlice(final long offset, final int length) throws IOException {
+        final long window = offset / PACK_WINDOW_SIZE;
+        final long windowStart = window * PACK_WINDOW_SIZE;
+        final long windowEnd = windowStart + PACK_WINDOW_SIZE;
+
+        if (offset + length > windowEnd || windowEnd > mPackSize) {
+            return mPackChannel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        }
+
+        MappedByteBuffer windowBuffer = mPackWindows.get(window);
+        if (null == windowBuffer) {
+            windowBuffer = mPackChannel.map(FileChannel.MapMode.READ_ONLY, windowStart, PACK_WINDOW_SIZE);
+            mPackWindows.put(window, windowBuffer);
+
+            // Drop the least recently used window
+            final Iterator<Long> iterator = mPackWindows.keySet().iterator();
+            while (mPackWindows.size() > PACK_WINDOW_COUNT && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+
+        final ByteBuffer buffer = windowBuffer.duplicate();
+        buffer.limit((int) (offset - windowStart) + length);
+        buffer.position((int) (offset - windowStart));
+        return buffer.slice();
+    }
+
+    /**
+     * @return The time the image was saved or 0 if it is not stored
+     */
+    public long getTimestamp(final int namespace, final String name) {
+        synchronized (this) {
+            if (!open()) {
+                return 0;
+            }
+
+            final Record record = mRecords.get(getKeyHash(namespace, name));
+            if (null != record) {
+                return record.mTimestamp;
+            }
+        }
+
+        if (migrateLegacyFile(namespace, name)) {
+            return getTimestamp(namespace, name);
+        }
+        return 0;
+    }
+
+    /**
+     * Removes an image. The space is reclaimed by the next compaction.
+     */
+    public synchronized void remove(final int namespace, final String name) {
+        if (!open()) {
+            return;
+        }
+
+        final long keyHash = getKeyHash(namespace, name);
+        final Record record = mRecords.get(keyHash);
+        if (null != record) {
+            mRecords.remove(keyHash);
+            markDeleted(record);
+            scheduleCompactionIfNeeded();
+        }
+
+        final File legacyFile = getLegacyFile(namespace, name);
+        if (null != legacyFile) {
+            legacyFile.delete();
+        }
+    }
+
+    /**
+     * Removes all images of a namespace.
+     */
+    public synchronized void removeNamespace(final int namespace) {
+        if (!open()) {
+            return;
+        }
+
+        for (int i = mRecords.size() - 1; i >= 0; i--) {
+            final Record record = mRecords.valueAt(i);
+            if (record.mNamespace == namespace) {
+                mRecords.removeAt(i);
+                markDeleted(record);
+            }
+        }
+        scheduleCompactionIfNeeded();
+
+        removeLegacyDirectory(namespace);
+    }
+
+    private boolean put(final int namespace, final String name, final byte[] data, final long timestamp) {
+        synchronized (this) {
+            if (!open()) {
+                return false;
+            }
+
+            final byte[] key = getKey(namespace, name);
+            final int headerLength = 4 + 2 + key.length;
+            final ByteBuffer header = ByteBuffer.allocate(headerLength);
+            header.putInt(PACK_RECORD_MAGIC);
+            header.putShort((short) key.length);
+            header.put(key);
+            header.flip();
+
+            try {
+                // Append the image first, the index record makes it visible
+                final long offset = mPackSize;
+                long position = offset;
+                while (header.hasRemaining()) {
+                    position += mPackChannel.write(header, position);
+                }
+                final ByteBuffer dataBuffer = ByteBuffer.wrap(data);
+                while (dataBuffer.hasRemaining()) {
+                    position += mPackChannel.write(dataBuffer, position);
+                }
+                mPackSize = position;
+
+                // The image must be on the disk before the index record that points to it
+                mPackChannel.force(false);
+
+                final long keyHash = getKeyHash(namespace, name);
+                final Record previous = mRecords.get(keyHash);
+                if (null != previous) {
+                    markDeleted(previous);
+                }
+
+                final Record record = new Record(namespace, mRecordCount, offset, headerLength, data.length, timestamp);
+                writeIndexRecord(record, keyHash, 0);
+                mRecords.put(keyHash, record);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not save image: " + e.getMessage());
+                return false;
+            }
+
+            scheduleCompactionIfNeeded();
+            return true;
+        }
+    }
+
+    /**
+     * Opens the pack and reads the index if this was not done yet.
+     * Must be called with the lock held.
+     *
+     * @return True if the pack can be used
+     */
+    private boolean open() {
+        if (mOpened) {
+            return true;
+        }
+
+        try {
+            final File packFile = getPackFile(PACK_FILE_NAME);
+            packFile.getParentFile().mkdirs();
+
+            recoverCompaction();
+
+            mPackChannel = new RandomAccessFile(packFile, "rw").getChannel();
+            mIndexChannel = new RandomAccessFile(getPackFile(INDEX_FILE_NAME), "rw").getChannel();
+            mPackSize = mPackChannel.size();
+
+            readIndex();
+            mOpened = true;
+        } catch (IOException e) {
+            Log.e(TAG, "Could not open artwork pack: " + e.getMessage());
+            return false;
+        }
+
+        scheduleMigration();
+        return true;
+    }
+
+    /**
+     * Finishes or discards a compaction that was interrupted while the files were replaced.
+     * The index is replaced first, so a compacted pack with the generation of the index belongs to it.
+     */
+    private void recoverCompaction() throws IOException {
+        final File compactIndexFile = getPackFile(INDEX_FILE_NAME + COMPACTION_SUFFIX);
+        final File compactPackFile = getPackFile(PACK_FILE_NAME + COMPACTION_SUFFIX);
+
+        if (compactIndexFile.exists()) {
+            // The old files were not replaced yet
+            compactIndexFile.delete();
+        }
+
+        if (compactPackFile.exists()) {
+            final int indexGeneration = readGeneration(getPackFile(INDEX_FILE_NAME), INDEX_MAGIC);
+            if (indexGeneration != -1 && indexGeneration == readGeneration(compactPackFile, PACK_MAGIC)) {
+                if (!compactPackFile.renameTo(getPackFile(PACK_FILE_NAME))) {
+                    throw new IOException("Could not finish the compaction");
+                }
+            } else {
+                compactPackFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Maps the index file and reads all live records.
+     */
+    private void readIndex() throws IOException {
+        mRecords.clear();
+        mRecordCount = 0;
+        mUnusedSize = 0;
+
+        final int packGeneration = readGeneration(getPackFile(PACK_FILE_NAME), PACK_MAGIC);
+        final int indexGeneration = readGeneration(getPackFile(INDEX_FILE_NAME), INDEX_MAGIC);
+
+        final long indexSize = mIndexChannel.size();
+        mIndexCapacity = Math.max(INDEX_INITIAL_CAPACITY, (int) ((indexSize - INDEX_HEADER_SIZE) / INDEX_RECORD_SIZE));
+        mIndexBuffer = mIndexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER_SIZE + (long) mIndexCapacity * INDEX_RECORD_SIZE);
+
+        if (indexGeneration == -1 || indexGeneration != packGeneration) {
+            // New or unknown files or a pack that does not belong to the index, the pack content can not be found
+            resetPack();
+            mResetCount++;
+            mGeneration = 0;
+            writeHeader(mPackChannel, PACK_MAGIC, mGeneration);
+            mPackSize = PACK_HEADER_SIZE;
+            writeIndexHeader();
+            return;
+        }
+        mGeneration = indexGeneration;
+
+        final int count = Math.min(mIndexBuffer.getInt(8), mIndexCapacity);
+        long liveSize = 0;
+        for (int slot = 0; slot < count; slot++) {
+            final int position = INDEX_HEADER_SIZE + slot * INDEX_RECORD_SIZE;
+            final long keyHash = mIndexBuffer.getLong(position);
+            final long offset = mIndexBuffer.getLong(position + 8);
+            final int headerLength = mIndexBuffer.getInt(position + 16);
+            final int dataLength = mIndexBuffer.getInt(position + 20);
+            final long timestamp = mIndexBuffer.getLong(position + 24);
+            final int flags = mIndexBuffer.getInt(position + 32);
+
+            if (offset + headerLength + dataLength > mPackSize) {
+                // Record of an interrupted write, ignore everything after it
+                break;
+            }
+
+            mRecordCount = slot + 1;
+            if ((flags & FLAG_DELETED) == 0) {
+                final Record record = new Record((int) (flags >>> 8), slot, offset, headerLength, dataLength, timestamp);
+                final Record previous = mRecords.get(keyHash);
+                if (null != previous) {
+                    liveSize -= previous.mHeaderLength + previous.mDataLength;
+                }
+                mRecords.put(keyHash, record);
+                liveSize += headerLength + dataLength;
+            }
+        }
+
+        mUnusedSize = mPackSize - liveSize;
+        mIndexBuffer.putInt(8, mRecordCount);
+    }
+
+    /**
+     * Replaces the pack file with an empty one. The old file is deleted instead of truncated,
+     * because slices returned before are still mapped.
+     */
+    private void resetPack() throws IOException {
+        final File packFile = getPackFile(PACK_FILE_NAME);
+        mPackChannel.close();
+        mPackWindows.clear();
+        packFile.delete();
+        mPackChannel = new RandomAccessFile(packFile, "rw").getChannel();
+    }
+
+    private void writeIndexHeader() {
+        mIndexBuffer.putInt(0, INDEX_MAGIC);
+        mIndexBuffer.putInt(4, FORMAT_VERSION);
+        mIndexBuffer.putInt(8, mRecordCount);
+        mIndexBuffer.putInt(HEADER_GENERATION_POSITION, mGeneration);
+    }
+
+    private static void writeHeader(final FileChannel channel, final int magic, final int generation) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(PACK_HEADER_SIZE);
+        header.putInt(magic);
+        header.putInt(FORMAT_VERSION);
+        header.putInt(0);
+        header.putInt(generation);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    /**
+     * @return The generation in the header of the file or -1 if the file is missing or unknown
+     */
+    private static int readGeneration(final File file, final int magic) {
+        if (!file.isFile() || file.length() < PACK_HEADER_SIZE) {
+            return -1;
+        }
+
+        final ByteBuffer header = ByteBuffer.allocate(PACK_HEADER_SIZE);
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            final FileChannel channel = randomAccessFile.getChannel();
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    return -1;
+                }
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+
+        if (header.getInt(0) != magic || header.getInt(4) != FORMAT_VERSION) {
+            return -1;
+        }
+        return header.getInt(HEADER_GENERATION_POSITION);
+    }
+
+    /**
+     * Appends a record to the index, the index file grows if needed.
+     */
+    private void writeIndexRecord(final Record record, final long keyHash, final int flags) throws IOException {
+        if (mRecordCount == mIndexCapacity) {
+            mIndexCapacity *= 2;
+            mIndexBuffer.force();
+            mIndexBuffer = mIndexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER_SIZE + (long) mIndexCapacity * INDEX_RECORD_SIZE);
+        }
+
+        final int position = INDEX_HEADER_SIZE + record.mSlot * INDEX_RECORD_SIZE;
+        mIndexBuffer.putLong(position, keyHash);
+        mIndexBuffer.putLong(position + 8, record.mOffset);
+        mIndexBuffer.putInt(position + 16, record.mHeaderLength);
+        mIndexBuffer.putInt(position + 20, record.mDataLength);
+        mIndexBuffer.putLong(position + 24, record.mTimestamp);
+        mIndexBuffer.putInt(position + 32, (record.mNamespace << 8) | flags);
+        mIndexBuffer.putInt(position + 36, 0);
+
+        mRecordCount++;
+        mIndexBuffer.putInt(8, mRecordCount);
+    }
+
+    private void markDeleted(final Record record) {
+        final int position = INDEX_HEADER_SIZE + record.mSlot * INDEX_RECORD_SIZE + 32;
+        mIndexBuffer.putInt(position, mIndexBuffer.getInt(position) | FLAG_DELETED);
+        mUnusedSize += record.mHeaderLength + record.mDataLength;
+    }
+
+    private void scheduleCompactionIfNeeded() {
+        if (!mCompactionScheduled && mUnusedSize >= COMPACTION_MINIMUM_UNUSED_SIZE && mUnusedSize * 2 >= mPackSize) {
+            mCompactionScheduled = true;
+            mMaintenanceExecutor.execute(this::compact);
+        }
+    }
+
+    /**
+     * Copies all live images to a new pack and index and replaces the old files with them.
+     * The images are copied without holding the lock, so reads and writes continue meanwhile.
+     * Images added during the copy are copied afterwards with the lock held.
+     * Slices returned before stay valid because they keep the mapping of the old pack.
+     */
+    private void compact() {
+        final File compactPackFile = getPackFile(PACK_FILE_NAME + COMPACTION_SUFFIX);
+        final File compactIndexFile = getPackFile(INDEX_FILE_NAME + COMPACTION_SUFFIX);
+
+        final FileChannel sourceChannel;
+        final int generation;
+        final ArrayList<Record> records;
+        synchronized (this) {
+            if (!mOpened) {
+                mCompactionScheduled = false;
+                return;
+            }
+
+            sourceChannel = mPackChannel;
+            generation = (mGeneration + 1) & Integer.MAX_VALUE;
+
+            // Keep the order of the pack to read it sequentially
+            records = new ArrayList<>(mRecords.size());
+            for (int i = 0; i < mRecords.size(); i++) {
+                records.add(mRecords.valueAt(i));
+            }
+        }
+        Collections.sort(records, (first, second) -> Long.compare(first.mOffset, second.mOffset));
+
+        FileChannel packChannel = null;
+        try {
+            packChannel = new RandomAccessFile(compactPackFile, "rw").getChannel();
+            packChannel.truncate(0);
+            writeHeader(packChannel, PACK_MAGIC, generation);
+
+            // Offsets and lengths of the records don't change until the files are replaced
+            final IdentityHashMap<Record, Long> copiedOffsets = new IdentityHashMap<>();
+            long position = PACK_HEADER_SIZE;
+            for (Record record : records) {
+                final long length = record.mHeaderLength + record.mDataLength;
+                copyRange(sourceChannel, record.mOffset, length, packChannel, position);
+                copiedOffsets.put(record, position);
+                position += length;
+            }
+
+            synchronized (this) {
+                if (!mOpened || mPackChannel != sourceChannel) {
+                    packChannel.close();
+                    compactPackFile.delete();
+                    return;
+                }
+
+                // Images that were removed meanwhile are dropped, images that were added are copied now
+                final ArrayList<Record> liveRecords = new ArrayList<>(mRecords.size());
+                for (int i = 0; i < mRecords.size(); i++) {
+                    final Record record = mRecords.valueAt(i);
+                    record.mKeyHash = mRecords.keyAt(i);
+
+                    Long offset = copiedOffsets.get(record);
+                    if (null == offset) {
+                        final long length = record.mHeaderLength + record.mDataLength;
+                        copyRange(mPackChannel, record.mOffset, length, packChannel, position);
+                        offset = position;
+                        position += length;
+                    }
+                    record.mOffset = offset;
+                    liveRecords.add(record);
+                }
+                Collections.sort(liveRecords, (first, second) -> Long.compare(first.mOffset, second.mOffset));
+
+                packChannel.force(true);
+                packChannel.close();
+
+                final int capacity = Math.max(INDEX_INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, liveRecords.size())) * 2);
+                final FileChannel indexChannel = new RandomAccessFile(compactIndexFile, "rw").getChannel();
+                indexChannel.truncate(0);
+                final MappedByteBuffer indexBuffer = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER_SIZE + (long) capacity * INDEX_RECORD_SIZE);
+
+                mIndexChannel.close();
+                mIndexChannel = indexChannel;
+                mIndexBuffer = indexBuffer;
+                mIndexCapacity = capacity;
+                mRecordCount = 0;
+                mGeneration = generation;
+                writeIndexHeader();
+
+                for (Record record : liveRecords) {
+                    record.mSlot = mRecordCount;
+                    writeIndexRecord(record, record.mKeyHash, 0);
+                }
+                mIndexBuffer.force();
+
+                // Replace the index first, a compacted pack with the generation of the index is moved
+                // in place when the pack is opened again. A pack that does not match the index is never read.
+                if (!compactIndexFile.renameTo(getPackFile(INDEX_FILE_NAME)) || !compactPackFile.renameTo(getPackFile(PACK_FILE_NAME))) {
+                    throw new IOException("Could not replace the pack files");
+                }
+
+                mPackChannel.close();
+                mPackChannel = new RandomAccessFile(getPackFile(PACK_FILE_NAME), "rw").getChannel();
+                mPackWindows.clear();
+                mPackSize = position;
+                mUnusedSize = 0;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Compaction failed: " + e.getMessage());
+
+            if (null != packChannel) {
+                try {
+                    packChannel.close();
+                } catch (IOException ignored) {
+                    // nothing to do
+                }
+            }
+
+            synchronized (this) {
+                // Start over with the files on disk, an interrupted replacement is finished by open()
+                closeChannels();
+                mOpened = false;
+            }
+        } finally {
+            synchronized (this) {
+                mCompactionScheduled = false;
+            }
+        }
+    }
+
+    private static void copyRange(final FileChannel source, final long offset, final long length, final FileChannel target, final long position) throws IOException {
+        long copied = 0;
+        while (copied < length) {
+            copied += source.transferTo(offset + copied, length - copied, target.position(position + copied));
+        }
+    }
+
+    private void closeChannels() {
+        mPackWindows.clear();
+        try {
+            if (null != mPackChannel) {
+                mPackChannel.close();
+            }
+            if (null != mIndexChannel) {
+                mIndexChannel.close();
+            }
+        } catch (IOException ignored) {
+            // nothing to do
+        }
+    }
+
+    /*
+     * Begin of the migration of single files
+     */
+
+    private void scheduleMigration() {
+        for (int namespace = NAMESPACE_ALBUM_IMAGES; namespace <= NAMESPACE_THUMBNAILS; namespace++) {
+            if (getLegacyDirectory(namespace).exists()) {
+                mMaintenanceExecutor.execute(this::migrateLegacyFiles);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Moves all images of older versions into the pack.
+     */
+    private void migrateLegacyFiles() {
+        for (int namespace = NAMESPACE_ALBUM_IMAGES; namespace <= NAMESPACE_ARTIST_IMAGES; namespace++) {
+            final File[] files = getLegacyDirectory(namespace).listFiles();
+            if (null != files) {
+                for (File file : files) {
+                    migrateLegacyFile(namespace, file.getName());
+                }
+            }
+            removeLegacyDirectory(namespace);
+        }
+
+        // Thumbnails are recreated on demand
+        removeLegacyDirectory(NAMESPACE_THUMBNAILS);
+
+        if (BuildConfig.DEBUG) {
+            Log.v(TAG, "Migration of single artwork files finished");
+        }
+    }
+
+    /**
+     * Moves a single image of an older version into the pack.
+     *
+     * @return True if the image was moved
+     */
+    private boolean migrateLegacyFile(final int namespace, final String name) {
+        final File file = getLegacyFile(namespace, name);
+        if (null == file || !file.isFile()) {
+            return false;
+        }
+
+        final byte[] data = new byte[(int) file.length()];
+        try (FileInputStream inputStream = new FileInputStream(file)) {
+            int read = 0;
+            while (read < data.length) {
+                final int count = inputStream.read(data, read, data.length - read);
+                if (count < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+                read += count;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not migrate image: " + e.getMessage());
+            return false;
+        }
+
+        final boolean saved = put(namespace, name, data, file.lastModified());
+        if (saved) {
+            file.delete();
+        }
+        return saved;
+    }
+
+    private File getLegacyDirectory(final int namespace) {
+        return new File(FileUtils.getFullArtworkFilePath(mApplicationContext, "", LEGACY_DIRECTORIES[namespace]));
+    }
+
+    private File getLegacyFile(final int namespace, final String name) {
+        if (namespace == NAMESPACE_THUMBNAILS) {
+            return null;
+        }
+        return new File(FileUtils.getFullArtworkFilePath(mApplicationContext, name, LEGACY_DIRECTORIES[namespace]));
+    }
+
+    private void removeLegacyDirectory(final int namespace) {
+        final File directory = getLegacyDirectory(namespace);
+        if (namespace == NAMESPACE_THUMBNAILS) {
+            // Thumbnails were stored in a subdirectory for each size
+            final File[] tiers = directory.listFiles();
+            if (null != tiers) {
+                for (File tier : tiers) {
+                    FileUtils.removeArtworkDirectory(mApplicationContext, LEGACY_DIRECTORIES[namespace] + "/" + tier.getName());
+                }
+            }
+        }
+        FileUtils.removeArtworkDirectory(mApplicationContext, LEGACY_DIRECTORIES[namespace]);
+    }
+
+    /*
+     * Begin of the key handling
+     */
+
+    private File getPackFile(final String fileName) {
+        return new File(FileUtils.getFullArtworkFilePath(mApplicationContext, fileName, DIRECTORY_PACK));
+    }
+
+    private static byte[] getKey(final int namespace, final String name) {
+        return (namespace + "/" + name).getBytes(KEY_CHARSET);
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the namespace and the name
+     */
+    private static long getKeyHash(final int namespace, final String name) {
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ namespace) * 0x100000001b3L;
+        for (int i = 0; i < name.length(); i++) {
+            hash = (hash ^ name.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Compares the key stored in front of the image, as the index only contains a hash of it.
+     */
+    private static boolean isMatchingKey(final ByteBuffer buffer, final int namespace, final String name) {
+        if (buffer.getInt(0) != PACK_RECORD_MAGIC) {
+            return false;
+        }
+
+        final byte[] key = getKey(namespace, name);
+        if (buffer.getShort(4) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(6 + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Record {
+        final int mNamespace;
+
+        long mKeyHash;
+
+        int mSlot;
+
+        long mOffset;
+
+        final int mHeaderLength;
+
+        final int mDataLength;
+
+        final long mTimestamp;
+
+        Record(final int namespace, final int slot, final long offset, final int headerLength, final int dataLength, final long timestamp) {
+            mNamespace = namespace;
+            mSlot = slot;
+            mOffset = offset;
+            mHeaderLength = headerLength;
+            mDataLength = dataLength;
+            mTimestamp = timestamp;
+        }
+    }
+}
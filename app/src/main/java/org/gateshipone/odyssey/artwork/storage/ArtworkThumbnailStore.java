@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.artwork.storage;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import org.gateshipone.odyssey.R;
+import org.gateshipone.odyssey.utils.BitmapUtils;
+import org.gateshipone.odyssey.utils.ByteBufferInputStream;
+import org.gateshipone.odyssey.utils.FileUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Persistent tier of small artwork renditions matched to the list and grid cell sizes.
+ * <p>
+ * Decoding one of these thumbnails is a lot cheaper than a subsampled decode of the full image.
+ * Thumbnails are created when an image is downloaded and on demand for existing images.
+ * They are kept in the {@link ArtworkPackStore} next to the images. A thumbnail is only used if
+ * it is newer than its source image, so replaced images never show stale thumbnails.
+ */
+public class ArtworkThumbnailStore {
+    private static final String TAG = ArtworkThumbnailStore.class.getSimpleName();
+
+    /**
+     * Compression level of the thumbnails
+     */
+    private static final int THUMBNAIL_COMPRESSION_SETTING = 85;
+
+    private static ArtworkThumbnailStore mInstance;
+
+    private final ArtworkPackStore mPackStore;
+
+    /**
+     * Edge lengths of the thumbnail tiers in pixels, ascending
+     */
+    private final int[] mTierSizes;
+
+    private ArtworkThumbnailStore(final Context context) {
+        mPackStore = ArtworkPackStore.getInstance(context);
+
+        final int listSize = (int) context.getResources().getDimension(R.dimen.material_list_item_height);
+
+        // Grids use two columns
+        final DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        final int gridSize = Math.min(metrics.widthPixels, metrics.heightPixels) / 2;
+
+        if (gridSize > listSize) {
+            mTierSizes = new int[]{listSize, gridSize};
+        } else {
+            mTierSizes = new int[]{listSize};
+        }
+    }
+
+    public static synchronized ArtworkThumbnailStore getInstance(final Context context) {
+        if (null == mInstance) {
+            mInstance = new ArtworkThumbnailStore(context);
+        }
+        return mInstance;
+    }
+
+    /**
+     * Returns the closest thumbnail for the given image file that is at least as large as the requested size.
+     * If the thumbnail does not exist yet it will be created from the source image.
+     *
+     * @param imagePath Absolute path of the source image
+     * @param width     The requested width
+     * @param height    The requested height
+     * @return The thumbnail or null if no tier fits the request and the source image should be used
+     */
+    public Bitmap getThumbnail(final String imagePath, final int width, final int height) {
+        return getThumbnail(new FileSource(imagePath), width, height);
+    }
+
+    /**
+     * Returns the closest thumbnail for the given image of the {@link ArtworkPackStore} that is at least
+     * as large as the requested size. If the thumbnail does not exist yet it will be created from the source image.
+     *
+     * @param namespace The namespace of the source image
+     * @param name      The name of the source image
+     * @param width     The requested width
+     * @param height    The requested height
+     * @return The thumbnail or null if no tier fits the request and the source image should be used
+     */
+    public Bitmap getThumbnail(final int namespace, final String name, final int width, final int height) {
+        return getThumbnail(new PackSource(namespace, name), width, height);
+    }
+
+    /**
+     * Creates all thumbnail tiers for a new image of the {@link ArtworkPackStore}.
+     * Tiers that already exist for the same image content are kept.
+     *
+     * @param namespace The namespace of the source image
+     * @param name      The name of the source image
+     * @param image     The decoded source image
+     */
+    public void createThumbnails(final int namespace, final String name, final Bitmap image) {
+        final String thumbnailName = getThumbnailName(getPackSourceKey(namespace, name));
+        if (thumbnailName == null || image == null) {
+            return;
+        }
+
+        final long sourceModified = mPackStore.getTimestamp(namespace, name);
+        for (int tierSize : mTierSizes) {
+            if (Math.min(image.getWidth(), image.getHeight()) > tierSize
+                    && mPackStore.getTimestamp(ArtworkPackStore.NAMESPACE_THUMBNAILS, getTierName(thumbnailName, tierSize)) < sourceModified) {
+                saveThumbnail(image, thumbnailName, tierSize);
+            }
+        }
+    }
+
+    /**
+     * Removes all thumbnails of the given image of the {@link ArtworkPackStore}.
+     *
+     * @param namespace The namespace of the source image
+     * @param name      The name of the source image
+     */
+    public void removeThumbnails(final int namespace, final String name) {
+        final String thumbnailName = getThumbnailName(getPackSourceKey(namespace, name));
+        if (thumbnailName == null) {
+            return;
+        }
+
+        for (int tierSize : mTierSizes) {
+            mPackStore.remove(ArtworkPackStore.NAMESPACE_THUMBNAILS, getTierName(thumbnailName, tierSize));
+        }
+    }
+
+    /**
+     * Removes all thumbnails.
+     */
+    public void clearThumbnails() {
+        mPackStore.removeNamespace(ArtworkPackStore.NAMESPACE_THUMBNAILS);
+    }
+
+    private Bitmap getThumbnail(final ThumbnailSource source, final int width, final int height) {
+        final int tierSize = getTierSize(Math.max(width, height));
+        if (tierSize == -1) {
+            return null;
+        }
+
+        final long sourceModified = source.getTimestamp();
+        if (sourceModified == 0) {
+            // Source does not exist
+            return null;
+        }
+
+        final String thumbnailName = getThumbnailName(source.getKey());
+        if (thumbnailName == null) {
+            return null;
+        }
+
+        final String tierName = getTierName(thumbnailName, tierSize);
+        if (mPackStore.getTimestamp(ArtworkPackStore.NAMESPACE_THUMBNAILS, tierName) >= sourceModified) {
+            final ByteBuffer thumbnailData = mPackStore.get(ArtworkPackStore.NAMESPACE_THUMBNAILS, tierName);
+            if (thumbnailData != null) {
+                final Bitmap thumbnail = BitmapUtils.decodeSampledBitmapFromBuffer(thumbnailData, width, height);
+                if (thumbnail != null) {
+                    return thumbnail;
+                }
+            }
+        }
+
+        // Create the missing thumbnail from the source image
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        source.decode(options);
+
+        if (Math.min(options.outWidth, options.outHeight) <= tierSize) {
+            // The source is not larger than the thumbnail would be
+            return null;
+        }
+
+        options.inSampleSize = BitmapUtils.calculateInSampleSize(options, tierSize, tierSize);
+        options.inJustDecodeBounds = false;
+        final Bitmap sourceBitmap = source.decode(options);
+        if (sourceBitmap == null) {
+            return null;
+        }
+
+        return saveThumbnail(sourceBitmap, thumbnailName, tierSize);
+    }
+
+    /**
+     * Scales the image so that its shorter side matches the tier size and saves it.
+     *
+     * @return The scaled image
+     */
+    private Bitmap saveThumbnail(final Bitmap image, final String thumbnailName, final int tierSize) {
+        final float factor = (float) tierSize / (float) Math.min(image.getWidth(), image.getHeight());
+        final Bitmap thumbnail;
+        if (factor < 1.0f) {
+            thumbnail = Bitmap.createScaledBitmap(image, Math.round(image.getWidth() * factor), Math.round(image.getHeight() * factor), true);
+        } else {
+            thumbnail = image;
+        }
+
+        final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        thumbnail.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_COMPRESSION_SETTING, byteStream);
+
+        if (!mPackStore.put(ArtworkPackStore.NAMESPACE_THUMBNAILS, getTierName(thumbnailName, tierSize), byteStream.toByteArray())) {
+            Log.e(TAG, "Could not save thumbnail");
+        }
+
+        return thumbnail;
+    }
+
+    /**
+     * @return The smallest tier size that is at least the requested size, -1 if there is none
+     */
+    private int getTierSize(final int requestedSize) {
+        for (int tierSize : mTierSizes) {
+            if (tierSize >= requestedSize) {
+                return tierSize;
+            }
+        }
+        return -1;
+    }
+
+    private static String getTierName(final String thumbnailName, final int tierSize) {
+        return tierSize + "/" + thumbnailName;
+    }
+
+    private static String getPackSourceKey(final int namespace, final String name) {
+        return "pack:" + namespace + "/" + name;
+    }
+
+    private static String getThumbnailName(final String sourceKey) {
+        try {
+            return FileUtils.createSHA256HashForString(sourceKey) + ".jpg";
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Source image of a thumbnail.
+     */
+    private interface ThumbnailSource {
+        /**
+         * @return Unique key of the source image
+         */
+        String getKey();
+
+        /**
+         * @return The modification time of the source image, 0 if it does not exist
+         */
+        long getTimestamp();
+
+        Bitmap decode(BitmapFactory.Options options);
+    }
+
+    private static class FileSource implements ThumbnailSource {
+        private final String mImagePath;
+
+        FileSource(final String imagePath) {
+            mImagePath = imagePath;
+        }
+
+        @Override
+        public String getKey() {
+            return mImagePath;
+        }
+
+        @Override
+        public long getTimestamp() {
+            return new File(mImagePath).lastModified();
+        }
+
+        @Override
+        public Bitmap decode(final BitmapFactory.Options options) {
+            return BitmapFactory.decodeFile(mImagePath, options);
+        }
+    }
+
+    private class PackSource implements ThumbnailSource {
+        private final int mNamespace;
+
+        private final String mName;
+
+        private ByteBuffer mData;
+
+        PackSource(final int namespace, final String name) {
+            mNamespace = namespace;
+            mName = name;
+        }
+
+        @Override
+        public String getKey() {
+            return getPackSourceKey(mNamespace, mName);
+        }
+
+        @Override
+        public long getTimestamp() {
+            return mPackStore.getTimestamp(mNamespace, mName);
+        }
+
+        @Override
+        public Bitmap decode(final BitmapFactory.Options options) {
+            if (mData == null) {
+                mData = mPackStore.get(mNamespace, mName);
+                if (mData == null) {
+                    return null;
+                }
+            }
+            return BitmapFactory.decodeStream(new ByteBufferInputStream(mData), null, options);
+        }
+    }
+}
@@ -244,6 +244,11 @@ public class SettingsFragment extends PreferenceFragmentCompat implements Shared
                 ((GenericActivity) requireActivity()).getPlaybackService().setSmartRandom(sharedPreferences.getInt(key, getResources().getInteger(R.integer.pref_smart_random_default)));
             } catch (RemoteException e) {
             }
+        } else if (key.equals(getString(R.string.pref_random_no_repeat_key))) {
+            try {
+                ((GenericActivity) requireActivity()).getPlaybackService().setRandomNoRepeat(sharedPreferences.getBoolean(key, getResources().getBoolean(R.bool.pref_random_no_repeat_default)));
+            } catch (RemoteException e) {
+            }
         }
     }
 
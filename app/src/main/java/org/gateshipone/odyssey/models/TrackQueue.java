@@ -0,0 +1,563 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.models;
+
+import android.content.ContentUris;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.RandomAccess;
+
+/**
+ * Compact list of {@link TrackModel} used for large playlists.
+ * <p>
+ * The tracks are stored in primitive columns. Artist and album names are interned in dictionaries
+ * and track uris are stored as a reference to a base uri if they only differ in the track id
+ * (as all mediastore uris do). {@link TrackModel} instances are only created on access.
+ * <p>
+ * As a consequence changes on a returned {@link TrackModel} are not written back to this list.
+ */
+public class TrackQueue extends AbstractList<TrackModel> implements RandomAccess {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final int NO_URI_BASE = -1;
+
+    private int mSize;
+
+    private long[] mTrackIds;
+
+    private long[] mDurations;
+
+    private long[] mAlbumIds;
+
+    private long[] mArtistIds;
+
+    private int[] mTrackNumbers;
+
+    private int[] mDatesAdded;
+
+    private int[] mArtistNames;
+
+    private int[] mAlbumNames;
+
+    private int[] mUriBases;
+
+    private String[] mTitles;
+
+    /**
+     * Holds the complete uri for tracks that don't reference a base uri.
+     */
+    private String[] mUriStrings;
+
+    private final StringDictionary mNameDictionary = new StringDictionary();
+
+    private final UriDictionary mUriDictionary = new UriDictionary();
+
+    /**
+     * Monotonically increasing version that changes with every modification of the list.
+     */
+    private volatile long mVersion;
+
+    public TrackQueue() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    public TrackQueue(final Collection<TrackModel> tracks) {
+        allocate(Math.max(INITIAL_CAPACITY, tracks.size()));
+        addAll(tracks);
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Creates a new {@link TrackModel} for the given position.
+     */
+    @Override
+    public TrackModel get(final int index) {
+        checkIndex(index);
+
+        return new TrackModel(mTitles[index], mNameDictionary.get(mArtistNames[index]), mArtistIds[index],
+                mNameDictionary.get(mAlbumNames[index]), mAlbumIds[index], mDurations[index], mTrackNumbers[index],
+                getTrackUri(index), mTrackIds[index], mDatesAdded[index]);
+    }
+
+    /**
+     * Return the current version of the list. Any modification of the list increases the version.
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    @Override
+    public TrackModel set(final int index, final TrackModel track) {
+        final TrackModel oldTrack = get(index);
+        write(index, track);
+        mVersion++;
+        return oldTrack;
+    }
+
+    @Override
+    public void add(final int index, final TrackModel track) {
+        checkPositionIndex(index);
+        modCount++;
+
+        ensureCapacity(mSize + 1);
+        moveRange(index, index + 1, mSize - index);
+        mSize++;
+
+        write(index, track);
+        mVersion++;
+    }
+
+    @Override
+    public boolean addAll(final Collection<? extends TrackModel> tracks) {
+        return addAll(mSize, tracks);
+    }
+
+    @Override
+    public boolean addAll(final int index, final Collection<? extends TrackModel> tracks) {
+        checkPositionIndex(index);
+
+        final int count = tracks.size();
+        if (count == 0) {
+            return false;
+        }
+        modCount++;
+
+        ensureCapacity(mSize + count);
+        moveRange(index, index + count, mSize - index);
+        mSize += count;
+
+        int position = index;
+        for (TrackModel track : tracks) {
+            write(position++, track);
+        }
+        mVersion++;
+        return true;
+    }
+
+    @Override
+    public TrackModel remove(final int index) {
+        final TrackModel oldTrack = get(index);
+        removeRange(index, index + 1);
+        return oldTrack;
+    }
+
+    /**
+     * Removes all tracks in the range [fromIndex, toIndex) with a single move of the following tracks.
+     */
+    @Override
+    public void removeRange(final int fromIndex, final int toIndex) {
+        if (fromIndex < 0 || toIndex > mSize || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Range: " + fromIndex + " - " + toIndex + ", Size: " + mSize);
+        }
+        if (fromIndex == toIndex) {
+            return;
+        }
+        modCount++;
+
+        moveRange(toIndex, fromIndex, mSize - toIndex);
+
+        final int newSize = mSize - (toIndex - fromIndex);
+        // release references of the removed entries
+        Arrays.fill(mTitles, newSize, mSize, null);
+        Arrays.fill(mUriStrings, newSize, mSize, null);
+        mSize = newSize;
+        mVersion++;
+    }
+
+    /**
+     * Removes multiple ranges with a single compaction pass over all columns.
+     * The version is increased once per removed range.
+     *
+     * @param ranges Pairs of start position and number of tracks, sorted and not overlapping
+     *               (see {@link #normalizeRanges(int[], int)}).
+     */
+    public void removeRanges(final int[] ranges) {
+        if (ranges.length == 0) {
+            return;
+        }
+        modCount++;
+
+        int write = ranges[0];
+        int removed = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            final int read = ranges[i] + ranges[i + 1];
+            final int next = i + 2 < ranges.length ? ranges[i + 2] : mSize;
+
+            moveRange(read, write, next - read);
+            write += next - read;
+            removed += ranges[i + 1];
+        }
+
+        final int newSize = mSize - removed;
+        // release references of the removed entries
+        Arrays.fill(mTitles, newSize, mSize, null);
+        Arrays.fill(mUriStrings, newSize, mSize, null);
+        mSize = newSize;
+        mVersion += ranges.length / 2;
+    }
+
+    /**
+     * Sorts the given ranges, clips them to the list size and merges overlapping or adjacent ranges.
+     *
+     * @param ranges Pairs of start position and number of tracks in any order.
+     * @param size   Size of the list the ranges refer to.
+     * @return Sorted pairs of start position and number of tracks that don't overlap.
+     */
+    public static int[] normalizeRanges(final int[] ranges, final int size) {
+        // encode each range as (start, end) in a long to sort without boxing
+        final long[] encoded = new long[ranges.length / 2];
+        int count = 0;
+        for (int i = 0; i + 1 < ranges.length; i += 2) {
+            final int start = Math.max(0, ranges[i]);
+            final int end = (int) Math.min(size, (long) ranges[i] + ranges[i + 1]);
+            if (start < end) {
+                encoded[count++] = ((long) start << 32) | end;
+            }
+        }
+        Arrays.sort(encoded, 0, count);
+
+        final int[] merged = new int[count * 2];
+        int mergedCount = 0;
+        int currentStart = -1;
+        int currentEnd = -1;
+        for (int i = 0; i < count; i++) {
+            final int start = (int) (encoded[i] >>> 32);
+            final int end = (int) encoded[i];
+            if (start <= currentEnd) {
+                currentEnd = Math.max(currentEnd, end);
+            } else {
+                if (currentStart >= 0) {
+                    merged[mergedCount++] = currentStart;
+                    merged[mergedCount++] = currentEnd - currentStart;
+                }
+                currentStart = start;
+                currentEnd = end;
+            }
+        }
+        if (currentStart >= 0) {
+            merged[mergedCount++] = currentStart;
+            merged[mergedCount++] = currentEnd - currentStart;
+        }
+
+        return Arrays.copyOf(merged, mergedCount);
+    }
+
+    @Override
+    public void clear() {
+        modCount++;
+
+        mSize = 0;
+        allocate(INITIAL_CAPACITY);
+        mNameDictionary.clear();
+        mUriDictionary.clear();
+        mVersion++;
+    }
+
+    /**
+     * Shuffles the list in place. This creates the same order as {@link java.util.Collections#shuffle(List, Random)}
+     * for an equally filled list and a random generator in the same state.
+     *
+     * @param random The random generator to use.
+     */
+    public void shuffle(final Random random) {
+        modCount++;
+
+        for (int i = mSize; i > 1; i--) {
+            swap(i - 1, random.nextInt(i));
+        }
+        mVersion++;
+    }
+
+    /**
+     * Return the album id of the track at the given position without creating a {@link TrackModel}.
+     */
+    public long getTrackAlbumId(final int index) {
+        checkIndex(index);
+        return mAlbumIds[index];
+    }
+
+    /**
+     * Return the artist name of the track at the given position without creating a {@link TrackModel}.
+     */
+    public String getTrackArtistName(final int index) {
+        checkIndex(index);
+        return mNameDictionary.get(mArtistNames[index]);
+    }
+
+    /**
+     * Return the uri of the track at the given position without creating a {@link TrackModel}.
+     */
+    public Uri getTrackUri(final int index) {
+        checkIndex(index);
+
+        final int uriBase = mUriBases[index];
+        if (uriBase != NO_URI_BASE) {
+            return ContentUris.withAppendedId(mUriDictionary.get(uriBase), mTrackIds[index]);
+        }
+
+        final String uriString = mUriStrings[index];
+        return uriString == null ? null : Uri.parse(uriString);
+    }
+
+    /**
+     * Return the uri string of the track at the given position, see {@link TrackModel#getTrackUriString()}.
+     */
+    public String getTrackUriString(final int index) {
+        checkIndex(index);
+
+        final int uriBase = mUriBases[index];
+        if (uriBase != NO_URI_BASE) {
+            return mUriDictionary.getString(uriBase) + '/' + mTrackIds[index];
+        }
+
+        final String uriString = mUriStrings[index];
+        return uriString == null ? "" : uriString;
+    }
+
+    /**
+     * Helper method to write all fields of the given track to the columns at the given position.
+     */
+    private void write(final int index, final TrackModel track) {
+        mTrackIds[index] = track.getTrackId();
+        mDurations[index] = track.getTrackDuration();
+        mAlbumIds[index] = track.getTrackAlbumId();
+        mArtistIds[index] = track.getTrackArtistId();
+        mTrackNumbers[index] = track.getTrackNumber();
+        mDatesAdded[index] = track.getDateAdded();
+        mArtistNames[index] = mNameDictionary.intern(track.getTrackArtistName());
+        mAlbumNames[index] = mNameDictionary.intern(track.getTrackAlbumName());
+        mTitles[index] = track.getTrackName();
+
+        final Uri uri = track.getTrackUri();
+        if (uri == null) {
+            mUriBases[index] = NO_URI_BASE;
+            mUriStrings[index] = null;
+            return;
+        }
+
+        // check if the uri is a base uri with the appended track id
+        final String uriString = uri.toString();
+        final String idSuffix = "/" + track.getTrackId();
+        if (track.getTrackId() >= 0 && uriString.endsWith(idSuffix)) {
+            mUriBases[index] = mUriDictionary.intern(uriString.substring(0, uriString.length() - idSuffix.length()));
+            mUriStrings[index] = null;
+        } else {
+            mUriBases[index] = NO_URI_BASE;
+            mUriStrings[index] = uriString;
+        }
+    }
+
+    /**
+     * Helper method to move length entries of all columns from the source to the destination position.
+     */
+    private void moveRange(final int source, final int destination, final int length) {
+        if (length <= 0 || source == destination) {
+            return;
+        }
+        System.arraycopy(mTrackIds, source, mTrackIds, destination, length);
+        System.arraycopy(mDurations, source, mDurations, destination, length);
+        System.arraycopy(mAlbumIds, source, mAlbumIds, destination, length);
+        System.arraycopy(mArtistIds, source, mArtistIds, destination, length);
+        System.arraycopy(mTrackNumbers, source, mTrackNumbers, destination, length);
+        System.arraycopy(mDatesAdded, source, mDatesAdded, destination, length);
+        System.arraycopy(mArtistNames, source, mArtistNames, destination, length);
+        System.arraycopy(mAlbumNames, source, mAlbumNames, destination, length);
+        System.arraycopy(mUriBases, source, mUriBases, destination, length);
+        System.arraycopy(mTitles, source, mTitles, destination, length);
+        System.arraycopy(mUriStrings, source, mUriStrings, destination, length);
+    }
+
+    /**
+     * Helper method to swap the entries of all columns at the two positions.
+     */
+    private void swap(final int first, final int second) {
+        long tmpLong;
+        int tmpInt;
+        String tmpString;
+
+        tmpLong = mTrackIds[first];
+        mTrackIds[first] = mTrackIds[second];
+        mTrackIds[second] = tmpLong;
+
+        tmpLong = mDurations[first];
+        mDurations[first] = mDurations[second];
+        mDurations[second] = tmpLong;
+
+        tmpLong = mAlbumIds[first];
+        mAlbumIds[first] = mAlbumIds[second];
+        mAlbumIds[second] = tmpLong;
+
+        tmpLong = mArtistIds[first];
+        mArtistIds[first] = mArtistIds[second];
+        mArtistIds[second] = tmpLong;
+
+        tmpInt = mTrackNumbers[first];
+        mTrackNumbers[first] = mTrackNumbers[second];
+        mTrackNumbers[second] = tmpInt;
+
+        tmpInt = mDatesAdded[first];
+        mDatesAdded[first] = mDatesAdded[second];
+        mDatesAdded[second] = tmpInt;
+
+        tmpInt = mArtistNames[first];
+        mArtistNames[first] = mArtistNames[second];
+        mArtistNames[second] = tmpInt;
+
+        tmpInt = mAlbumNames[first];
+        mAlbumNames[first] = mAlbumNames[second];
+        mAlbumNames[second] = tmpInt;
+
+        tmpInt = mUriBases[first];
+        mUriBases[first] = mUriBases[second];
+        mUriBases[second] = tmpInt;
+
+        tmpString = mTitles[first];
+        mTitles[first] = mTitles[second];
+        mTitles[second] = tmpString;
+
+        tmpString = mUriStrings[first];
+        mUriStrings[first] = mUriStrings[second];
+        mUriStrings[second] = tmpString;
+    }
+
+    private void allocate(final int capacity) {
+        mTrackIds = new long[capacity];
+        mDurations = new long[capacity];
+        mAlbumIds = new long[capacity];
+        mArtistIds = new long[capacity];
+        mTrackNumbers = new int[capacity];
+        mDatesAdded = new int[capacity];
+        mArtistNames = new int[capacity];
+        mAlbumNames = new int[capacity];
+        mUriBases = new int[capacity];
+        mTitles = new String[capacity];
+        mUriStrings = new String[capacity];
+    }
+
+    private void ensureCapacity(final int minCapacity) {
+        final int capacity = mTrackIds.length;
+        if (minCapacity <= capacity) {
+            return;
+        }
+
+        final int newCapacity = Math.max(minCapacity, capacity + (capacity >> 1));
+
+        mTrackIds = Arrays.copyOf(mTrackIds, newCapacity);
+        mDurations = Arrays.copyOf(mDurations, newCapacity);
+        mAlbumIds = Arrays.copyOf(mAlbumIds, newCapacity);
+        mArtistIds = Arrays.copyOf(mArtistIds, newCapacity);
+        mTrackNumbers = Arrays.copyOf(mTrackNumbers, newCapacity);
+        mDatesAdded = Arrays.copyOf(mDatesAdded, newCapacity);
+        mArtistNames = Arrays.copyOf(mArtistNames, newCapacity);
+        mAlbumNames = Arrays.copyOf(mAlbumNames, newCapacity);
+        mUriBases = Arrays.copyOf(mUriBases, newCapacity);
+        mTitles = Arrays.copyOf(mTitles, newCapacity);
+        mUriStrings = Arrays.copyOf(mUriStrings, newCapacity);
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        }
+    }
+
+    private void checkPositionIndex(final int index) {
+        if (index < 0 || index > mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        }
+    }
+
+    /**
+     * Dictionary that maps equal strings to the same index.
+     */
+    private static class StringDictionary {
+
+        private final HashMap<String, Integer> mIndices = new HashMap<>();
+
+        private final List<String> mValues = new ArrayList<>();
+
+        int intern(@NonNull final String value) {
+            Integer index = mIndices.get(value);
+            if (index == null) {
+                index = mValues.size();
+                mValues.add(value);
+                mIndices.put(value, index);
+            }
+            return index;
+        }
+
+        String get(final int index) {
+            return mValues.get(index);
+        }
+
+        void clear() {
+            mIndices.clear();
+            mValues.clear();
+        }
+    }
+
+    /**
+     * Dictionary of base uris.
+     */
+    private static class UriDictionary {
+
+        private final StringDictionary mStrings = new StringDictionary();
+
+        private final List<Uri> mUris = new ArrayList<>();
+
+        int intern(@NonNull final String uriString) {
+            final int index = mStrings.intern(uriString);
+            if (index == mUris.size()) {
+                mUris.add(Uri.parse(uriString));
+            }
+            return index;
+        }
+
+        Uri get(final int index) {
+            return mUris.get(index);
+        }
+
+        String getString(final int index) {
+            return mStrings.get(index);
+        }
+
+        void clear() {
+            mStrings.clear();
+            mUris.clear();
+        }
+    }
+}
@@ -26,82 +26,251 @@ import android.util.Log;
 
 import org.gateshipone.odyssey.BuildConfig;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
 
 /**
- * This class keeps a HashMap of all artists that are part of a track list (e.g. playlist)
- * and their belonging tracks with the original list position as a pair. This can be used to
+ * This class keeps buckets of all artists that are part of a track list (e.g. playlist)
+ * with the positions of their tracks in the original list. This can be used to
  * randomize the playback of the playback equally distributed over all artists of the original
  * track list.
+ * <p/>
+ * All tracks that were not yet selected are kept in a bag and in their artist bucket. Both structures
+ * are primitive int arrays that are updated for inserted or removed ranges of the original list, so
+ * a change of the list does not require a rebuild. A random track is selected in constant time.
+ * If no repeat is enabled, every track of the list is played once before any track is repeated.
  */
 public class TrackRandomGenerator {
     private static final String TAG = TrackRandomGenerator.class.getSimpleName();
 
+    private static final int INITIAL_BUCKET_CAPACITY = 4;
+
+    private final BetterPseudoRandomGenerator mRandomGenerator = new BetterPseudoRandomGenerator();
+
     /**
-     * Underlying data structure for artist-track buckets
+     * List the positions refer to, null if no tracks are managed.
      */
-    private final ArrayList<List<Integer>> mData;
+    private List<TrackModel> mOriginalList;
+
+    private int mIntelligenceFactor;
 
     /**
-     * Creates an empty data structure
+     * Flag if the traditional random selection should also avoid already played tracks.
      */
-    public TrackRandomGenerator() {
-        mData = new ArrayList<>();
-    }
+    private boolean mNoRepeat;
 
-    private final BetterPseudoRandomGenerator mRandomGenerator = new BetterPseudoRandomGenerator();
+    private int mTrackCount;
 
-    private List<TrackModel> mOriginalList;
+    /**
+     * Data per track position: the artist bucket, the index in the bucket and the index in the bag.
+     * The indices are -1 if the track was already selected.
+     */
+    private int[] mTrackBuckets;
 
-    private int mIntelligenceFactor;
+    private int[] mTrackBucketIndices;
+
+    private int[] mTrackBagIndices;
+
+    /**
+     * Positions of all tracks that were not yet selected.
+     */
+    private int[] mBag;
+
+    private int mBagSize;
 
     /**
-     * Creates a list of artists and their tracks with position in the original playlist
+     * Artist buckets with the positions of the tracks that were not yet selected.
+     */
+    private final HashMap<String, Integer> mBucketIds;
+
+    private int[][] mBuckets;
+
+    private int[] mBucketSizes;
+
+    private int mBucketCount;
+
+    /**
+     * All buckets with at least one track left and the index of each bucket in this list (or -1).
+     */
+    private int[] mActiveBuckets;
+
+    private int[] mActiveBucketIndices;
+
+    private int mActiveBucketCount;
+
+    /**
+     * Creates an empty data structure
+     */
+    public TrackRandomGenerator() {
+        mBucketIds = new HashMap<>();
+        clear();
+    }
+
+    /**
+     * Creates the buckets of artists and their tracks with position in the original playlist
      *
      * @param tracks List of tracks
      */
     public synchronized void fillFromList(List<TrackModel> tracks) {
         // Clear all entries
-        mData.clear();
+        clear();
 
         mOriginalList = tracks;
 
-        if (mIntelligenceFactor == 0) {
+        if (tracks == null || tracks.isEmpty()) {
+            // Abort for empty data structures
             return;
         }
-        LinkedHashMap<String, List<Integer>> hashMap = new LinkedHashMap<>();
 
-        if (tracks == null || tracks.isEmpty()) {
-            // Abort for empty data structures
+        mTrackCount = tracks.size();
+        ensureTrackCapacity(mTrackCount);
+
+        // Assign all tracks to their artist buckets
+        for (int trackNo = 0; trackNo < mTrackCount; trackNo++) {
+            mTrackBuckets[trackNo] = getBucketId(getArtistName(trackNo));
+        }
+
+        refill();
+
+        if (BuildConfig.DEBUG) {
+            Log.v(TAG, "Recreated buckets with: " + mBucketCount + " artists");
+        }
+    }
+
+    /**
+     * Adds the tracks that were inserted in the original list.
+     *
+     * @param position Position of the first inserted track.
+     * @param count    Number of inserted tracks.
+     */
+    public synchronized void insertTracks(int position, int count) {
+        if (mOriginalList == null || count <= 0) {
             return;
         }
 
-        // Iterate over the list and add all tracks to their artist lists
+        ensureTrackCapacity(mTrackCount + count);
+
+        if (position < mTrackCount) {
+            // Move the data of all following tracks
+            final int length = mTrackCount - position;
+            System.arraycopy(mTrackBuckets, position, mTrackBuckets, position + count, length);
+            System.arraycopy(mTrackBucketIndices, position, mTrackBucketIndices, position + count, length);
+            System.arraycopy(mTrackBagIndices, position, mTrackBagIndices, position + count, length);
+
+            shiftPositions(position, count);
+        }
+
+        mTrackCount += count;
+
+        for (int trackNo = position; trackNo < position + count; trackNo++) {
+            mTrackBuckets[trackNo] = getBucketId(getArtistName(trackNo));
+            mTrackBucketIndices[trackNo] = -1;
+            mTrackBagIndices[trackNo] = -1;
+            addRemainingTrack(trackNo);
+        }
+    }
+
+    /**
+     * Removes the tracks that were removed from the original list.
+     *
+     * @param position Position of the first removed track.
+     * @param count    Number of removed tracks.
+     */
+    public synchronized void removeTracks(int position, int count) {
+        if (mOriginalList == null || count <= 0) {
+            return;
+        }
+
+        for (int trackNo = position; trackNo < position + count; trackNo++) {
+            removeRemainingTrack(trackNo);
+        }
+
+        // Move the data of all following tracks
+        final int length = mTrackCount - position - count;
+        System.arraycopy(mTrackBuckets, position + count, mTrackBuckets, position, length);
+        System.arraycopy(mTrackBucketIndices, position + count, mTrackBucketIndices, position, length);
+        System.arraycopy(mTrackBagIndices, position + count, mTrackBagIndices, position, length);
+
+        mTrackCount -= count;
+
+        shiftPositions(position + count, -count);
+    }
+
+    /**
+     * Removes multiple ranges that were removed from the original list with a single pass.
+     *
+     * @param ranges Sorted pairs of start position and number of removed tracks that don't overlap.
+     */
+    public synchronized void removeRanges(int[] ranges) {
+        if (mOriginalList == null || ranges.length == 0) {
+            return;
+        }
+
+        // new position of every track, -1 for removed tracks
+        final int[] newPositions = new int[mTrackCount];
+        int newCount = 0;
         int trackNo = 0;
-        for (TrackModel track : tracks) {
-            String artistName = track.getTrackArtistName();
-            List<Integer> list = hashMap.get(artistName);
-            if (list == null) {
-                // If artist is not already in HashMap add a new list for it
-                list = new ArrayList<>();
-                hashMap.put(artistName, list);
+        for (int i = 0; i < ranges.length; i += 2) {
+            final int end = ranges[i] + ranges[i + 1];
+            for (; trackNo < ranges[i]; trackNo++) {
+                newPositions[trackNo] = newCount++;
             }
-            // Add pair of position in original playlist and track itself to artists bucket list
-            list.add(trackNo);
+            for (; trackNo < end; trackNo++) {
+                removeRemainingTrack(trackNo);
+                newPositions[trackNo] = -1;
+            }
+        }
+        for (; trackNo < mTrackCount; trackNo++) {
+            newPositions[trackNo] = newCount++;
+        }
 
-            // Increase the track number (index) of the original playlist
-            trackNo++;
+        // Move the data of all remaining tracks
+        for (trackNo = ranges[0]; trackNo < mTrackCount; trackNo++) {
+            final int newPosition = newPositions[trackNo];
+            if (newPosition >= 0) {
+                mTrackBuckets[newPosition] = mTrackBuckets[trackNo];
+                mTrackBucketIndices[newPosition] = mTrackBucketIndices[trackNo];
+                mTrackBagIndices[newPosition] = mTrackBagIndices[trackNo];
+            }
         }
-        if (BuildConfig.DEBUG) {
-            Log.v(TAG, "Recreated buckets with: " + hashMap.size() + " artists");
+
+        mTrackCount = newCount;
+
+        for (int i = 0; i < mBagSize; i++) {
+            mBag[i] = newPositions[mBag[i]];
         }
 
-        mData.addAll(hashMap.values());
-        Collections.shuffle(mData);
+        for (int bucket = 0; bucket < mBucketCount; bucket++) {
+            final int[] bucketTracks = mBuckets[bucket];
+            final int size = mBucketSizes[bucket];
+            for (int i = 0; i < size; i++) {
+                bucketTracks[i] = newPositions[bucketTracks[i]];
+            }
+        }
+    }
+
+    /**
+     * Updates the artists of tracks that were replaced in the original list.
+     *
+     * @param position Position of the first replaced track.
+     * @param count    Number of replaced tracks.
+     */
+    public synchronized void updateTracks(int position, int count) {
+        if (mOriginalList == null) {
+            return;
+        }
+
+        for (int trackNo = position; trackNo < position + count; trackNo++) {
+            final boolean remaining = mTrackBagIndices[trackNo] >= 0;
+
+            removeRemainingTrack(trackNo);
+            mTrackBuckets[trackNo] = getBucketId(getArtistName(trackNo));
+            if (remaining) {
+                addRemainingTrack(trackNo);
+            }
+        }
     }
 
     /**
@@ -111,6 +280,15 @@ public class TrackRandomGenerator {
      * @return A random number of a track of the original track list
      */
     public synchronized int getRandomTrackNumber() {
+        if (mTrackCount == 0) {
+            return 0;
+        }
+
+        if (mBagSize == 0) {
+            // All tracks were selected, start again
+            refill();
+        }
+
         // Randomize if a more balanced (per artist) approach or a traditional approach should be used
         boolean smartRandom = mRandomGenerator.getLimitedRandomNumber(100) < mIntelligenceFactor;
 
@@ -118,66 +296,197 @@ public class TrackRandomGenerator {
             if (BuildConfig.DEBUG) {
                 Log.v(TAG, "Use smart random");
             }
-            if (mData.isEmpty()) {
-                // Refill list from original list
-                fillFromList(mOriginalList);
-            }
 
             // First level random, get artist
-            int randomArtistNumber = mRandomGenerator.getLimitedRandomNumber(mData.size());
-
-            // Get artists bucket list to artist number
-            List<Integer> artistsTracks;
+            final int randomArtistNumber = mRandomGenerator.getLimitedRandomNumber(mActiveBucketCount);
+            final int bucket = mActiveBuckets[randomArtistNumber];
 
+            // Second level random, get track of the artist
+            final int randomTrackNo = mRandomGenerator.getLimitedRandomNumber(mBucketSizes[bucket]);
+            final int songNumber = mBuckets[bucket][randomTrackNo];
 
-            // Get the list of tracks belonging to the selected artist
-            artistsTracks = mData.get(randomArtistNumber);
+            // Remove track to prevent double plays
+            removeRemainingTrack(songNumber);
 
-            // Check if an artist was found
-            if (artistsTracks == null) {
-                return 0;
+            if (BuildConfig.DEBUG) {
+                Log.v(TAG, "Selected artist no.: " + randomArtistNumber + " with internal track no.: " + randomTrackNo + " and original track no.: " + songNumber);
+            }
+            return songNumber;
+        } else if (mNoRepeat) {
+            if (BuildConfig.DEBUG) {
+                Log.v(TAG, "Use shuffle bag random");
             }
 
-            int randomTrackNo = mRandomGenerator.getLimitedRandomNumber(artistsTracks.size());
+            final int songNumber = mBag[mRandomGenerator.getLimitedRandomNumber(mBagSize)];
 
-            Integer songNumber = artistsTracks.get(randomTrackNo);
+            removeRemainingTrack(songNumber);
 
-            // Remove track to prevent double plays
-            artistsTracks.remove(randomTrackNo);
+            return songNumber;
+        } else {
             if (BuildConfig.DEBUG) {
-                Log.v(TAG, "Tracks from artist left: " + artistsTracks.size());
+                Log.v(TAG, "Use traditional random");
             }
+            return mRandomGenerator.getLimitedRandomNumber(mTrackCount);
+        }
+    }
 
-            // Check if tracks from this artist are left, otherwise remove the artist
-            if (artistsTracks.isEmpty()) {
-                // No tracks left from artist, remove from map
-                mData.remove(randomArtistNumber);
-                if (BuildConfig.DEBUG) {
-                    Log.v(TAG, "Artists left: " + mData.size());
-                }
+    public synchronized void setEnabled(int factor) {
+        mIntelligenceFactor = factor;
+    }
+
+    /**
+     * Enables or disables that every track is selected once before any track is repeated.
+     */
+    public synchronized void setNoRepeat(boolean noRepeat) {
+        mNoRepeat = noRepeat;
+    }
+
+    private void clear() {
+        mOriginalList = null;
+        mTrackCount = 0;
+        mTrackBuckets = new int[0];
+        mTrackBucketIndices = new int[0];
+        mTrackBagIndices = new int[0];
+        mBag = new int[0];
+        mBagSize = 0;
+        mBucketIds.clear();
+        mBuckets = new int[0][];
+        mBucketSizes = new int[0];
+        mBucketCount = 0;
+        mActiveBuckets = new int[0];
+        mActiveBucketIndices = new int[0];
+        mActiveBucketCount = 0;
+    }
+
+    /**
+     * Marks all tracks as not yet selected.
+     */
+    private void refill() {
+        mBagSize = 0;
+        mActiveBucketCount = 0;
+        Arrays.fill(mBucketSizes, 0, mBucketCount, 0);
+        Arrays.fill(mActiveBucketIndices, 0, mBucketCount, -1);
+
+        for (int trackNo = 0; trackNo < mTrackCount; trackNo++) {
+            mTrackBucketIndices[trackNo] = -1;
+            mTrackBagIndices[trackNo] = -1;
+            addRemainingTrack(trackNo);
+        }
+    }
+
+    private void addRemainingTrack(int trackNo) {
+        // add to bag
+        mTrackBagIndices[trackNo] = mBagSize;
+        mBag[mBagSize++] = trackNo;
+
+        // add to artist bucket
+        final int bucket = mTrackBuckets[trackNo];
+        int[] bucketTracks = mBuckets[bucket];
+        if (mBucketSizes[bucket] == bucketTracks.length) {
+            bucketTracks = Arrays.copyOf(bucketTracks, bucketTracks.length * 2);
+            mBuckets[bucket] = bucketTracks;
+        }
+        mTrackBucketIndices[trackNo] = mBucketSizes[bucket];
+        bucketTracks[mBucketSizes[bucket]++] = trackNo;
+
+        if (mBucketSizes[bucket] == 1) {
+            // artist has tracks left again
+            mActiveBucketIndices[bucket] = mActiveBucketCount;
+            mActiveBuckets[mActiveBucketCount++] = bucket;
+        }
+    }
+
+    private void removeRemainingTrack(int trackNo) {
+        final int bagIndex = mTrackBagIndices[trackNo];
+        if (bagIndex < 0) {
+            // already selected
+            return;
+        }
+
+        // remove from bag by moving the last entry into the gap
+        final int lastTrack = mBag[--mBagSize];
+        mBag[bagIndex] = lastTrack;
+        mTrackBagIndices[lastTrack] = bagIndex;
+        mTrackBagIndices[trackNo] = -1;
+
+        // remove from artist bucket the same way
+        final int bucket = mTrackBuckets[trackNo];
+        final int[] bucketTracks = mBuckets[bucket];
+        final int bucketIndex = mTrackBucketIndices[trackNo];
+        final int lastBucketTrack = bucketTracks[--mBucketSizes[bucket]];
+        bucketTracks[bucketIndex] = lastBucketTrack;
+        mTrackBucketIndices[lastBucketTrack] = bucketIndex;
+        mTrackBucketIndices[trackNo] = -1;
+
+        if (mBucketSizes[bucket] == 0) {
+            // No tracks left from artist, remove from active buckets
+            final int activeIndex = mActiveBucketIndices[bucket];
+            final int lastBucket = mActiveBuckets[--mActiveBucketCount];
+            mActiveBuckets[activeIndex] = lastBucket;
+            mActiveBucketIndices[lastBucket] = activeIndex;
+            mActiveBucketIndices[bucket] = -1;
+        }
+    }
+
+    /**
+     * Adds the offset to all stored positions that are equal or greater than the given position.
+     */
+    private void shiftPositions(int position, int offset) {
+        for (int i = 0; i < mBagSize; i++) {
+            if (mBag[i] >= position) {
+                mBag[i] += offset;
             }
-            if (BuildConfig.DEBUG) {
-                Log.v(TAG, "Selected artist no.: " + randomArtistNumber + " with internal track no.: " + randomTrackNo + " and original track no.: " + songNumber);
+        }
+
+        for (int bucket = 0; bucket < mBucketCount; bucket++) {
+            final int[] bucketTracks = mBuckets[bucket];
+            final int size = mBucketSizes[bucket];
+            for (int i = 0; i < size; i++) {
+                if (bucketTracks[i] >= position) {
+                    bucketTracks[i] += offset;
+                }
             }
-            // Get random track number
-            return songNumber;
-        } else {
-            if (BuildConfig.DEBUG) {
-                Log.v(TAG, "Use traditional random");
+        }
+    }
+
+    private int getBucketId(String artistName) {
+        Integer bucket = mBucketIds.get(artistName);
+
+        if (bucket == null) {
+            if (mBucketCount == mBuckets.length) {
+                final int capacity = Math.max(INITIAL_BUCKET_CAPACITY, mBucketCount * 2);
+                mBuckets = Arrays.copyOf(mBuckets, capacity);
+                mBucketSizes = Arrays.copyOf(mBucketSizes, capacity);
+                mActiveBuckets = Arrays.copyOf(mActiveBuckets, capacity);
+                mActiveBucketIndices = Arrays.copyOf(mActiveBucketIndices, capacity);
             }
-            return mRandomGenerator.getLimitedRandomNumber(mOriginalList.size());
+
+            bucket = mBucketCount++;
+            mBuckets[bucket] = new int[INITIAL_BUCKET_CAPACITY];
+            mBucketSizes[bucket] = 0;
+            mActiveBucketIndices[bucket] = -1;
+            mBucketIds.put(artistName, bucket);
         }
+
+        return bucket;
     }
 
-    public void setEnabled(int factor) {
-        if (mIntelligenceFactor == 0 && factor != 0) {
-            // Redo track buckets
-            fillFromList(mOriginalList);
-        } else if (mIntelligenceFactor != 0 && factor == 0) {
-            // Remove track buckets
-            fillFromList(null);
+    private String getArtistName(int trackNo) {
+        // Avoid the creation of track models for compact lists
+        if (mOriginalList instanceof TrackQueue) {
+            return ((TrackQueue) mOriginalList).getTrackArtistName(trackNo);
+        }
+        return mOriginalList.get(trackNo).getTrackArtistName();
+    }
+
+    private void ensureTrackCapacity(int capacity) {
+        if (capacity > mTrackBuckets.length) {
+            final int newCapacity = Math.max(capacity, mTrackBuckets.length + (mTrackBuckets.length >> 1));
+            mTrackBuckets = Arrays.copyOf(mTrackBuckets, newCapacity);
+            mTrackBucketIndices = Arrays.copyOf(mTrackBucketIndices, newCapacity);
+            mTrackBagIndices = Arrays.copyOf(mTrackBagIndices, newCapacity);
+            mBag = Arrays.copyOf(mBag, newCapacity);
         }
-        mIntelligenceFactor = factor;
     }
 
     private static class BetterPseudoRandomGenerator {
@@ -35,7 +35,7 @@ public class ControlObject {
 
     public enum PLAYBACK_ACTION {
         ODYSSEY_PLAY, ODYSSEY_TOGGLEPAUSE, ODYSSEY_NEXT, ODYSSEY_PREVIOUS, ODYSSEY_SEEKTO, ODYSSEY_JUMPTO, ODYSSEY_REPEAT, ODYSSEY_RANDOM,
-        ODYSSEY_ENQUEUETRACK, ODYSSEY_PLAYTRACK, ODYSSEY_DEQUEUETRACK, ODYSSEY_DEQUEUETRACKS,
+        ODYSSEY_ENQUEUETRACK, ODYSSEY_PLAYTRACK, ODYSSEY_DEQUEUETRACK, ODYSSEY_DEQUEUETRACKS, ODYSSEY_DEQUEUETRACKRANGES,
         ODYSSEY_PLAYALLTRACKS,
         ODYSSEY_RESUMEBOOKMARK, ODYSSEY_DELETEBOOKMARK, ODYSSEY_CREATEBOOKMARK,
         ODYSSEY_SAVEPLAYLIST, ODYSSEY_CLEARPLAYLIST, ODYSSEY_SHUFFLEPLAYLIST,
@@ -46,7 +46,7 @@ public class ControlObject {
         ODYSSEY_ENQUEUERECENTALBUMS, ODYSSEY_PLAYRECENTALBUMS,
         ODYSSEY_ENQUEUEARTIST, ODYSSEY_PLAYARTIST,
         ODYSSEY_START_SLEEPTIMER, ODYSSEY_CANCEL_SLEEPTIMER,
-        ODYSSEY_SET_SMARTRANDOM
+        ODYSSEY_SET_SMARTRANDOM, ODYSSEY_SET_RANDOM_NO_REPEAT
     }
 
     private PLAYBACK_ACTION mAction;
@@ -57,6 +57,7 @@ public class ControlObject {
     private TrackModel mTrack;
     private long mLongParam;
     private PlaylistModel mPlaylist;
+    private int[] mIntArrayParam;
 
     public ControlObject(PLAYBACK_ACTION action) {
         mAction = action;
@@ -115,6 +116,11 @@ public class ControlObject {
         mLongParam = param;
     }
 
+    public ControlObject(PLAYBACK_ACTION action, boolean boolParam) {
+        mAction = action;
+        mBoolparam = boolParam;
+    }
+
     public ControlObject(PLAYBACK_ACTION action, long param, boolean boolParam) {
         mAction = action;
         mLongParam = param;
@@ -145,6 +151,11 @@ public class ControlObject {
         mIntparam = intParam;
     }
 
+    public ControlObject(PLAYBACK_ACTION action, int[] intArrayParam) {
+        mAction = action;
+        mIntArrayParam = intArrayParam;
+    }
+
     public PLAYBACK_ACTION getAction() {
         return mAction;
     }
@@ -169,6 +180,10 @@ public class ControlObject {
         return mLongParam;
     }
 
+    public int[] getIntArrayParam() {
+        return mIntArrayParam;
+    }
+
     public TrackModel getTrack() {
         return mTrack;
     }
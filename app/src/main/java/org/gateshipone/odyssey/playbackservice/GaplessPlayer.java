@@ -22,12 +22,14 @@
 
 package org.gateshipone.odyssey.playbackservice;
 
+import android.content.Context;
 import android.content.Intent;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.media.MediaPlayer.OnPreparedListener;
 import android.media.audiofx.AudioEffect;
 import android.net.Uri;
+import android.os.SystemClock;
 import android.util.Log;
 
 import org.gateshipone.odyssey.BuildConfig;
@@ -129,6 +131,25 @@ public class GaplessPlayer {
      */
     private ReleaseGaplessPlayerTask mReleasePlayerTask;
 
+    /**
+     * Pool of reset {@link MediaPlayer} objects that share one audio session
+     */
+    private final MediaPlayerPool mPlayerPool;
+
+    /**
+     * Time of the last play request and if a pooled player was used for it, to measure the skip latency.
+     */
+    private long mPlayRequestTime;
+
+    private boolean mPlayRequestPooled;
+
+    /**
+     * Number of measured skips and their summed latency in ms, index 1 for pooled players.
+     */
+    private final int[] mSkipCount = new int[2];
+
+    private final long[] mSkipLatency = new long[2];
+
     /**
      * Public constructor.
      *
@@ -145,6 +166,11 @@ public class GaplessPlayer {
         }
 
         mReleasePlayerTimer = new Timer();
+
+        // Use one audio session for all players so that audio effects stay attached
+        final AudioManager audioManager = (AudioManager) service.getSystemService(Context.AUDIO_SERVICE);
+        final int audioSessionId = audioManager != null ? audioManager.generateAudioSessionId() : AudioManager.ERROR;
+        mPlayerPool = new MediaPlayerPool(audioSessionId == AudioManager.ERROR ? 0 : audioSessionId);
     }
 
     /**
@@ -166,22 +192,23 @@ public class GaplessPlayer {
      */
     public synchronized void play(final Uri uri, int jumpTime) throws PlaybackException {
         stopReleaseTask();
-        // Another player currently exists, remove it.
+        // Another player currently exists, reset it for reuse.
         if (mCurrentMediaPlayer != null) {
-            mCurrentMediaPlayer.reset();
-            mCurrentMediaPlayer.release();
+            mPlayerPool.recycle(mCurrentMediaPlayer);
             mCurrentMediaPlayer = null;
         }
 
-        // Create new MediaPlayer object.
-        mCurrentMediaPlayer = new MediaPlayer();
+        mPlayRequestTime = SystemClock.elapsedRealtime();
+        mPlayRequestPooled = mPlayerPool.hasIdlePlayer();
+
+        // Get a reset or new MediaPlayer object.
+        mCurrentMediaPlayer = mPlayerPool.acquire();
         mCurrentPrepared = false;
 
-        // Set the type of the stream to music.
-        mCurrentMediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
         try {
             mCurrentMediaPlayer.setDataSource(mPlaybackService.getApplicationContext(),
                     uri);
+            mPlayerPool.setState(mCurrentMediaPlayer, MediaPlayerPool.STATE.INITIALIZED);
         } catch (IllegalArgumentException e) {
             throw new PlaybackException(REASON.ArgumentError, uri, e);
         } catch (SecurityException e) {
@@ -207,6 +234,7 @@ public class GaplessPlayer {
         // Start the prepare procedure of the MediaPlayer. This happens asynchronously so a the callback
         // above is required.
         mCurrentMediaPlayer.prepareAsync();
+        mPlayerPool.setState(mCurrentMediaPlayer, MediaPlayerPool.STATE.PREPARING);
     }
 
     /**
@@ -216,6 +244,7 @@ public class GaplessPlayer {
         // Check if a MediaPlayer exits and if it is actual playing
         if (mCurrentMediaPlayer != null && mCurrentMediaPlayer.isPlaying()) {
             mCurrentMediaPlayer.pause();
+            mPlayerPool.setState(mCurrentMediaPlayer, MediaPlayerPool.STATE.PAUSED);
             startReleaseTask();
         }
     }
@@ -228,6 +257,7 @@ public class GaplessPlayer {
         if (mCurrentMediaPlayer != null && mCurrentPrepared) {
             stopReleaseTask();
             mCurrentMediaPlayer.start();
+            mPlayerPool.setState(mCurrentMediaPlayer, MediaPlayerPool.STATE.STARTED);
         }
     }
 
@@ -242,8 +272,8 @@ public class GaplessPlayer {
             if (mNextMediaPlayer != null) {
                 // Remove the next player from the currently playing one.
                 mCurrentMediaPlayer.setNextMediaPlayer(null);
-                // Release the MediaPlayer, not usable after this command
-                mNextMediaPlayer.release();
+                // Reset the MediaPlayer for reuse
+                mPlayerPool.recycle(mNextMediaPlayer);
 
                 // Reset variables to clean internal state
                 mNextMediaPlayer = null;
@@ -265,13 +295,18 @@ public class GaplessPlayer {
                     Log.v(TAG, "Closing effect for session: " + mCurrentMediaPlayer.getAudioSessionId());
                 }
             }
-            // Release the current player
-            mCurrentMediaPlayer.release();
+            // Reset the current player for reuse
+            mPlayerPool.recycle(mCurrentMediaPlayer);
 
             // Reset variables to clean internal state
             mCurrentMediaPlayer = null;
             mCurrentPrepared = false;
         }
+
+        if (mPlayerPool.hasIdlePlayer()) {
+            // Release the idle players if playback is not started again
+            startReleaseTask();
+        }
     }
 
     /**
@@ -382,8 +417,8 @@ public class GaplessPlayer {
         if (mNextMediaPlayer != null) {
             // Remove this player from the currently active one as a next one
             mCurrentMediaPlayer.setNextMediaPlayer(null);
-            // Release the player that is not needed any longer
-            mNextMediaPlayer.release();
+            // Reset the player that is not needed any longer for reuse
+            mPlayerPool.recycle(mNextMediaPlayer);
 
             // Reset internal state variables
             mNextMediaPlayer = null;
@@ -393,21 +428,16 @@ public class GaplessPlayer {
 
         // Check if the uri contains something
         if (uri != null) {
-            // Create a new MediaPlayer to prepare as next song playback
-            mNextMediaPlayer = new MediaPlayer();
-
-            // Set the old audio session ID to reuse the opened audio effect session
-            mNextMediaPlayer.setAudioSessionId(mCurrentMediaPlayer.getAudioSessionId());
+            // Get a reset or new MediaPlayer to prepare as next song playback, it uses the shared audio session
+            mNextMediaPlayer = mPlayerPool.acquire();
 
             // Set the prepare finished listener
             mNextMediaPlayer.setOnPreparedListener(mSecondaryPreparedListener);
 
-            // Set the playback type to music again
-            mNextMediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
-
             try {
                 // Try setting the data source
                 mNextMediaPlayer.setDataSource(mPlaybackService.getApplicationContext(), uri);
+                mPlayerPool.setState(mNextMediaPlayer, MediaPlayerPool.STATE.INITIALIZED);
             } catch (IllegalArgumentException e) {
                 throw new PlaybackException(REASON.ArgumentError, uri, e);
             } catch (SecurityException e) {
@@ -432,6 +462,7 @@ public class GaplessPlayer {
             if (mCurrentPrepared) {
                 mSecondPreparing = true;
                 mNextMediaPlayer.prepareAsync();
+                mPlayerPool.setState(mNextMediaPlayer, MediaPlayerPool.STATE.PREPARING);
             }
             mSecondPreparingLock.release();
         }
@@ -449,6 +480,7 @@ public class GaplessPlayer {
                 }
                 // If mp equals currentMediaPlayback it should start playing
                 mCurrentPrepared = true;
+                mPlayerPool.setState(mp, MediaPlayerPool.STATE.PREPARED);
 
                 /*
                  * Signal audio effect desire to android
@@ -473,6 +505,8 @@ public class GaplessPlayer {
                     mPrepareTime = 0;
                 }
                 mp.start();
+                mPlayerPool.setState(mp, MediaPlayerPool.STATE.STARTED);
+                recordSkipLatency();
 
 
                 // Notify connected listeners
@@ -494,6 +528,7 @@ public class GaplessPlayer {
                     mSecondPreparing = true;
                     // Delayed initialization second mediaplayer
                     mNextMediaPlayer.prepareAsync();
+                    mPlayerPool.setState(mNextMediaPlayer, MediaPlayerPool.STATE.PREPARING);
                 }
                 mSecondPreparingLock.release();
             }
@@ -511,6 +546,7 @@ public class GaplessPlayer {
                 if (!mp.equals(mNextMediaPlayer) && !mp.equals(mCurrentMediaPlayer)) {
                     return;
                 }
+                mPlayerPool.setState(mp, MediaPlayerPool.STATE.PREPARED);
 
                 if (mp == mCurrentMediaPlayer) {
                     // MediaPlayer got primary MP before finishing preparing, start playback
@@ -533,6 +569,7 @@ public class GaplessPlayer {
 
                     // Playback start
                     mCurrentMediaPlayer.start();
+                    mPlayerPool.setState(mCurrentMediaPlayer, MediaPlayerPool.STATE.STARTED);
 
 
                     // Notify connected listeners that playback has started
@@ -636,8 +673,9 @@ public class GaplessPlayer {
 
                 int audioSessionID = mp.getAudioSessionId();
 
-                // Release old MediaPlayer
-                mp.release();
+                // Reset old MediaPlayer for reuse
+                mPlayerPool.setState(mp, MediaPlayerPool.STATE.COMPLETED);
+                mPlayerPool.recycle(mp);
 
 
                 // Set current MP to next MP if one is ready
@@ -655,6 +693,9 @@ public class GaplessPlayer {
                     mNextMediaPlayer = null;
 
                     if (mSecondPrepared) {
+                        // The next player was started by the framework
+                        mPlayerPool.setState(mCurrentMediaPlayer, MediaPlayerPool.STATE.STARTED);
+
                         // Notify connected listeners that playback has started
                         for (OnTrackStartedListener listener : mTrackStartListeners) {
                             listener.onTrackStarted(mPrimarySource);
@@ -721,6 +762,61 @@ public class GaplessPlayer {
         return -1;
     }
 
+    /**
+     * Enables or disables the reuse of {@link MediaPlayer} objects to measure the skip latency without pooling.
+     */
+    synchronized void setPoolingEnabled(boolean enabled) {
+        mPlayerPool.setPoolingEnabled(enabled);
+    }
+
+    synchronized boolean isPoolingEnabled() {
+        return mPlayerPool.isPoolingEnabled();
+    }
+
+    /**
+     * @return Number of recorded skips with new or pooled players.
+     */
+    synchronized int getSkipCount(boolean pooled) {
+        return mSkipCount[pooled ? 1 : 0];
+    }
+
+    /**
+     * @return Average time in ms between a play request and the start of the playback, for new or pooled players.
+     */
+    synchronized long getAverageSkipLatency(boolean pooled) {
+        final int index = pooled ? 1 : 0;
+        return mSkipCount[index] == 0 ? 0 : mSkipLatency[index] / mSkipCount[index];
+    }
+
+    /**
+     * Records the time between the last play request and the start of the playback.
+     */
+    private void recordSkipLatency() {
+        if (mPlayRequestTime == 0) {
+            return;
+        }
+
+        final long latency = SystemClock.elapsedRealtime() - mPlayRequestTime;
+        final int index = mPlayRequestPooled ? 1 : 0;
+        mSkipCount[index]++;
+        mSkipLatency[index] += latency;
+        mPlayRequestTime = 0;
+
+        if (BuildConfig.DEBUG) {
+            Log.v(TAG, "Skip latency: " + latency + " ms pooled: " + mPlayRequestPooled
+                    + " average new: " + getAverageSkipLatency(false) + " ms average pooled: " + getAverageSkipLatency(true) + " ms");
+        }
+    }
+
+    /**
+     * Stops the playback and releases all {@link MediaPlayer} objects of the pool
+     */
+    private synchronized void releasePlayers() {
+        stop();
+        mPlayerPool.clear();
+        stopReleaseTask();
+    }
+
     /**
      * Schedule a timeout to release the {@link MediaPlayer} object
      */
@@ -759,7 +855,7 @@ public class GaplessPlayer {
             synchronized (mReleasePlayerTimer) {
                 mReleasePlayerTask = null;
             }
-            stop();
+            releasePlayers();
         }
     }
 
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.playbackservice;
+
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.util.Log;
+
+import org.gateshipone.odyssey.BuildConfig;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Keeps a small number of reset {@link MediaPlayer} objects for reuse, so that a skip does not allocate
+ * a new native player each time. All players share one audio session so that audio effects stay attached.
+ * <p/>
+ * The state of every player handed out is tracked, a player is only reused if it could be reset.
+ * All methods must be called while holding the lock of the {@link GaplessPlayer}.
+ */
+class MediaPlayerPool {
+    private static final String TAG = "OdysseyMediaPlayerPool";
+
+    /**
+     * Maximum number of idle players kept in the pool.
+     */
+    private static final int MAX_IDLE_PLAYERS = 2;
+
+    /**
+     * States of the {@link MediaPlayer} state machine.
+     */
+    enum STATE {
+        IDLE, INITIALIZED, PREPARING, PREPARED, STARTED, PAUSED, COMPLETED
+    }
+
+    private int mAudioSessionId;
+
+    private final ArrayDeque<MediaPlayer> mIdlePlayers = new ArrayDeque<>();
+
+    private final Map<MediaPlayer, STATE> mStates = new IdentityHashMap<>();
+
+    private boolean mPoolingEnabled = true;
+
+    /**
+     * @param audioSessionId Audio session shared by all players, 0 to use the session of the first player.
+     */
+    MediaPlayerPool(int audioSessionId) {
+        mAudioSessionId = audioSessionId;
+    }
+
+    /**
+     * Returns an idle player from the pool or creates a new one.
+     */
+    MediaPlayer acquire() {
+        MediaPlayer player = mIdlePlayers.poll();
+
+        if (player == null) {
+            player = new MediaPlayer();
+            if (mAudioSessionId != 0) {
+                // Set the audio session ID to reuse the opened audio effect session
+                player.setAudioSessionId(mAudioSessionId);
+            } else {
+                // Share the session of the first player
+                mAudioSessionId = player.getAudioSessionId();
+            }
+        }
+        mStates.put(player, STATE.IDLE);
+
+        // Set the playback type to music
+        player.setAudioStreamType(AudioManager.STREAM_MUSIC);
+
+        return player;
+    }
+
+    /**
+     * @return True if the next call of {@link #acquire()} reuses a player.
+     */
+    boolean hasIdlePlayer() {
+        return !mIdlePlayers.isEmpty();
+    }
+
+    /**
+     * Resets the player and keeps it for reuse. The player is released if the pool is full or the reset failed.
+     */
+    void recycle(MediaPlayer player) {
+        final STATE state = mStates.remove(player);
+        if (state == null) {
+            // not handed out by this pool or already recycled
+            return;
+        }
+
+        // Remove the callbacks, they would reference the old playback
+        player.setOnPreparedListener(null);
+        player.setOnCompletionListener(null);
+
+        if (mPoolingEnabled && mIdlePlayers.size() < MAX_IDLE_PLAYERS) {
+            try {
+                player.reset();
+                mIdlePlayers.add(player);
+                return;
+            } catch (IllegalStateException e) {
+                if (BuildConfig.DEBUG) {
+                    Log.e(TAG, "Could not reset player in state: " + state);
+                }
+            }
+        }
+
+        player.release();
+    }
+
+    /**
+     * Releases all idle players.
+     */
+    void clear() {
+        for (MediaPlayer player : mIdlePlayers) {
+            player.release();
+        }
+        mIdlePlayers.clear();
+    }
+
+    /**
+     * Sets the new state of the player, invalid transitions are logged.
+     */
+    void setState(MediaPlayer player, STATE state) {
+        final STATE oldState = mStates.get(player);
+        if (oldState == null) {
+            return;
+        }
+
+        if (BuildConfig.DEBUG && !isValidTransition(oldState, state)) {
+            Log.w(TAG, "Invalid player state transition: " + oldState + " -> " + state);
+        }
+        mStates.put(player, state);
+    }
+
+    /**
+     * Enables or disables the reuse of players. Without reuse every skip creates a new player,
+     * which is the baseline for the skip latency of pooled players.
+     */
+    void setPoolingEnabled(boolean enabled) {
+        mPoolingEnabled = enabled;
+        if (!enabled) {
+            clear();
+        }
+    }
+
+    boolean isPoolingEnabled() {
+        return mPoolingEnabled;
+    }
+
+    private static boolean isValidTransition(STATE oldState, STATE newState) {
+        switch (newState) {
+            case INITIALIZED:
+                return oldState == STATE.IDLE;
+            case PREPARING:
+                return oldState == STATE.INITIALIZED;
+            case PREPARED:
+                return oldState == STATE.PREPARING;
+            case STARTED:
+                return oldState == STATE.PREPARED || oldState == STATE.PAUSED || oldState == STATE.STARTED || oldState == STATE.COMPLETED;
+            case PAUSED:
+                return oldState == STATE.STARTED || oldState == STATE.PAUSED;
+            case COMPLETED:
+                return oldState == STATE.STARTED;
+            default:
+                return true;
+        }
+    }
+}
@@ -24,6 +24,7 @@ package org.gateshipone.odyssey.playbackservice;
 
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
 
@@ -45,6 +46,14 @@ public final class NowPlayingInformation implements Parcelable {
     private final PlaybackService.REPEATSTATE mRepeat;
     private final PlaybackService.RANDOMSTATE mRandom;
     private final int mPlaylistLength;
+    private final long mPlaylistVersion;
+
+    /**
+     * Position of the current track and the {@link SystemClock#elapsedRealtime()} when it was taken.
+     * Receivers extrapolate the position from this anchor while the state is playing.
+     */
+    private final int mTrackPosition;
+    private final long mPositionTimestamp;
     @NonNull
     private final TrackModel mCurrentTrack;
 
@@ -57,8 +66,11 @@ public final class NowPlayingInformation implements Parcelable {
             PlaybackService.REPEATSTATE repeat = PlaybackService.REPEATSTATE.values()[source.readInt()];
             PlaybackService.RANDOMSTATE random = PlaybackService.RANDOMSTATE.values()[source.readInt()];
             int playlistlength = source.readInt();
+            long playlistVersion = source.readLong();
+            int trackPosition = source.readInt();
+            long positionTimestamp = source.readLong();
             TrackModel currentTrack = source.readParcelable(TrackModel.class.getClassLoader());
-            return new NowPlayingInformation(playState, playingIndex, repeat, random, playlistlength, currentTrack);
+            return new NowPlayingInformation(playState, playingIndex, repeat, random, playlistlength, playlistVersion, trackPosition, positionTimestamp, currentTrack);
         }
 
         @Override
@@ -79,15 +91,21 @@ public final class NowPlayingInformation implements Parcelable {
         mRepeat = PlaybackService.REPEATSTATE.REPEAT_OFF;
         mRandom = PlaybackService.RANDOMSTATE.RANDOM_OFF;
         mPlaylistLength = 0;
+        mPlaylistVersion = -1;
+        mTrackPosition = 0;
+        mPositionTimestamp = 0;
         mCurrentTrack = new TrackModel();
     }
 
-    public NowPlayingInformation(PlaybackService.PLAYSTATE playing, int playingIndex, PlaybackService.REPEATSTATE repeat, PlaybackService.RANDOMSTATE random, int playlistlength, @NonNull TrackModel currentTrack) {
+    public NowPlayingInformation(PlaybackService.PLAYSTATE playing, int playingIndex, PlaybackService.REPEATSTATE repeat, PlaybackService.RANDOMSTATE random, int playlistlength, long playlistVersion, int trackPosition, long positionTimestamp, @NonNull TrackModel currentTrack) {
         mPlayState = playing;
         mPlayingIndex = playingIndex;
         mRepeat = repeat;
         mRandom = random;
         mPlaylistLength = playlistlength;
+        mPlaylistVersion = playlistVersion;
+        mTrackPosition = trackPosition;
+        mPositionTimestamp = positionTimestamp;
         mCurrentTrack = currentTrack;
     }
 
@@ -98,6 +116,9 @@ public final class NowPlayingInformation implements Parcelable {
         dest.writeInt(mRepeat.ordinal());
         dest.writeInt(mRandom.ordinal());
         dest.writeInt(mPlaylistLength);
+        dest.writeLong(mPlaylistVersion);
+        dest.writeInt(mTrackPosition);
+        dest.writeLong(mPositionTimestamp);
         dest.writeParcelable(mCurrentTrack, flags);
     }
 
@@ -127,6 +148,27 @@ public final class NowPlayingInformation implements Parcelable {
         return mPlaylistLength;
     }
 
+    /**
+     * Return the version of the playlist or -1 if unknown.
+     */
+    public long getPlaylistVersion() {
+        return mPlaylistVersion;
+    }
+
+    /**
+     * Return the track position at the time this information was created.
+     */
+    public int getTrackPosition() {
+        return mTrackPosition;
+    }
+
+    /**
+     * Return the {@link SystemClock#elapsedRealtime()} at which the track position was taken.
+     */
+    public long getPositionTimestamp() {
+        return mPositionTimestamp;
+    }
+
     @NonNull
     public TrackModel getCurrentTrack() {
         return mCurrentTrack;
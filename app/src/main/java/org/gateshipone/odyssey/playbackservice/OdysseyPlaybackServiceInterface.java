@@ -115,6 +115,14 @@ public class OdysseyPlaybackServiceInterface extends IOdysseyPlaybackService.Stu
         mService.get().getHandler().sendMessage(msg);
     }
 
+    @Override
+    public void setRandomNoRepeat(boolean enabled) {
+        ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_SET_RANDOM_NO_REPEAT, enabled);
+        Message msg = mService.get().getHandler().obtainMessage();
+        msg.obj = obj;
+        mService.get().getHandler().sendMessage(msg);
+    }
+
     @Override
     public void startSleepTimer(long durationMS, boolean stopAfterCurrent) {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_START_SLEEPTIMER, durationMS, stopAfterCurrent);
@@ -219,11 +227,29 @@ public class OdysseyPlaybackServiceInterface extends IOdysseyPlaybackService.Stu
         mService.get().getHandler().sendMessage(msg);
     }
 
+    @Override
+    public void dequeueTrackRanges(int[] ranges) {
+        ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_DEQUEUETRACKRANGES, ranges);
+        Message msg = mService.get().getHandler().obtainMessage();
+        msg.obj = obj;
+        mService.get().getHandler().sendMessage(msg);
+    }
+
     @Override
     public TrackModel getPlaylistSong(int index) {
         return mService.get().getPlaylistTrack(index);
     }
 
+    @Override
+    public PlaylistTracksChunk getPlaylistSongs(int start, int count) {
+        return mService.get().getPlaylistTracks(start, count);
+    }
+
+    @Override
+    public long getPlaylistVersion() {
+        return mService.get().getPlaylistVersion();
+    }
+
     @Override
     public int getPlaylistSize() {
         return mService.get().getPlaylistSize();
@@ -35,11 +35,14 @@ import android.content.res.Configuration;
 import android.media.AudioManager;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
 import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -51,22 +54,28 @@ import org.gateshipone.odyssey.artwork.ArtworkManager;
 import org.gateshipone.odyssey.models.FileModel;
 import org.gateshipone.odyssey.models.PlaylistModel;
 import org.gateshipone.odyssey.models.TrackModel;
+import org.gateshipone.odyssey.models.TrackQueue;
 import org.gateshipone.odyssey.models.TrackRandomGenerator;
 import org.gateshipone.odyssey.playbackservice.managers.PlaybackServiceStatusHelper;
 import org.gateshipone.odyssey.playbackservice.storage.OdysseyDatabaseManager;
+import org.gateshipone.odyssey.playbackservice.storage.QueueJournal;
 import org.gateshipone.odyssey.utils.FileExplorerHelper;
 import org.gateshipone.odyssey.utils.MetaDataLoader;
 import org.gateshipone.odyssey.utils.MusicLibraryHelper;
 import org.gateshipone.odyssey.utils.PlaylistParser;
 import org.gateshipone.odyssey.utils.PlaylistParserFactory;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
+import java.util.Random;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class PlaybackService extends Service implements AudioManager.OnAudioFocusChangeListener, MetaDataLoader.MetaDataLoaderListener {
 
@@ -121,6 +130,8 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
     private static final String HANDLER_THREAD_NAME = "OdysseyPBSHandler";
 
+    private static final String ENQUEUE_THREAD_NAME = "OdysseyPBSEnqueue";
+
     /**
      * Constants for Intent actions
      */
@@ -136,6 +147,25 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
     private static final int INDEX_NO_TRACKS_AVAILABLE = -1;
 
+    /**
+     * Limits for a chunk of playlist tracks returned via IPC. The binder transaction buffer (1MB)
+     * is shared by all transactions of the process, so stay well below.
+     */
+    private static final int MAX_CHUNK_SIZE_BYTES = 128 * 1024;
+
+    private static final int MAX_TRACKS_PER_CHUNK = 500;
+
+    /**
+     * Maximum number of playlist changes kept until the next status broadcast.
+     * If more changes happen in between the GUI is told to reload the playlist instead.
+     */
+    private static final int MAX_PENDING_PLAYLIST_CHANGES = 32;
+
+    /**
+     * Number of upcoming tracks that are prepared by the {@link TrackPrefetcher}.
+     */
+    private static final int PREFETCH_TRACK_COUNT = 3;
+
     /**
      * Request code for the timeout intent when the PlaybackService is waiting to quit
      */
@@ -156,6 +186,18 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
      */
     private PlaybackServiceHandler mHandler;
 
+    /**
+     * Thread and handler that load tracks for the {@link StreamingEnqueueTask}s
+     */
+    private HandlerThread mEnqueueThread;
+
+    private Handler mEnqueueHandler;
+
+    /**
+     * All {@link StreamingEnqueueTask}s that are not yet finished. Only accessed in the handler thread.
+     */
+    private final ArrayList<StreamingEnqueueTask> mActiveEnqueueTasks = new ArrayList<>();
+
     /**
      * Saves if the audiofocus was lost for some reason. If it is set the playback will resume,
      * when the audiofocus gets back to this class.
@@ -169,9 +211,10 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     private GaplessPlayer mPlayer;
 
     /**
-     * Currently active playlist.
+     * Currently active playlist. Stored in a compact form, {@link TrackModel} instances are only
+     * created on access.
      */
-    private List<TrackModel> mCurrentList;
+    private TrackQueue mCurrentList;
 
     /**
      * Index of the currently active track.
@@ -226,6 +269,16 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
      */
     private OdysseyDatabaseManager mDatabaseManager = null;
 
+    /**
+     * Journal of all playlist changes since the last state save
+     */
+    private final QueueJournal mQueueJournal = new QueueJournal();
+
+    /**
+     * Playlist changes that are not yet sent to the GUI
+     */
+    private final ArrayList<PlaylistChangeEvent> mPendingPlaylistChanges = new ArrayList<>();
+
     /**
      * BroadcastReceiver that handles all control intents
      */
@@ -235,6 +288,8 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
     private MetaDataLoader mMetaDataLoader;
 
+    private TrackPrefetcher mTrackPrefetcher;
+
     private OdysseyComponentCallback mComponentCallback;
 
     /**
@@ -249,6 +304,11 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
     private TrackRandomGenerator mTrackRandomGenerator;
 
+    /**
+     * Generator for the seeds of journaled shuffle operations
+     */
+    private final Random mShuffleSeedGenerator = new Random();
+
     /**
      * Set if the user started a sleep
      */
@@ -294,6 +354,11 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         handlerThread.start();
         mHandler = new PlaybackServiceHandler(handlerThread.getLooper(), this);
 
+        // Start the thread that loads tracks for long running enqueue operations.
+        mEnqueueThread = new HandlerThread(ENQUEUE_THREAD_NAME, Process.THREAD_PRIORITY_BACKGROUND);
+        mEnqueueThread.start();
+        mEnqueueHandler = new Handler(mEnqueueThread.getLooper());
+
         // Create MediaPlayer object used throughout the complete runtime of this service
         mPlayer = new GaplessPlayer(this);
 
@@ -305,15 +370,15 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         // set up the OdysseyDatabaseManager
         mDatabaseManager = OdysseyDatabaseManager.getInstance(getApplicationContext());
 
-        // read a possible saved playlist from the database
-        mCurrentList = mDatabaseManager.readBookmarkTracks();
+        // read a possible saved playlist from the database (snapshot and journal)
+        mCurrentList = mDatabaseManager.readAutosaveTracks();
 
         // Create empty bucket list
         mTrackRandomGenerator = new TrackRandomGenerator();
         updateTrackRandomGenerator();
 
         // read a possible saved state from database
-        OdysseyServiceState state = mDatabaseManager.getState();
+        OdysseyServiceState state = mDatabaseManager.getAutosaveState();
 
         // Resume the loaded state to internal variables
         mCurrentPlayingIndex = state.mTrackNumber;
@@ -375,6 +440,8 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
         mMetaDataLoader = new MetaDataLoader(this);
 
+        mTrackPrefetcher = new TrackPrefetcher(this, mMetaDataLoader);
+
         mActiveSleepTimer = false;
 
         SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
@@ -382,6 +449,7 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         mAutoBackwardsAmount = (sharedPreferences.getInt(this.getString(R.string.pref_seek_backwards_key), this.getResources().getInteger(R.integer.pref_seek_backwards_default)) * 1000);
 
         setSmartRandom(sharedPreferences.getInt(getString(R.string.pref_smart_random_key_int), getResources().getInteger(R.integer.pref_smart_random_default)));
+        setRandomNoRepeat(sharedPreferences.getBoolean(getString(R.string.pref_random_no_repeat_key), getResources().getBoolean(R.bool.pref_random_no_repeat_default)));
     }
 
     /**
@@ -443,10 +511,41 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
         unregisterComponentCallbacks(mComponentCallback);
 
+        // Stop loading tracks
+        for (StreamingEnqueueTask task : mActiveEnqueueTasks) {
+            task.cancel();
+        }
+        mEnqueueThread.quit();
+
+        mTrackPrefetcher.quit();
+
         // Stop myself
         stopService();
     }
 
+    /**
+     * Prints the statistics of the command scheduler and the player pool, e.g. for
+     * "adb shell dumpsys activity service PlaybackService". The arguments "pooling off" and "pooling on"
+     * switch the reuse of players to compare the skip latency with and without pooling.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (args != null && args.length >= 2 && "pooling".equals(args[0])) {
+            mPlayer.setPoolingEnabled(!"off".equals(args[1]));
+        }
+
+        writer.println("Player pool:");
+        writer.println("  pooling: " + (mPlayer.isPoolingEnabled() ? "on" : "off"));
+        writer.println("  skip latency new players: " + mPlayer.getAverageSkipLatency(false) + " ms average, " + mPlayer.getSkipCount(false) + " skips");
+        writer.println("  skip latency pooled players: " + mPlayer.getAverageSkipLatency(true) + " ms average, " + mPlayer.getSkipCount(true) + " skips");
+
+        writer.println("Command scheduler:");
+        writer.println("  executed commands: " + mHandler.getExecutedCommands());
+        writer.println("  merged commands: " + mHandler.getMergedCommands());
+        writer.println("  backlog: " + mHandler.getBacklog() + " (max " + mHandler.getMaxBacklog() + ")");
+        writer.println("  latency: " + mHandler.getAverageLatency() + " ms average, " + mHandler.getMaxLatency() + " ms max");
+    }
+
 
     /**
      * Directly plays uri
@@ -640,25 +739,12 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
      * @param filterString A filter that is used to exclude tracks that didn't contain this String.
      */
     public void playAllTracks(String filterString) {
-        // Notify the user about the possible long running operation
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.WORKING);
-        mBusy = true;
-
         // clear the playlist before adding all tracks
         clearPlaylist();
 
-
-        // Get a list of all available tracks from the MusicLibraryHelper
-        List<TrackModel> allTracks = MusicLibraryHelper.getAllTracks(filterString, getApplicationContext());
-
-        mCurrentList.addAll(allTracks);
-
-        // Start playing the first item in the list
-        jumpToIndex(0);
-
-        // Notify the user that the operation is now finished
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.IDLE);
-        mBusy = false;
+        // Load all available tracks from the MusicLibraryHelper and start playing the first item in the list
+        final Context context = getApplicationContext();
+        startStreamingEnqueue(stream -> MusicLibraryHelper.getAllTracks(filterString, context, stream), 0, false);
     }
 
     /**
@@ -667,14 +753,14 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     public void shufflePlaylist() {
         final PLAYSTATE state = getPlaybackState();
 
-        if (mCurrentList.size() > 0 && mCurrentPlayingIndex >= 0 && (mCurrentPlayingIndex < mCurrentList.size())) {
-            // get the current TrackModel and remove it from playlist
-            TrackModel currentItem = mCurrentList.get(mCurrentPlayingIndex);
-            mCurrentList.remove(mCurrentPlayingIndex);
+        // use an explicit seed so the shuffle can be journaled
+        final long seed = mShuffleSeedGenerator.nextLong();
 
+        if (mCurrentList.size() > 0 && mCurrentPlayingIndex >= 0 && (mCurrentPlayingIndex < mCurrentList.size())) {
             // shuffle playlist and set currentitem as first element
-            Collections.shuffle(mCurrentList);
-            mCurrentList.add(0, currentItem);
+            QueueJournal.shuffle(mCurrentList, mCurrentPlayingIndex, seed);
+            mQueueJournal.shuffle(mCurrentPlayingIndex, seed);
+            publishPlaylistReset();
 
             // reset index
             mCurrentPlayingIndex = 0;
@@ -685,7 +771,7 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
             if (state == PLAYSTATE.PLAYING || state == PLAYSTATE.PAUSE) {
                 try {
                     if (mCurrentPlayingIndex + 1 < mCurrentList.size()) {
-                        mPlayer.setNextTrack(mCurrentList.get(mCurrentPlayingIndex + 1).getTrackUri());
+                        mPlayer.setNextTrack(mCurrentList.getTrackUri(mCurrentPlayingIndex + 1));
                     } else {
                         mPlayer.setNextTrack(null);
                     }
@@ -695,7 +781,9 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
             }
         } else if (mCurrentList.size() > 0 && mCurrentPlayingIndex < 0) {
             // service stopped just shuffle playlist
-            Collections.shuffle(mCurrentList);
+            QueueJournal.shuffle(mCurrentList, -1, seed);
+            mQueueJournal.shuffle(-1, seed);
+            publishPlaylistReset();
 
             // sent broadcast
             mPlaybackServiceStatusHelper.updateStatus();
@@ -716,6 +804,33 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         jumpToIndex(mNextPlayingIndex);
     }
 
+    /**
+     * Skips the given number of tracks with a single jump.
+     * In random mode or if the current track is repeated this behaves like a single {@link #setNextTrack()}.
+     *
+     * @param count Number of tracks to skip
+     */
+    public void setNextTrack(int count) {
+        if (count > 1 && mRandom == RANDOMSTATE.RANDOM_OFF && mRepeat != REPEATSTATE.REPEAT_TRACK
+                && mCurrentPlayingIndex >= 0 && mCurrentPlayingIndex < mCurrentList.size()) {
+            // Keep device at least for 5 seconds turned on
+            mSongTransitionWakelock.acquire(5000);
+
+            // Save the last playing index, to allow the user to jump back
+            mLastPlayingIndex = mCurrentPlayingIndex;
+
+            int index = mCurrentPlayingIndex + count;
+            if (index >= mCurrentList.size()) {
+                // Same as skipping track by track: either wrap around or stop at the end of the playlist
+                index = mRepeat == REPEATSTATE.REPEAT_ALL ? index % mCurrentList.size() : INDEX_NO_TRACKS_AVAILABLE;
+            }
+
+            jumpToIndex(index);
+        } else {
+            setNextTrack();
+        }
+    }
+
     /**
      * Sets nextplayback track to preceding on in playlist
      */
@@ -788,14 +903,129 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         return new TrackModel();
     }
 
+    /**
+     * Getter to retrieve a contiguous range of TrackModel items from the playlist.
+     * The number of returned tracks is limited so that the result stays below the binder transaction limit.
+     *
+     * @param start Position of the first track to return
+     * @param count Number of requested tracks
+     * @return The tracks within the playlist bounds together with the current playlist version
+     */
+    public PlaylistTracksChunk getPlaylistTracks(int start, int count) {
+        // read the version first, so a concurrent change results in an outdated version and not in outdated tracks
+        final long version = mCurrentList.getVersion();
+
+        final List<TrackModel> tracks = new ArrayList<>();
+
+        int chunkSize = 0;
+        try {
+            for (int index = Math.max(start, 0); index < start + count && index < mCurrentList.size() && tracks.size() < MAX_TRACKS_PER_CHUNK; index++) {
+                final TrackModel track = mCurrentList.get(index);
+
+                // rough estimate of the parcel size (strings are written as UTF-16)
+                chunkSize += 2 * (track.getTrackName().length() + track.getTrackArtistName().length() + track.getTrackAlbumName().length() + track.getTrackUriString().length()) + 96;
+                if (chunkSize > MAX_CHUNK_SIZE_BYTES && !tracks.isEmpty()) {
+                    break;
+                }
+
+                tracks.add(track);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            // playlist was changed concurrently, return the tracks read so far
+        }
+
+        return new PlaylistTracksChunk(version, Math.max(start, 0), tracks);
+    }
+
+    /**
+     * @return Version of the playlist that is increased with every change
+     */
+    public long getPlaylistVersion() {
+        return mCurrentList.getVersion();
+    }
+
+    /**
+     * Records a range change of the current playlist. The change is sent to the GUI with the next status update.
+     * The buckets of the random generator are updated for the changed range.
+     *
+     * @param type            Type of the change.
+     * @param position        First position that is affected by the change.
+     * @param count           Number of affected tracks.
+     * @param previousVersion Version of the playlist before the change.
+     */
+    private void publishPlaylistChange(PlaylistChangeEvent.TYPE type, int position, int count, long previousVersion) {
+        switch (type) {
+            case INSERTED:
+                mTrackRandomGenerator.insertTracks(position, count);
+                break;
+            case REMOVED:
+                mTrackRandomGenerator.removeTracks(position, count);
+                break;
+            case CHANGED:
+                mTrackRandomGenerator.updateTracks(position, count);
+                break;
+            default:
+                updateTrackRandomGenerator();
+                break;
+        }
+
+        recordPlaylistChange(type, position, count, previousVersion, mCurrentList.getVersion());
+    }
+
+    /**
+     * Appends a range change to the pending changes without touching the random generator.
+     *
+     * @param version Version of the playlist after the change.
+     */
+    private void recordPlaylistChange(PlaylistChangeEvent.TYPE type, int position, int count, long previousVersion, long version) {
+        synchronized (mPendingPlaylistChanges) {
+            if (mPendingPlaylistChanges.size() >= MAX_PENDING_PLAYLIST_CHANGES) {
+                // too many changes, a reload is cheaper for the receivers
+                mPendingPlaylistChanges.clear();
+                mPendingPlaylistChanges.add(PlaylistChangeEvent.reset(version));
+            } else if (!mPendingPlaylistChanges.isEmpty() && mPendingPlaylistChanges.get(mPendingPlaylistChanges.size() - 1).getType() == PlaylistChangeEvent.TYPE.RESET) {
+                // a pending reset already covers this change, only update its version
+                mPendingPlaylistChanges.set(mPendingPlaylistChanges.size() - 1, PlaylistChangeEvent.reset(version));
+            } else {
+                mPendingPlaylistChanges.add(new PlaylistChangeEvent(type, position, count, previousVersion, version));
+            }
+        }
+    }
+
+    /**
+     * Records that the complete playlist changed. The random generator is recreated.
+     */
+    private void publishPlaylistReset() {
+        updateTrackRandomGenerator();
+
+        synchronized (mPendingPlaylistChanges) {
+            mPendingPlaylistChanges.clear();
+            mPendingPlaylistChanges.add(PlaylistChangeEvent.reset(mCurrentList.getVersion()));
+        }
+    }
+
+    /**
+     * Returns all playlist changes since the last call and removes them.
+     */
+    public ArrayList<PlaylistChangeEvent> drainPlaylistChanges() {
+        synchronized (mPendingPlaylistChanges) {
+            final ArrayList<PlaylistChangeEvent> changes = new ArrayList<>(mPendingPlaylistChanges);
+            mPendingPlaylistChanges.clear();
+            return changes;
+        }
+    }
+
     /**
      * Clears the current playlist and stops playback afterwards. Also resets repeat, random state
      */
     public void clearPlaylist() {
+        // Tracks that are still loading belong to the old playlist
+        cancelStreamingEnqueue();
+
         // Clear the list
         mCurrentList.clear();
-
-        updateTrackRandomGenerator();
+        mQueueJournal.clear();
+        publishPlaylistReset();
 
         // reset random and repeat state
         mRandom = RANDOMSTATE.RANDOM_OFF;
@@ -939,7 +1169,10 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         int oldSize = mCurrentList.size();
 
         // Add the tracks to the actual list
+        final long previousVersion = mCurrentList.getVersion();
+        mQueueJournal.insertTracks(oldSize, tracklist);
         mCurrentList.addAll(tracklist);
+        publishPlaylistChange(PlaylistChangeEvent.TYPE.INSERTED, oldSize, tracklist.size(), previousVersion);
 
         // If track is the first to be added, set playing index to 0
         if (mCurrentPlayingIndex == INDEX_NO_TRACKS_AVAILABLE) {
@@ -958,9 +1191,6 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
         // Inform the helper that the state has changed
         mPlaybackServiceStatusHelper.updateStatus();
-
-        // update trackRandomGenerator
-        updateTrackRandomGenerator();
     }
 
     /**
@@ -970,17 +1200,9 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
      * @param orderKey String to specify the order of the tracks
      */
     public void enqueueAlbum(long albumId, String orderKey) {
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.WORKING);
-        mBusy = true;
-
-        // get all tracks for the current albumId from mediastore
-        List<TrackModel> tracks = MusicLibraryHelper.getTracksForAlbum(albumId, orderKey, getApplicationContext());
-
-        // add tracks to current playlist
-        enqueueTracks(tracks);
-
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.IDLE);
-        mBusy = false;
+        // get all tracks for the current albumId from mediastore and add them to current playlist
+        final Context context = getApplicationContext();
+        startStreamingEnqueue(stream -> MusicLibraryHelper.getTracksForAlbum(albumId, orderKey, context, stream), -1, false);
     }
 
     /**
@@ -994,9 +1216,8 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     public void playAlbum(long albumId, String orderKey, int position) {
         clearPlaylist();
 
-        enqueueAlbum(albumId, orderKey);
-
-        jumpToIndex(position);
+        final Context context = getApplicationContext();
+        startStreamingEnqueue(stream -> MusicLibraryHelper.getTracksForAlbum(albumId, orderKey, context, stream), position, false);
     }
 
     /**
@@ -1034,17 +1255,9 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
      * @param trackOrderKey String to specify the order of the tracks
      */
     public void enqueueArtist(long artistId, String albumOrderKey, String trackOrderKey) {
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.WORKING);
-        mBusy = true;
-
-        // get all tracks for the current artistId from mediastore
-        List<TrackModel> tracks = MusicLibraryHelper.getTracksForArtist(artistId, albumOrderKey, trackOrderKey, getApplicationContext());
-
-        // add tracks to current playlist
-        enqueueTracks(tracks);
-
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.IDLE);
-        mBusy = false;
+        // get all tracks for the current artistId from mediastore and add them to current playlist
+        final Context context = getApplicationContext();
+        startStreamingEnqueue(stream -> MusicLibraryHelper.getTracksForArtist(artistId, albumOrderKey, trackOrderKey, context, stream), -1, false);
     }
 
     /**
@@ -1058,9 +1271,8 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     public void playArtist(long artistId, String albumOrderKey, String trackOrderKey) {
         clearPlaylist();
 
-        enqueueArtist(artistId, albumOrderKey, trackOrderKey);
-
-        jumpToIndex(0);
+        final Context context = getApplicationContext();
+        startStreamingEnqueue(stream -> MusicLibraryHelper.getTracksForArtist(artistId, albumOrderKey, trackOrderKey, context, stream), 0, false);
     }
 
     /**
@@ -1104,7 +1316,10 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         // gapless playback
         int oldSize = mCurrentList.size();
 
+        final long previousVersion = mCurrentList.getVersion();
+        mQueueJournal.insertTrack(oldSize, track);
         mCurrentList.add(track);
+        publishPlaylistChange(PlaylistChangeEvent.TYPE.INSERTED, oldSize, 1, previousVersion);
 
         // If track is the first to be added, set playing index to 0
         if (mCurrentPlayingIndex == INDEX_NO_TRACKS_AVAILABLE) {
@@ -1122,9 +1337,6 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         }
         // Send new NowPlaying because playlist changed
         mPlaybackServiceStatusHelper.updateStatus();
-
-        // update trackRandomGenerator
-        updateTrackRandomGenerator();
     }
 
     /**
@@ -1135,25 +1347,28 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     private void enqueueAsNextTrack(TrackModel track) {
         cancelDeferredStateSave();
 
+        final long previousVersion = mCurrentList.getVersion();
+
         // Check if currently playing index is set to a valid value
         if (mCurrentPlayingIndex >= 0) {
             // Enqueue in list structure
             mCurrentList.add(mCurrentPlayingIndex + 1, track);
+            mQueueJournal.insertTrack(mCurrentPlayingIndex + 1, track);
+            publishPlaylistChange(PlaylistChangeEvent.TYPE.INSERTED, mCurrentPlayingIndex + 1, 1, previousVersion);
             mNextPlayingIndex = mCurrentPlayingIndex + 1;
             // Set next track to new one
             setNextTrackForMP();
         } else {
             // If not playing just add it to the beginning of the playlist
             mCurrentList.add(0, track);
+            mQueueJournal.insertTrack(0, track);
+            publishPlaylistChange(PlaylistChangeEvent.TYPE.INSERTED, 0, 1, previousVersion);
             // Start playback which is probably intended
             jumpToIndex(0);
         }
 
         // Send new NowPlaying because playlist changed
         mPlaybackServiceStatusHelper.updateStatus();
-
-        // update trackRandomGenerator
-        updateTrackRandomGenerator();
     }
 
     /**
@@ -1165,10 +1380,14 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         cancelDeferredStateSave();
 
         PLAYSTATE state = getPlaybackState();
+        final long previousVersion = mCurrentList.getVersion();
+
         // Check if track is currently playing, if so stop it
         if (mCurrentPlayingIndex == index) {
             // Delete song at index
             mCurrentList.remove(index);
+            mQueueJournal.removeTracks(index, 1);
+            publishPlaylistChange(PlaylistChangeEvent.TYPE.REMOVED, index, 1, previousVersion);
 
             // Check if a next track exists and jump to it if player was playing before
             if (state == PLAYSTATE.PLAYING && index < mCurrentList.size()) {
@@ -1180,9 +1399,13 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
             // Deletion of next song which requires extra handling
             // because of gapless playback, set next song to next one
             mCurrentList.remove(index);
+            mQueueJournal.removeTracks(index, 1);
+            publishPlaylistChange(PlaylistChangeEvent.TYPE.REMOVED, index, 1, previousVersion);
             setNextTrackForMP();
         } else if (index >= 0 && index < mCurrentList.size()) {
             mCurrentList.remove(index);
+            mQueueJournal.removeTracks(index, 1);
+            publishPlaylistChange(PlaylistChangeEvent.TYPE.REMOVED, index, 1, previousVersion);
             // mCurrentIndex and mNextPlayingIndex is now moved one position up so update variables
             if (index < mCurrentPlayingIndex) {
                 mCurrentPlayingIndex--;
@@ -1198,9 +1421,6 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
         // Send new NowPlaying because playlist changed
         mPlaybackServiceStatusHelper.updateStatus();
-
-        // update trackRandomGenerator
-        updateTrackRandomGenerator();
     }
 
     /**
@@ -1219,31 +1439,28 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
         int endIndex = index + 1;
 
-        long albumId = mCurrentList.get(index).getTrackAlbumId();
+        long albumId = mCurrentList.getTrackAlbumId(index);
 
         // get endindex for section
         while (endIndex < mCurrentList.size()) {
-            if (albumId == mCurrentList.get(endIndex).getTrackAlbumId()) {
+            if (albumId == mCurrentList.getTrackAlbumId(endIndex)) {
                 endIndex++;
             } else {
                 break;
             }
         }
 
+        // the section is always removed as one contiguous range
+        final long previousVersion = mCurrentList.getVersion();
+        final int removedCount = endIndex - index;
+        mQueueJournal.removeTracks(index, removedCount);
+
         if (mCurrentPlayingIndex >= index && mCurrentPlayingIndex < endIndex) {
             // remove section and update endindex accordingly
-            ListIterator<TrackModel> iterator = mCurrentList.listIterator(index);
+            mCurrentList.removeRange(index, endIndex);
+            publishPlaylistChange(PlaylistChangeEvent.TYPE.REMOVED, index, removedCount, previousVersion);
+            endIndex = index;
 
-            while (iterator.hasNext()) {
-                TrackModel track = iterator.next();
-
-                if (albumId == track.getTrackAlbumId()) {
-                    iterator.remove();
-                    endIndex--;
-                } else {
-                    break;
-                }
-            }
             // Check if a next track exists and jump to it if player was playing before
             if (state == PLAYSTATE.PLAYING && endIndex < mCurrentList.size()) {
                 jumpToIndex(endIndex);
@@ -1255,38 +1472,21 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
             // because of gapless playback, set next song to next one
 
             // remove section
-            ListIterator<TrackModel> iterator = mCurrentList.listIterator(index);
-
-            while (iterator.hasNext()) {
-                TrackModel track = iterator.next();
-
-                if (albumId == track.getTrackAlbumId()) {
-                    iterator.remove();
-                } else {
-                    break;
-                }
-            }
+            mCurrentList.removeRange(index, endIndex);
+            publishPlaylistChange(PlaylistChangeEvent.TYPE.REMOVED, index, removedCount, previousVersion);
 
             setNextTrackForMP();
         } else if (index < mCurrentList.size()) {
             // check if section is before current song
             boolean beforeCurrentTrack = endIndex <= mCurrentPlayingIndex;
 
-            ListIterator<TrackModel> iterator = mCurrentList.listIterator(index);
+            mCurrentList.removeRange(index, endIndex);
+            publishPlaylistChange(PlaylistChangeEvent.TYPE.REMOVED, index, removedCount, previousVersion);
 
-            while (iterator.hasNext()) {
-                TrackModel track = iterator.next();
-
-                if (albumId == track.getTrackAlbumId()) {
-                    iterator.remove();
-                    if (beforeCurrentTrack) {
-                        // if section is before current song update mCurrentPlayingIndex and mNextPlayingIndex
-                        mCurrentPlayingIndex--;
-                        mNextPlayingIndex--;
-                    }
-                } else {
-                    break;
-                }
+            if (beforeCurrentTrack) {
+                // if section is before current song update mCurrentPlayingIndex and mNextPlayingIndex
+                mCurrentPlayingIndex -= endIndex - index;
+                mNextPlayingIndex -= endIndex - index;
             }
         }
 
@@ -1301,12 +1501,137 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
         mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.IDLE);
         mBusy = false;
+    }
 
-        // update trackRandomGenerator
-        updateTrackRandomGenerator();
+    /**
+     * Dequeues multiple ranges of the playlist at once. The list is compacted in a single pass,
+     * the current and next index are updated once and only one status update is sent.
+     *
+     * @param ranges Pairs of start position and number of tracks to remove in any order.
+     */
+    public void dequeueTrackRanges(int[] ranges) {
+        final int[] removedRanges = TrackQueue.normalizeRanges(ranges, mCurrentList.size());
+        if (removedRanges.length == 0) {
+            return;
+        }
+
+        cancelDeferredStateSave();
+
+        PLAYSTATE state = getPlaybackState();
+        final long previousVersion = mCurrentList.getVersion();
+
+        final boolean currentRemoved = isRemovedPosition(mCurrentPlayingIndex, removedRanges);
+        final boolean nextRemoved = isRemovedPosition(mNextPlayingIndex, removedRanges);
+
+        mCurrentList.removeRanges(removedRanges);
+        mTrackRandomGenerator.removeRanges(removedRanges);
+
+        // record the ranges from the last to the first so that each position is still valid
+        // after the removal of the previous range, the list version was increased once per range
+        long version = previousVersion;
+        for (int i = removedRanges.length - 2; i >= 0; i -= 2) {
+            mQueueJournal.removeTracks(removedRanges[i], removedRanges[i + 1]);
+            recordPlaylistChange(PlaylistChangeEvent.TYPE.REMOVED, removedRanges[i], removedRanges[i + 1], version, version + 1);
+            version++;
+        }
+
+        // move the indices to their new positions, a removed index points to the next remaining track
+        if (mCurrentPlayingIndex >= 0) {
+            mCurrentPlayingIndex -= countRemovedBefore(mCurrentPlayingIndex, removedRanges);
+        }
+        if (mLastPlayingIndex >= 0) {
+            mLastPlayingIndex = isRemovedPosition(mLastPlayingIndex, removedRanges) ? -1 : mLastPlayingIndex - countRemovedBefore(mLastPlayingIndex, removedRanges);
+        }
+
+        if (mCurrentList.size() == 0) {
+            // No track remains
+            stop();
+        } else if (currentRemoved) {
+            // Check if a next track exists and jump to it if player was playing before
+            if (state == PLAYSTATE.PLAYING && mCurrentPlayingIndex < mCurrentList.size()) {
+                jumpToIndex(mCurrentPlayingIndex);
+            } else {
+                stop();
+            }
+        } else if (mNextPlayingIndex >= 0) {
+            if (nextRemoved) {
+                // Deletion of next song which requires extra handling because of gapless playback
+                if (mRandom == RANDOMSTATE.RANDOM_ON) {
+                    randomizeNextTrack();
+                } else {
+                    mNextPlayingIndex -= countRemovedBefore(mNextPlayingIndex, removedRanges);
+                    if (mNextPlayingIndex >= mCurrentList.size()) {
+                        mNextPlayingIndex = mRepeat == REPEATSTATE.REPEAT_ALL ? 0 : INDEX_NO_TRACKS_AVAILABLE;
+                    }
+                }
+                setNextTrackForMP();
+            } else {
+                mNextPlayingIndex -= countRemovedBefore(mNextPlayingIndex, removedRanges);
+            }
+        }
+
+        // Send new NowPlaying because playlist changed
+        mPlaybackServiceStatusHelper.updateStatus();
+    }
+
+    /**
+     * @param ranges Sorted pairs of start position and number of removed tracks.
+     * @return True if the position is part of one of the ranges.
+     */
+    private static boolean isRemovedPosition(int position, int[] ranges) {
+        for (int i = 0; i < ranges.length && ranges[i] <= position; i += 2) {
+            if (position < ranges[i] + ranges[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param ranges Sorted pairs of start position and number of removed tracks.
+     * @return Number of removed tracks in front of the position.
+     */
+    private static int countRemovedBefore(int position, int[] ranges) {
+        int removed = 0;
+        for (int i = 0; i < ranges.length && ranges[i] < position; i += 2) {
+            removed += Math.min(ranges[i + 1], position - ranges[i]);
+        }
+        return removed;
     }
 
+    /**
+     * Saves the state in the handler thread and waits for it if called from another thread.
+     * The handler thread changes the playlist and records the journal, so the journal is drained
+     * together with the playlist snapshot and the saves are written in order.
+     */
     private void saveState() {
+        if (Looper.myLooper() == mHandler.getLooper()) {
+            writeState();
+            return;
+        }
+
+        final CountDownLatch saved = new CountDownLatch(1);
+        final boolean posted = mHandler.post(() -> {
+            try {
+                writeState();
+            } finally {
+                saved.countDown();
+            }
+        });
+
+        if (posted) {
+            try {
+                saved.await(STATE_SAVE_WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Writes the state to the database. Only called in the handler thread.
+     */
+    private void writeState() {
         // Save the current playback position
         mLastPosition = getTrackPosition();
 
@@ -1317,7 +1642,13 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         serviceState.mTrackPosition = mLastPosition;
         serviceState.mRandomState = mRandom;
         serviceState.mRepeatState = mRepeat;
-        mDatabaseManager.saveState(mCurrentList, serviceState, "auto", true);
+
+        // Write only the changes since the last save if possible
+        final List<QueueJournal.Entry> journalEntries = mQueueJournal.drain();
+        if (!mDatabaseManager.saveStateJournal(journalEntries, serviceState, mCurrentList.size())) {
+            // Journal too long or no snapshot available, so save a complete new snapshot
+            mDatabaseManager.saveState(mCurrentList, serviceState, "auto", true);
+        }
     }
 
     private final Timer mStateSaveTimer = new Timer();
@@ -1325,6 +1656,11 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
     private final static int STATE_SYNC_TIMEOUT = 5000;
 
+    /**
+     * Maximum time in ms that a save from another thread waits for the handler thread.
+     */
+    private final static int STATE_SAVE_WAIT_TIMEOUT = 2000;
+
     private void deferredStateSave() {
         synchronized (mStateSaveTimer) {
             cancelDeferredStateSave();
@@ -1348,8 +1684,10 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         public void run() {
             synchronized (mStateSaveTimer) {
                 cancelDeferredStateSave();
-                saveState();
             }
+
+            // the timer does not need to wait for the save
+            mHandler.post(PlaybackService.this::writeState);
         }
     }
 
@@ -1483,7 +1821,8 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         } else {
             TrackModel currentTrack = mCurrentList.get(mCurrentPlayingIndex);
 
-            return new NowPlayingInformation(state, mCurrentPlayingIndex, mRepeat, mRandom, mCurrentList.size(), currentTrack);
+            return new NowPlayingInformation(state, mCurrentPlayingIndex, mRepeat, mRandom, mCurrentList.size(), mCurrentList.getVersion(),
+                    getTrackPosition(), SystemClock.elapsedRealtime(), currentTrack);
         }
     }
 
@@ -1506,32 +1845,8 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
      * @param playlist the {@link PlaylistModel} that represents the playlist
      */
     public void enqueuePlaylist(PlaylistModel playlist) {
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.WORKING);
-        mBusy = true;
-
-        final List<TrackModel> playlistTracks = new ArrayList<>();
-
-        switch (playlist.getPlaylistType()) {
-            case MEDIASTORE:
-                playlistTracks.addAll(MusicLibraryHelper.getTracksForPlaylist(playlist.getPlaylistId(), getApplicationContext()));
-                break;
-            case ODYSSEY_LOCAL:
-                playlistTracks.addAll(mDatabaseManager.getTracksForPlaylist(playlist.getPlaylistId()));
-                break;
-            case FILE:
-                PlaylistParser parser = PlaylistParserFactory.getParser(new FileModel(playlist.getPlaylistPath()));
-                if (parser == null) {
-                    return;
-                }
-                playlistTracks.addAll(parser.parseList(this));
-                break;
-        }
-
         // add tracks to current playlist
-        enqueueTracks(playlistTracks);
-
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.IDLE);
-        mBusy = false;
+        startStreamingEnqueue(createPlaylistProducer(playlist), -1, false);
     }
 
     /**
@@ -1544,9 +1859,36 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     public void playPlaylist(PlaylistModel playlist, int position) {
         clearPlaylist();
 
-        enqueuePlaylist(playlist);
+        startStreamingEnqueue(createPlaylistProducer(playlist), position, false);
+    }
 
-        jumpToIndex(position);
+    /**
+     * Creates the {@link StreamingEnqueueTask.TrackProducer} that loads the tracks of the given playlist.
+     *
+     * @param playlist the {@link PlaylistModel} that represents the playlist that should be loaded
+     */
+    private StreamingEnqueueTask.TrackProducer createPlaylistProducer(final PlaylistModel playlist) {
+        final Context context = getApplicationContext();
+
+        switch (playlist.getPlaylistType()) {
+            case MEDIASTORE:
+                return stream -> MusicLibraryHelper.getTracksForPlaylist(playlist.getPlaylistId(), context, stream);
+            case ODYSSEY_LOCAL:
+                // read the tracks when the command is handled, so the enqueue thread does not add another user
+                // of the database manager next to the handler thread and the autosave timer
+                final List<TrackModel> playlistTracks = mDatabaseManager.getTracksForPlaylist(playlist.getPlaylistId());
+                return stream -> stream.addAll(playlistTracks);
+            case FILE:
+                return stream -> {
+                    PlaylistParser parser = PlaylistParserFactory.getParser(new FileModel(playlist.getPlaylistPath()));
+                    if (parser != null) {
+                        stream.addAll(parser.parseList(context));
+                    }
+                };
+            default:
+                return stream -> {
+                };
+        }
     }
 
     /**
@@ -1560,7 +1902,9 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         clearPlaylist();
 
         // get playlist from database
-        mCurrentList = mDatabaseManager.readBookmarkTracks(timestamp);
+        mCurrentList.addAll(mDatabaseManager.readBookmarkTracks(timestamp));
+        mQueueJournal.insertTracks(0, mCurrentList);
+        publishPlaylistReset();
 
         // get state from database
         OdysseyServiceState state = mDatabaseManager.getState(timestamp);
@@ -1739,21 +2083,8 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
      * @param filterString  A filter that is used to exclude folders/files that didn't contain this String.
      */
     public void enqueueDirectoryAndSubDirectories(String directoryPath, String filterString) {
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.WORKING);
-        mBusy = true;
-
-        final FileModel currentDirectory = new FileModel(directoryPath);
-
-        List<TrackModel> tracks = FileExplorerHelper.getInstance().getTrackModelsForFolderAndSubFolders(getApplicationContext(), currentDirectory, filterString);
-
-        // add tracks to current playlist
-        enqueueTracks(tracks);
-
-        // start meta data extraction for new tracks
-        mMetaDataLoader.getTrackListMetaData(getApplicationContext(), tracks);
-
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.IDLE);
-        mBusy = false;
+        // add tracks to current playlist and start meta data extraction for new tracks afterwards
+        startStreamingEnqueue(createDirectoryProducer(directoryPath, filterString), -1, true);
     }
 
     /**
@@ -1766,9 +2097,103 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     public void playDirectoryAndSubDirectories(String directoryPath, String filterString) {
         clearPlaylist();
 
-        enqueueDirectoryAndSubDirectories(directoryPath, filterString);
+        startStreamingEnqueue(createDirectoryProducer(directoryPath, filterString), 0, true);
+    }
 
-        jumpToIndex(0);
+    /**
+     * Creates the {@link StreamingEnqueueTask.TrackProducer} that walks through the given directory and all subdirectories.
+     *
+     * @param directoryPath the path to the selected directory
+     * @param filterString  A filter that is used to exclude folder/files that didn't contain this String.
+     */
+    private StreamingEnqueueTask.TrackProducer createDirectoryProducer(final String directoryPath, final String filterString) {
+        final Context context = getApplicationContext();
+        final FileModel currentDirectory = new FileModel(directoryPath);
+
+        return stream -> FileExplorerHelper.getInstance().getTrackModelsForFolderAndSubFolders(context, currentDirectory, stream, filterString);
+    }
+
+    /**
+     * Starts loading tracks in the background. The tracks are added in chunks to the end of the playlist.
+     *
+     * @param producer     The {@link StreamingEnqueueTask.TrackProducer} that loads the tracks.
+     * @param playPosition Position in the loaded tracks where playback should start as soon as it is loaded, -1 to only enqueue the tracks.
+     * @param loadMetaData Flag if the meta data of unknown tracks should be extracted after all tracks are loaded.
+     */
+    private void startStreamingEnqueue(StreamingEnqueueTask.TrackProducer producer, int playPosition, boolean loadMetaData) {
+        final StreamingEnqueueTask task = new StreamingEnqueueTask(this, mHandler, producer, playPosition, loadMetaData);
+
+        if (mActiveEnqueueTasks.isEmpty()) {
+            // Notify the user about the possible long running operation
+            mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.WORKING);
+            mBusy = true;
+        }
+
+        mActiveEnqueueTasks.add(task);
+        mEnqueueHandler.post(task);
+    }
+
+    /**
+     * Adds a chunk of tracks of a {@link StreamingEnqueueTask} to the playlist.
+     * Called in the handler thread.
+     */
+    void enqueueStreamedTracks(StreamingEnqueueTask task, List<TrackModel> tracks) {
+        final int startIndex = mCurrentList.size();
+
+        enqueueTracks(tracks);
+
+        task.tracksEnqueued(startIndex, tracks);
+
+        // Start playback as soon as the requested track is available
+        final int playbackIndex = task.getPlaybackIndex();
+        if (playbackIndex >= 0) {
+            task.setPlaybackStarted();
+            jumpToIndex(playbackIndex);
+        }
+    }
+
+    /**
+     * Called in the handler thread when a {@link StreamingEnqueueTask} loaded all its tracks or was cancelled.
+     */
+    void streamingEnqueueFinished(StreamingEnqueueTask task) {
+        mActiveEnqueueTasks.remove(task);
+
+        if (!task.isCancelled()) {
+            if (task.isPlaybackPending()) {
+                // requested position was never loaded, let jumpToIndex handle the invalid position
+                jumpToIndex(task.getPlayPosition());
+            }
+
+            if (task.loadMetaData()) {
+                // start meta data extraction for new tracks
+                mMetaDataLoader.getTrackListMetaData(getApplicationContext(), task.getUnknownTracks());
+            }
+        }
+
+        if (mActiveEnqueueTasks.isEmpty()) {
+            // Notify the user that the operation is now finished
+            mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.IDLE);
+            mBusy = false;
+
+            // execute the commands that waited for the loaded tracks
+            mHandler.resumeCommands();
+        }
+    }
+
+    /**
+     * @return True if a {@link StreamingEnqueueTask} is still adding tracks. Called in the handler thread.
+     */
+    boolean isStreamingEnqueueRunning() {
+        return !mActiveEnqueueTasks.isEmpty();
+    }
+
+    /**
+     * Cancels all running {@link StreamingEnqueueTask}s. Chunks that are not yet added are dropped.
+     */
+    private void cancelStreamingEnqueue() {
+        for (StreamingEnqueueTask task : mActiveEnqueueTasks) {
+            task.cancel();
+        }
     }
 
     /**
@@ -1866,7 +2291,7 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
             // Sets the next track for gapless playing
             if (mNextPlayingIndex >= 0 && mNextPlayingIndex < mCurrentList.size()) {
                 try {
-                    mPlayer.setNextTrack(mCurrentList.get(mNextPlayingIndex).getTrackUri());
+                    mPlayer.setNextTrack(mCurrentList.getTrackUri(mNextPlayingIndex));
                 } catch (GaplessPlayer.PlaybackException e) {
                     handlePlaybackException(e);
                 }
@@ -1882,11 +2307,52 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
                 }
             }
         }
+
+        prefetchUpcomingTracks();
+    }
+
+    /**
+     * Passes the next tracks that will be played to the {@link TrackPrefetcher}.
+     * In random mode only the already selected next track is known.
+     */
+    private void prefetchUpcomingTracks() {
+        final int size = mCurrentList.size();
+        if (mNextPlayingIndex < 0 || mNextPlayingIndex >= size) {
+            return;
+        }
+
+        final List<TrackModel> upcomingTracks = new ArrayList<>(PREFETCH_TRACK_COUNT);
+        upcomingTracks.add(mCurrentList.get(mNextPlayingIndex));
+
+        if (mRandom == RANDOMSTATE.RANDOM_OFF && mRepeat != REPEATSTATE.REPEAT_TRACK) {
+            int index = mNextPlayingIndex;
+            while (upcomingTracks.size() < PREFETCH_TRACK_COUNT) {
+                index++;
+                if (index >= size) {
+                    if (mRepeat != REPEATSTATE.REPEAT_ALL) {
+                        break;
+                    }
+                    index = 0;
+                }
+                if (index == mCurrentPlayingIndex) {
+                    break;
+                }
+                upcomingTracks.add(mCurrentList.get(index));
+            }
+        }
+
+        mTrackPrefetcher.prefetch(upcomingTracks);
     }
 
     public void setSmartRandom(int intelligenceFactor) {
         mTrackRandomGenerator.setEnabled(intelligenceFactor);
-        updateTrackRandomGenerator();
+    }
+
+    /**
+     * Enables or disables that random playback plays every track once before a track is repeated.
+     */
+    public void setRandomNoRepeat(boolean enabled) {
+        mTrackRandomGenerator.setNoRepeat(enabled);
     }
 
     public int getAudioSessionID() {
@@ -2044,22 +2510,34 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
     /**
      * Callback if the parsing of all unknown tracks has finished.
-     * This will update all unknown tracks in the current playlist if they still exist.
+     * This is called in the thread of the {@link MetaDataLoader}, so the playlist update is posted to the handler thread.
      *
      * @param parsedTracks A Map of parsed tracks.
      */
     @Override
     public void metaDataLoaderFinished(Map<String, TrackModel> parsedTracks) {
-        ListIterator<TrackModel> iterator = mCurrentList.listIterator();
+        mHandler.post(() -> updateParsedTracks(parsedTracks));
+    }
 
+    /**
+     * This will update all unknown tracks in the current playlist if they still exist.
+     * Called in the handler thread.
+     *
+     * @param parsedTracks A Map of parsed tracks.
+     */
+    private void updateParsedTracks(Map<String, TrackModel> parsedTracks) {
         boolean updatedNeeded = false;
 
-        while (iterator.hasNext()) {
-            final TrackModel track = iterator.next();
+        final int size = mCurrentList.size();
+        for (int index = 0; index < size; index++) {
+            final TrackModel parsedTrack = parsedTracks.get(mCurrentList.getTrackUriString(index));
 
-            if (parsedTracks.containsKey(track.getTrackUriString())) {
+            if (parsedTrack != null) {
                 // if the track is in the map replace it in the playlist
-                iterator.set(parsedTracks.get(track.getTrackUriString()));
+                final long previousVersion = mCurrentList.getVersion();
+                mCurrentList.set(index, parsedTrack);
+                mQueueJournal.updateTrack(index, parsedTrack);
+                publishPlaylistChange(PlaylistChangeEvent.TYPE.CHANGED, index, 1, previousVersion);
                 updatedNeeded = true;
             }
         }
@@ -2067,9 +2545,6 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         if (updatedNeeded) {
             // notify the UI if an update has occurred
             mPlaybackServiceStatusHelper.updateStatus();
-
-            // update trackRandomGenerator
-            updateTrackRandomGenerator();
         }
     }
 
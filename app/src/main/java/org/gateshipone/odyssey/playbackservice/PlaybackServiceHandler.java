@@ -25,21 +25,76 @@ package org.gateshipone.odyssey.playbackservice;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
+import android.util.Log;
 
 import androidx.annotation.Nullable;
 
+import org.gateshipone.odyssey.BuildConfig;
+
 import java.lang.ref.WeakReference;
-import java.util.concurrent.Semaphore;
+import java.util.ArrayDeque;
 
+/**
+ * Handler that executes all commands of the {@link OdysseyPlaybackServiceInterface} in the handler thread.
+ * <p/>
+ * Incoming commands are never dropped. They are first moved to one of two queues and executed afterwards:
+ * Transport controls (pause, next, previous, seek) are executed ahead of the next chunk of running
+ * {@link StreamingEnqueueTask}s. A task posts only one chunk at a time, so they wait behind at most one chunk.
+ * They only skip other pending commands if none are waiting, so a transport command never overtakes an
+ * earlier command it may depend on. Consecutive seek commands are merged to the last target and consecutive
+ * next commands are merged into one jump.
+ * All other commands keep their order, this includes jumps to a playlist position as they depend on the
+ * playlist state. Commands that add tracks without clearing the playlist wait until all running
+ * {@link StreamingEnqueueTask}s are finished, the commands behind them wait as well.
+ */
 public class PlaybackServiceHandler extends Handler {
+    private static final String TAG = PlaybackServiceHandler.class.getSimpleName();
+
+    /**
+     * Message type to execute the next scheduled command. Messages of the service interface use the default type 0.
+     */
+    private static final int MSG_EXECUTE_COMMAND = 1;
+
+    /**
+     * Latency in milliseconds after which a command is logged in debug builds.
+     */
+    private static final long SLOW_COMMAND_LATENCY = 500;
+
     private final WeakReference<PlaybackService> mService;
 
-    private final Semaphore mLock;
+    /**
+     * Commands waiting for execution. Only accessed in the handler thread.
+     */
+    private final ArrayDeque<ScheduledCommand> mTransportCommands;
+
+    private final ArrayDeque<ScheduledCommand> mQueueCommands;
+
+    /**
+     * Flag if the first queue command waits for running {@link StreamingEnqueueTask}s. Only accessed in the handler thread.
+     */
+    private boolean mWaitingForEnqueue;
+
+    /**
+     * Statistics of the scheduler, printed by {@link PlaybackService#dump}. Only written in the handler thread.
+     */
+    private volatile int mBacklog;
+
+    private volatile long mExecutedCommands;
+
+    private volatile long mMergedCommands;
+
+    private volatile int mMaxBacklog;
+
+    private volatile long mTotalLatency;
+
+    private volatile long mMaxLatency;
 
     public PlaybackServiceHandler(Looper looper, PlaybackService service) {
         super(looper);
         mService = new WeakReference<>(service);
-        mLock = new Semaphore(1);
+        mTransportCommands = new ArrayDeque<>();
+        mQueueCommands = new ArrayDeque<>();
     }
 
     @Override
@@ -48,120 +103,321 @@ public class PlaybackServiceHandler extends Handler {
             return;
         }
 
-        ControlObject msgObj = (ControlObject) msg.obj;
-
-        // Check if object is received
-        if (msgObj != null && mLock.tryAcquire()) {
-            // Parse message
-            switch (msgObj.getAction()) {
-                case ODYSSEY_PLAY:
-                    mService.get().playURI(msgObj.getStringParam());
-                    break;
-                case ODYSSEY_TOGGLEPAUSE:
-                    mService.get().togglePause();
-                    break;
-                case ODYSSEY_NEXT:
-                    mService.get().setNextTrack();
-                    break;
-                case ODYSSEY_PREVIOUS:
-                    mService.get().setPreviousTrack();
-                    break;
-                case ODYSSEY_SEEKTO:
-                    mService.get().seekTo(msgObj.getIntParam());
-                    break;
-                case ODYSSEY_JUMPTO:
-                    mService.get().jumpToIndex(msgObj.getIntParam());
-                    break;
-                case ODYSSEY_REPEAT:
-                    mService.get().toggleRepeat();
-                    break;
-                case ODYSSEY_RANDOM:
-                    mService.get().toggleRandom();
-                    break;
-                case ODYSSEY_ENQUEUETRACK:
-                    mService.get().enqueueTrack(msgObj.getTrack(), msgObj.getBoolParam());
-                    break;
-                case ODYSSEY_PLAYTRACK:
-                    mService.get().playTrack(msgObj.getTrack(), msgObj.getBoolParam());
-                    break;
-                case ODYSSEY_DEQUEUETRACK:
-                    mService.get().dequeueTrack(msgObj.getIntParam());
-                    break;
-                case ODYSSEY_DEQUEUETRACKS:
-                    mService.get().dequeueTracks(msgObj.getIntParam());
-                    break;
-                case ODYSSEY_CLEARPLAYLIST:
-                    mService.get().clearPlaylist();
-                    break;
-                case ODYSSEY_SHUFFLEPLAYLIST:
-                    mService.get().shufflePlaylist();
-                    break;
-                case ODYSSEY_PLAYALLTRACKS:
-                    mService.get().playAllTracks(msgObj.getStringParam());
-                    break;
-                case ODYSSEY_SAVEPLAYLIST:
-                    mService.get().savePlaylist(msgObj.getStringParam());
-                    break;
-                case ODYSSEY_ENQUEUEPLAYLIST:
-                    mService.get().enqueuePlaylist(msgObj.getPlaylist());
-                    break;
-                case ODYSSEY_PLAYPLAYLIST:
-                    mService.get().playPlaylist(msgObj.getPlaylist(), msgObj.getIntParam());
-                    break;
-                case ODYSSEY_RESUMEBOOKMARK:
-                    mService.get().resumeBookmark(msgObj.getLongParam());
-                    break;
-                case ODYSSEY_DELETEBOOKMARK:
-                    mService.get().deleteBookmark(msgObj.getLongParam());
-                    break;
-                case ODYSSEY_CREATEBOOKMARK:
-                    mService.get().createBookmark(msgObj.getStringParam());
-                    break;
-                case ODYSSEY_ENQUEUEFILE:
-                    mService.get().enqueueFile(msgObj.getStringParam(), msgObj.getBoolParam());
-                    break;
-                case ODYSSEY_PLAYFILE:
-                    mService.get().playFile(msgObj.getStringParam(), msgObj.getBoolParam());
-                    break;
-                case ODYSSEY_PLAYDIRECTORY:
-                    mService.get().playDirectory(msgObj.getStringParam(), msgObj.getIntParam());
-                    break;
-                case ODYSSEY_ENQUEUEDIRECTORYANDSUBDIRECTORIES:
-                    mService.get().enqueueDirectoryAndSubDirectories(msgObj.getStringParam(), msgObj.getSecondStringParam());
-                    break;
-                case ODYSSEY_PLAYDIRECTORYANDSUBDIRECTORIES:
-                    mService.get().playDirectoryAndSubDirectories(msgObj.getStringParam(), msgObj.getSecondStringParam());
-                    break;
-                case ODYSSEY_ENQUEUEALBUM:
-                    mService.get().enqueueAlbum(msgObj.getLongParam(), msgObj.getStringParam());
-                    break;
-                case ODYSSEY_PLAYALBUM:
-                    mService.get().playAlbum(msgObj.getLongParam(), msgObj.getStringParam(), msgObj.getIntParam());
-                    break;
-                case ODYSSEY_ENQUEUEARTIST:
-                    mService.get().enqueueArtist(msgObj.getLongParam(), msgObj.getStringParam(), msgObj.getSecondStringParam());
-                    break;
-                case ODYSSEY_PLAYARTIST:
-                    mService.get().playArtist(msgObj.getLongParam(), msgObj.getStringParam(), msgObj.getSecondStringParam());
-                    break;
-                case ODYSSEY_ENQUEUERECENTALBUMS:
-                    mService.get().enqueueRecentAlbums();
-                    break;
-                case ODYSSEY_PLAYRECENTALBUMS:
-                    mService.get().playRecentAlbums();
-                    break;
-                case ODYSSEY_START_SLEEPTIMER:
-                    mService.get().startSleepTimer(msgObj.getLongParam(), msgObj.getBoolParam());
-                    break;
-                case ODYSSEY_CANCEL_SLEEPTIMER:
-                    mService.get().cancelSleepTimer();
-                    break;
-                case ODYSSEY_SET_SMARTRANDOM:
-                    mService.get().setSmartRandom(msgObj.getIntParam());
-                    break;
+        if (msg.what == MSG_EXECUTE_COMMAND) {
+            executeNextCommand();
+        } else if (msg.obj != null) {
+            scheduleCommand((ControlObject) msg.obj, msg.getWhen());
+        }
+    }
+
+    /**
+     * Adds the command to its queue or merges it into a pending command.
+     *
+     * @param controlObject The received command.
+     * @param sendTime      Time in milliseconds ({@link SystemClock#uptimeMillis()}) when the command was sent.
+     */
+    private void scheduleCommand(ControlObject controlObject, long sendTime) {
+        final ControlObject.PLAYBACK_ACTION action = controlObject.getAction();
+
+        // A transport command may depend on a pending queue command (e.g. pause after play), so it is only
+        // preferred if no queue command is pending. Otherwise it keeps its order behind the queue commands.
+        final boolean preferred = isTransportCommand(action) && mQueueCommands.isEmpty();
+        final ArrayDeque<ScheduledCommand> commands = preferred ? mTransportCommands : mQueueCommands;
+
+        final ScheduledCommand lastCommand = commands.peekLast();
+        if (lastCommand != null && lastCommand.mControlObject.getAction() == action) {
+            if (action == ControlObject.PLAYBACK_ACTION.ODYSSEY_SEEKTO) {
+                // only the last seek target matters
+                lastCommand.mControlObject = controlObject;
+                mMergedCommands++;
+                return;
+            } else if (action == ControlObject.PLAYBACK_ACTION.ODYSSEY_NEXT) {
+                // skip multiple tracks at once
+                lastCommand.mRepeatCount++;
+                mMergedCommands++;
+                return;
             }
+        }
+
+        commands.add(new ScheduledCommand(controlObject, sendTime));
+        if (preferred) {
+            sendMessageAtFrontOfQueue(obtainMessage(MSG_EXECUTE_COMMAND));
+        } else {
+            sendMessage(obtainMessage(MSG_EXECUTE_COMMAND));
+        }
+
+        mBacklog = mTransportCommands.size() + mQueueCommands.size();
+        mMaxBacklog = Math.max(mMaxBacklog, mBacklog);
+    }
+
+    /**
+     * Executes the next pending command. Transport commands are preferred.
+     */
+    private void executeNextCommand() {
+        final PlaybackService service = mService.get();
+
+        ScheduledCommand command = mTransportCommands.poll();
+        if (command == null) {
+            command = mQueueCommands.peek();
+
+            if (command != null && service != null && dependsOnStreamingEnqueue(command.mControlObject) && service.isStreamingEnqueueRunning()) {
+                // keep the order of the playlist, the command is executed by resumeCommands()
+                mWaitingForEnqueue = true;
+                return;
+            }
+
+            mQueueCommands.poll();
+        }
+
+        mBacklog = mTransportCommands.size() + mQueueCommands.size();
+
+        if (command == null || service == null) {
+            return;
+        }
+
+        final long latency = SystemClock.uptimeMillis() - command.mSendTime;
+        mTotalLatency += latency;
+        mMaxLatency = Math.max(mMaxLatency, latency);
+        mExecutedCommands++;
+
+        if (BuildConfig.DEBUG && latency > SLOW_COMMAND_LATENCY) {
+            Log.v(TAG, "Command " + command.mControlObject.getAction() + " waited " + latency + " ms, backlog: " + mBacklog);
+        }
+
+        final ControlObject controlObject = command.mControlObject;
+
+        switch (controlObject.getAction()) {
+            case ODYSSEY_PLAY:
+                service.playURI(controlObject.getStringParam());
+                break;
+            case ODYSSEY_TOGGLEPAUSE:
+                service.togglePause();
+                break;
+            case ODYSSEY_NEXT:
+                service.setNextTrack(command.mRepeatCount);
+                break;
+            case ODYSSEY_PREVIOUS:
+                service.setPreviousTrack();
+                break;
+            case ODYSSEY_SEEKTO:
+                service.seekTo(controlObject.getIntParam());
+                break;
+            case ODYSSEY_JUMPTO:
+                service.jumpToIndex(controlObject.getIntParam());
+                break;
+            case ODYSSEY_REPEAT:
+                service.toggleRepeat();
+                break;
+            case ODYSSEY_RANDOM:
+                service.toggleRandom();
+                break;
+            case ODYSSEY_ENQUEUETRACK:
+                service.enqueueTrack(controlObject.getTrack(), controlObject.getBoolParam());
+                break;
+            case ODYSSEY_PLAYTRACK:
+                service.playTrack(controlObject.getTrack(), controlObject.getBoolParam());
+                break;
+            case ODYSSEY_DEQUEUETRACK:
+                service.dequeueTrack(controlObject.getIntParam());
+                break;
+            case ODYSSEY_DEQUEUETRACKS:
+                service.dequeueTracks(controlObject.getIntParam());
+                break;
+            case ODYSSEY_DEQUEUETRACKRANGES:
+                service.dequeueTrackRanges(controlObject.getIntArrayParam());
+                break;
+            case ODYSSEY_CLEARPLAYLIST:
+                service.clearPlaylist();
+                break;
+            case ODYSSEY_SHUFFLEPLAYLIST:
+                service.shufflePlaylist();
+                break;
+            case ODYSSEY_PLAYALLTRACKS:
+                service.playAllTracks(controlObject.getStringParam());
+                break;
+            case ODYSSEY_SAVEPLAYLIST:
+                service.savePlaylist(controlObject.getStringParam());
+                break;
+            case ODYSSEY_ENQUEUEPLAYLIST:
+                service.enqueuePlaylist(controlObject.getPlaylist());
+                break;
+            case ODYSSEY_PLAYPLAYLIST:
+                service.playPlaylist(controlObject.getPlaylist(), controlObject.getIntParam());
+                break;
+            case ODYSSEY_RESUMEBOOKMARK:
+                service.resumeBookmark(controlObject.getLongParam());
+                break;
+            case ODYSSEY_DELETEBOOKMARK:
+                service.deleteBookmark(controlObject.getLongParam());
+                break;
+            case ODYSSEY_CREATEBOOKMARK:
+                service.createBookmark(controlObject.getStringParam());
+                break;
+            case ODYSSEY_ENQUEUEFILE:
+                service.enqueueFile(controlObject.getStringParam(), controlObject.getBoolParam());
+                break;
+            case ODYSSEY_PLAYFILE:
+                service.playFile(controlObject.getStringParam(), controlObject.getBoolParam());
+                break;
+            case ODYSSEY_PLAYDIRECTORY:
+                service.playDirectory(controlObject.getStringParam(), controlObject.getIntParam());
+                break;
+            case ODYSSEY_ENQUEUEDIRECTORYANDSUBDIRECTORIES:
+                service.enqueueDirectoryAndSubDirectories(controlObject.getStringParam(), controlObject.getSecondStringParam());
+                break;
+            case ODYSSEY_PLAYDIRECTORYANDSUBDIRECTORIES:
+                service.playDirectoryAndSubDirectories(controlObject.getStringParam(), controlObject.getSecondStringParam());
+                break;
+            case ODYSSEY_ENQUEUEALBUM:
+                service.enqueueAlbum(controlObject.getLongParam(), controlObject.getStringParam());
+                break;
+            case ODYSSEY_PLAYALBUM:
+                service.playAlbum(controlObject.getLongParam(), controlObject.getStringParam(), controlObject.getIntParam());
+                break;
+            case ODYSSEY_ENQUEUEARTIST:
+                service.enqueueArtist(controlObject.getLongParam(), controlObject.getStringParam(), controlObject.getSecondStringParam());
+                break;
+            case ODYSSEY_PLAYARTIST:
+                service.playArtist(controlObject.getLongParam(), controlObject.getStringParam(), controlObject.getSecondStringParam());
+                break;
+            case ODYSSEY_ENQUEUERECENTALBUMS:
+                service.enqueueRecentAlbums();
+                break;
+            case ODYSSEY_PLAYRECENTALBUMS:
+                service.playRecentAlbums();
+                break;
+            case ODYSSEY_START_SLEEPTIMER:
+                service.startSleepTimer(controlObject.getLongParam(), controlObject.getBoolParam());
+                break;
+            case ODYSSEY_CANCEL_SLEEPTIMER:
+                service.cancelSleepTimer();
+                break;
+            case ODYSSEY_SET_SMARTRANDOM:
+                service.setSmartRandom(controlObject.getIntParam());
+                break;
+            case ODYSSEY_SET_RANDOM_NO_REPEAT:
+                service.setRandomNoRepeat(controlObject.getBoolParam());
+                break;
+        }
+
+    }
+
+    /**
+     * Continues the execution of queue commands that waited for {@link StreamingEnqueueTask}s.
+     * Called in the handler thread after the last running task finished.
+     */
+    void resumeCommands() {
+        if (!mWaitingForEnqueue) {
+            return;
+        }
+
+        mWaitingForEnqueue = false;
+
+        // the messages of the waiting commands were already handled
+        for (int i = 0; i < mQueueCommands.size(); i++) {
+            sendMessage(obtainMessage(MSG_EXECUTE_COMMAND));
+        }
+    }
+
+    /**
+     * Commands that add tracks to the playlist or depend on all of its tracks without clearing it first.
+     * They wait for running {@link StreamingEnqueueTask}s, so tracks that were requested earlier stay in front.
+     */
+    private static boolean dependsOnStreamingEnqueue(ControlObject controlObject) {
+        switch (controlObject.getAction()) {
+            case ODYSSEY_ENQUEUETRACK:
+            case ODYSSEY_ENQUEUEFILE:
+            case ODYSSEY_ENQUEUERECENTALBUMS:
+            case ODYSSEY_DEQUEUETRACK:
+            case ODYSSEY_DEQUEUETRACKS:
+            case ODYSSEY_DEQUEUETRACKRANGES:
+            case ODYSSEY_SHUFFLEPLAYLIST:
+            case ODYSSEY_SAVEPLAYLIST:
+            case ODYSSEY_CREATEBOOKMARK:
+                return true;
+            case ODYSSEY_PLAYTRACK:
+            case ODYSSEY_PLAYFILE:
+                // only if the playlist is not cleared
+                return !controlObject.getBoolParam();
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Commands that should be executed as soon as possible and don't depend on playlist positions.
+     */
+    private static boolean isTransportCommand(ControlObject.PLAYBACK_ACTION action) {
+        switch (action) {
+            case ODYSSEY_TOGGLEPAUSE:
+            case ODYSSEY_NEXT:
+            case ODYSSEY_PREVIOUS:
+            case ODYSSEY_SEEKTO:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return Number of commands that are waiting for execution.
+     */
+    public int getBacklog() {
+        return mBacklog;
+    }
+
+    /**
+     * @return Largest number of commands that were waiting at the same time.
+     */
+    public int getMaxBacklog() {
+        return mMaxBacklog;
+    }
+
+    /**
+     * @return Number of executed commands.
+     */
+    public long getExecutedCommands() {
+        return mExecutedCommands;
+    }
+
+    /**
+     * @return Number of commands that were merged into a pending command.
+     */
+    public long getMergedCommands() {
+        return mMergedCommands;
+    }
+
+    /**
+     * @return Average time in milliseconds between sending and executing a command.
+     */
+    public long getAverageLatency() {
+        final long executedCommands = mExecutedCommands;
+        return executedCommands == 0 ? 0 : mTotalLatency / executedCommands;
+    }
+
+    /**
+     * @return Longest time in milliseconds between sending and executing a command.
+     */
+    public long getMaxLatency() {
+        return mMaxLatency;
+    }
+
+    /**
+     * A command waiting for its execution.
+     */
+    private static class ScheduledCommand {
+        private ControlObject mControlObject;
+
+        private final long mSendTime;
+
+        /**
+         * Number of merged next commands.
+         */
+        private int mRepeatCount = 1;
 
-            mLock.release();
+        private ScheduledCommand(ControlObject controlObject, long sendTime) {
+            mControlObject = controlObject;
+            mSendTime = sendTime;
         }
     }
 }
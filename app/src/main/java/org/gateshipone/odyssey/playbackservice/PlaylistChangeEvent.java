@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.playbackservice;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import androidx.annotation.NonNull;
+
+/**
+ * This class is the parcelable that describes a single change of the current playlist.
+ * <p/>
+ * The changes are sent together with the {@link NowPlayingInformation} so receivers can update
+ * their cached playlist data instead of reloading everything. A change may only be applied
+ * if the receiver's playlist version matches {@link #getPreviousVersion()}.
+ */
+public final class PlaylistChangeEvent implements Parcelable {
+
+    public enum TYPE {
+        // Tracks were inserted at position
+        INSERTED,
+        // Tracks were removed starting at position
+        REMOVED,
+        // Tracks starting at position were replaced
+        CHANGED,
+        // The complete playlist changed
+        RESET
+    }
+
+    // Parcel data
+    private final TYPE mType;
+    private final int mPosition;
+    private final int mCount;
+    private final long mPreviousVersion;
+    private final long mVersion;
+
+    public static final Parcelable.Creator<PlaylistChangeEvent> CREATOR = new Parcelable.Creator<PlaylistChangeEvent>() {
+
+        @Override
+        public PlaylistChangeEvent createFromParcel(Parcel source) {
+            TYPE type = TYPE.values()[source.readInt()];
+            int position = source.readInt();
+            int count = source.readInt();
+            long previousVersion = source.readLong();
+            long version = source.readLong();
+            return new PlaylistChangeEvent(type, position, count, previousVersion, version);
+        }
+
+        @Override
+        public PlaylistChangeEvent[] newArray(int size) {
+            return new PlaylistChangeEvent[size];
+        }
+    };
+
+    public PlaylistChangeEvent(TYPE type, int position, int count, long previousVersion, long version) {
+        mType = type;
+        mPosition = position;
+        mCount = count;
+        mPreviousVersion = previousVersion;
+        mVersion = version;
+    }
+
+    /**
+     * Creates an event that invalidates all playlist data.
+     */
+    public static PlaylistChangeEvent reset(long version) {
+        return new PlaylistChangeEvent(TYPE.RESET, 0, 0, -1, version);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(mType.ordinal());
+        dest.writeInt(mPosition);
+        dest.writeInt(mCount);
+        dest.writeLong(mPreviousVersion);
+        dest.writeLong(mVersion);
+    }
+
+    public TYPE getType() {
+        return mType;
+    }
+
+    public int getPosition() {
+        return mPosition;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Return the playlist version before this change.
+     */
+    public long getPreviousVersion() {
+        return mPreviousVersion;
+    }
+
+    /**
+     * Return the playlist version after this change.
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "Change: " + mType.name() + " position: " + mPosition + " count: " + mCount + " version: " + mPreviousVersion + " -> " + mVersion;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.playbackservice;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import androidx.annotation.NonNull;
+
+import org.gateshipone.odyssey.models.TrackModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parcelable that holds a contiguous range of tracks of the current playlist
+ * together with the version of the playlist the tracks were read from.
+ * <p/>
+ * The PlaybackService may return less tracks than requested to keep the transaction below the binder limit.
+ */
+public final class PlaylistTracksChunk implements Parcelable {
+
+    // Parcel data
+    private final long mPlaylistVersion;
+    private final int mStartIndex;
+    @NonNull
+    private final List<TrackModel> mTracks;
+
+    public static final Parcelable.Creator<PlaylistTracksChunk> CREATOR = new Parcelable.Creator<PlaylistTracksChunk>() {
+
+        @Override
+        public PlaylistTracksChunk createFromParcel(Parcel source) {
+            long playlistVersion = source.readLong();
+            int startIndex = source.readInt();
+            List<TrackModel> tracks = new ArrayList<>();
+            source.readTypedList(tracks, TrackModel.CREATOR);
+            return new PlaylistTracksChunk(playlistVersion, startIndex, tracks);
+        }
+
+        @Override
+        public PlaylistTracksChunk[] newArray(int size) {
+            return new PlaylistTracksChunk[size];
+        }
+    };
+
+    public PlaylistTracksChunk(long playlistVersion, int startIndex, @NonNull List<TrackModel> tracks) {
+        mPlaylistVersion = playlistVersion;
+        mStartIndex = startIndex;
+        mTracks = tracks;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeLong(mPlaylistVersion);
+        dest.writeInt(mStartIndex);
+        dest.writeTypedList(mTracks);
+    }
+
+    public long getPlaylistVersion() {
+        return mPlaylistVersion;
+    }
+
+    public int getStartIndex() {
+        return mStartIndex;
+    }
+
+    @NonNull
+    public List<TrackModel> getTracks() {
+        return mTracks;
+    }
+}
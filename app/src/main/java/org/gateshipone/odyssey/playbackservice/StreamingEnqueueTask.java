@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.playbackservice;
+
+import android.os.Handler;
+
+import org.gateshipone.odyssey.models.TrackModel;
+import org.gateshipone.odyssey.utils.TrackChunkStream;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads tracks in a background thread and passes them in chunks to the {@link PlaybackService}.
+ * <p/>
+ * The chunks are posted to the handler of the PlaybackService, so all playlist changes still happen
+ * in the handler thread and other commands (e.g. transport controls) are handled between the chunks.
+ * Only one chunk is posted at a time, so a command sent to the handler waits behind at most one chunk.
+ */
+class StreamingEnqueueTask implements Runnable, TrackChunkStream.ChunkReceiver {
+
+    /**
+     * Interface for the actual loading of the tracks. This method is called in the background thread.
+     */
+    interface TrackProducer {
+        void loadTracks(TrackChunkStream stream);
+    }
+
+    /**
+     * Interval in milliseconds to check for a cancellation while waiting for the previous chunk.
+     */
+    private static final long CHUNK_WAIT_INTERVAL = 100;
+
+    private final WeakReference<PlaybackService> mService;
+
+    private final Handler mServiceHandler;
+
+    private final TrackProducer mProducer;
+
+    private final TrackChunkStream mStream;
+
+    /**
+     * Permit to post a chunk, released after the posted chunk was handled.
+     */
+    private final Semaphore mChunkPermit = new Semaphore(1);
+
+    /**
+     * Position relative to the first loaded track where playback should start or -1 to only enqueue the tracks.
+     */
+    private final int mPlayPosition;
+
+    /**
+     * Flag if the meta data of unknown tracks should be loaded after the task finished.
+     */
+    private final boolean mLoadMetaData;
+
+    /**
+     * The following fields are only accessed in the handler thread of the PlaybackService.
+     */
+    private int mEnqueuedTrackCount;
+
+    /**
+     * Playlist index of the track at {@link #mPlayPosition} or -1 if its chunk is not yet enqueued.
+     * Each chunk is resolved with its own start index because other commands can change the playlist between chunks.
+     */
+    private int mPlaybackIndex = -1;
+
+    private boolean mPlaybackStarted;
+
+    private final ArrayList<TrackModel> mUnknownTracks = new ArrayList<>();
+
+    StreamingEnqueueTask(PlaybackService service, Handler serviceHandler, TrackProducer producer, int playPosition, boolean loadMetaData) {
+        mService = new WeakReference<>(service);
+        mServiceHandler = serviceHandler;
+        mProducer = producer;
+        mPlayPosition = playPosition;
+        mLoadMetaData = loadMetaData;
+        mStream = new TrackChunkStream(this);
+    }
+
+    @Override
+    public void run() {
+        if (!mStream.isCancelled()) {
+            mProducer.loadTracks(mStream);
+            mStream.flush();
+        }
+
+        mServiceHandler.post(() -> {
+            final PlaybackService service = mService.get();
+            if (service != null) {
+                service.streamingEnqueueFinished(this);
+            }
+        });
+    }
+
+    @Override
+    public void onTracksLoaded(List<TrackModel> tracks) {
+        if (!acquireChunkPermit()) {
+            return;
+        }
+
+        mServiceHandler.post(() -> {
+            try {
+                final PlaybackService service = mService.get();
+                if (service != null && !mStream.isCancelled()) {
+                    service.enqueueStreamedTracks(this, tracks);
+                }
+            } finally {
+                mChunkPermit.release();
+            }
+        });
+    }
+
+    /**
+     * Waits until the previous chunk was handled.
+     *
+     * @return False if the task was cancelled while waiting.
+     */
+    private boolean acquireChunkPermit() {
+        try {
+            while (!mChunkPermit.tryAcquire(CHUNK_WAIT_INTERVAL, TimeUnit.MILLISECONDS)) {
+                if (mStream.isCancelled()) {
+                    return false;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Stops the loading of tracks. Chunks that are not yet enqueued are dropped.
+     */
+    void cancel() {
+        mStream.cancel();
+    }
+
+    boolean isCancelled() {
+        return mStream.isCancelled();
+    }
+
+    /**
+     * Registers tracks that were added to the playlist.
+     *
+     * @param startIndex Position of the first of the tracks in the playlist.
+     * @param tracks     The added tracks.
+     */
+    void tracksEnqueued(int startIndex, List<TrackModel> tracks) {
+        if (mPlayPosition >= mEnqueuedTrackCount && mPlayPosition < mEnqueuedTrackCount + tracks.size()) {
+            mPlaybackIndex = startIndex + mPlayPosition - mEnqueuedTrackCount;
+        }
+
+        mEnqueuedTrackCount += tracks.size();
+
+        if (mLoadMetaData) {
+            for (TrackModel track : tracks) {
+                if (track.getTrackAlbumId() == -1) {
+                    mUnknownTracks.add(track);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The playlist index where playback should start or -1 if it should not (yet) start.
+     */
+    int getPlaybackIndex() {
+        if (mPlaybackStarted) {
+            return -1;
+        }
+
+        return mPlaybackIndex;
+    }
+
+    void setPlaybackStarted() {
+        mPlaybackStarted = true;
+    }
+
+    /**
+     * @return True if playback should have started but the requested position was never loaded.
+     */
+    boolean isPlaybackPending() {
+        return mPlayPosition >= 0 && !mPlaybackStarted;
+    }
+
+    int getPlayPosition() {
+        return mPlayPosition;
+    }
+
+    List<TrackModel> getUnknownTracks() {
+        return mUnknownTracks;
+    }
+
+    boolean loadMetaData() {
+        return mLoadMetaData;
+    }
+}
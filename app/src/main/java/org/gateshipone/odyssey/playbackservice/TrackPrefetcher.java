@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.playbackservice;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.PowerManager;
+import android.os.Process;
+import android.util.Log;
+
+import org.gateshipone.odyssey.BuildConfig;
+import org.gateshipone.odyssey.artwork.ArtworkManager;
+import org.gateshipone.odyssey.artwork.BitmapCache;
+import org.gateshipone.odyssey.artwork.storage.ImageNotFoundException;
+import org.gateshipone.odyssey.models.TrackModel;
+import org.gateshipone.odyssey.utils.MetaDataLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prepares the upcoming tracks of the queue in a background thread, so that the {@link GaplessPlayer}
+ * does not wait for slow storage when the next track is prepared.
+ * <p/>
+ * For every upcoming track the head of the file is read to warm the page cache, missing meta data is
+ * resolved by the {@link MetaDataLoader} and the album artwork is decoded into the bitmap cache.
+ * Every pass is limited by a byte budget and a new request replaces the pending one. If the battery saver
+ * is active only the head of the next track is read.
+ */
+class TrackPrefetcher {
+
+    private static final String TAG = TrackPrefetcher.class.getSimpleName();
+
+    private static final String PREFETCH_THREAD_NAME = "OdysseyPBSPrefetch";
+
+    /**
+     * Number of bytes read from the start of each file.
+     */
+    private static final int HEAD_BYTES = 256 * 1024;
+
+    /**
+     * Maximum number of bytes read in a single pass.
+     */
+    private static final int MAX_BYTES_PER_PASS = 1024 * 1024;
+
+    private static final int READ_BUFFER_SIZE = 32 * 1024;
+
+    /**
+     * Number of recently prefetched tracks that are not read again.
+     */
+    private static final int MAX_RECENT_TRACKS = 32;
+
+    private final Context mContext;
+
+    private final MetaDataLoader mMetaDataLoader;
+
+    private final PowerManager mPowerManager;
+
+    private final HandlerThread mPrefetchThread;
+
+    private final Handler mPrefetchHandler;
+
+    /**
+     * Increased for every request, a running pass stops if it is outdated.
+     */
+    private volatile int mGeneration;
+
+    /**
+     * The following fields are only accessed in the prefetch thread.
+     */
+    private final byte[] mReadBuffer = new byte[READ_BUFFER_SIZE];
+
+    private final Map<String, Boolean> mRecentTracks = new LinkedHashMap<String, Boolean>(MAX_RECENT_TRACKS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_RECENT_TRACKS;
+        }
+    };
+
+    TrackPrefetcher(Context context, MetaDataLoader metaDataLoader) {
+        mContext = context.getApplicationContext();
+        mMetaDataLoader = metaDataLoader;
+        mPowerManager = (PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
+
+        mPrefetchThread = new HandlerThread(PREFETCH_THREAD_NAME, Process.THREAD_PRIORITY_BACKGROUND);
+        mPrefetchThread.start();
+        mPrefetchHandler = new Handler(mPrefetchThread.getLooper());
+    }
+
+    /**
+     * Replaces the pending prefetch request with the given tracks.
+     *
+     * @param tracks Upcoming tracks in the order they will be played.
+     */
+    void prefetch(final List<TrackModel> tracks) {
+        final int generation = ++mGeneration;
+
+        mPrefetchHandler.removeCallbacksAndMessages(null);
+        mPrefetchHandler.post(() -> prefetchTracks(tracks, generation));
+    }
+
+    void quit() {
+        mGeneration++;
+        mPrefetchThread.quit();
+    }
+
+    private void prefetchTracks(final List<TrackModel> tracks, final int generation) {
+        final boolean powerSaveMode = mPowerManager != null && mPowerManager.isPowerSaveMode();
+
+        // back off under battery saver, the GaplessPlayer prepares the next track anyway
+        final int trackCount = powerSaveMode ? Math.min(1, tracks.size()) : tracks.size();
+
+        final ArrayList<TrackModel> unknownTracks = new ArrayList<>();
+        int remainingBytes = MAX_BYTES_PER_PASS;
+
+        for (int i = 0; i < trackCount && remainingBytes > 0; i++) {
+            if (generation != mGeneration) {
+                // a newer request is pending
+                return;
+            }
+
+            final TrackModel track = tracks.get(i);
+            final String uriString = track.getTrackUriString();
+            if (uriString == null || mRecentTracks.put(uriString, Boolean.TRUE) != null) {
+                continue;
+            }
+
+            remainingBytes -= readFileHead(track, Math.min(HEAD_BYTES, remainingBytes));
+
+            if (powerSaveMode) {
+                continue;
+            }
+
+            if (track.getTrackAlbumId() == -1) {
+                unknownTracks.add(track);
+            } else {
+                loadArtwork(track);
+            }
+        }
+
+        if (!unknownTracks.isEmpty()) {
+            mMetaDataLoader.getTrackListMetaData(mContext, unknownTracks);
+        }
+    }
+
+    /**
+     * Reads the start of the file so that the following open of the player is served from the cache.
+     *
+     * @return The number of bytes read.
+     */
+    private int readFileHead(final TrackModel track, final int maxBytes) {
+        int readBytes = 0;
+
+        try (InputStream inputStream = mContext.getContentResolver().openInputStream(track.getTrackUri())) {
+            if (inputStream == null) {
+                return 0;
+            }
+
+            while (readBytes < maxBytes) {
+                final int read = inputStream.read(mReadBuffer, 0, Math.min(mReadBuffer.length, maxBytes - readBytes));
+                if (read < 0) {
+                    break;
+                }
+                readBytes += read;
+            }
+        } catch (IOException | SecurityException e) {
+            if (BuildConfig.DEBUG) {
+                Log.v(TAG, "Could not prefetch: " + track.getTrackUriString());
+            }
+        }
+
+        return readBytes;
+    }
+
+    /**
+     * Decodes the album artwork of the track into the bitmap cache in the resolution used by the status helper.
+     */
+    private void loadArtwork(final TrackModel track) {
+        try {
+            final Bitmap image = ArtworkManager.getInstance(mContext).getImage(track, -1, -1, false);
+
+            // the image is only prefetched and not shown, so it can be reused once it is evicted
+            BitmapCache.getInstance().releaseBitmap(image);
+        } catch (ImageNotFoundException e) {
+            // no artwork available, the download is triggered when the track is played
+        }
+    }
+}
@@ -37,9 +37,12 @@ import org.gateshipone.odyssey.R;
 import org.gateshipone.odyssey.models.TrackModel;
 import org.gateshipone.odyssey.playbackservice.NowPlayingInformation;
 import org.gateshipone.odyssey.playbackservice.PlaybackService;
+import org.gateshipone.odyssey.playbackservice.PlaylistChangeEvent;
 import org.gateshipone.odyssey.playbackservice.RemoteControlReceiver;
 import org.gateshipone.odyssey.utils.CoverBitmapLoader;
 
+import java.util.ArrayList;
+
 public class PlaybackServiceStatusHelper {
     public enum SLS_STATES {SLS_START, SLS_RESUME, SLS_PAUSE, SLS_COMPLETE}
 
@@ -48,6 +51,11 @@ public class PlaybackServiceStatusHelper {
      */
     public static final String INTENT_NOWPLAYINGNAME = "OdysseyNowPlaying";
 
+    /**
+     * INTENT Name of the playlist changes since the last NowPlayingInformation.
+     */
+    public static final String INTENT_PLAYLISTCHANGESNAME = "OdysseyPlaylistChanges";
+
     /**
      * Broadcast message to filter to.
      */
@@ -134,6 +142,8 @@ public class PlaybackServiceStatusHelper {
      * current state of PlaybackService and so on.
      */
     public synchronized void updateStatus() {
+        // Get the playlist changes first, a change in between is then covered by the playlist version
+        ArrayList<PlaylistChangeEvent> playlistChanges = mPlaybackService.drainPlaylistChanges();
         NowPlayingInformation info = mPlaybackService.getNowPlayingInformation();
         TrackModel currentTrack = info.getCurrentTrack();
 
@@ -155,7 +165,7 @@ public class PlaybackServiceStatusHelper {
                 mNotificationManager.updateNotification(currentTrack, currentState, mMediaSession.getSessionToken());
 
                 // Broadcast all the information.
-                broadcastPlaybackInformation(info);
+                broadcastPlaybackInformation(info, playlistChanges);
 
                 // Only update cover image if album changed to preserve energy
                 if (mLastTrack == null || info.getCurrentTrack().getTrackAlbumId() != mLastTrack.getTrackAlbumId()) {
@@ -173,7 +183,7 @@ public class PlaybackServiceStatusHelper {
                 updateMetadata(currentTrack, currentState);
 
                 // Broadcast all the information.
-                broadcastPlaybackInformation(info);
+                broadcastPlaybackInformation(info, playlistChanges);
 
                 // Reset the last track
                 mLastTrack = null;
@@ -184,7 +194,7 @@ public class PlaybackServiceStatusHelper {
                 break;
             case STOPPED:
                 stopMediaSession();
-                broadcastPlaybackInformation(info);
+                broadcastPlaybackInformation(info, playlistChanges);
                 mNotificationManager.clearNotification();
                 break;
         }
@@ -240,9 +250,10 @@ public class PlaybackServiceStatusHelper {
      * Broadcasts the new NowPlayingInformation which is received by multiple instances.
      * NowPlayingView in the GUI, Widget for example receives it.
      *
-     * @param info The current NowPlayingInformation
+     * @param info            The current NowPlayingInformation
+     * @param playlistChanges The playlist changes since the last broadcast
      */
-    private void broadcastPlaybackInformation(NowPlayingInformation info) {
+    private void broadcastPlaybackInformation(NowPlayingInformation info, ArrayList<PlaylistChangeEvent> playlistChanges) {
 
         // Create the broadcast intent
         Intent broadcastIntent = new Intent(MESSAGE_NEWTRACKINFORMATION);
@@ -250,6 +261,7 @@ public class PlaybackServiceStatusHelper {
 
         // Add nowplayingInfo to parcel
         broadcastIntent.putExtra(INTENT_NOWPLAYINGNAME, info);
+        broadcastIntent.putParcelableArrayListExtra(INTENT_PLAYLISTCHANGESNAME, playlistChanges);
 
         // We're good to go, send it away
         mPlaybackService.sendBroadcast(broadcastIntent);
@@ -25,6 +25,7 @@ package org.gateshipone.odyssey.playbackservice.storage;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.net.Uri;
@@ -34,6 +35,7 @@ import org.gateshipone.odyssey.BuildConfig;
 import org.gateshipone.odyssey.models.BookmarkModel;
 import org.gateshipone.odyssey.models.PlaylistModel;
 import org.gateshipone.odyssey.models.TrackModel;
+import org.gateshipone.odyssey.models.TrackQueue;
 import org.gateshipone.odyssey.playbackservice.OdysseyServiceState;
 import org.gateshipone.odyssey.playbackservice.PlaybackService;
 
@@ -51,7 +53,13 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
     /**
      * The version of the database
      */
-    private static final int DATABASE_VERSION = 23;
+    private static final int DATABASE_VERSION = 24;
+
+    /**
+     * Minimum number of journal entries before the autosaved playlist is compacted into a new snapshot.
+     * Above this limit the journal is compacted as soon as it holds more entries than the playlist has tracks.
+     */
+    private static final int JOURNAL_COMPACTION_MIN_ENTRIES = 1000;
 
     private static OdysseyDatabaseManager mInstance;
 
@@ -107,6 +115,29 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
             PlaylistsTracksTable.COLUMN_PLAYLIST_ID
     };
 
+    /**
+     * Array of returned columns from the StateJournal table
+     */
+    private final String[] projectionJournal = {
+            StateJournalTable.COLUMN_OPERATION,
+            StateJournalTable.COLUMN_POSITION,
+            StateJournalTable.COLUMN_VALUE,
+            StateJournalTable.COLUMN_TRACK_NUMBER,
+            StateJournalTable.COLUMN_TRACK_TITLE,
+            StateJournalTable.COLUMN_TRACK_ALBUM,
+            StateJournalTable.COLUMN_TRACK_ALBUM_ID,
+            StateJournalTable.COLUMN_TRACK_DURATION,
+            StateJournalTable.COLUMN_TRACK_ARTIST,
+            StateJournalTable.COLUMN_TRACK_ARTIST_ID,
+            StateJournalTable.COLUMN_TRACK_URL,
+            StateJournalTable.COLUMN_TRACK_ID
+    };
+
+    /**
+     * Number of entries in the StateJournal table, -1 if not yet queried.
+     */
+    private long mJournalSize = -1;
+
     private OdysseyDatabaseManager(final Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
@@ -128,6 +159,7 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
         StateTable.createTable(db);
         PlaylistsTracksTable.createTable(db);
         PlaylistsTable.createTable(db);
+        StateJournalTable.createTable(db);
     }
 
     /**
@@ -155,6 +187,10 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
             PlaylistsTracksTable.createTable(db);
             PlaylistsTable.createTable(db);
         }
+        // journal for the autosaved playlist introduced with version 24
+        if (oldVersion < 24) {
+            StateJournalTable.createTable(db);
+        }
     }
 
     /**
@@ -166,7 +202,7 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
      * @param title    The title of this state
      * @param autosave True if it's an auto generated state
      */
-    public void saveState(List<TrackModel> playList, OdysseyServiceState state, String title, boolean autosave) {
+    public synchronized void saveState(List<TrackModel> playList, OdysseyServiceState state, String title, boolean autosave) {
         if (BuildConfig.DEBUG) {
             Log.v(TAG, "save state");
         }
@@ -211,6 +247,10 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
             }
 
             stateCursor.close();
+
+            // the new snapshot contains all journaled operations
+            odysseyDB.delete(StateJournalTable.TABLE_NAME, null, null);
+            mJournalSize = 0;
         } else {
             // delete the state with the same name from the database if exists
             final Cursor stateCursor = odysseyDB.query(
@@ -286,6 +326,251 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
         odysseyDB.close();
     }
 
+    /**
+     * Append the given journal entries to the autosaved state and update the autosaved state values.
+     * <p>
+     * If no autosaved snapshot exists or the journal grew beyond the compaction limit nothing is written
+     * and the caller has to save a new snapshot with {@link #saveState(List, OdysseyServiceState, String, boolean)}.
+     *
+     * @param entries      The journal entries since the last save.
+     * @param state        The current state
+     * @param playlistSize The current size of the playlist
+     * @return True if the journal was written, false if a new snapshot is required.
+     */
+    public synchronized boolean saveStateJournal(List<QueueJournal.Entry> entries, OdysseyServiceState state, int playlistSize) {
+        final SQLiteDatabase odysseyDB = getWritableDatabase();
+
+        if (mJournalSize < 0) {
+            mJournalSize = DatabaseUtils.queryNumEntries(odysseyDB, StateJournalTable.TABLE_NAME);
+        }
+
+        if (mJournalSize + entries.size() > Math.max(JOURNAL_COMPACTION_MIN_ENTRIES, playlistSize)) {
+            odysseyDB.close();
+            return false;
+        }
+
+        if (BuildConfig.DEBUG) {
+            Log.v(TAG, "save state journal with " + entries.size() + " entries");
+        }
+
+        final ContentValues values = new ContentValues();
+
+        odysseyDB.beginTransaction();
+
+        // update the autosaved state
+        values.put(StateTable.COLUMN_TRACKNUMBER, state.mTrackNumber);
+        values.put(StateTable.COLUMN_TRACKPOSITION, state.mTrackPosition);
+        values.put(StateTable.COLUMN_RANDOM_STATE, state.mRandomState.ordinal());
+        values.put(StateTable.COLUMN_REPEAT_STATE, state.mRepeatState.ordinal());
+        values.put(StateTable.COLUMN_TRACKS, playlistSize);
+
+        final int updatedStates = odysseyDB.update(
+                StateTable.TABLE_NAME,
+                values,
+                StateTable.COLUMN_AUTOSAVE + "=?",
+                new String[]{"1"});
+
+        if (updatedStates == 0) {
+            // no snapshot available
+            odysseyDB.endTransaction();
+            odysseyDB.close();
+            return false;
+        }
+
+        // append the journal
+        for (QueueJournal.Entry entry : entries) {
+            values.clear();
+
+            values.put(StateJournalTable.COLUMN_OPERATION, entry.getOperation().ordinal());
+            values.put(StateJournalTable.COLUMN_POSITION, entry.getPosition());
+            values.put(StateJournalTable.COLUMN_VALUE, entry.getValue());
+
+            final TrackModel item = entry.getTrack();
+            if (item != null) {
+                // set TrackModel parameters
+                values.put(StateJournalTable.COLUMN_TRACK_TITLE, item.getTrackName());
+                values.put(StateJournalTable.COLUMN_TRACK_DURATION, item.getTrackDuration());
+                values.put(StateJournalTable.COLUMN_TRACK_NUMBER, item.getTrackNumber());
+                values.put(StateJournalTable.COLUMN_TRACK_ARTIST, item.getTrackArtistName());
+                values.put(StateJournalTable.COLUMN_TRACK_ALBUM, item.getTrackAlbumName());
+                values.put(StateJournalTable.COLUMN_TRACK_URL, item.getTrackUriString());
+                values.put(StateJournalTable.COLUMN_TRACK_ALBUM_ID, item.getTrackAlbumId());
+                values.put(StateJournalTable.COLUMN_TRACK_ARTIST_ID, item.getTrackArtistId());
+                values.put(StateJournalTable.COLUMN_TRACK_ID, item.getTrackId());
+            }
+
+            odysseyDB.insert(StateJournalTable.TABLE_NAME, null, values);
+        }
+
+        odysseyDB.setTransactionSuccessful();
+        odysseyDB.endTransaction();
+
+        mJournalSize += entries.size();
+
+        // close the connection
+        odysseyDB.close();
+
+        return true;
+    }
+
+    /**
+     * Return all tracks of the autosaved state.
+     * The tracks are read from the last snapshot and all journaled operations are replayed on top of it.
+     *
+     * @return All tracks for the autosaved state as {@link TrackQueue}.
+     */
+    public TrackQueue readAutosaveTracks() {
+
+        final SQLiteDatabase odysseyDB = getReadableDatabase();
+
+        final TrackQueue playList = new TrackQueue();
+
+        // query the autosave timestamp
+        final Cursor stateCursor = odysseyDB.query(
+                StateTable.TABLE_NAME,
+                new String[]{StateTable.COLUMN_BOOKMARK_TIMESTAMP},
+                StateTable.COLUMN_AUTOSAVE + "=?",
+                new String[]{"1"},
+                "",
+                "",
+                StateTable.COLUMN_BOOKMARK_TIMESTAMP + " DESC",
+                "1");
+
+        if (stateCursor.moveToFirst()) {
+            final long timeStamp = stateCursor.getLong(stateCursor.getColumnIndexOrThrow(StateTable.COLUMN_BOOKMARK_TIMESTAMP));
+
+            // get the snapshot tracks for the queried timestamp
+            final Cursor cursor = odysseyDB.query(
+                    StateTracksTable.TABLE_NAME,
+                    projectionTrackModels,
+                    StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP + "=?",
+                    new String[]{Long.toString(timeStamp)},
+                    "",
+                    "",
+                    StateTracksTable.COLUMN_ID);
+
+            if (cursor.moveToFirst()) {
+                do {
+                    final String trackName = cursor.getString(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_TITLE));
+                    final long duration = cursor.getLong(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_DURATION));
+                    final int number = cursor.getInt(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_NUMBER));
+                    final String artistName = cursor.getString(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ARTIST));
+                    final String albumName = cursor.getString(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ALBUM));
+                    final String url = cursor.getString(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_URL));
+                    final long albumId = cursor.getLong(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ALBUM_ID));
+                    final long artistId = cursor.getLong(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ARTIST_ID));
+                    final long id = cursor.getLong(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ID));
+
+                    TrackModel item = new TrackModel(trackName, artistName, artistId, albumName, albumId, duration, number, Uri.parse(url), id);
+
+                    playList.add(item);
+
+                } while (cursor.moveToNext());
+            }
+
+            cursor.close();
+
+            // replay the journal on top of the snapshot
+            QueueJournal.replay(playList, readJournal(odysseyDB));
+        }
+
+        stateCursor.close();
+
+        odysseyDB.close();
+
+        return playList;
+    }
+
+    /**
+     * Return the autosaved state object
+     */
+    public OdysseyServiceState getAutosaveState() {
+
+        final SQLiteDatabase odysseyDB = getReadableDatabase();
+
+        final OdysseyServiceState state = new OdysseyServiceState();
+
+        final Cursor cursor = odysseyDB.query(
+                StateTable.TABLE_NAME,
+                projectionState,
+                StateTable.COLUMN_AUTOSAVE + "=?",
+                new String[]{"1"},
+                "",
+                "",
+                StateTable.COLUMN_BOOKMARK_TIMESTAMP + " DESC",
+                "1");
+
+        if (cursor.moveToFirst()) {
+
+            state.mTrackNumber = cursor.getInt(cursor.getColumnIndexOrThrow(StateTable.COLUMN_TRACKNUMBER));
+            state.mTrackPosition = cursor.getInt(cursor.getColumnIndexOrThrow(StateTable.COLUMN_TRACKPOSITION));
+            state.mRandomState = PlaybackService.RANDOMSTATE.values()[cursor.getInt(cursor.getColumnIndexOrThrow(StateTable.COLUMN_RANDOM_STATE))];
+            state.mRepeatState = PlaybackService.REPEATSTATE.values()[cursor.getInt(cursor.getColumnIndexOrThrow(StateTable.COLUMN_REPEAT_STATE))];
+        }
+
+        cursor.close();
+
+        odysseyDB.close();
+
+        return state;
+    }
+
+    /**
+     * Private method to read all journal entries in the order they were written.
+     *
+     * @param database A reference to the already opened @{@link SQLiteDatabase} instance
+     * @return A list of all journal entries
+     */
+    private List<QueueJournal.Entry> readJournal(final SQLiteDatabase database) {
+        final List<QueueJournal.Entry> entries = new ArrayList<>();
+
+        final QueueJournal.OPERATION[] operations = QueueJournal.OPERATION.values();
+
+        final Cursor cursor = database.query(
+                StateJournalTable.TABLE_NAME,
+                projectionJournal,
+                "",
+                null,
+                "",
+                "",
+                StateJournalTable.COLUMN_ID);
+
+        if (cursor.moveToFirst()) {
+            final int operationColumnIndex = cursor.getColumnIndexOrThrow(StateJournalTable.COLUMN_OPERATION);
+            final int positionColumnIndex = cursor.getColumnIndexOrThrow(StateJournalTable.COLUMN_POSITION);
+            final int valueColumnIndex = cursor.getColumnIndexOrThrow(StateJournalTable.COLUMN_VALUE);
+            final int urlColumnIndex = cursor.getColumnIndexOrThrow(StateJournalTable.COLUMN_TRACK_URL);
+
+            do {
+                final QueueJournal.OPERATION operation = operations[cursor.getInt(operationColumnIndex)];
+                final int position = cursor.getInt(positionColumnIndex);
+                final long value = cursor.getLong(valueColumnIndex);
+
+                TrackModel item = null;
+
+                if (!cursor.isNull(urlColumnIndex)) {
+                    final String trackName = cursor.getString(cursor.getColumnIndexOrThrow(StateJournalTable.COLUMN_TRACK_TITLE));
+                    final long duration = cursor.getLong(cursor.getColumnIndexOrThrow(StateJournalTable.COLUMN_TRACK_DURATION));
+                    final int number = cursor.getInt(cursor.getColumnIndexOrThrow(StateJournalTable.COLUMN_TRACK_NUMBER));
+                    final String artistName = cursor.getString(cursor.getColumnIndexOrThrow(StateJournalTable.COLUMN_TRACK_ARTIST));
+                    final String albumName = cursor.getString(cursor.getColumnIndexOrThrow(StateJournalTable.COLUMN_TRACK_ALBUM));
+                    final String url = cursor.getString(urlColumnIndex);
+                    final long albumId = cursor.getLong(cursor.getColumnIndexOrThrow(StateJournalTable.COLUMN_TRACK_ALBUM_ID));
+                    final long artistId = cursor.getLong(cursor.getColumnIndexOrThrow(StateJournalTable.COLUMN_TRACK_ARTIST_ID));
+                    final long id = cursor.getLong(cursor.getColumnIndexOrThrow(StateJournalTable.COLUMN_TRACK_ID));
+
+                    item = new TrackModel(trackName, artistName, artistId, albumName, albumId, duration, number, Uri.parse(url), id);
+                }
+
+                entries.add(new QueueJournal.Entry(operation, position, value, item));
+            } while (cursor.moveToNext());
+        }
+
+        cursor.close();
+
+        return entries;
+    }
+
     /**
      * Return all tracks from a bookmark.
      *
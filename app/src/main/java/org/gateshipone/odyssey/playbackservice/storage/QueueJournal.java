@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.playbackservice.storage;
+
+import org.gateshipone.odyssey.models.TrackModel;
+import org.gateshipone.odyssey.models.TrackQueue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * In-memory buffer of playlist operations that were not yet written to the database.
+ * <p>
+ * The autosaved playlist is stored as a snapshot in the {@link StateTracksTable} followed by
+ * a journal of operations in the {@link StateJournalTable}. This allows to save the state with
+ * costs depending on the size of the changes instead of the size of the playlist.
+ */
+public class QueueJournal {
+
+    /**
+     * Types of the journaled operations. The ordinal is stored in the database so only append new values.
+     */
+    public enum OPERATION {
+        // Insert a single track at the position
+        INSERT,
+        // Remove a range of tracks starting at the position, value holds the number of tracks
+        REMOVE,
+        // Remove all tracks
+        CLEAR,
+        // Shuffle the playlist, position holds the index of the pinned track and value the seed
+        SHUFFLE,
+        // Replace the track at the position
+        UPDATE
+    }
+
+    /**
+     * A single journal entry.
+     */
+    public static class Entry {
+
+        private final OPERATION mOperation;
+
+        private final int mPosition;
+
+        private final long mValue;
+
+        private final TrackModel mTrack;
+
+        public Entry(final OPERATION operation, final int position, final long value, final TrackModel track) {
+            mOperation = operation;
+            mPosition = position;
+            mValue = value;
+            mTrack = track;
+        }
+
+        public OPERATION getOperation() {
+            return mOperation;
+        }
+
+        public int getPosition() {
+            return mPosition;
+        }
+
+        public long getValue() {
+            return mValue;
+        }
+
+        public TrackModel getTrack() {
+            return mTrack;
+        }
+    }
+
+    /**
+     * List of all operations since the last save.
+     */
+    private final List<Entry> mPendingEntries = new ArrayList<>();
+
+    /**
+     * Journal the insertion of the given tracks starting at the given position.
+     */
+    public synchronized void insertTracks(final int position, final List<TrackModel> tracks) {
+        int index = position;
+        for (TrackModel track : tracks) {
+            mPendingEntries.add(new Entry(OPERATION.INSERT, index++, 0, track));
+        }
+    }
+
+    /**
+     * Journal the insertion of a single track at the given position.
+     */
+    public synchronized void insertTrack(final int position, final TrackModel track) {
+        mPendingEntries.add(new Entry(OPERATION.INSERT, position, 0, track));
+    }
+
+    /**
+     * Journal the removal of count tracks starting at the given position.
+     */
+    public synchronized void removeTracks(final int position, final int count) {
+        if (count > 0) {
+            mPendingEntries.add(new Entry(OPERATION.REMOVE, position, count, null));
+        }
+    }
+
+    /**
+     * Journal the removal of all tracks. All pending entries are obsolete afterwards.
+     */
+    public synchronized void clear() {
+        mPendingEntries.clear();
+        mPendingEntries.add(new Entry(OPERATION.CLEAR, 0, 0, null));
+    }
+
+    /**
+     * Journal a shuffle operation, see {@link #shuffle(List, int, long)}.
+     */
+    public synchronized void shuffle(final int pinnedIndex, final long seed) {
+        mPendingEntries.add(new Entry(OPERATION.SHUFFLE, pinnedIndex, seed, null));
+    }
+
+    /**
+     * Journal the replacement of the track at the given position.
+     */
+    public synchronized void updateTrack(final int position, final TrackModel track) {
+        mPendingEntries.add(new Entry(OPERATION.UPDATE, position, 0, track));
+    }
+
+    /**
+     * Removes and returns all pending entries.
+     */
+    public synchronized List<Entry> drain() {
+        final List<Entry> entries = new ArrayList<>(mPendingEntries);
+        mPendingEntries.clear();
+        return entries;
+    }
+
+    /**
+     * Deterministically shuffles the given list.
+     * If a valid pinned index is given, the pinned track is moved to the start of the list and
+     * only the remaining tracks are shuffled.
+     *
+     * @param list        The list to shuffle.
+     * @param pinnedIndex The index of the track that should be moved to the start or -1.
+     * @param seed        The seed for the random generator.
+     */
+    public static void shuffle(final List<TrackModel> list, final int pinnedIndex, final long seed) {
+        final Random random = new Random(seed);
+
+        if (pinnedIndex >= 0 && pinnedIndex < list.size()) {
+            final TrackModel pinnedItem = list.remove(pinnedIndex);
+            shuffle(list, random);
+            list.add(0, pinnedItem);
+        } else {
+            shuffle(list, random);
+        }
+    }
+
+    private static void shuffle(final List<TrackModel> list, final Random random) {
+        if (list instanceof TrackQueue) {
+            // avoid the creation of track models for each swap
+            ((TrackQueue) list).shuffle(random);
+        } else {
+            Collections.shuffle(list, random);
+        }
+    }
+
+    /**
+     * Applies the given entries in order to the list.
+     * Consecutive inserts are applied as a single range insert.
+     *
+     * @param list    The list the operations are applied to.
+     * @param entries The journal entries in the order they were recorded.
+     */
+    public static void replay(final List<TrackModel> list, final List<Entry> entries) {
+        final List<TrackModel> insertRange = new ArrayList<>();
+        int insertPosition = -1;
+
+        for (Entry entry : entries) {
+            if (entry.mOperation == OPERATION.INSERT && !insertRange.isEmpty() && entry.mPosition == insertPosition + insertRange.size()) {
+                insertRange.add(entry.mTrack);
+                continue;
+            }
+
+            // flush collected inserts before applying a different operation
+            if (!insertRange.isEmpty()) {
+                list.addAll(Math.min(insertPosition, list.size()), insertRange);
+                insertRange.clear();
+            }
+
+            switch (entry.mOperation) {
+                case INSERT:
+                    insertPosition = entry.mPosition;
+                    insertRange.add(entry.mTrack);
+                    break;
+                case REMOVE:
+                    final int start = Math.min(entry.mPosition, list.size());
+                    final int end = (int) Math.min(entry.mPosition + entry.mValue, list.size());
+                    list.subList(start, end).clear();
+                    break;
+                case CLEAR:
+                    list.clear();
+                    break;
+                case SHUFFLE:
+                    shuffle(list, entry.mPosition, entry.mValue);
+                    break;
+                case UPDATE:
+                    if (entry.mPosition >= 0 && entry.mPosition < list.size()) {
+                        list.set(entry.mPosition, entry.mTrack);
+                    }
+                    break;
+            }
+        }
+
+        if (!insertRange.isEmpty()) {
+            list.addAll(Math.min(insertPosition, list.size()), insertRange);
+        }
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.utils;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Pair;
+
+import androidx.annotation.NonNull;
+
+import org.gateshipone.odyssey.adapter.ScrollSpeedAdapter;
+import org.gateshipone.odyssey.artwork.ArtworkManager;
+import org.gateshipone.odyssey.artwork.BitmapCache;
+import org.gateshipone.odyssey.artwork.storage.ImageNotFoundException;
+import org.gateshipone.odyssey.models.AlbumModel;
+import org.gateshipone.odyssey.models.ArtistModel;
+import org.gateshipone.odyssey.models.GenericModel;
+import org.gateshipone.odyssey.models.TrackModel;
+import org.gateshipone.odyssey.viewitems.CoverLoadable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodes the covers of list and grid items with its own pool of worker threads, so that scrolling does not
+ * block other background tasks.
+ * <p/>
+ * Requests are ordered by the distance of their item from the visible range and, for equal distances,
+ * the newest request is decoded first. Requests for the same image are merged into one decode.
+ * A request can be cancelled if its item is recycled, a decode without requests is dropped.
+ */
+public class ArtworkDecodePipeline {
+    private static final String TAG = ArtworkDecodePipeline.class.getSimpleName();
+
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 10;
+
+    private static ArtworkDecodePipeline mInstance;
+
+    /**
+     * Wrapper class for covers
+     */
+    public static class CoverViewHolder {
+        public Pair<Integer, Integer> imageDimension;
+        public CoverLoadable coverLoadable;
+        public ArtworkManager artworkManager;
+        public GenericModel modelItem;
+        public ScrollSpeedAdapter mAdapter;
+    }
+
+    private final ThreadPoolExecutor mExecutor;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Decodes that are queued or running by their image key. Guarded by this object.
+     */
+    private final HashMap<String, DecodeTask> mTasks = new HashMap<>();
+
+    private final AtomicLong mSequence = new AtomicLong();
+
+    private ArtworkDecodePipeline() {
+        final int workerCount = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        mExecutor = new ThreadPoolExecutor(workerCount, workerCount, WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(),
+                runnable -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, TAG + "-" + threadCount.incrementAndGet()));
+        // don't keep idle threads alive
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public static synchronized ArtworkDecodePipeline getInstance() {
+        if (mInstance == null) {
+            mInstance = new ArtworkDecodePipeline();
+        }
+        return mInstance;
+    }
+
+    /**
+     * Requests the cover for the given holder. The image is passed to the {@link CoverLoadable} in the UI thread.
+     *
+     * @param holder   Holder with the model item, the requested size and the receiver of the image.
+     * @param distance Distance of the item from the visible range (0 for visible items).
+     * @return The request that can be used to change the priority or to cancel it.
+     */
+    public Request decode(final CoverViewHolder holder, final int distance) {
+        final Request request = new Request(holder.coverLoadable, holder.mAdapter);
+        request.mPriority = distance;
+        final String key = getKey(holder.modelItem);
+        final int width = holder.imageDimension.first;
+        final int height = holder.imageDimension.second;
+
+        synchronized (this) {
+            DecodeTask task = mTasks.get(key);
+            if (task == null || width > task.mWidth || height > task.mHeight) {
+                task = new DecodeTask(key, holder.artworkManager, holder.modelItem, width, height, distance);
+                mTasks.put(key, task);
+                task.mRequests.add(request);
+                request.mTask = task;
+                mExecutor.execute(task);
+            } else {
+                // merge with the pending decode of the same image
+                task.mRequests.add(request);
+                request.mTask = task;
+                updatePriority(task, Math.min(task.mPriority, distance));
+            }
+        }
+
+        return request;
+    }
+
+    private synchronized void setPriority(final Request request, final int distance) {
+        final DecodeTask task = request.mTask;
+        if (task == null || request.mCancelled) {
+            return;
+        }
+
+        // the most important request of a decode defines its priority
+        request.mPriority = distance;
+        int priority = distance;
+        for (Request otherRequest : task.mRequests) {
+            priority = Math.min(priority, otherRequest.mPriority);
+        }
+        updatePriority(task, priority);
+    }
+
+    private synchronized void cancel(final Request request) {
+        request.mCancelled = true;
+
+        final DecodeTask task = request.mTask;
+        if (task == null) {
+            return;
+        }
+        request.mTask = null;
+        task.mRequests.remove(request);
+
+        if (task.mRequests.isEmpty() && mExecutor.remove(task)) {
+            // nobody waits for the image and the decode did not start yet
+            if (mTasks.get(task.mKey) == task) {
+                mTasks.remove(task.mKey);
+            }
+        }
+    }
+
+    /**
+     * Moves a queued decode to its new position in the queue. Must be called while holding the lock.
+     */
+    private void updatePriority(final DecodeTask task, final int priority) {
+        if (task.mPriority != priority && mExecutor.remove(task)) {
+            task.mPriority = priority;
+            mExecutor.execute(task);
+        }
+    }
+
+    /**
+     * Called by the worker after the decode, passes the image to all requests that are not cancelled.
+     */
+    private void finishTask(final DecodeTask task, final Bitmap image) {
+        final ArrayList<Request> requests;
+        synchronized (this) {
+            if (mTasks.get(task.mKey) == task) {
+                mTasks.remove(task.mKey);
+            }
+            requests = new ArrayList<>(task.mRequests);
+        }
+
+        if (image == null) {
+            return;
+        } else if (requests.isEmpty()) {
+            BitmapCache.getInstance().releaseBitmap(image);
+            return;
+        }
+
+        mMainHandler.post(() -> {
+            int delivered = 0;
+            for (Request request : requests) {
+                if (!request.mCancelled) {
+                    if (request.mAdapter != null) {
+                        request.mAdapter.addImageLoadTime(System.currentTimeMillis() - request.mStartTime);
+                    }
+                    if (delivered > 0) {
+                        // Every view releases the image on its own
+                        BitmapCache.getInstance().retainBitmap(image);
+                    }
+                    request.mCoverLoadable.setImage(image);
+                    delivered++;
+                }
+            }
+
+            if (delivered == 0) {
+                BitmapCache.getInstance().releaseBitmap(image);
+            }
+        });
+    }
+
+    private static String getKey(final GenericModel modelItem) {
+        if (modelItem instanceof ArtistModel) {
+            final ArtistModel artist = (ArtistModel) modelItem;
+            return "artist_" + artist.getArtistID() + "_" + artist.getArtistName();
+        } else if (modelItem instanceof AlbumModel) {
+            final AlbumModel album = (AlbumModel) modelItem;
+            return "album_" + album.getAlbumId() + "_" + album.getAlbumName();
+        } else if (modelItem instanceof TrackModel) {
+            return "track_" + ((TrackModel) modelItem).getTrackAlbumId();
+        }
+        return modelItem.getSectionTitle();
+    }
+
+    /**
+     * A single request for a cover.
+     */
+    public final class Request {
+
+        private final CoverLoadable mCoverLoadable;
+
+        private final ScrollSpeedAdapter mAdapter;
+
+        private final long mStartTime;
+
+        /**
+         * The following fields are guarded by the pipeline.
+         */
+        private DecodeTask mTask;
+
+        private int mPriority;
+
+        private volatile boolean mCancelled;
+
+        private Request(final CoverLoadable coverLoadable, final ScrollSpeedAdapter adapter) {
+            mCoverLoadable = coverLoadable;
+            mAdapter = adapter;
+            mStartTime = System.currentTimeMillis();
+        }
+
+        /**
+         * Updates the distance of the item from the visible range.
+         */
+        public void setPriority(final int distance) {
+            ArtworkDecodePipeline.this.setPriority(this, distance);
+        }
+
+        /**
+         * Cancels the request. The image will not be delivered anymore.
+         */
+        public void cancel() {
+            ArtworkDecodePipeline.this.cancel(this);
+        }
+    }
+
+    /**
+     * Decode of a single image that is shared by all requests for it.
+     */
+    private class DecodeTask implements Runnable, Comparable<DecodeTask> {
+
+        private final String mKey;
+
+        private final ArtworkManager mArtworkManager;
+
+        private final GenericModel mModelItem;
+
+        private final int mWidth;
+
+        private final int mHeight;
+
+        private final long mSequence;
+
+        /**
+         * The following fields are guarded by the pipeline.
+         */
+        private int mPriority;
+
+        private final ArrayList<Request> mRequests = new ArrayList<>();
+
+        private DecodeTask(final String key, final ArtworkManager artworkManager, final GenericModel modelItem, final int width, final int height, final int priority) {
+            mKey = key;
+            mArtworkManager = artworkManager;
+            mModelItem = modelItem;
+            mWidth = width;
+            mHeight = height;
+            mPriority = priority;
+            mSequence = ArtworkDecodePipeline.this.mSequence.incrementAndGet();
+        }
+
+        @Override
+        public int compareTo(@NonNull DecodeTask other) {
+            if (mPriority != other.mPriority) {
+                return Integer.compare(mPriority, other.mPriority);
+            }
+            // newest request first
+            return Long.compare(other.mSequence, mSequence);
+        }
+
+        @Override
+        public void run() {
+            synchronized (ArtworkDecodePipeline.this) {
+                if (mRequests.isEmpty()) {
+                    // all requests were cancelled
+                    if (mTasks.get(mKey) == this) {
+                        mTasks.remove(mKey);
+                    }
+                    return;
+                }
+            }
+
+            finishTask(this, loadImage());
+        }
+
+        private Bitmap loadImage() {
+            Bitmap image = null;
+            // Check if model item is artist or album
+            if (mModelItem instanceof ArtistModel) {
+                ArtistModel artist = (ArtistModel) mModelItem;
+
+                try {
+                    // Check if image is available. If it is not yet fetched it will throw an exception
+                    // If it was already searched for and not found, this will be null.
+                    image = mArtworkManager.getImage(artist, mWidth, mHeight, false);
+                } catch (ImageNotFoundException e) {
+                    // Check if fetching for this item is already ongoing
+                    if (!artist.getFetching()) {
+                        // If not set it as ongoing and request the image fetch.
+                        mArtworkManager.fetchImage(artist);
+                        artist.setFetching(true);
+                    }
+                }
+            } else if (mModelItem instanceof AlbumModel) {
+                AlbumModel album = (AlbumModel) mModelItem;
+
+                try {
+                    // Check if image is available. If it is not yet fetched it will throw an exception.
+                    // If it was already searched for and not found, this will be null.
+                    image = mArtworkManager.getImage(album, mWidth, mHeight, false);
+                } catch (ImageNotFoundException e) {
+                    // Check if fetching for this item is already ongoing
+                    if (!album.getFetching()) {
+                        // If not set it as ongoing and request the image fetch.
+                        mArtworkManager.fetchImage(album);
+                        album.setFetching(true);
+                    }
+                }
+            } else if (mModelItem instanceof TrackModel) {
+                TrackModel track = (TrackModel) mModelItem;
+
+                try {
+                    // Check if image is available. If it is not yet fetched it will throw an exception.
+                    // If it was already searched for and not found, this will be null.
+                    image = mArtworkManager.getImage(track, mWidth, mHeight, false);
+                } catch (ImageNotFoundException e) {
+                    // If not set it as ongoing and request the image fetch.
+                    mArtworkManager.fetchImage(track);
+                }
+            }
+            return image;
+        }
+    }
+}
@@ -26,10 +26,15 @@ package org.gateshipone.odyssey.utils;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 
+import org.gateshipone.odyssey.artwork.BitmapCache;
+
+import java.nio.ByteBuffer;
+
 public class BitmapUtils {
 
     /**
-     * Resize retrieved bitmap if necessary
+     * Resize retrieved bitmap if necessary.
+     * The decode reuses the memory of an evicted bitmap from the {@link BitmapCache} if possible.
      */
     public static Bitmap decodeSampledBitmapFromFile(String pathName, int reqWidth, int reqHeight) {
 
@@ -48,9 +53,55 @@ public class BitmapUtils {
 
         // Decode bitmap with inSampleSize set
         options.inJustDecodeBounds = false;
+        BitmapCache.getInstance().setReusableBitmap(options);
+
+        if (options.inBitmap != null) {
+            // decodeFile does not throw but returns null if the reused bitmap does not fit the image
+            final Bitmap bitmap = BitmapFactory.decodeFile(pathName, options);
+            if (bitmap != null) {
+                return bitmap;
+            }
+
+            // decode into a new one
+            options.inBitmap = null;
+        }
         return BitmapFactory.decodeFile(pathName, options);
     }
 
+    /**
+     * Resize retrieved bitmap if necessary.
+     * The image is decoded directly from the buffer, e.g. a mapped slice of a file, without copying it first.
+     */
+    public static Bitmap decodeSampledBitmapFromBuffer(ByteBuffer data, int reqWidth, int reqHeight) {
+
+        // First decode with inJustDecodeBounds=true to check dimensions
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeStream(new ByteBufferInputStream(data), null, options);
+
+        // Calculate inSampleSize
+        if (reqWidth <= 0 && reqHeight <= 0) {
+            // check if the layout of the view already set
+            options.inSampleSize = 1;
+        } else {
+            options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
+        }
+
+        // Decode bitmap with inSampleSize set
+        options.inJustDecodeBounds = false;
+        BitmapCache.getInstance().setReusableBitmap(options);
+
+        if (options.inBitmap != null) {
+            try {
+                return BitmapFactory.decodeStream(new ByteBufferInputStream(data), null, options);
+            } catch (IllegalArgumentException e) {
+                // The reused bitmap does not fit the image, decode into a new one
+                options.inBitmap = null;
+            }
+        }
+        return BitmapFactory.decodeStream(new ByteBufferInputStream(data), null, options);
+    }
+
     /**
      * Resize retrieved bitmap if necessary
      */
@@ -24,6 +24,7 @@ package org.gateshipone.odyssey.utils;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.os.Process;
 
 import org.gateshipone.odyssey.artwork.ArtworkManager;
 import org.gateshipone.odyssey.artwork.BitmapCache;
@@ -32,12 +33,51 @@ import org.gateshipone.odyssey.models.AlbumModel;
 import org.gateshipone.odyssey.models.ArtistModel;
 import org.gateshipone.odyssey.models.TrackModel;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads album and artist images asynchronously for a single {@link CoverBitmapReceiver}.
+ * <p/>
+ * All loaders share a small thread pool. A new request of a loader supersedes its previous request of the
+ * same kind (album or artist), so only the latest image is delivered. Loads of the same image that are
+ * in flight are shared between all loaders.
+ */
 public class CoverBitmapLoader {
 
+    private static final int LOADER_THREAD_COUNT = 2;
+
+    private static final long LOADER_KEEP_ALIVE_SECONDS = 10;
+
+    private static final ThreadPoolExecutor sExecutor = createExecutor();
+
+    /**
+     * Image loads that are in flight by their album or artist key, used to share a load between requests.
+     */
+    private static final HashMap<String, SharedImageLoad> sInFlightLoads = new HashMap<>();
+
     private final CoverBitmapReceiver mListener;
 
     private final Context mApplicationContext;
 
+    /**
+     * Generation of the latest request, older requests are dropped.
+     */
+    private final AtomicInteger mAlbumGeneration = new AtomicInteger();
+
+    private final AtomicInteger mArtistGeneration = new AtomicInteger();
+
+    /**
+     * Latest queued runner for each kind, it is removed from the queue if superseded.
+     */
+    private Runnable mPendingAlbumRunner;
+
+    private Runnable mPendingArtistRunner;
+
     public CoverBitmapLoader(Context context, CoverBitmapReceiver listener) {
         mApplicationContext = context.getApplicationContext();
         mListener = listener;
@@ -48,9 +88,8 @@ public class CoverBitmapLoader {
      */
     public void getImage(final TrackModel track, final int width, final int height) {
         if (track != null && track.getTrackAlbumId() != -1) {
-            // start the loader thread to load the image async
-            final Thread loaderThread = new Thread(new TrackAlbumImageRunner(track, width, height));
-            loaderThread.start();
+            // start the loader to load the image async
+            submitAlbumRunner(new TrackAlbumImageRunner(track, width, height, mAlbumGeneration.incrementAndGet()));
         }
     }
 
@@ -59,9 +98,8 @@ public class CoverBitmapLoader {
             return;
         }
 
-        // start the loader thread to load the image async
-        final Thread loaderThread = new Thread(new ArtistImageRunner(artist, width, height));
-        loaderThread.start();
+        // start the loader to load the image async
+        submitArtistRunner(new ArtistImageRunner(artist, null, width, height, mArtistGeneration.incrementAndGet()));
     }
 
     public void getAlbumImage(final AlbumModel album, final int width, final int height) {
@@ -69,9 +107,8 @@ public class CoverBitmapLoader {
             return;
         }
 
-        // start the loader thread to load the image async
-        final Thread loaderThread = new Thread(new AlbumImageRunner(album, width, height));
-        loaderThread.start();
+        // start the loader to load the image async
+        submitAlbumRunner(new AlbumImageRunner(album, width, height, mAlbumGeneration.incrementAndGet()));
     }
 
     public void getArtistImage(final TrackModel track, final int width, final int height) {
@@ -79,95 +116,209 @@ public class CoverBitmapLoader {
             return;
         }
 
-        // start the loader thread to load the image async
-        final Thread loaderThread = new Thread(new TrackArtistImageRunner(track, width, height));
-        loaderThread.start();
+        // start the loader to load the image async, the artist is resolved in the loader thread
+        submitArtistRunner(new ArtistImageRunner(null, track, width, height, mArtistGeneration.incrementAndGet()));
     }
 
-    private class TrackAlbumImageRunner implements Runnable {
+    private synchronized void submitAlbumRunner(final Runnable runner) {
+        if (mPendingAlbumRunner != null) {
+            sExecutor.remove(mPendingAlbumRunner);
+        }
+        mPendingAlbumRunner = runner;
+        sExecutor.execute(runner);
+    }
 
-        private final int mWidth;
+    private synchronized void submitArtistRunner(final Runnable runner) {
+        if (mPendingArtistRunner != null) {
+            sExecutor.remove(mPendingArtistRunner);
+        }
+        mPendingArtistRunner = runner;
+        sExecutor.execute(runner);
+    }
 
-        private final int mHeight;
+    private boolean isCurrentAlbumRequest(final int generation) {
+        return mAlbumGeneration.get() == generation;
+    }
 
-        private final TrackModel mTrack;
+    private boolean isCurrentArtistRequest(final int generation) {
+        return mArtistGeneration.get() == generation;
+    }
 
-        private TrackAlbumImageRunner(final TrackModel track, final int width, final int height) {
-            mTrack = track;
-            mWidth = width;
-            mHeight = height;
+    /**
+     * Loads the image for the given album in the requested size and delivers it if the request is still current.
+     */
+    private void loadAlbumImage(final AlbumModel album, final int width, final int height, final int generation) {
+        // At first get image independent of resolution (can be replaced later with higher resolution)
+        final Bitmap image = BitmapCache.getInstance().requestAlbumBitmap(album);
+        if (image != null) {
+            mListener.receiveAlbumBitmap(image);
         }
 
-        /**
-         * Load the image for the given track from the mediastore.
-         */
-        @Override
-        public void run() {
-            // At first get image independent of resolution (can be replaced later with higher resolution)
-            final AlbumModel album = MusicLibraryHelper.createAlbumModelFromId(mTrack.getTrackAlbumId(), mApplicationContext);
-            if (album == null) {
-                // No album found for track, abort
+        // If image was to small get it in the right resolution
+        if (image == null || !(width <= image.getWidth() && height <= image.getHeight())) {
+            loadShared("album_" + album.getAlbumId() + "_" + album.getAlbumName(), width, height,
+                    () -> {
+                        try {
+                            final Bitmap bitmap = ArtworkManager.getInstance(mApplicationContext).getImage(album, width, height, true);
+                            // Replace image with higher resolution one
+                            BitmapCache.getInstance().putAlbumBitmap(album, bitmap);
+                            return bitmap;
+                        } catch (ImageNotFoundException e) {
+                            // Try to fetch the image here
+                            ArtworkManager.getInstance(mApplicationContext).fetchImage(album);
+                            return null;
+                        }
+                    },
+                    bitmap -> {
+                        if (bitmap != null && isCurrentAlbumRequest(generation)) {
+                            mListener.receiveAlbumBitmap(bitmap);
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Loads the image for the given artist in the requested size and delivers it if the request is still current.
+     */
+    private void loadArtistImage(final ArtistModel artist, final int width, final int height, final int generation) {
+        // At first get image independent of resolution (can be replaced later with higher resolution)
+        final Bitmap image = BitmapCache.getInstance().requestArtistImage(artist);
+        mListener.receiveArtistBitmap(image);
+
+        // If image was to small get it in the right resolution
+        if (image == null || !(width <= image.getWidth() && height <= image.getHeight())) {
+            loadShared("artist_" + artist.getArtistID() + "_" + artist.getArtistName(), width, height,
+                    () -> {
+                        try {
+                            final Bitmap bitmap = ArtworkManager.getInstance(mApplicationContext).getImage(artist, width, height, true);
+                            // Replace image with higher resolution one
+                            BitmapCache.getInstance().putArtistImage(artist, bitmap);
+                            return bitmap;
+                        } catch (ImageNotFoundException e) {
+                            ArtworkManager.getInstance(mApplicationContext).fetchImage(artist);
+                            return null;
+                        }
+                    },
+                    bitmap -> {
+                        if (bitmap != null && isCurrentArtistRequest(generation)) {
+                            mListener.receiveArtistBitmap(bitmap);
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Runs the source unless a load for the same key with at least the requested size is in flight.
+     * In that case the receiver is attached to the running load instead.
+     */
+    private static void loadShared(final String key, final int width, final int height, final ImageSource source, final ImageReceiver receiver) {
+        final SharedImageLoad load;
+        synchronized (sInFlightLoads) {
+            final SharedImageLoad runningLoad = sInFlightLoads.get(key);
+            if (runningLoad != null && width <= runningLoad.mWidth && height <= runningLoad.mHeight) {
+                runningLoad.mReceivers.add(receiver);
                 return;
             }
 
-            Bitmap image = BitmapCache.getInstance().requestAlbumBitmap(album);
-            if (image != null) {
-                mListener.receiveAlbumBitmap(image);
-            }
+            load = new SharedImageLoad(width, height);
+            load.mReceivers.add(receiver);
+            sInFlightLoads.put(key, load);
+        }
 
-            try {
-                // If image was to small get it in the right resolution
-                if (image == null || !(mWidth <= image.getWidth() && mHeight <= image.getHeight())) {
-                    image = ArtworkManager.getInstance(mApplicationContext).getImage(album, mWidth, mHeight, true);
-                    mListener.receiveAlbumBitmap(image);
-                    // Replace image with higher resolution one
-                    BitmapCache.getInstance().putAlbumBitmap(album, image);
+        Bitmap bitmap = null;
+        try {
+            bitmap = source.load();
+        } finally {
+            final ArrayList<ImageReceiver> receivers;
+            synchronized (sInFlightLoads) {
+                if (sInFlightLoads.get(key) == load) {
+                    sInFlightLoads.remove(key);
                 }
-            } catch (ImageNotFoundException e) {
-                // Try to fetch the image here
-                ArtworkManager.getInstance(mApplicationContext).fetchImage(mTrack);
+                receivers = new ArrayList<>(load.mReceivers);
+            }
+
+            for (ImageReceiver imageReceiver : receivers) {
+                imageReceiver.onImageLoaded(bitmap);
             }
         }
     }
 
-    private class ArtistImageRunner implements Runnable {
+    private static ThreadPoolExecutor createExecutor() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(LOADER_THREAD_COUNT, LOADER_THREAD_COUNT,
+                LOADER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, "CoverBitmapLoader-" + threadCount.incrementAndGet()));
+        // don't keep idle threads alive
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private interface ImageSource {
+        Bitmap load();
+    }
+
+    private interface ImageReceiver {
+        void onImageLoaded(Bitmap bitmap);
+    }
+
+    /**
+     * A load in flight with its requested size and all receivers waiting for it.
+     */
+    private static class SharedImageLoad {
 
         private final int mWidth;
 
         private final int mHeight;
 
-        private final ArtistModel mArtist;
+        private final ArrayList<ImageReceiver> mReceivers = new ArrayList<>();
 
-        private ArtistImageRunner(final ArtistModel artist, final int width, final int height) {
-            mArtist = artist;
+        private SharedImageLoad(final int width, final int height) {
             mWidth = width;
             mHeight = height;
         }
+    }
+
+    private class TrackAlbumImageRunner implements Runnable {
+
+        private final int mWidth;
+
+        private final int mHeight;
+
+        private final TrackModel mTrack;
+
+        private final int mGeneration;
+
+        private TrackAlbumImageRunner(final TrackModel track, final int width, final int height, final int generation) {
+            mTrack = track;
+            mWidth = width;
+            mHeight = height;
+            mGeneration = generation;
+        }
 
         /**
-         * Load the image for the given artist from the mediastore.
+         * Load the image for the given track from the mediastore.
          */
         @Override
         public void run() {
-            // At first get image independent of resolution (can be replaced later with higher resolution)
-            Bitmap image = BitmapCache.getInstance().requestArtistImage(mArtist);
-            mListener.receiveArtistBitmap(image);
-
-            // If image was to small get it in the right resolution
-            if (image == null || !(mWidth <= image.getWidth() && mHeight <= image.getHeight())) {
-                try {
-                    image = ArtworkManager.getInstance(mApplicationContext).getImage(mArtist, mWidth, mHeight, true);
-                    mListener.receiveArtistBitmap(image);
-                    // Replace image with higher resolution one
-                    BitmapCache.getInstance().putArtistImage(mArtist, image);
-                } catch (ImageNotFoundException e) {
-                    ArtworkManager.getInstance(mApplicationContext).fetchImage(mArtist);
-                }
+            if (!isCurrentAlbumRequest(mGeneration)) {
+                // superseded by a newer request
+                return;
             }
+
+            final AlbumModel album = MusicLibraryHelper.createAlbumModelFromId(mTrack.getTrackAlbumId(), mApplicationContext);
+            if (album == null) {
+                // No album found for track, abort
+                return;
+            }
+
+            loadAlbumImage(album, mWidth, mHeight, mGeneration);
         }
     }
 
-    private class TrackArtistImageRunner implements Runnable {
+    private class ArtistImageRunner implements Runnable {
 
         private final int mWidth;
 
@@ -175,11 +326,19 @@ public class CoverBitmapLoader {
 
         private final ArtistModel mArtist;
 
-        private TrackArtistImageRunner(final TrackModel trackModel, final int width, final int height) {
-            long artistId = MusicLibraryHelper.getArtistIDFromName(trackModel.getTrackArtistName(), mApplicationContext);
-            mArtist = new ArtistModel(trackModel.getTrackArtistName(), artistId);
+        /**
+         * Track to resolve the artist from if no artist is given.
+         */
+        private final TrackModel mTrack;
+
+        private final int mGeneration;
+
+        private ArtistImageRunner(final ArtistModel artist, final TrackModel track, final int width, final int height, final int generation) {
+            mArtist = artist;
+            mTrack = track;
             mWidth = width;
             mHeight = height;
+            mGeneration = generation;
         }
 
         /**
@@ -187,21 +346,18 @@ public class CoverBitmapLoader {
          */
         @Override
         public void run() {
-            // At first get image independent of resolution (can be replaced later with higher resolution)
-            Bitmap image = BitmapCache.getInstance().requestArtistImage(mArtist);
-            mListener.receiveArtistBitmap(image);
-
-            // If image was to small get it in the right resolution
-            if (image == null || !(mWidth <= image.getWidth() && mHeight <= image.getHeight())) {
-                try {
-                    image = ArtworkManager.getInstance(mApplicationContext).getImage(mArtist, mWidth, mHeight, true);
-                    mListener.receiveArtistBitmap(image);
-                    // Replace image with higher resolution one
-                    BitmapCache.getInstance().putArtistImage(mArtist, image);
-                } catch (ImageNotFoundException e) {
-                    ArtworkManager.getInstance(mApplicationContext).fetchImage(mArtist);
-                }
+            if (!isCurrentArtistRequest(mGeneration)) {
+                // superseded by a newer request
+                return;
             }
+
+            ArtistModel artist = mArtist;
+            if (artist == null) {
+                long artistId = MusicLibraryHelper.getArtistIDFromName(mTrack.getTrackArtistName(), mApplicationContext);
+                artist = new ArtistModel(mTrack.getTrackArtistName(), artistId);
+            }
+
+            loadArtistImage(artist, mWidth, mHeight, mGeneration);
         }
     }
 
@@ -213,10 +369,13 @@ public class CoverBitmapLoader {
 
         private final AlbumModel mAlbum;
 
-        private AlbumImageRunner(AlbumModel album, int width, int height) {
+        private final int mGeneration;
+
+        private AlbumImageRunner(AlbumModel album, int width, int height, int generation) {
             mAlbum = album;
             mWidth = width;
             mHeight = height;
+            mGeneration = generation;
         }
 
         /**
@@ -224,24 +383,12 @@ public class CoverBitmapLoader {
          */
         @Override
         public void run() {
-            // At first get image independent of resolution (can be replaced later with higher resolution)
-            Bitmap image = BitmapCache.getInstance().requestAlbumBitmap(mAlbum);
-            if (image != null) {
-                mListener.receiveAlbumBitmap(image);
+            if (!isCurrentAlbumRequest(mGeneration)) {
+                // superseded by a newer request
+                return;
             }
 
-            try {
-                // If image was to small get it in the right resolution
-                if (image == null || !(mWidth <= image.getWidth() && mHeight <= image.getHeight())) {
-                    image = ArtworkManager.getInstance(mApplicationContext).getImage(mAlbum, mWidth, mHeight, true);
-                    mListener.receiveAlbumBitmap(image);
-                    // Replace image with higher resolution one
-                    BitmapCache.getInstance().putAlbumBitmap(mAlbum, image);
-                }
-            } catch (ImageNotFoundException e) {
-                // Try to fetch the image here
-                ArtworkManager.getInstance(mApplicationContext).fetchImage(mAlbum);
-            }
+            loadAlbumImage(mAlbum, mWidth, mHeight, mGeneration);
         }
     }
 
@@ -253,4 +400,4 @@ public class CoverBitmapLoader {
 
         void receiveArtistBitmap(Bitmap bm);
     }
-}
\ No newline at end of file
+}
@@ -244,17 +244,25 @@ public class FileExplorerHelper {
     public List<TrackModel> getTrackModelsForFolderAndSubFolders(Context context, FileModel folder, String filterString) {
         List<TrackModel> tracks = new ArrayList<>();
         // check current folder and subfolders for music files
-        getTrackModelsForFolderAndSubFolders(context, folder, tracks, filterString);
+        TrackChunkStream stream = new TrackChunkStream(tracks::addAll);
+        getTrackModelsForFolderAndSubFolders(context, folder, stream, filterString);
+        stream.flush();
 
         return tracks;
     }
 
     /**
-     * add TrackModel objects for the current folder and all subfolders to the tracklist
+     * add TrackModel objects for the current folder and all subfolders to the stream
      *
+     * @param stream       The {@link TrackChunkStream} that receives the tracks. The stream is not flushed.
      * @param filterString A filter that is used to exclude folders/files that didn't contain this String.
+     * @return False if the stream was cancelled.
      */
-    private void getTrackModelsForFolderAndSubFolders(Context context, FileModel folder, List<TrackModel> tracks, String filterString) {
+    public boolean getTrackModelsForFolderAndSubFolders(Context context, FileModel folder, TrackChunkStream stream, String filterString) {
+        if (stream.isCancelled()) {
+            return false;
+        }
+
         if (folder.isFile()) {
             if (filterString == null || filterString.isEmpty() || folder.getName().toLowerCase().contains(filterString)) {
                 // file is not a directory so create a trackmodel for the file
@@ -262,11 +270,10 @@ public class FileExplorerHelper {
                     // Parse the playlist file with a parser
                     PlaylistParser parser = PlaylistParserFactory.getParser(folder);
                     if (parser != null) {
-
-                        tracks.addAll(parser.parseList(context));
+                        return stream.addAll(parser.parseList(context));
                     }
                 } else {
-                    tracks.add(getDummyTrackModelForFile(folder));
+                    return stream.add(getDummyTrackModelForFile(folder));
                 }
             }
         } else {
@@ -275,9 +282,13 @@ public class FileExplorerHelper {
             for (FileModel file : files) {
                 if (filterString == null || filterString.isEmpty() || file.getName().toLowerCase().contains(filterString)) {
                     // call method for all files found in this folder
-                    getTrackModelsForFolderAndSubFolders(context, file, tracks, null);
+                    if (!getTrackModelsForFolderAndSubFolders(context, file, stream, null)) {
+                        return false;
+                    }
                 }
             }
         }
+
+        return true;
     }
 }
@@ -29,8 +29,6 @@ import android.provider.DocumentsContract;
 import android.provider.MediaStore;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.List;
@@ -72,8 +70,19 @@ public class FileUtils {
             }
         }
 
+        return createSHA256HashForBytes(input.toString().getBytes());
+    }
+
+    /**
+     * Create a SHA256 Hash for the given data.
+     *
+     * @param data The input that will be hashed.
+     * @return The result as a hex string.
+     * @throws NoSuchAlgorithmException If SHA-256 is not available.
+     */
+    public static String createSHA256HashForBytes(final byte[] data) throws NoSuchAlgorithmException {
         final MessageDigest md = MessageDigest.getInstance("SHA-256");
-        md.update(input.toString().getBytes());
+        md.update(data);
 
         final byte[] bytes = md.digest();
 
@@ -89,26 +98,6 @@ public class FileUtils {
         return hexString.toString();
     }
 
-    /**
-     * Saves an image byte array in a file in the given directory.
-     *
-     * @param context  The application context to get the files directory of the app.
-     * @param fileName The name that will be used to save the file.
-     * @param dirName  The directory name in which the file is saved.
-     * @param image    The image byte array that will be saved in a file.
-     * @throws IOException If the file couldn't be written.
-     */
-    public static void saveArtworkFile(final Context context, final String fileName, final String dirName, final byte[] image) throws IOException {
-        final File artworkDir = new File(context.getFilesDir() + "/" + ARTWORK_DIR + "/" + dirName + "/");
-        artworkDir.mkdirs();
-
-        final File imageFile = new File(artworkDir, fileName);
-
-        final FileOutputStream outputStream = new FileOutputStream(imageFile);
-        outputStream.write(image);
-        outputStream.close();
-    }
-
     /**
      * Generates the full absolute file path for an artwork image
      *
@@ -121,18 +110,6 @@ public class FileUtils {
         return context.getFilesDir() + "/" + ARTWORK_DIR + "/" + dirName + "/" + fileName;
     }
 
-    /**
-     * Removes a file from the given directory.
-     *
-     * @param context  The application context to get the files directory of the app.
-     * @param fileName The name of the file.
-     * @param dirName  The name of the parent directory of the file.
-     */
-    public static void removeArtworkFile(final Context context, final String fileName, final String dirName) {
-        final File artworkFile = new File(context.getFilesDir() + "/" + ARTWORK_DIR + "/" + dirName + "/" + fileName);
-        artworkFile.delete();
-    }
-
     /**
      * Removes the given directory.
      *
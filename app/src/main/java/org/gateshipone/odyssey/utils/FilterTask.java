@@ -24,75 +24,133 @@ package org.gateshipone.odyssey.utils;
 
 import android.os.AsyncTask;
 
-import androidx.core.util.Pair;
-
 import org.gateshipone.odyssey.models.GenericModel;
 
-import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-public class FilterTask<T extends GenericModel> extends AsyncTask<String, Void, Pair<List<T>, String>> {
+public class FilterTask<T extends GenericModel> extends AsyncTask<String, Void, FilterTask.Result<T>> {
 
-    public interface SuccessCallback<T> {
-        void onSuccess(final Pair<List<T>, String> result);
+    public interface SuccessCallback<T extends GenericModel> {
+        void onSuccess(final Result<T> result);
     }
 
     public interface FailureCallback {
         void onFailure();
     }
 
-    public interface Filter<T> {
-        boolean matchesFilter(final T elem, final String filterString);
+    public interface IndexProvider<T> {
+        /**
+         * Called from the background thread.
+         *
+         * @return The {@link SearchIndex} for the given model data.
+         */
+        SearchIndex getSearchIndex(final List<T> modelData);
+    }
+
+    /**
+     * Result of the filtering. All members are immutable.
+     */
+    public static class Result<T extends GenericModel> {
+        /**
+         * The model data that was filtered
+         */
+        public final List<T> mModelData;
+
+        /**
+         * Sections of the model data, null if no sections were requested
+         */
+        public final SectionCreator.Sections<T> mModelSections;
+
+        public final String mFilterString;
+
+        /**
+         * Result of the filter, null for an empty filter string
+         */
+        public final List<T> mFilteredModelData;
+
+        /**
+         * Sections of the filtered model data, null if no sections were requested
+         */
+        public final SectionCreator.Sections<T> mSections;
+
+        private Result(final List<T> modelData, final SectionCreator.Sections<T> modelSections, final String filterString, final List<T> filteredModelData, final SectionCreator.Sections<T> sections) {
+            mModelData = modelData;
+            mModelSections = modelSections;
+            mFilterString = filterString;
+            mFilteredModelData = filteredModelData;
+            mSections = sections;
+        }
     }
 
-    private final Filter<T> mFilter;
+    private final IndexProvider<T> mIndexProvider;
+
+    private final SectionCreator<T> mSectionCreator;
 
     private final SuccessCallback<T> mSuccessCallback;
 
     private final FailureCallback mFailureCallback;
 
-    private final WeakReference<List<T>> mModelDataRef;
+    private final List<T> mModelData;
 
-    private final ReentrantReadWriteLock.ReadLock mReadLock;
+    private final SectionCreator.Sections<T> mModelSections;
 
-    public FilterTask(final List<T> modelData, final ReentrantReadWriteLock.ReadLock readLock, final Filter<T> filter, final SuccessCallback<T> successCallback, final FailureCallback failureCallback) {
-        mModelDataRef = new WeakReference<>(modelData);
-        mFilter = filter;
+    /**
+     * @param modelData      The model data to filter, it must not be modified while the task runs.
+     * @param modelSections  Already created sections of the model data or null if they still have to be created.
+     * @param sectionCreator Creates the sections of the model data and the result, may be null.
+     */
+    public FilterTask(final List<T> modelData, final SectionCreator.Sections<T> modelSections, final IndexProvider<T> indexProvider, final SectionCreator<T> sectionCreator, final SuccessCallback<T> successCallback, final FailureCallback failureCallback) {
+        mModelData = modelData;
+        mModelSections = modelSections;
+        mIndexProvider = indexProvider;
+        mSectionCreator = sectionCreator;
         mSuccessCallback = successCallback;
         mFailureCallback = failureCallback;
-        mReadLock = readLock;
     }
 
     @Override
-    protected Pair<List<T>, String> doInBackground(String... lists) {
-        List<T> resultList = new ArrayList<>();
-
+    protected Result<T> doInBackground(String... lists) {
         String filterString = lists[0];
-        mReadLock.lock();
-        for (T elem : mModelDataRef.get()) {
-            // Check if task was cancelled from the outside.
-            if (isCancelled()) {
-                resultList.clear();
-                mReadLock.unlock();
-                return new Pair<>(resultList, filterString);
-            }
-            if (mFilter.matchesFilter(elem, filterString)) {
-                resultList.add(elem);
+
+        SectionCreator.Sections<T> modelSections = null;
+        if (mSectionCreator != null) {
+            // the sections of large lists are expensive, so they are never created in the UI thread
+            modelSections = mModelSections != null ? mModelSections : mSectionCreator.createSections(mModelData);
+        }
+
+        if (filterString.isEmpty()) {
+            return new Result<>(mModelData, modelSections, filterString, null, null);
+        }
+
+        final int[] positions = mIndexProvider.getSearchIndex(mModelData).search(filterString);
+
+        final List<T> resultList;
+        if (mModelData instanceof PagedModelList) {
+            // Keep the result paged, models are only created for visible rows
+            resultList = ((PagedModelList<T>) mModelData).select(positions);
+        } else {
+            resultList = new ArrayList<>(positions.length);
+            for (int position : positions) {
+                // Check if task was cancelled from the outside.
+                if (isCancelled()) {
+                    return null;
+                }
+                resultList.add(mModelData.get(position));
             }
         }
 
-        mReadLock.unlock();
-        return new Pair<>(resultList, filterString);
+        final SectionCreator.Sections<T> sections = mSectionCreator != null ? mSectionCreator.createSections(resultList) : null;
+
+        return new Result<>(mModelData, modelSections, filterString, resultList, sections);
     }
 
-    public final AsyncTask<String, Void, Pair<List<T>, String>> execute(String filterString) {
+    public final AsyncTask<String, Void, Result<T>> execute(String filterString) {
         return super.execute(filterString);
     }
 
     @Override
-    protected void onPostExecute(Pair<List<T>, String> result) {
+    protected void onPostExecute(Result<T> result) {
         if (!isCancelled()) {
             mSuccessCallback.onSuccess(result);
         } else {
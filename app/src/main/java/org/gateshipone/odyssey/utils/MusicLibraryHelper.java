@@ -31,6 +31,7 @@ import android.provider.MediaStore;
 import android.text.TextUtils;
 
 import androidx.annotation.Nullable;
+import androidx.collection.LongSparseArray;
 
 import org.gateshipone.odyssey.R;
 import org.gateshipone.odyssey.models.AlbumModel;
@@ -46,11 +47,10 @@ import org.gateshipone.odyssey.utils.MediaStoreProjections.ProjectionTracks;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 public class MusicLibraryHelper {
@@ -61,6 +61,16 @@ public class MusicLibraryHelper {
      */
     private static final int recentDateLimit = (4 * 7 * 24 * 3600);
 
+    /**
+     * Maximum age of the cached recent albums in seconds (1 hour)
+     */
+    private static final int recentCacheTimeout = 3600;
+
+    /**
+     * Cached recent albums, guarded by the class lock
+     */
+    private static RecentLibrary mRecentLibrary;
+
     /**
      * Return the artistId for the given artistname
      *
@@ -69,6 +79,12 @@ public class MusicLibraryHelper {
      * @return artistId if found or -1 if not found.
      */
     public static long getArtistIDFromName(final String artistName, final Context context) {
+        final MusicLibraryIndex.Snapshot snapshot = MusicLibraryIndex.getInstance(context).getSnapshotIfLoaded();
+        if (snapshot != null) {
+            final Long artistId = snapshot.mArtistIdsByName.get(artistName);
+            return artistId == null ? -1 : artistId;
+        }
+
         long artistId = -1;
 
         final String[] whereVal = {artistName};
@@ -100,6 +116,14 @@ public class MusicLibraryHelper {
      */
     @Nullable
     public static AlbumModel createAlbumModelFromId(final long albumId, final Context context) {
+        final MusicLibraryIndex.Snapshot snapshot = MusicLibraryIndex.getInstance(context).getSnapshotIfLoaded();
+        if (snapshot != null) {
+            final Integer albumIndex = snapshot.mAlbumIndices.get(albumId);
+            if (albumIndex != null) {
+                return createAlbumModel(snapshot, albumIndex);
+            }
+        }
+
         final String[] whereVal = {String.valueOf(albumId)};
 
         final String where = ProjectionAlbums.ID + "=?";
@@ -185,19 +209,30 @@ public class MusicLibraryHelper {
     public static List<TrackModel> getTracksForAlbum(final long albumId, final String orderKey, final Context context) {
         final List<TrackModel> albumTracks = new ArrayList<>();
 
+        final TrackChunkStream stream = new TrackChunkStream(albumTracks::addAll);
+        getTracksForAlbum(albumId, orderKey, context, stream);
+        stream.flush();
+
+        return albumTracks;
+    }
+
+    /**
+     * Loads all tracks of an album and passes them to the given stream.
+     *
+     * @param albumId  The id to identify the album in the MediaStore
+     * @param orderKey String to specify the order of the tracks
+     * @param context  The application context to access the content resolver.
+     * @param stream   The {@link TrackChunkStream} that receives the tracks. The stream is not flushed.
+     * @return False if the stream was cancelled.
+     */
+    public static boolean getTracksForAlbum(final long albumId, final String orderKey, final Context context, final TrackChunkStream stream) {
+        boolean running = true;
+
         final String[] whereVal = {String.valueOf(albumId), "1"};
 
         final String where = ProjectionTracks.ALBUM_ID + "=? AND " + ProjectionTracks.IS_MUSIC + "=?";
 
-        String orderBy;
-
-        if (orderKey.equals(context.getString(R.string.pref_album_tracks_sort_number_key))) {
-            orderBy = ProjectionTracks.TRACK;
-        } else if (orderKey.equals(context.getString(R.string.pref_album_tracks_sort_name_key))) {
-            orderBy = ProjectionTracks.DISPLAY_NAME;
-        } else {
-            orderBy = ProjectionTracks.TRACK;
-        }
+        final String orderBy = getAlbumTracksOrder(orderKey, context);
 
         final Cursor cursor = PermissionHelper.query(context, MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, ProjectionTracks.PROJECTION, where, whereVal, orderBy);
 
@@ -216,15 +251,92 @@ public class MusicLibraryHelper {
                     final Uri uri = ContentUris.withAppendedId(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, id);
 
                     // add current track
-                    albumTracks.add(new TrackModel(trackName, artistName, artistId, albumName, albumId, duration, number, uri, id));
+                    running = stream.add(new TrackModel(trackName, artistName, artistId, albumName, albumId, duration, number, uri, id));
 
-                } while (cursor.moveToNext());
+                } while (running && cursor.moveToNext());
             }
 
             cursor.close();
         }
 
-        return albumTracks;
+        return running;
+    }
+
+    /**
+     * Return a paged list of all tracks of an album. The models of tracks that are part of the library index
+     * are created from the index when they are accessed. Tracks that are not part of the index yet are created
+     * from the query, so the list has the same positions as {@link #getTracksForAlbum}.
+     *
+     * @param albumId  The id to identify the album in the MediaStore
+     * @param orderKey String to specify the order of the tracks
+     * @param context  The application context to access the content resolver.
+     * @return The paged list of {@link TrackModel} of all tracks for the given album.
+     */
+    public static List<TrackModel> getPagedTracksForAlbum(final long albumId, final String orderKey, final Context context) {
+        final MusicLibraryIndex.Snapshot snapshot = MusicLibraryIndex.getInstance(context).getSnapshot();
+
+        // positions of the album tracks in the index
+        final LongSparseArray<Integer> trackPositions = new LongSparseArray<>();
+        for (int i = 0; i < snapshot.getTrackCount(); i++) {
+            if (snapshot.mTrackAlbumIds[i] == albumId) {
+                trackPositions.put(snapshot.mTrackIds[i], i);
+            }
+        }
+
+        final String[] whereVal = {String.valueOf(albumId), "1"};
+
+        final String where = ProjectionTracks.ALBUM_ID + "=? AND " + ProjectionTracks.IS_MUSIC + "=?";
+
+        final String orderBy = getAlbumTracksOrder(orderKey, context);
+
+        final Cursor cursor = PermissionHelper.query(context, MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, ProjectionTracks.PROJECTION, where, whereVal, orderBy);
+
+        int[] positions = new int[0];
+        final ArrayList<TrackModel> unindexedTracks = new ArrayList<>();
+
+        if (cursor != null) {
+            positions = new int[cursor.getCount()];
+            int count = 0;
+
+            if (cursor.moveToFirst()) {
+                final int idColumn = cursor.getColumnIndexOrThrow(ProjectionTracks.ID);
+                do {
+                    final long id = cursor.getLong(idColumn);
+                    final Integer position = trackPositions.get(id);
+                    if (position != null) {
+                        positions[count++] = position;
+                    } else {
+                        // track is not part of the index yet, use the model of the query instead
+                        final String trackName = cursor.getString(cursor.getColumnIndexOrThrow(ProjectionTracks.TITLE));
+                        final long duration = cursor.getLong(cursor.getColumnIndexOrThrow(ProjectionTracks.DURATION));
+                        final int number = cursor.getInt(cursor.getColumnIndexOrThrow(ProjectionTracks.TRACK));
+                        final String artistName = cursor.getString(cursor.getColumnIndexOrThrow(ProjectionTracks.ARTIST));
+                        final String albumName = cursor.getString(cursor.getColumnIndexOrThrow(ProjectionTracks.ALBUM));
+                        final long artistId = cursor.getLong(cursor.getColumnIndexOrThrow(ProjectionTracks.ARTIST_ID));
+
+                        final Uri uri = ContentUris.withAppendedId(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, id);
+
+                        unindexedTracks.add(new TrackModel(trackName, artistName, artistId, albumName, albumId, duration, number, uri, id));
+                        positions[count++] = -unindexedTracks.size();
+                    }
+                } while (cursor.moveToNext() && count < positions.length);
+            }
+
+            cursor.close();
+            positions = Arrays.copyOf(positions, count);
+        }
+
+        return new TrackList(snapshot, positions, unindexedTracks);
+    }
+
+    private static String getAlbumTracksOrder(final String orderKey, final Context context) {
+        if (orderKey.equals(context.getString(R.string.pref_album_tracks_sort_number_key))) {
+            return ProjectionTracks.TRACK;
+        } else if (orderKey.equals(context.getString(R.string.pref_album_tracks_sort_name_key))) {
+            return ProjectionTracks.DISPLAY_NAME;
+        } else {
+            return ProjectionTracks.TRACK;
+        }
     }
 
     /**
@@ -237,7 +349,27 @@ public class MusicLibraryHelper {
      * @return The list of {@link TrackModel} of all tracks for the given artist in the specified order.
      */
     public static List<TrackModel> getTracksForArtist(final long artistId, final String albumOrderKey, final String trackOrderKey, final Context context) {
-        List<TrackModel> artistTracks = new ArrayList<>();
+        final List<TrackModel> artistTracks = new ArrayList<>();
+
+        final TrackChunkStream stream = new TrackChunkStream(artistTracks::addAll);
+        getTracksForArtist(artistId, albumOrderKey, trackOrderKey, context, stream);
+        stream.flush();
+
+        return artistTracks;
+    }
+
+    /**
+     * Loads all tracks of an artist and passes them to the given stream.
+     *
+     * @param artistId      The id to identify the artist in the MediaStore
+     * @param albumOrderKey String to specify the order of the artist albums
+     * @param trackOrderKey String to specify the order of the tracks
+     * @param context       The application context to access the content resolver.
+     * @param stream        The {@link TrackChunkStream} that receives the tracks. The stream is not flushed.
+     * @return False if the stream was cancelled.
+     */
+    public static boolean getTracksForArtist(final long artistId, final String albumOrderKey, final String trackOrderKey, final Context context, final TrackChunkStream stream) {
+        boolean running = true;
 
         String orderBy;
 
@@ -256,14 +388,14 @@ public class MusicLibraryHelper {
             if (cursor.moveToFirst()) {
                 do {
                     long albumId = cursor.getLong(cursor.getColumnIndexOrThrow(ProjectionAlbums.ID));
-                    artistTracks.addAll(getTracksForAlbum(albumId, trackOrderKey, context));
-                } while (cursor.moveToNext());
+                    running = getTracksForAlbum(albumId, trackOrderKey, context, stream);
+                } while (running && cursor.moveToNext());
             }
 
             cursor.close();
         }
 
-        return artistTracks;
+        return running;
     }
 
     /**
@@ -277,6 +409,25 @@ public class MusicLibraryHelper {
     public static List<TrackModel> getTracksForPlaylist(final long playlistId, final Context context) {
         final List<TrackModel> playlistTracks = new ArrayList<>();
 
+        final TrackChunkStream stream = new TrackChunkStream(playlistTracks::addAll);
+        getTracksForPlaylist(playlistId, context, stream);
+        stream.flush();
+
+        return playlistTracks;
+    }
+
+    /**
+     * Loads all tracks of a playlist and passes them to the given stream.
+     *
+     * @param playlistId The id to identify the playlist in the MediaStore
+     * @param context    The application context to access the content resolver.
+     * @param stream     The {@link TrackChunkStream} that receives the tracks. The stream is not flushed.
+     * @return False if the stream was cancelled.
+     * @deprecated Starting with API Level 30 the support for playlists in the mediastore will end.
+     */
+    public static boolean getTracksForPlaylist(final long playlistId, final Context context, final TrackChunkStream stream) {
+        boolean running = true;
+
         final Cursor cursor = PermissionHelper.query(context, MediaStore.Audio.Playlists.Members.getContentUri("external", playlistId), ProjectionPlaylistTracks.PROJECTION, "", null, "");
 
         if (cursor != null) {
@@ -295,15 +446,15 @@ public class MusicLibraryHelper {
                     final Uri uri = ContentUris.withAppendedId(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, id);
 
                     // add the track
-                    playlistTracks.add(new TrackModel(trackName, artistName, artistId, albumName, albumId, duration, number, uri, id));
+                    running = stream.add(new TrackModel(trackName, artistName, artistId, albumName, albumId, duration, number, uri, id));
 
-                } while (cursor.moveToNext());
+                } while (running && cursor.moveToNext());
             }
 
             cursor.close();
         }
 
-        return playlistTracks;
+        return running;
     }
 
     /**
@@ -313,208 +464,159 @@ public class MusicLibraryHelper {
      * @return The list of {@link AlbumModel} of all albums found in the MediaStore that were added in the last 4 weeks.
      */
     public static List<AlbumModel> getRecentAlbums(final Context context) {
-        final List<AlbumModel> recentAlbums = new ArrayList<>();
-
-        // get recent tracks
-        // filter non music and tracks older than 4 weeks
-        final long fourWeeksAgo = (System.currentTimeMillis() / 1000) - recentDateLimit;
-
-        final String[] whereVal = {"1", String.valueOf(fourWeeksAgo)};
-
-        final String where = ProjectionTracks.IS_MUSIC + "=? AND " + ProjectionTracks.DATE_ADDED + ">?";
-
-        final Cursor recentTracksCursor = PermissionHelper.query(context, MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, new String[]{ProjectionTracks.ALBUM_ID, ProjectionTracks.DATE_ADDED}, where, whereVal, ProjectionTracks.ALBUM_ID);
-
-        // get all albums
-        final Cursor albumsCursor = PermissionHelper.query(context, MediaStore.Audio.Albums.EXTERNAL_CONTENT_URI, ProjectionAlbums.PROJECTION, "", null, ProjectionAlbums.ID);
-
-        if (recentTracksCursor != null && albumsCursor != null) {
-            if (recentTracksCursor.moveToFirst() && albumsCursor.moveToFirst()) {
-
-                final int albumIdColumnIndex = albumsCursor.getColumnIndexOrThrow(ProjectionAlbums.ID);
-                final int albumTitleColumnIndex = albumsCursor.getColumnIndexOrThrow(ProjectionAlbums.ALBUM);
-                final int imagePathColumnIndex = albumsCursor.getColumnIndexOrThrow(ProjectionAlbums.ALBUM_ART);
-                final int artistTitleColumnIndex = albumsCursor.getColumnIndexOrThrow(ProjectionAlbums.ARTIST);
-                final int numberOfSongsColumnIndex = albumsCursor.getColumnIndexOrThrow(ProjectionAlbums.NUMER_OF_SONGS);
+        final RecentLibrary recentLibrary = getRecentLibrary(context);
+        final MusicLibraryIndex.Snapshot snapshot = recentLibrary.mSnapshot;
 
-                final int recentTracksAlbumIdColumnIndex = recentTracksCursor.getColumnIndexOrThrow(ProjectionTracks.ALBUM_ID);
-                final int recentTracksDateAddedColumnIndex = recentTracksCursor.getColumnIndexOrThrow(ProjectionTracks.DATE_ADDED);
+        final List<AlbumModel> recentAlbums = new ArrayList<>(recentLibrary.mAlbumIndices.length);
+        for (int i = 0; i < recentLibrary.mAlbumIndices.length; i++) {
+            final int albumIndex = recentLibrary.mAlbumIndices[i];
 
-                do {
-                    if (albumsCursor.getLong(albumIdColumnIndex) == recentTracksCursor.getLong(recentTracksAlbumIdColumnIndex)) {
-                        final long albumId = albumsCursor.getLong(albumIdColumnIndex);
-                        final String albumTitle = albumsCursor.getString(albumTitleColumnIndex);
-                        final String imagePath = albumsCursor.getString(imagePathColumnIndex);
-                        final String artistTitle = albumsCursor.getString(artistTitleColumnIndex);
-                        final int numberOfSongs = albumsCursor.getInt(numberOfSongsColumnIndex) > 0 ? albumsCursor.getInt(numberOfSongsColumnIndex) : 1;
-
-                        final int dateInMillis = recentTracksCursor.getInt(recentTracksDateAddedColumnIndex);
-
-                        // add the album
-                        recentAlbums.add(new AlbumModel(albumTitle, imagePath, artistTitle, albumId, dateInMillis));
-
-                        // workaround because no group command is allowed in ContentResolver query
-                        boolean isEnd;
-                        do {
-                            isEnd = !recentTracksCursor.move(numberOfSongs);
-
-                            if (isEnd) {
-                                break;
-                            }
-                        } while (albumId == recentTracksCursor.getLong(recentTracksAlbumIdColumnIndex));
-
-                        if (isEnd) {
-                            break;
-                        }
-                    }
-
-                } while (albumsCursor.moveToNext());
-            }
-
-            albumsCursor.close();
-            recentTracksCursor.close();
+            recentAlbums.add(new AlbumModel(snapshot.mAlbumNames[albumIndex], snapshot.mAlbumArtURLs[albumIndex], snapshot.mAlbumArtistNames[albumIndex],
+                    snapshot.mAlbumIds[albumIndex], recentLibrary.mAlbumDates[i]));
         }
 
-        // sort the recent albums
-        Collections.sort(recentAlbums, (o1, o2) -> {
-            // sort by date descending
-            if (o1.getDateAdded() < o2.getDateAdded()) {
-                return 1;
-            } else if (o1.getDateAdded() == o2.getDateAdded()) {
-                // if equal date sort by key
-                return Long.compare(o1.getAlbumId(), o2.getAlbumId());
-            } else {
-                return -1;
-            }
-        });
-
         return recentAlbums;
     }
 
     /**
-     * Generates a {@link Map} of recent added dates per AlbumKey to unify the dates per album
+     * Return a list of all tracks add in the last 4 weeks.
      *
      * @param context The application context to access the content resolver.
-     * @return HashMap of dates per AlbumKey
+     * @return The list of {@link TrackModel} of all tracks found in the MediaStore that were added in the last 4 weeks.
      */
-    private static Map<Long, Integer> getRecentAlbumDates(final Context context) {
-        final HashMap<Long, Integer> recentDates = new HashMap<>();
-
-        // get recent tracks
-        // filter non music and tracks older than 4 weeks
-        final long fourWeeksAgo = (System.currentTimeMillis() / 1000) - recentDateLimit;
-
-        final String[] whereVal = {"1", String.valueOf(fourWeeksAgo)};
-
-        final String where = ProjectionTracks.IS_MUSIC + "=? AND " + ProjectionTracks.DATE_ADDED + ">?";
-
-        final Cursor recentTracksCursor = PermissionHelper.query(context, MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, new String[]{ProjectionTracks.ALBUM_ID, ProjectionTracks.DATE_ADDED}, where, whereVal, ProjectionTracks.ALBUM_ID);
-
-        // get all albums
-        final Cursor albumsCursor = PermissionHelper.query(context, MediaStore.Audio.Albums.EXTERNAL_CONTENT_URI, ProjectionAlbums.PROJECTION, "", null, ProjectionAlbums.ID);
-
-        if (recentTracksCursor != null && albumsCursor != null) {
-            if (recentTracksCursor.moveToFirst() && albumsCursor.moveToFirst()) {
-
-                final int albumIdColumnIndex = albumsCursor.getColumnIndexOrThrow(ProjectionAlbums.ID);
-                final int numberOfSongsColumnIndex = albumsCursor.getColumnIndexOrThrow(ProjectionAlbums.NUMER_OF_SONGS);
-
-                final int recentTracksAlbumIdColumnIndex = recentTracksCursor.getColumnIndexOrThrow(ProjectionTracks.ALBUM_ID);
-                final int recentTracksDateAddedColumnIndex = recentTracksCursor.getColumnIndexOrThrow(ProjectionTracks.DATE_ADDED);
-
-                do {
-                    if (albumsCursor.getLong(albumIdColumnIndex) == recentTracksCursor.getLong(recentTracksAlbumIdColumnIndex)) {
-                        final long albumId = albumsCursor.getLong(albumIdColumnIndex);
-                        final int numberOfSongs = albumsCursor.getInt(numberOfSongsColumnIndex) > 0 ? albumsCursor.getInt(numberOfSongsColumnIndex) : 1;
-
-                        final int dateInMillis = recentTracksCursor.getInt(recentTracksDateAddedColumnIndex);
+    public static List<TrackModel> getRecentTracks(final Context context) {
+        final RecentLibrary recentLibrary = getRecentLibrary(context);
+        final MusicLibraryIndex.Snapshot snapshot = recentLibrary.mSnapshot;
 
-                        // add the album
-                        recentDates.put(albumId, dateInMillis);
+        final List<TrackModel> recentTracks = new ArrayList<>(recentLibrary.mTrackIndices.length);
+        for (int i = 0; i < recentLibrary.mTrackIndices.length; i++) {
+            final int trackIndex = recentLibrary.mTrackIndices[i];
+            final long id = snapshot.mTrackIds[trackIndex];
 
-                        // workaround because no group command is allowed in ContentResolver query
-                        boolean isEnd;
-                        do {
-                            isEnd = !recentTracksCursor.move(numberOfSongs);
+            final Uri uri = ContentUris.withAppendedId(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, id);
 
-                            if (isEnd) {
-                                break;
-                            }
-                        } while (albumId == recentTracksCursor.getLong(recentTracksAlbumIdColumnIndex));
+            // the date of the album is used for all tracks for a distinct sort order
+            recentTracks.add(new TrackModel(snapshot.mTrackTitles[trackIndex], snapshot.mTrackArtistNames[trackIndex], snapshot.mTrackArtistIds[trackIndex],
+                    snapshot.mTrackAlbumNames[trackIndex], snapshot.mTrackAlbumIds[trackIndex], snapshot.mTrackDurations[trackIndex],
+                    snapshot.mTrackNumbers[trackIndex], uri, id, recentLibrary.mTrackDates[i]));
+        }
 
-                        if (isEnd) {
-                            break;
-                        }
-                    }
+        return recentTracks;
+    }
 
-                } while (albumsCursor.moveToNext());
-            }
+    /**
+     * Returns the recent albums and their tracks. The result is cached until the library changes.
+     */
+    private static synchronized RecentLibrary getRecentLibrary(final Context context) {
+        final MusicLibraryIndex.Snapshot snapshot = MusicLibraryIndex.getInstance(context).getSnapshot();
+        final long now = System.currentTimeMillis() / 1000;
 
-            albumsCursor.close();
-            recentTracksCursor.close();
+        // the date limit moves with the time, so the cache is refreshed from time to time as well
+        if (mRecentLibrary == null || mRecentLibrary.mSnapshot != snapshot || now - mRecentLibrary.mCreationTime > recentCacheTimeout) {
+            mRecentLibrary = new RecentLibrary(snapshot, now);
         }
-
-        return recentDates;
+        return mRecentLibrary;
     }
 
     /**
-     * Return a list of all tracks add in the last 4 weeks.
-     *
-     * @param context The application context to access the content resolver.
-     * @return The list of {@link TrackModel} of all tracks found in the MediaStore that were added in the last 4 weeks.
+     * Albums added in the last 4 weeks and their tracks, created in one pass over the tracks of the library index.
      */
-    public static List<TrackModel> getRecentTracks(final Context context) {
-        final List<TrackModel> recentTracks = new ArrayList<>();
+    private static class RecentLibrary {
+        final MusicLibraryIndex.Snapshot mSnapshot;
+
+        final long mCreationTime;
+
+        /**
+         * Album indices of the snapshot, sorted by date descending
+         */
+        final int[] mAlbumIndices;
+
+        final int[] mAlbumDates;
+
+        /**
+         * Track indices of the snapshot, grouped by album in the album order and sorted by track number
+         */
+        final int[] mTrackIndices;
+
+        /**
+         * Date of the album of each track
+         */
+        final int[] mTrackDates;
+
+        RecentLibrary(final MusicLibraryIndex.Snapshot snapshot, final long now) {
+            mSnapshot = snapshot;
+            mCreationTime = now;
+
+            // filter tracks older than 4 weeks
+            final long fourWeeksAgo = now - recentDateLimit;
+
+            // group the recent tracks by album, the date of the album is the date of its first track
+            final LongSparseArray<List<Integer>> albumTracks = new LongSparseArray<>();
+            final LongSparseArray<Long> albumFirstTrackIds = new LongSparseArray<>();
+            final LongSparseArray<Integer> albumDates = new LongSparseArray<>();
+            for (int i = 0; i < snapshot.getTrackCount(); i++) {
+                if (snapshot.mTrackDatesAdded[i] <= fourWeeksAgo) {
+                    continue;
+                }
 
-        // Map to unify the date of all album tracks for distinct sort order
-        final Map<Long, Integer> albumDateMap = getRecentAlbumDates(context);
+                final long albumId = snapshot.mTrackAlbumIds[i];
+                if (snapshot.mAlbumIndices.get(albumId) == null) {
+                    continue;
+                }
 
-        // filter non music and tracks older than 4 weeks
-        final long fourWeeksAgo = (System.currentTimeMillis() / 1000) - recentDateLimit;
+                List<Integer> tracks = albumTracks.get(albumId);
+                if (tracks == null) {
+                    tracks = new ArrayList<>();
+                    albumTracks.put(albumId, tracks);
+                }
+                tracks.add(i);
 
-        final String[] whereVal = {"1", String.valueOf(fourWeeksAgo)};
+                final Long firstTrackId = albumFirstTrackIds.get(albumId);
+                if (firstTrackId == null || snapshot.mTrackIds[i] < firstTrackId) {
+                    albumFirstTrackIds.put(albumId, snapshot.mTrackIds[i]);
+                    albumDates.put(albumId, snapshot.mTrackDatesAdded[i]);
+                }
+            }
 
-        final String where = ProjectionTracks.IS_MUSIC + "=? AND " + ProjectionTracks.DATE_ADDED + ">?";
+            // sort by date descending, if equal date sort by key
+            final List<Long> albumIds = new ArrayList<>(albumTracks.size());
+            for (int i = 0; i < albumTracks.size(); i++) {
+                albumIds.add(albumTracks.keyAt(i));
+            }
+            Collections.sort(albumIds, (o1, o2) -> {
+                final int dateCompare = Integer.compare(albumDates.get(o2), albumDates.get(o1));
+                return dateCompare != 0 ? dateCompare : Long.compare(o1, o2);
+            });
+
+            int trackCount = 0;
+            for (int i = 0; i < albumTracks.size(); i++) {
+                trackCount += albumTracks.valueAt(i).size();
+            }
 
-        final Cursor cursor = PermissionHelper.query(context, MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, ProjectionTracks.PROJECTION, where, whereVal, ProjectionTracks.ALBUM_ID);
+            mAlbumIndices = new int[albumIds.size()];
+            mAlbumDates = new int[albumIds.size()];
+            mTrackIndices = new int[trackCount];
+            mTrackDates = new int[trackCount];
 
-        if (cursor != null) {
-            if (cursor.moveToFirst()) {
+            int trackPosition = 0;
+            for (int i = 0; i < albumIds.size(); i++) {
+                final long albumId = albumIds.get(i);
+                final int date = albumDates.get(albumId);
 
-                do {
-                    final String trackName = cursor.getString(cursor.getColumnIndexOrThrow(ProjectionTracks.TITLE));
-                    final long duration = cursor.getLong(cursor.getColumnIndexOrThrow(ProjectionTracks.DURATION));
-                    final int number = cursor.getInt(cursor.getColumnIndexOrThrow(ProjectionTracks.TRACK));
-                    final String artistName = cursor.getString(cursor.getColumnIndexOrThrow(ProjectionTracks.ARTIST));
-                    final long artistId = cursor.getLong(cursor.getColumnIndexOrThrow(ProjectionTracks.ARTIST_ID));
-                    final String albumName = cursor.getString(cursor.getColumnIndexOrThrow(ProjectionTracks.ALBUM));
-                    final long albumId = cursor.getLong(cursor.getColumnIndexOrThrow(ProjectionTracks.ALBUM_ID));
-                    final long id = cursor.getLong(cursor.getColumnIndexOrThrow(ProjectionTracks.ID));
-                    final int dateAdded = albumDateMap.containsKey(albumId) ? albumDateMap.get(albumId) : -1;
+                mAlbumIndices[i] = snapshot.mAlbumIndices.get(albumId);
+                mAlbumDates[i] = date;
 
-                    final Uri uri = ContentUris.withAppendedId(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, id);
-
-                    // add the track
-                    recentTracks.add(new TrackModel(trackName, artistName, artistId, albumName, albumId, duration, number, uri, id, dateAdded));
+                // sort by tracknumber
+                final List<Integer> tracks = albumTracks.get(albumId);
+                Collections.sort(tracks, (o1, o2) -> Integer.compare(snapshot.mTrackNumbers[o1], snapshot.mTrackNumbers[o2]));
 
-                } while (cursor.moveToNext());
+                for (int trackIndex : tracks) {
+                    mTrackIndices[trackPosition] = trackIndex;
+                    mTrackDates[trackPosition] = date;
+                    trackPosition++;
+                }
             }
-
-            cursor.close();
         }
-
-        Collections.sort(recentTracks, (o1, o2) -> {
-            // sort tracks by albumkey
-            if (o1.getTrackAlbumId() == o2.getTrackAlbumId()) {
-                // sort by tracknumber
-                return Integer.compare(o1.getTrackNumber(), o2.getTrackNumber());
-            } else {
-                // sort tracks by date descending
-                return Integer.compare(o2.getDateAdded(), o1.getDateAdded());
-            }
-        });
-
-        return recentTracks;
     }
 
     /**
@@ -527,40 +629,54 @@ public class MusicLibraryHelper {
     public static List<TrackModel> getAllTracks(final String filterString, final Context context) {
         final List<TrackModel> allTracks = new ArrayList<>();
 
-        // filter non music
-        final String[] whereVal = {"1"};
-
-        final String where = ProjectionTracks.IS_MUSIC + "=?";
-
-        final Cursor cursor = PermissionHelper.query(context, MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, ProjectionTracks.PROJECTION, where, whereVal, ProjectionTracks.TITLE + " COLLATE NOCASE");
+        final TrackChunkStream stream = new TrackChunkStream(allTracks::addAll);
+        getAllTracks(filterString, context, stream);
+        stream.flush();
 
-        if (cursor != null) {
-            if (cursor.moveToFirst()) {
-
-                do {
-                    final String trackName = cursor.getString(cursor.getColumnIndexOrThrow(ProjectionTracks.TITLE));
-                    final long duration = cursor.getLong(cursor.getColumnIndexOrThrow(ProjectionTracks.DURATION));
-                    final int number = cursor.getInt(cursor.getColumnIndexOrThrow(ProjectionTracks.TRACK));
-                    final String artistName = cursor.getString(cursor.getColumnIndexOrThrow(ProjectionTracks.ARTIST));
-                    final long artistId = cursor.getLong(cursor.getColumnIndexOrThrow(ProjectionTracks.ARTIST_ID));
-                    final String albumName = cursor.getString(cursor.getColumnIndexOrThrow(ProjectionTracks.ALBUM));
-                    final long albumId = cursor.getLong(cursor.getColumnIndexOrThrow(ProjectionTracks.ALBUM_ID));
-                    final long id = cursor.getLong(cursor.getColumnIndexOrThrow(ProjectionTracks.ID));
-
-                    final Uri uri = ContentUris.withAppendedId(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, id);
+        return allTracks;
+    }
 
-                    // add the track
-                    if (null == filterString || filterString.isEmpty() || trackName.toLowerCase().contains(filterString)) {
-                        allTracks.add(new TrackModel(trackName, artistName, artistId, albumName, albumId, duration, number, uri, id));
-                    }
+    /**
+     * Loads all tracks in the MediaStore and passes them to the given stream.
+     *
+     * @param filterString A filter that is used to exclude tracks that didn't contain this String.
+     * @param context      The application context to access the content resolver.
+     * @param stream       The {@link TrackChunkStream} that receives the tracks. The stream is not flushed.
+     * @return False if the stream was cancelled.
+     */
+    public static boolean getAllTracks(final String filterString, final Context context, final TrackChunkStream stream) {
+        final MusicLibraryIndex.Snapshot snapshot = MusicLibraryIndex.getInstance(context).getSnapshot();
 
-                } while (cursor.moveToNext());
+        if (null != filterString && !filterString.isEmpty()) {
+            for (int position : snapshot.getTrackSearchIndex().search(filterString)) {
+                if (!stream.add(createTrackModel(snapshot, position))) {
+                    return false;
+                }
             }
+            return true;
+        }
 
-            cursor.close();
+        for (int i = 0; i < snapshot.getTrackCount(); i++) {
+            // add the track
+            if (!stream.add(createTrackModel(snapshot, i))) {
+                return false;
+            }
         }
 
-        return allTracks;
+        return true;
+    }
+
+    /**
+     * Return a paged list of all tracks in the MediaStore. The models are created from the library
+     * index when they are accessed.
+     *
+     * @param context The application context to access the content resolver.
+     * @return The paged list of {@link TrackModel} of all tracks found in the MediaStore.
+     */
+    public static List<TrackModel> getPagedTracks(final Context context) {
+        final MusicLibraryIndex.Snapshot snapshot = MusicLibraryIndex.getInstance(context).getSnapshot();
+
+        return new TrackList(snapshot, null, null);
     }
 
     /**
@@ -570,30 +686,11 @@ public class MusicLibraryHelper {
      * @return The list of {@link AlbumModel} of all albums found in the MediaStore.
      */
     public static List<AlbumModel> getAllAlbums(final Context context) {
-        final ArrayList<AlbumModel> albums = new ArrayList<>();
-
-        final Cursor cursor = PermissionHelper.query(context, MediaStore.Audio.Albums.EXTERNAL_CONTENT_URI, ProjectionAlbums.PROJECTION, "", null, ProjectionAlbums.ALBUM + " COLLATE NOCASE");
-
-        if (cursor != null) {
-            if (cursor.moveToFirst()) {
-                final int albumTitleColumnIndex = cursor.getColumnIndexOrThrow(ProjectionAlbums.ALBUM);
-                final int imagePathColumnIndex = cursor.getColumnIndexOrThrow(ProjectionAlbums.ALBUM_ART);
-                final int artistTitleColumnIndex = cursor.getColumnIndexOrThrow(ProjectionAlbums.ARTIST);
-                final int albumIdColumnIndex = cursor.getColumnIndexOrThrow(ProjectionAlbums.ID);
+        final MusicLibraryIndex.Snapshot snapshot = MusicLibraryIndex.getInstance(context).getSnapshot();
 
-                do {
-                    final String albumTitle = cursor.getString(albumTitleColumnIndex);
-                    final String imagePath = cursor.getString(imagePathColumnIndex);
-                    final String artistTitle = cursor.getString(artistTitleColumnIndex);
-                    final long albumId = cursor.getLong(albumIdColumnIndex);
-
-                    // add the album
-                    albums.add(new AlbumModel(albumTitle, imagePath, artistTitle, albumId));
-
-                } while (cursor.moveToNext());
-            }
-
-            cursor.close();
+        final ArrayList<AlbumModel> albums = new ArrayList<>(snapshot.getAlbumCount());
+        for (int i = 0; i < snapshot.getAlbumCount(); i++) {
+            albums.add(createAlbumModel(snapshot, i));
         }
         return albums;
     }
@@ -607,39 +704,26 @@ public class MusicLibraryHelper {
      * @return The list of {@link AlbumModel} of all albums of the artists in the specified order.
      */
     public static List<AlbumModel> getAllAlbumsForArtist(final long artistId, final String orderKey, final Context context) {
-        final ArrayList<AlbumModel> albums = new ArrayList<>();
+        final MusicLibraryIndex.Snapshot snapshot = MusicLibraryIndex.getInstance(context).getSnapshot();
 
-        String orderBy;
-
-        if (orderKey.equals(context.getString(R.string.pref_artist_albums_sort_name_key))) {
-            orderBy = ProjectionAlbums.ALBUM;
-        } else if (orderKey.equals(context.getString(R.string.pref_artist_albums_sort_year_key))) {
-            orderBy = ProjectionAlbums.FIRST_YEAR;
-        } else {
-            orderBy = ProjectionAlbums.ALBUM;
+        final int[] albumIndices = snapshot.mArtistAlbums.get(artistId);
+        if (albumIndices == null) {
+            return new ArrayList<>();
         }
 
-        Cursor cursor = PermissionHelper.query(context, MediaStore.Audio.Artists.Albums.getContentUri("external", artistId), ProjectionAlbums.PROJECTION, "", null, orderBy + " COLLATE NOCASE");
-
-        if (cursor != null) {
-            if (cursor.moveToFirst()) {
-                final int albumTitleColumnIndex = cursor.getColumnIndexOrThrow(ProjectionAlbums.ALBUM);
-                final int imagePathColumnIndex = cursor.getColumnIndexOrThrow(ProjectionAlbums.ALBUM_ART);
-                final int artistTitleColumnIndex = cursor.getColumnIndexOrThrow(ProjectionAlbums.ARTIST);
-                final int albumIdColumnIndex = cursor.getColumnIndexOrThrow(ProjectionAlbums.ID);
-
-                do {
-                    final String albumTitle = cursor.getString(albumTitleColumnIndex);
-                    final String imagePath = cursor.getString(imagePathColumnIndex);
-                    final String artistTitle = cursor.getString(artistTitleColumnIndex);
-                    final long albumId = cursor.getLong(albumIdColumnIndex);
+        final List<Integer> sortedIndices = new ArrayList<>(albumIndices.length);
+        for (int albumIndex : albumIndices) {
+            sortedIndices.add(albumIndex);
+        }
 
-                    // add the album
-                    albums.add(new AlbumModel(albumTitle, imagePath, artistTitle, albumId));
-                } while (cursor.moveToNext());
-            }
+        // the indices are sorted by name already
+        if (orderKey.equals(context.getString(R.string.pref_artist_albums_sort_year_key))) {
+            Collections.sort(sortedIndices, (first, second) -> Integer.compare(snapshot.mAlbumFirstYears[first], snapshot.mAlbumFirstYears[second]));
+        }
 
-            cursor.close();
+        final ArrayList<AlbumModel> albums = new ArrayList<>(sortedIndices.size());
+        for (int albumIndex : sortedIndices) {
+            albums.add(createAlbumModel(snapshot, albumIndex));
         }
         return albums;
     }
@@ -652,89 +736,108 @@ public class MusicLibraryHelper {
      * @return The list of {@link ArtistModel} of all artists found in the MediaStore that matches the filter criteria.
      */
     public static List<ArtistModel> getAllArtists(final boolean showAlbumArtistsOnly, final Context context) {
+        final MusicLibraryIndex.Snapshot snapshot = MusicLibraryIndex.getInstance(context).getSnapshot();
+
         final ArrayList<ArtistModel> artists = new ArrayList<>();
 
         if (!showAlbumArtistsOnly) {
             // load all artists
+            for (int i = 0; i < snapshot.getArtistCount(); i++) {
+                artists.add(new ArtistModel(snapshot.mArtistNames[i], snapshot.mArtistIds[i]));
+            }
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            // use the ARTIST_ID of the albums to identify album artists
+            final Set<Long> artistIds = new HashSet<>();
 
-            // get all artists
-            final Cursor cursor = PermissionHelper.query(context, MediaStore.Audio.Artists.EXTERNAL_CONTENT_URI, ProjectionArtists.PROJECTION,
-                    "", null, ProjectionArtists.ARTIST + " COLLATE NOCASE ASC");
-
-            if (cursor != null) {
-
-                if (cursor.moveToFirst()) {
-                    final int artistTitleColumnIndex = cursor.getColumnIndexOrThrow(ProjectionArtists.ARTIST);
-                    final int artistIdColumnIndex = cursor.getColumnIndexOrThrow(ProjectionArtists.ID);
-
-                    do {
-                        final String artist = cursor.getString(artistTitleColumnIndex);
-                        final long artistId = cursor.getLong(artistIdColumnIndex);
-
-                        // add the artist
-                        artists.add(new ArtistModel(artist, artistId));
+            for (int albumIndex : snapshot.mAlbumsByArtist) {
+                final long artistId = snapshot.mAlbumArtistIds[albumIndex];
 
-                    } while (cursor.moveToNext());
+                if (artistIds.add(artistId)) {
+                    artists.add(new ArtistModel(snapshot.mAlbumArtistNames[albumIndex], artistId));
                 }
-
-                cursor.close();
             }
         } else {
-            // load only artist which has an album entry
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                // get all albums and use ARTIST_ID to identify album artists
-                final Cursor cursor = PermissionHelper.query(context, MediaStore.Audio.Albums.EXTERNAL_CONTENT_URI, ProjectionAlbums.PROJECTION,
-                        "", null, ProjectionAlbums.ARTIST + " COLLATE NOCASE ASC");
-
-                if (cursor != null) {
+            // group the albums by artist, no id is available
+            final Set<String> artistNames = new HashSet<>();
 
-                    if (cursor.moveToFirst()) {
+            for (int albumIndex : snapshot.mAlbumsByArtist) {
+                final String artist = snapshot.mAlbumArtistNames[albumIndex];
 
-                        final int albumArtistTitleColumnIndex = cursor.getColumnIndexOrThrow(ProjectionAlbums.ARTIST);
-                        final int albumIdColumnIndex = cursor.getColumnIndexOrThrow(ProjectionAlbums.ARTIST_ID);
-
-                        // workaround because no group command is allowed in ContentResolver query
-                        Set<Long> artistIds = new HashSet<>();
+                if (artist != null && !artist.isEmpty() && artistNames.add(artist)) {
+                    artists.add(new ArtistModel(artist, -1));
+                }
+            }
+        }
+        return artists;
+    }
 
-                        do {
-                            final String artist = cursor.getString(albumArtistTitleColumnIndex);
-                            final long artistId = cursor.getLong(albumIdColumnIndex);
+    private static TrackModel createTrackModel(final MusicLibraryIndex.Snapshot snapshot, final int index) {
+        final long id = snapshot.mTrackIds[index];
+        final Uri uri = ContentUris.withAppendedId(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, id);
 
-                            // add the artist
-                            if (!artistIds.contains(artistId)) {
-                                artists.add(new ArtistModel(artist, artistId));
-                                artistIds.add(artistId);
-                            }
-                        } while (cursor.moveToNext());
-                    }
+        return new TrackModel(snapshot.mTrackTitles[index], snapshot.mTrackArtistNames[index], snapshot.mTrackArtistIds[index],
+                snapshot.mTrackAlbumNames[index], snapshot.mTrackAlbumIds[index], snapshot.mTrackDurations[index], snapshot.mTrackNumbers[index], uri, id);
+    }
 
-                    cursor.close();
-                }
-            } else {
-                // get all albums grouped by artist
-                final Cursor cursor = PermissionHelper.query(context, MediaStore.Audio.Albums.EXTERNAL_CONTENT_URI, new String[]{ProjectionAlbums.ARTIST, ProjectionAlbums.ALBUM},
-                        ProjectionAlbums.ARTIST + "<>\"\" ) GROUP BY (" + ProjectionAlbums.ARTIST, null, ProjectionAlbums.ARTIST + " COLLATE NOCASE ASC");
+    private static AlbumModel createAlbumModel(final MusicLibraryIndex.Snapshot snapshot, final int index) {
+        return new AlbumModel(snapshot.mAlbumNames[index], snapshot.mAlbumArtURLs[index], snapshot.mAlbumArtistNames[index], snapshot.mAlbumIds[index]);
+    }
 
-                if (cursor != null) {
+    /**
+     * Paged list of tracks of the library index, only the track positions are stored.
+     */
+    private static class TrackList extends PagedModelList<TrackModel> {
+        private final MusicLibraryIndex.Snapshot mSnapshot;
+
+        /**
+         * Track indices of the snapshot, null for all tracks in the snapshot order.
+         * A negative value -n refers to the n-th track of {@link #mUnindexedTracks}.
+         */
+        private final int[] mTrackIndices;
+
+        /**
+         * Tracks that are not part of the snapshot, null if all tracks are
+         */
+        private final List<TrackModel> mUnindexedTracks;
+
+        TrackList(final MusicLibraryIndex.Snapshot snapshot, final int[] trackIndices, final List<TrackModel> unindexedTracks) {
+            mSnapshot = snapshot;
+            mTrackIndices = trackIndices;
+            mUnindexedTracks = unindexedTracks;
+        }
 
-                    if (cursor.moveToFirst()) {
+        @Override
+        public int size() {
+            return mTrackIndices == null ? mSnapshot.getTrackCount() : mTrackIndices.length;
+        }
 
-                        int albumArtistTitleColumnIndex = cursor.getColumnIndexOrThrow(ProjectionAlbums.ARTIST);
+        @Override
+        protected TrackModel createModel(final int position) {
+            final int trackIndex = getTrackIndex(position);
+            return trackIndex < 0 ? mUnindexedTracks.get(-trackIndex - 1) : createTrackModel(mSnapshot, trackIndex);
+        }
 
-                        do {
-                            String artist = cursor.getString(albumArtistTitleColumnIndex);
+        @Override
+        public String getSectionTitle(final int position) {
+            final int trackIndex = getTrackIndex(position);
+            if (trackIndex < 0) {
+                return mUnindexedTracks.get(-trackIndex - 1).getSectionTitle();
+            }
 
-                            // add the artist
-                            artists.add(new ArtistModel(artist, -1));
+            // same as the title of the track model
+            final String title = mSnapshot.mTrackTitles[trackIndex];
+            return title != null ? title : "";
+        }
 
-                        } while (cursor.moveToNext());
-                    }
+        @Override
+        public SearchIndex getSearchIndex() {
+            // the index of the snapshot only matches if this list contains all tracks in the snapshot order
+            return mTrackIndices == null ? mSnapshot.getTrackSearchIndex() : null;
+        }
 
-                    cursor.close();
-                }
-            }
+        private int getTrackIndex(final int position) {
+            return mTrackIndices == null ? position : mTrackIndices[position];
         }
-        return artists;
     }
 
     /**
@@ -0,0 +1,895 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.utils;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import androidx.annotation.RequiresApi;
+import androidx.collection.LongSparseArray;
+
+import org.gateshipone.odyssey.BuildConfig;
+import org.gateshipone.odyssey.utils.MediaStoreProjections.ProjectionAlbums;
+import org.gateshipone.odyssey.utils.MediaStoreProjections.ProjectionArtists;
+import org.gateshipone.odyssey.utils.MediaStoreProjections.ProjectionTracks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * App owned copy of the tracks, albums and artists of the MediaStore.
+ * <p>
+ * The library is kept in memory as immutable {@link Snapshot} of column arrays with precomputed sort and
+ * search keys, so that the list reads of {@link MusicLibraryHelper} do not need to query the MediaStore.
+ * The snapshot is saved to a file and reused after a restart.
+ * <p>
+ * A content observer marks the index as outdated and schedules a synchronization in the background.
+ * Starting with Android 11 only the tracks that changed since the last synchronization are read,
+ * based on the generation numbers of the MediaStore volumes. Older versions reload the tracks if a
+ * fingerprint of the track table changed.
+ */
+public class MusicLibraryIndex {
+    private static final String TAG = MusicLibraryIndex.class.getSimpleName();
+
+    private static final String INDEX_FILE_NAME = "library.idx";
+
+    private static final int INDEX_VERSION = 2;
+
+    /**
+     * Delay of the synchronization after a change to group the notifications of a media scan
+     */
+    private static final long SYNC_DELAY = 2000;
+
+    /**
+     * Prefix of the synchronization state based on the MediaStore generations
+     */
+    private static final String STATE_GENERATIONS = "G|";
+
+    /**
+     * Prefix of the synchronization state based on a fingerprint of the track table
+     */
+    private static final String STATE_FINGERPRINT = "F|";
+
+    /**
+     * Tracks are not filtered by the query for changes, tracks that are no music anymore need to be removed
+     */
+    private static final String[] CHANGED_TRACKS_PROJECTION = appendColumn(ProjectionTracks.PROJECTION, ProjectionTracks.IS_MUSIC);
+
+    private static MusicLibraryIndex mInstance;
+
+    private final Context mApplicationContext;
+
+    private final Handler mSyncHandler;
+
+    /**
+     * Guards the synchronization and the persisted state
+     */
+    private final Object mSyncLock = new Object();
+
+    private volatile Snapshot mSnapshot;
+
+    /**
+     * True if the MediaStore might have changed since the last synchronization.
+     * Set initially to verify the persisted snapshot once.
+     */
+    private volatile boolean mOutdated = true;
+
+    /**
+     * State of the MediaStore that the snapshot was created from
+     */
+    private String mSyncState;
+
+    private final Runnable mSyncRunnable = this::getSnapshot;
+
+    private MusicLibraryIndex(final Context context) {
+        mApplicationContext = context.getApplicationContext();
+
+        final HandlerThread syncThread = new HandlerThread("OdysseyLibraryIndex", Process.THREAD_PRIORITY_BACKGROUND);
+        syncThread.start();
+        mSyncHandler = new Handler(syncThread.getLooper());
+
+        mApplicationContext.getContentResolver().registerContentObserver(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, true, new ContentObserver(mSyncHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                mOutdated = true;
+
+                mSyncHandler.removeCallbacks(mSyncRunnable);
+                mSyncHandler.postDelayed(mSyncRunnable, SYNC_DELAY);
+            }
+        });
+    }
+
+    public static synchronized MusicLibraryIndex getInstance(final Context context) {
+        if (null == mInstance) {
+            mInstance = new MusicLibraryIndex(context);
+        }
+        return mInstance;
+    }
+
+    /**
+     * Returns the current snapshot of the library. If the MediaStore changed since the last
+     * synchronization, the snapshot is updated first.
+     *
+     * @return The snapshot, empty if the MediaStore can not be accessed.
+     */
+    public Snapshot getSnapshot() {
+        final Snapshot snapshot = mSnapshot;
+        if (snapshot != null && !mOutdated) {
+            return snapshot;
+        }
+
+        synchronized (mSyncLock) {
+            if (mSnapshot == null) {
+                mSnapshot = readSnapshot();
+            }
+
+            if (mOutdated) {
+                synchronize();
+            }
+
+            return mSnapshot;
+        }
+    }
+
+    /**
+     * Returns the snapshot without waiting for a synchronization. Used for single lookups that
+     * are cheaper as MediaStore query than a first load of the index.
+     *
+     * @return The snapshot or null if it was not loaded yet, the load is started in the background then.
+     */
+    public Snapshot getSnapshotIfLoaded() {
+        final Snapshot snapshot = mSnapshot;
+        if (snapshot == null || mOutdated) {
+            mSyncHandler.removeCallbacks(mSyncRunnable);
+            mSyncHandler.post(mSyncRunnable);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Brings the snapshot up to date with the MediaStore. Must be called with the sync lock held.
+     */
+    private void synchronize() {
+        // Clear the flag first, so that a change during the synchronization is not lost
+        mOutdated = false;
+
+        if (!PermissionHelper.isAudioFilesAccessAllowed(mApplicationContext)) {
+            mSnapshot = new Snapshot(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+            mSyncState = null;
+            // Check again with the next read
+            mOutdated = true;
+            return;
+        }
+
+        final String state = queryState();
+        if (state != null && state.equals(mSyncState) && mSnapshot != null) {
+            return;
+        }
+
+        final long startTime = System.currentTimeMillis();
+
+        List<TrackRecord> tracks = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R && mSnapshot != null && mSyncState != null && state != null) {
+            tracks = queryChangedTracks(mSnapshot, mSyncState, state);
+        }
+        if (tracks == null) {
+            tracks = queryAllTracks();
+        }
+
+        final List<AlbumRecord> albums = queryAllAlbums();
+        final List<ArtistRecord> artists = queryAllArtists();
+
+        if (tracks == null || albums == null || artists == null) {
+            // The MediaStore is not accessible right now, keep the old snapshot
+            mOutdated = true;
+            return;
+        }
+
+        final Snapshot snapshot = new Snapshot(tracks, albums, artists);
+        mSnapshot = snapshot;
+        mSyncState = state;
+
+        if (BuildConfig.DEBUG) {
+            Log.v(TAG, "Library index synchronized in " + (System.currentTimeMillis() - startTime) + " ms, " + tracks.size() + " tracks");
+        }
+
+        if (state != null) {
+            mSyncHandler.post(() -> writeSnapshot(snapshot, state));
+        }
+    }
+
+    /*
+     * Begin of the MediaStore queries
+     */
+
+    /**
+     * @return A string that changes whenever the music in the MediaStore changes, null if it can not be determined
+     */
+    private String queryState() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            final StringBuilder state = new StringBuilder(STATE_GENERATIONS);
+            final List<String> volumes = new ArrayList<>(MediaStore.getExternalVolumeNames(mApplicationContext));
+            Collections.sort(volumes);
+
+            try {
+                for (String volume : volumes) {
+                    state.append(volume).append(':')
+                            .append(MediaStore.getVersion(mApplicationContext, volume)).append(':')
+                            .append(MediaStore.getGeneration(mApplicationContext, volume)).append(';');
+                }
+            } catch (IllegalArgumentException e) {
+                // Volume was removed in the meantime
+                return null;
+            }
+            return state.toString();
+        }
+
+        final Cursor cursor = PermissionHelper.query(mApplicationContext, MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                new String[]{ProjectionTracks.ID, MediaStore.Audio.Media.DATE_MODIFIED, ProjectionTracks.IS_MUSIC}, null, null, null);
+
+        if (cursor == null) {
+            return null;
+        }
+
+        long maxId = 0;
+        long maxModified = 0;
+        long musicCount = 0;
+        while (cursor.moveToNext()) {
+            maxId = Math.max(maxId, cursor.getLong(0));
+            maxModified = Math.max(maxModified, cursor.getLong(1));
+            musicCount += cursor.getInt(2);
+        }
+        final int count = cursor.getCount();
+        cursor.close();
+
+        return STATE_FINGERPRINT + count + ':' + musicCount + ':' + maxId + ':' + maxModified;
+    }
+
+    /**
+     * @return All music tracks sorted by title, null if the MediaStore is not accessible
+     */
+    private List<TrackRecord> queryAllTracks() {
+        final String where = ProjectionTracks.IS_MUSIC + "=?";
+        final String[] whereVal = {"1"};
+
+        final Cursor cursor = PermissionHelper.query(mApplicationContext, MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, ProjectionTracks.PROJECTION,
+                where, whereVal, ProjectionTracks.TITLE + " COLLATE NOCASE");
+
+        if (cursor == null) {
+            return null;
+        }
+
+        final List<TrackRecord> tracks = new ArrayList<>(cursor.getCount());
+        final TrackColumns columns = new TrackColumns(cursor);
+        while (cursor.moveToNext()) {
+            tracks.add(columns.read(cursor));
+        }
+
+        cursor.close();
+        return tracks;
+    }
+
+    /**
+     * Applies the tracks that changed since the last synchronization to the tracks of the snapshot.
+     *
+     * @return All music tracks sorted by title, null if a full reload is needed
+     */
+    @RequiresApi(api = Build.VERSION_CODES.R)
+    private List<TrackRecord> queryChangedTracks(final Snapshot snapshot, final String oldState, final String newState) {
+        final HashMap<String, long[]> oldVolumes = parseGenerations(oldState);
+        final HashMap<String, long[]> newVolumes = parseGenerations(newState);
+        if (oldVolumes == null || newVolumes == null || !oldVolumes.keySet().equals(newVolumes.keySet())) {
+            return null;
+        }
+
+        final LongSparseArray<TrackRecord> tracks = new LongSparseArray<>(snapshot.getTrackCount());
+        for (int i = 0; i < snapshot.getTrackCount(); i++) {
+            tracks.put(snapshot.mTrackIds[i], snapshot.getTrackRecord(i));
+        }
+
+        int changedCount = 0;
+        for (String volume : newVolumes.keySet()) {
+            final long[] oldGeneration = oldVolumes.get(volume);
+            final long[] newGeneration = newVolumes.get(volume);
+            if (oldGeneration[1] == newGeneration[1]) {
+                continue;
+            }
+            if (oldGeneration[0] != newGeneration[0]) {
+                // The volume database was recreated, the generations are not comparable
+                return null;
+            }
+
+            final Cursor cursor = PermissionHelper.query(mApplicationContext, MediaStore.Audio.Media.getContentUri(volume), CHANGED_TRACKS_PROJECTION,
+                    MediaStore.MediaColumns.GENERATION_MODIFIED + ">?", new String[]{String.valueOf(oldGeneration[1])}, null);
+            if (cursor == null) {
+                return null;
+            }
+
+            final TrackColumns columns = new TrackColumns(cursor);
+            final int musicColumn = cursor.getColumnIndexOrThrow(ProjectionTracks.IS_MUSIC);
+            while (cursor.moveToNext()) {
+                final TrackRecord track = columns.read(cursor);
+                if (cursor.getInt(musicColumn) == 1) {
+                    tracks.put(track.mId, track);
+                } else {
+                    tracks.remove(track.mId);
+                }
+                changedCount++;
+            }
+            cursor.close();
+        }
+
+        // Deleted tracks are not reported by the generation, compare the ids instead
+        final Cursor idCursor = PermissionHelper.query(mApplicationContext, MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, new String[]{ProjectionTracks.ID},
+                ProjectionTracks.IS_MUSIC + "=?", new String[]{"1"}, null);
+        if (idCursor == null) {
+            return null;
+        }
+
+        final LongSparseArray<TrackRecord> existingTracks = new LongSparseArray<>(idCursor.getCount());
+        while (idCursor.moveToNext()) {
+            final long id = idCursor.getLong(0);
+            final TrackRecord track = tracks.get(id);
+            if (track == null) {
+                // Missed by the generation query, e.g. moved between volumes
+                idCursor.close();
+                return null;
+            }
+            existingTracks.put(id, track);
+        }
+        idCursor.close();
+
+        final List<TrackRecord> result = new ArrayList<>(existingTracks.size());
+        for (int i = 0; i < existingTracks.size(); i++) {
+            result.add(existingTracks.valueAt(i));
+        }
+        Collections.sort(result, (first, second) -> first.mSortKey.compareTo(second.mSortKey));
+
+        if (BuildConfig.DEBUG) {
+            Log.v(TAG, "Applied " + changedCount + " changed tracks");
+        }
+        return result;
+    }
+
+    /**
+     * @return All albums sorted by name, null if the MediaStore is not accessible
+     */
+    private List<AlbumRecord> queryAllAlbums() {
+        final Cursor cursor = PermissionHelper.query(mApplicationContext, MediaStore.Audio.Albums.EXTERNAL_CONTENT_URI, ProjectionAlbums.PROJECTION,
+                "", null, ProjectionAlbums.ALBUM + " COLLATE NOCASE");
+
+        if (cursor == null) {
+            return null;
+        }
+
+        final List<AlbumRecord> albums = new ArrayList<>(cursor.getCount());
+        final int albumTitleColumnIndex = cursor.getColumnIndexOrThrow(ProjectionAlbums.ALBUM);
+        final int imagePathColumnIndex = cursor.getColumnIndexOrThrow(ProjectionAlbums.ALBUM_ART);
+        final int artistTitleColumnIndex = cursor.getColumnIndexOrThrow(ProjectionAlbums.ARTIST);
+        final int firstYearColumnIndex = cursor.getColumnIndexOrThrow(ProjectionAlbums.FIRST_YEAR);
+        final int albumIdColumnIndex = cursor.getColumnIndexOrThrow(ProjectionAlbums.ID);
+        final int artistIdColumnIndex = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q ? cursor.getColumnIndexOrThrow(ProjectionAlbums.ARTIST_ID) : -1;
+
+        while (cursor.moveToNext()) {
+            albums.add(new AlbumRecord(cursor.getLong(albumIdColumnIndex), cursor.getString(albumTitleColumnIndex), cursor.getString(imagePathColumnIndex),
+                    cursor.getString(artistTitleColumnIndex), artistIdColumnIndex == -1 ? -1 : cursor.getLong(artistIdColumnIndex), cursor.getInt(firstYearColumnIndex)));
+        }
+
+        cursor.close();
+        return albums;
+    }
+
+    /**
+     * @return All artists sorted by name, null if the MediaStore is not accessible
+     */
+    private List<ArtistRecord> queryAllArtists() {
+        final Cursor cursor = PermissionHelper.query(mApplicationContext, MediaStore.Audio.Artists.EXTERNAL_CONTENT_URI, ProjectionArtists.PROJECTION,
+                "", null, ProjectionArtists.ARTIST + " COLLATE NOCASE ASC");
+
+        if (cursor == null) {
+            return null;
+        }
+
+        final List<ArtistRecord> artists = new ArrayList<>(cursor.getCount());
+        final int artistTitleColumnIndex = cursor.getColumnIndexOrThrow(ProjectionArtists.ARTIST);
+        final int artistIdColumnIndex = cursor.getColumnIndexOrThrow(ProjectionArtists.ID);
+
+        while (cursor.moveToNext()) {
+            artists.add(new ArtistRecord(cursor.getLong(artistIdColumnIndex), cursor.getString(artistTitleColumnIndex)));
+        }
+
+        cursor.close();
+        return artists;
+    }
+
+    /**
+     * @return The version and generation by volume name, null if the state is not based on generations
+     */
+    private static HashMap<String, long[]> parseGenerations(final String state) {
+        if (!state.startsWith(STATE_GENERATIONS)) {
+            return null;
+        }
+
+        final HashMap<String, long[]> volumes = new HashMap<>();
+        for (String volume : state.substring(STATE_GENERATIONS.length()).split(";")) {
+            if (volume.isEmpty()) {
+                continue;
+            }
+
+            final int generationSeparator = volume.lastIndexOf(':');
+            final int versionSeparator = volume.lastIndexOf(':', generationSeparator - 1);
+            if (versionSeparator <= 0) {
+                return null;
+            }
+
+            // The version is a string, only equality matters
+            final long version = volume.substring(versionSeparator + 1, generationSeparator).hashCode();
+            try {
+                volumes.put(volume.substring(0, versionSeparator), new long[]{version, Long.parseLong(volume.substring(generationSeparator + 1))});
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return volumes;
+    }
+
+    private static String[] appendColumn(final String[] projection, final String column) {
+        final String[] result = new String[projection.length + 1];
+        System.arraycopy(projection, 0, result, 0, projection.length);
+        result[projection.length] = column;
+        return result;
+    }
+
+    /*
+     * Begin of the persistence
+     */
+
+    private File getIndexFile() {
+        return new File(mApplicationContext.getFilesDir(), INDEX_FILE_NAME);
+    }
+
+    /**
+     * Reads the snapshot of the last run.
+     *
+     * @return The snapshot or null if there is none
+     */
+    private Snapshot readSnapshot() {
+        final File file = getIndexFile();
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != INDEX_VERSION) {
+                return null;
+            }
+
+            final String state = readString(input);
+
+            final int trackCount = input.readInt();
+            final List<TrackRecord> tracks = new ArrayList<>(trackCount);
+            for (int i = 0; i < trackCount; i++) {
+                tracks.add(new TrackRecord(input.readLong(), readString(input), readString(input), input.readLong(), readString(input),
+                        input.readLong(), input.readLong(), input.readInt(), input.readInt()));
+            }
+
+            final int albumCount = input.readInt();
+            final List<AlbumRecord> albums = new ArrayList<>(albumCount);
+            for (int i = 0; i < albumCount; i++) {
+                albums.add(new AlbumRecord(input.readLong(), readString(input), readString(input), readString(input), input.readLong(), input.readInt()));
+            }
+
+            final int artistCount = input.readInt();
+            final List<ArtistRecord> artists = new ArrayList<>(artistCount);
+            for (int i = 0; i < artistCount; i++) {
+                artists.add(new ArtistRecord(input.readLong(), readString(input)));
+            }
+
+            mSyncState = state;
+            return new Snapshot(tracks, albums, artists);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read library index: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeSnapshot(final Snapshot snapshot, final String state) {
+        final File file = getIndexFile();
+        final File temporaryFile = new File(file.getPath() + ".tmp");
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+            output.writeInt(INDEX_VERSION);
+            writeString(output, state);
+
+            output.writeInt(snapshot.getTrackCount());
+            for (int i = 0; i < snapshot.getTrackCount(); i++) {
+                output.writeLong(snapshot.mTrackIds[i]);
+                writeString(output, snapshot.mTrackTitles[i]);
+                writeString(output, snapshot.mTrackArtistNames[i]);
+                output.writeLong(snapshot.mTrackArtistIds[i]);
+                writeString(output, snapshot.mTrackAlbumNames[i]);
+                output.writeLong(snapshot.mTrackAlbumIds[i]);
+                output.writeLong(snapshot.mTrackDurations[i]);
+                output.writeInt(snapshot.mTrackNumbers[i]);
+                output.writeInt(snapshot.mTrackDatesAdded[i]);
+            }
+
+            output.writeInt(snapshot.getAlbumCount());
+            for (int i = 0; i < snapshot.getAlbumCount(); i++) {
+                output.writeLong(snapshot.mAlbumIds[i]);
+                writeString(output, snapshot.mAlbumNames[i]);
+                writeString(output, snapshot.mAlbumArtURLs[i]);
+                writeString(output, snapshot.mAlbumArtistNames[i]);
+                output.writeLong(snapshot.mAlbumArtistIds[i]);
+                output.writeInt(snapshot.mAlbumFirstYears[i]);
+            }
+
+            output.writeInt(snapshot.getArtistCount());
+            for (int i = 0; i < snapshot.getArtistCount(); i++) {
+                output.writeLong(snapshot.mArtistIds[i]);
+                writeString(output, snapshot.mArtistNames[i]);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not save library index: " + e.getMessage());
+            temporaryFile.delete();
+            return;
+        }
+
+        if (!temporaryFile.renameTo(file)) {
+            temporaryFile.delete();
+        }
+    }
+
+    private static void writeString(final DataOutputStream output, final String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static String readString(final DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    /**
+     * @return The key used to sort like the NOCASE collation of the MediaStore which only folds ASCII letters
+     */
+    static String createSortKey(final String value) {
+        if (value == null) {
+            return "";
+        }
+
+        char[] chars = null;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                if (chars == null) {
+                    chars = value.toCharArray();
+                }
+                chars[i] = (char) (c + ('a' - 'A'));
+            }
+        }
+        return chars == null ? value : new String(chars);
+    }
+
+    /*
+     * Begin of the records
+     */
+
+    private static class TrackColumns {
+        final int mTitle;
+        final int mDuration;
+        final int mNumber;
+        final int mArtist;
+        final int mArtistId;
+        final int mAlbum;
+        final int mAlbumId;
+        final int mDateAdded;
+        final int mId;
+
+        TrackColumns(final Cursor cursor) {
+            mTitle = cursor.getColumnIndexOrThrow(ProjectionTracks.TITLE);
+            mDuration = cursor.getColumnIndexOrThrow(ProjectionTracks.DURATION);
+            mNumber = cursor.getColumnIndexOrThrow(ProjectionTracks.TRACK);
+            mArtist = cursor.getColumnIndexOrThrow(ProjectionTracks.ARTIST);
+            mArtistId = cursor.getColumnIndexOrThrow(ProjectionTracks.ARTIST_ID);
+            mAlbum = cursor.getColumnIndexOrThrow(ProjectionTracks.ALBUM);
+            mAlbumId = cursor.getColumnIndexOrThrow(ProjectionTracks.ALBUM_ID);
+            mDateAdded = cursor.getColumnIndexOrThrow(ProjectionTracks.DATE_ADDED);
+            mId = cursor.getColumnIndexOrThrow(ProjectionTracks.ID);
+        }
+
+        TrackRecord read(final Cursor cursor) {
+            return new TrackRecord(cursor.getLong(mId), cursor.getString(mTitle), cursor.getString(mArtist), cursor.getLong(mArtistId),
+                    cursor.getString(mAlbum), cursor.getLong(mAlbumId), cursor.getLong(mDuration), cursor.getInt(mNumber), cursor.getInt(mDateAdded));
+        }
+    }
+
+    private static class TrackRecord {
+        final long mId;
+        final String mTitle;
+        final String mSortKey;
+        final String mArtistName;
+        final long mArtistId;
+        final String mAlbumName;
+        final long mAlbumId;
+        final long mDuration;
+        final int mNumber;
+        final int mDateAdded;
+
+        TrackRecord(final long id, final String title, final String artistName, final long artistId, final String albumName, final long albumId,
+                    final long duration, final int number, final int dateAdded) {
+            mId = id;
+            mTitle = title;
+            mSortKey = createSortKey(title);
+            mArtistName = artistName;
+            mArtistId = artistId;
+            mAlbumName = albumName;
+            mAlbumId = albumId;
+            mDuration = duration;
+            mNumber = number;
+            mDateAdded = dateAdded;
+        }
+    }
+
+    private static class AlbumRecord {
+        final long mId;
+        final String mName;
+        final String mArtURL;
+        final String mArtistName;
+        final long mArtistId;
+        final int mFirstYear;
+
+        AlbumRecord(final long id, final String name, final String artURL, final String artistName, final long artistId, final int firstYear) {
+            mId = id;
+            mName = name;
+            mArtURL = artURL;
+            mArtistName = artistName;
+            mArtistId = artistId;
+            mFirstYear = firstYear;
+        }
+    }
+
+    private static class ArtistRecord {
+        final long mId;
+        final String mName;
+
+        ArtistRecord(final long id, final String name) {
+            mId = id;
+            mName = name;
+        }
+    }
+
+    /**
+     * Immutable state of the library stored as columns. Repeated artist and album names of the
+     * tracks share one string instance.
+     */
+    public static final class Snapshot {
+        /*
+         * Tracks, sorted by title
+         */
+        final long[] mTrackIds;
+        final String[] mTrackTitles;
+        final String[] mTrackArtistNames;
+        final long[] mTrackArtistIds;
+        final String[] mTrackAlbumNames;
+        final long[] mTrackAlbumIds;
+        final long[] mTrackDurations;
+        final int[] mTrackNumbers;
+        final int[] mTrackDatesAdded;
+
+        /*
+         * Albums, sorted by name
+         */
+        final long[] mAlbumIds;
+        final String[] mAlbumNames;
+        final String[] mAlbumSortKeys;
+        final String[] mAlbumArtURLs;
+        final String[] mAlbumArtistNames;
+        final long[] mAlbumArtistIds;
+        final int[] mAlbumFirstYears;
+
+        /*
+         * Artists, sorted by name
+         */
+        final long[] mArtistIds;
+        final String[] mArtistNames;
+
+        /**
+         * Album indices sorted by the album artist name
+         */
+        final int[] mAlbumsByArtist;
+
+        /**
+         * Album indices by artist id of the album tracks, sorted by album name
+         */
+        final LongSparseArray<int[]> mArtistAlbums = new LongSparseArray<>();
+
+        final LongSparseArray<Integer> mAlbumIndices = new LongSparseArray<>();
+
+        /**
+         * First artist id for each artist name
+         */
+        final HashMap<String, Long> mArtistIdsByName = new HashMap<>();
+
+        /**
+         * Index of the track titles, created by the first track filter
+         */
+        private SearchIndex mTrackSearchIndex;
+
+        Snapshot(final List<TrackRecord> tracks, final List<AlbumRecord> albums, final List<ArtistRecord> artists) {
+            final HashMap<String, String> names = new HashMap<>();
+
+            final int trackCount = tracks.size();
+            mTrackIds = new long[trackCount];
+            mTrackTitles = new String[trackCount];
+            mTrackArtistNames = new String[trackCount];
+            mTrackArtistIds = new long[trackCount];
+            mTrackAlbumNames = new String[trackCount];
+            mTrackAlbumIds = new long[trackCount];
+            mTrackDurations = new long[trackCount];
+            mTrackNumbers = new int[trackCount];
+            mTrackDatesAdded = new int[trackCount];
+            for (int i = 0; i < trackCount; i++) {
+                final TrackRecord track = tracks.get(i);
+                mTrackIds[i] = track.mId;
+                mTrackTitles[i] = track.mTitle;
+                mTrackArtistNames[i] = share(names, track.mArtistName);
+                mTrackArtistIds[i] = track.mArtistId;
+                mTrackAlbumNames[i] = share(names, track.mAlbumName);
+                mTrackAlbumIds[i] = track.mAlbumId;
+                mTrackDurations[i] = track.mDuration;
+                mTrackNumbers[i] = track.mNumber;
+                mTrackDatesAdded[i] = track.mDateAdded;
+            }
+
+            final int albumCount = albums.size();
+            mAlbumIds = new long[albumCount];
+            mAlbumNames = new String[albumCount];
+            mAlbumSortKeys = new String[albumCount];
+            mAlbumArtURLs = new String[albumCount];
+            mAlbumArtistNames = new String[albumCount];
+            mAlbumArtistIds = new long[albumCount];
+            mAlbumFirstYears = new int[albumCount];
+            for (int i = 0; i < albumCount; i++) {
+                final AlbumRecord album = albums.get(i);
+                mAlbumIds[i] = album.mId;
+                mAlbumNames[i] = share(names, album.mName);
+                mAlbumSortKeys[i] = createSortKey(album.mName);
+                mAlbumArtURLs[i] = album.mArtURL;
+                mAlbumArtistNames[i] = share(names, album.mArtistName);
+                mAlbumArtistIds[i] = album.mArtistId;
+                mAlbumFirstYears[i] = album.mFirstYear;
+                mAlbumIndices.put(album.mId, i);
+            }
+
+            final int artistCount = artists.size();
+            mArtistIds = new long[artistCount];
+            mArtistNames = new String[artistCount];
+            for (int i = 0; i < artistCount; i++) {
+                final ArtistRecord artist = artists.get(i);
+                mArtistIds[i] = artist.mId;
+                mArtistNames[i] = share(names, artist.mName);
+                if (artist.mName != null && !mArtistIdsByName.containsKey(artist.mName)) {
+                    mArtistIdsByName.put(artist.mName, artist.mId);
+                }
+            }
+
+            // Sort the albums by artist, the album order is kept for equal artists
+            final List<Integer> albumsByArtist = new ArrayList<>(albumCount);
+            final String[] artistSortKeys = new String[albumCount];
+            for (int i = 0; i < albumCount; i++) {
+                albumsByArtist.add(i);
+                artistSortKeys[i] = createSortKey(mAlbumArtistNames[i]);
+            }
+            Collections.sort(albumsByArtist, (first, second) -> artistSortKeys[first].compareTo(artistSortKeys[second]));
+            mAlbumsByArtist = new int[albumCount];
+            for (int i = 0; i < albumCount; i++) {
+                mAlbumsByArtist[i] = albumsByArtist.get(i);
+            }
+
+            // Collect the albums each artist appears on
+            final LongSparseArray<Set<Integer>> artistAlbums = new LongSparseArray<>();
+            for (int i = 0; i < trackCount; i++) {
+                final Integer albumIndex = mAlbumIndices.get(mTrackAlbumIds[i]);
+                if (albumIndex == null) {
+                    continue;
+                }
+
+                Set<Integer> albumIndices = artistAlbums.get(mTrackArtistIds[i]);
+                if (albumIndices == null) {
+                    albumIndices = new HashSet<>();
+                    artistAlbums.put(mTrackArtistIds[i], albumIndices);
+                }
+                albumIndices.add(albumIndex);
+            }
+            for (int i = 0; i < artistAlbums.size(); i++) {
+                final List<Integer> albumIndices = new ArrayList<>(artistAlbums.valueAt(i));
+                // Indices are in album name order
+                Collections.sort(albumIndices);
+
+                final int[] indices = new int[albumIndices.size()];
+                for (int j = 0; j < indices.length; j++) {
+                    indices[j] = albumIndices.get(j);
+                }
+                mArtistAlbums.put(artistAlbums.keyAt(i), indices);
+            }
+        }
+
+        public int getTrackCount() {
+            return mTrackIds.length;
+        }
+
+        public int getAlbumCount() {
+            return mAlbumIds.length;
+        }
+
+        public int getArtistCount() {
+            return mArtistIds.length;
+        }
+
+        synchronized SearchIndex getTrackSearchIndex() {
+            if (mTrackSearchIndex == null) {
+                mTrackSearchIndex = new SearchIndex(mTrackTitles);
+            }
+            return mTrackSearchIndex;
+        }
+
+        private TrackRecord getTrackRecord(final int index) {
+            return new TrackRecord(mTrackIds[index], mTrackTitles[index], mTrackArtistNames[index], mTrackArtistIds[index],
+                    mTrackAlbumNames[index], mTrackAlbumIds[index], mTrackDurations[index], mTrackNumbers[index], mTrackDatesAdded[index]);
+        }
+
+        private static String share(final HashMap<String, String> names, final String name) {
+            if (name == null) {
+                return null;
+            }
+
+            final String shared = names.get(name);
+            if (shared != null) {
+                return shared;
+            }
+            names.put(name, name);
+            return name;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.utils;
+
+import androidx.collection.LruCache;
+
+import org.gateshipone.odyssey.models.GenericModel;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list that creates its models on access. The models are created and cached in pages,
+ * so only the pages around the visible rows are held in memory, independent of the list size.
+ * Section titles are available without creating the models.
+ */
+public abstract class PagedModelList<T extends GenericModel> extends AbstractList<T> implements RandomAccess {
+
+    private static final int PAGE_SIZE = 64;
+
+    /**
+     * Number of cached pages, enough for the visible rows and a prefetch margin around them
+     */
+    private static final int CACHED_PAGES = 8;
+
+    private final LruCache<Integer, Object[]> mPages = new LruCache<>(CACHED_PAGES);
+
+    /**
+     * Creates the model at the given position. Called from any thread.
+     */
+    protected abstract T createModel(final int position);
+
+    /**
+     * @return The section title of the model at the given position, without creating the model.
+     */
+    public abstract String getSectionTitle(final int position);
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(final int position) {
+        if (position < 0 || position >= size()) {
+            throw new IndexOutOfBoundsException("Position: " + position + ", size: " + size());
+        }
+
+        final int pageIndex = position / PAGE_SIZE;
+        final int pageStart = pageIndex * PAGE_SIZE;
+
+        Object[] page = mPages.get(pageIndex);
+        if (page == null) {
+            // Concurrent callers may create the same page, the last one is cached
+            page = new Object[Math.min(PAGE_SIZE, size() - pageStart)];
+            for (int i = 0; i < page.length; i++) {
+                page[i] = createModel(pageStart + i);
+            }
+            mPages.put(pageIndex, page);
+        }
+
+        return (T) page[position - pageStart];
+    }
+
+    /**
+     * @return An existing {@link SearchIndex} over the section titles of this list or null if there is none.
+     */
+    public SearchIndex getSearchIndex() {
+        return null;
+    }
+
+    /**
+     * @param positions Positions of this list in the order of the new list.
+     * @return A paged view of this list that only contains the given positions.
+     */
+    public PagedModelList<T> select(final int[] positions) {
+        return new SelectedList<>(this, positions);
+    }
+
+    /**
+     * @return The section title of the model at the given position, paged lists don't create the model.
+     */
+    public static <T extends GenericModel> String getSectionTitle(final List<T> modelData, final int position) {
+        if (modelData instanceof PagedModelList) {
+            return ((PagedModelList<T>) modelData).getSectionTitle(position);
+        }
+        return modelData.get(position).getSectionTitle();
+    }
+
+    private static class SelectedList<T extends GenericModel> extends PagedModelList<T> {
+
+        private final PagedModelList<T> mList;
+
+        private final int[] mPositions;
+
+        SelectedList(final PagedModelList<T> list, final int[] positions) {
+            mList = list;
+            mPositions = positions;
+        }
+
+        @Override
+        public int size() {
+            return mPositions.length;
+        }
+
+        @Override
+        protected T createModel(final int position) {
+            return mList.createModel(mPositions[position]);
+        }
+
+        @Override
+        public String getSectionTitle(final int position) {
+            return mList.getSectionTitle(mPositions[position]);
+        }
+    }
+}
@@ -24,6 +24,8 @@ package org.gateshipone.odyssey.utils;
 
 import static androidx.recyclerview.widget.RecyclerView.SCROLL_STATE_IDLE;
 
+import android.view.View;
+
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.LinearLayoutManager;
@@ -64,12 +66,7 @@ public class RecyclerScrollSpeedListener extends RecyclerView.OnScrollListener {
                     return;
                 }
 
-                final int visibleItemCount = lastVisibleItemPosition - firstVisibleItemPosition;
-
-                for (int i = 0; i <= visibleItemCount; i++) {
-                    GenericImageViewItem item = (GenericImageViewItem) recyclerView.getChildAt(i);
-                    item.startCoverImageTask();
-                }
+                startCoverImageTasks(recyclerView, firstVisibleItemPosition, lastVisibleItemPosition);
             }
         }
     }
@@ -94,12 +91,7 @@ public class RecyclerScrollSpeedListener extends RecyclerView.OnScrollListener {
                     return;
                 }
 
-                final int visibleItemCount = lastVisibleItemPosition - firstVisibleItemPosition;
-
-                for (int i = 0; i <= visibleItemCount; i++) {
-                    GenericImageViewItem item = (GenericImageViewItem) recyclerView.getChildAt(i);
-                    item.startCoverImageTask();
-                }
+                startCoverImageTasks(recyclerView, firstVisibleItemPosition, lastVisibleItemPosition);
             }
 
             return;
@@ -120,8 +112,6 @@ public class RecyclerScrollSpeedListener extends RecyclerView.OnScrollListener {
             return;
         }
 
-        final int visibleItemCount = lastVisibleItemPosition - firstVisibleItemPosition;
-
         // New row started if this is true.
         if (firstVisibleItemPosition != mLastFirstVisibleItem) {
             final long currentTime = System.currentTimeMillis();
@@ -149,11 +139,34 @@ public class RecyclerScrollSpeedListener extends RecyclerView.OnScrollListener {
             // Start the grid image loader task only if scroll speed is slow enough:
             // The devices is able to render the images needed for the scroll speed
             if (mScrollSpeed < possibleItems) {
-                for (int i = 0; i <= visibleItemCount; i++) {
-                    GenericImageViewItem item = (GenericImageViewItem) recyclerView.getChildAt(i);
-                    item.startCoverImageTask();
-                }
+                startCoverImageTasks(recyclerView, firstVisibleItemPosition, lastVisibleItemPosition);
+            }
+        }
+    }
+
+    /**
+     * Starts the image loading for all attached items. The priority of each item follows its distance
+     * from the visible range, so visible items are loaded first.
+     */
+    private void startCoverImageTasks(@NonNull final RecyclerView recyclerView, final int firstVisibleItemPosition, final int lastVisibleItemPosition) {
+        for (int i = 0; i < recyclerView.getChildCount(); i++) {
+            final View child = recyclerView.getChildAt(i);
+            if (!(child instanceof GenericImageViewItem)) {
+                continue;
+            }
+
+            final int position = recyclerView.getChildAdapterPosition(child);
+            if (position == RecyclerView.NO_POSITION) {
+                continue;
+            }
+
+            int distance = 0;
+            if (position < firstVisibleItemPosition) {
+                distance = firstVisibleItemPosition - position;
+            } else if (position > lastVisibleItemPosition) {
+                distance = position - lastVisibleItemPosition;
             }
+            ((GenericImageViewItem) child).startCoverImageTask(distance);
         }
     }
 }
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.utils;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Trigram index over a fixed list of strings that answers substring queries. The keys are case
+ * and accent folded once when the index is created. A query that contains the previous query
+ * only checks the previous result instead of searching the whole index again.
+ */
+public class SearchIndex {
+
+    private static final int GRAM_LENGTH = 3;
+
+    private static final int[] EMPTY_RESULT = new int[0];
+
+    /**
+     * Folded keys by position
+     */
+    private final String[] mKeys;
+
+    /**
+     * Index of each trigram into {@link #mOffsets}
+     */
+    private final HashMap<Long, Integer> mGrams;
+
+    /**
+     * Start of the postings of each trigram, the last entry is the size of {@link #mPostings}
+     */
+    private final int[] mOffsets;
+
+    /**
+     * Ascending positions of the keys that contain each trigram
+     */
+    private final int[] mPostings;
+
+    private String mLastQuery;
+
+    private int[] mLastResult;
+
+    public SearchIndex(final String[] values) {
+        final int count = values.length;
+        mKeys = new String[count];
+        mGrams = new HashMap<>();
+
+        int[] counts = new int[64];
+        int[] lastPositions = new int[64];
+
+        // Count the keys for each trigram, each key is counted once per trigram
+        for (int i = 0; i < count; i++) {
+            final String key = createSearchKey(values[i]);
+            mKeys[i] = key;
+
+            for (int j = 0; j + GRAM_LENGTH <= key.length(); j++) {
+                final long gram = createGram(key, j);
+                Integer id = mGrams.get(gram);
+                if (id == null) {
+                    id = mGrams.size();
+                    mGrams.put(gram, id);
+                    if (id == counts.length) {
+                        counts = Arrays.copyOf(counts, id * 2);
+                        lastPositions = Arrays.copyOf(lastPositions, id * 2);
+                    }
+                    lastPositions[id] = -1;
+                }
+                if (lastPositions[id] != i) {
+                    lastPositions[id] = i;
+                    counts[id]++;
+                }
+            }
+        }
+
+        final int gramCount = mGrams.size();
+        mOffsets = new int[gramCount + 1];
+        for (int id = 0; id < gramCount; id++) {
+            mOffsets[id + 1] = mOffsets[id] + counts[id];
+        }
+
+        // Fill the postings, positions are visited in ascending order
+        mPostings = new int[mOffsets[gramCount]];
+        final int[] fillPositions = Arrays.copyOf(mOffsets, gramCount);
+        Arrays.fill(lastPositions, -1);
+        for (int i = 0; i < count; i++) {
+            final String key = mKeys[i];
+
+            for (int j = 0; j + GRAM_LENGTH <= key.length(); j++) {
+                final int id = mGrams.get(createGram(key, j));
+                if (lastPositions[id] != i) {
+                    lastPositions[id] = i;
+                    mPostings[fillPositions[id]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of indexed values
+     */
+    public int size() {
+        return mKeys.length;
+    }
+
+    /**
+     * Searches the values that contain the given query after folding.
+     *
+     * @param query The query to search for.
+     * @return Ascending positions of the matching values.
+     */
+    public synchronized int[] search(final String query) {
+        final String key = createSearchKey(query);
+
+        // Every value that contains the query also contained the previous query
+        int[] candidates = null;
+        if (mLastQuery != null && key.contains(mLastQuery)) {
+            candidates = mLastResult;
+        }
+
+        if (key.length() >= GRAM_LENGTH) {
+            candidates = getGramCandidates(key, candidates);
+        }
+
+        final int[] result = filterCandidates(key, candidates);
+
+        mLastQuery = key;
+        mLastResult = result;
+
+        return result;
+    }
+
+    /**
+     * Folds the case and removes the accents of the given value.
+     *
+     * @param value The value to fold.
+     * @return The key used to search for the value.
+     */
+    public static String createSearchKey(final String value) {
+        if (value == null) {
+            return "";
+        }
+
+        boolean ascii = true;
+        for (int i = 0; i < value.length() && ascii; i++) {
+            ascii = value.charAt(i) < 0x80;
+        }
+
+        // Decompose the accented characters to strip their combining marks
+        final String decomposed = ascii ? value : Normalizer.normalize(value, Normalizer.Form.NFD);
+
+        final StringBuilder builder = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            final char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                builder.append(Character.toLowerCase(c));
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return The positions of the smallest postings list of the trigrams of the key, intersected with the given candidates
+     */
+    private int[] getGramCandidates(final String key, final int[] candidates) {
+        int start = 0;
+        int end = -1;
+        for (int j = 0; j + GRAM_LENGTH <= key.length(); j++) {
+            final Integer id = mGrams.get(createGram(key, j));
+            if (id == null) {
+                // No value contains this trigram
+                return EMPTY_RESULT;
+            }
+            if (end == -1 || mOffsets[id + 1] - mOffsets[id] < end - start) {
+                start = mOffsets[id];
+                end = mOffsets[id + 1];
+            }
+        }
+
+        if (candidates == null) {
+            return Arrays.copyOfRange(mPostings, start, end);
+        }
+
+        // Merge both ascending lists
+        final int[] result = new int[Math.min(candidates.length, end - start)];
+        int count = 0;
+        int i = 0;
+        int j = start;
+        while (i < candidates.length && j < end) {
+            if (candidates[i] < mPostings[j]) {
+                i++;
+            } else if (candidates[i] > mPostings[j]) {
+                j++;
+            } else {
+                result[count++] = candidates[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * @return The candidates whose key contains the given key, all positions are checked if candidates is null
+     */
+    private int[] filterCandidates(final String key, final int[] candidates) {
+        final int candidateCount = candidates == null ? mKeys.length : candidates.length;
+
+        final int[] result = new int[candidateCount];
+        int count = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            final int position = candidates == null ? i : candidates[i];
+            if (mKeys[position].contains(key)) {
+                result[count++] = position;
+            }
+        }
+        return count == candidateCount ? result : Arrays.copyOf(result, count);
+    }
+
+    private static long createGram(final String key, final int start) {
+        return ((long) key.charAt(start) << 32) | ((long) key.charAt(start + 1) << 16) | key.charAt(start + 2);
+    }
+}
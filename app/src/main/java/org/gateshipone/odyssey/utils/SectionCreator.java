@@ -31,77 +31,90 @@ import java.util.Map;
 
 public class SectionCreator<T extends GenericModel> {
 
-    public interface SectionChooser<T> {
-        char getSectionName(T model);
+    public interface SectionChooser {
+        char getSectionName(String sectionTitle);
     }
 
-    private final SectionChooser<T> mSectionChooser;
+    /**
+     * Immutable section table of one model list.
+     */
+    public static class Sections<T extends GenericModel> {
 
-    private final List<String> mSectionList;
+        private final SectionChooser mSectionChooser;
 
-    private final List<Integer> mSectionPositions;
+        private final String[] mSectionList;
 
-    private final Map<Character, Integer> mPositionSectionMap;
+        private final int[] mSectionPositions;
 
-    public SectionCreator(final SectionChooser<T> sectionChooser) {
-        mSectionList = new ArrayList<>();
-        mSectionPositions = new ArrayList<>();
-        mPositionSectionMap = new HashMap<>();
+        private final Map<Character, Integer> mPositionSectionMap;
+
+        private Sections(final SectionChooser sectionChooser, final List<String> sectionList, final List<Integer> sectionPositions, final Map<Character, Integer> positionSectionMap) {
+            mSectionChooser = sectionChooser;
+            mSectionList = sectionList.toArray(new String[0]);
+            mSectionPositions = new int[sectionPositions.size()];
+            for (int i = 0; i < mSectionPositions.length; i++) {
+                mSectionPositions[i] = sectionPositions.get(i);
+            }
+            mPositionSectionMap = positionSectionMap;
+        }
+
+        public int getPositionForIndex(final int sectionIndex) {
+            return mSectionPositions[sectionIndex];
+        }
+
+        public int getSectionPositionForModel(final T model) {
+            final char section = mSectionChooser.getSectionName(model.getSectionTitle());
+
+            final Integer sectionPosition = mPositionSectionMap.get(section);
+            return sectionPosition != null ? sectionPosition : 0;
+        }
+
+        public String[] getSectionList() {
+            return mSectionList.clone();
+        }
+    }
+
+    private final SectionChooser mSectionChooser;
+
+    public SectionCreator(final SectionChooser sectionChooser) {
         mSectionChooser = sectionChooser;
     }
 
-    public void createSections(final List<T> modelData) {
-        clearSections();
+    /**
+     * Creates the sections for the given model data. Safe to call from any thread.
+     * The models of a {@link PagedModelList} are not created.
+     *
+     * @param modelData The model data that is not modified while the sections are created.
+     * @return The sections of the model data.
+     */
+    public Sections<T> createSections(final List<T> modelData) {
+        final List<String> sectionList = new ArrayList<>();
+        final List<Integer> sectionPositions = new ArrayList<>();
+        final Map<Character, Integer> positionSectionMap = new HashMap<>();
 
         final int count = modelData.size();
 
         if (count > 0) {
-            T currentModel = modelData.get(0);
-
-            char lastSection = mSectionChooser.getSectionName(currentModel);
+            char lastSection = mSectionChooser.getSectionName(PagedModelList.getSectionTitle(modelData, 0));
 
-            mSectionList.add(String.valueOf(lastSection));
-            mSectionPositions.add(0);
-            mPositionSectionMap.put(lastSection, mSectionList.size() - 1);
+            sectionList.add(String.valueOf(lastSection));
+            sectionPositions.add(0);
+            positionSectionMap.put(lastSection, sectionList.size() - 1);
 
             for (int i = 1; i < count; i++) {
-                currentModel = modelData.get(i);
-
-                final char currentSection = mSectionChooser.getSectionName(currentModel);
+                final char currentSection = mSectionChooser.getSectionName(PagedModelList.getSectionTitle(modelData, i));
 
                 if (lastSection != currentSection) {
-                    mSectionList.add("" + currentSection);
+                    sectionList.add("" + currentSection);
 
                     lastSection = currentSection;
-                    mSectionPositions.add(i);
-                    mPositionSectionMap.put(currentSection, mSectionList.size() - 1);
+                    sectionPositions.add(i);
+                    positionSectionMap.put(currentSection, sectionList.size() - 1);
                 }
 
             }
         }
-    }
-
-    public int getPositionForIndex(final int sectionIndex) {
-        return mSectionPositions.get(sectionIndex);
-    }
-
-    public int getSectionPositionForModel(final T model) {
-        final char section = mSectionChooser.getSectionName(model);
-
-        if (mPositionSectionMap.containsKey(section)) {
-            return mPositionSectionMap.get(section);
-        } else {
-            return 0;
-        }
-    }
-
-    public List<String> getSectionList() {
-        return mSectionList;
-    }
 
-    public void clearSections() {
-        mSectionList.clear();
-        mSectionPositions.clear();
-        mPositionSectionMap.clear();
+        return new Sections<>(mSectionChooser, sectionList, sectionPositions, positionSectionMap);
     }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.utils;
+
+import org.gateshipone.odyssey.models.TrackModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects tracks while they are loaded and passes them in chunks to a {@link ChunkReceiver}.
+ * <p>
+ * The first chunk is kept small so that the receiver can start working early, the following chunks grow
+ * up to {@link #MAX_CHUNK_SIZE} to keep the overhead per chunk low. A stream can be cancelled from any thread,
+ * producers should stop loading as soon as one of the add methods returns false.
+ */
+public class TrackChunkStream {
+
+    public interface ChunkReceiver {
+        void onTracksLoaded(List<TrackModel> tracks);
+    }
+
+    private static final int FIRST_CHUNK_SIZE = 64;
+
+    private static final int MAX_CHUNK_SIZE = 2048;
+
+    private final ChunkReceiver mReceiver;
+
+    private ArrayList<TrackModel> mChunk;
+
+    private int mChunkSize;
+
+    private volatile boolean mCancelled;
+
+    public TrackChunkStream(final ChunkReceiver receiver) {
+        this(receiver, FIRST_CHUNK_SIZE);
+    }
+
+    public TrackChunkStream(final ChunkReceiver receiver, final int firstChunkSize) {
+        mReceiver = receiver;
+        mChunkSize = Math.max(1, firstChunkSize);
+        mChunk = new ArrayList<>(mChunkSize);
+    }
+
+    /**
+     * Adds a track to the current chunk. The chunk is passed to the receiver if it is full.
+     *
+     * @param track The loaded track.
+     * @return False if the stream was cancelled and no further tracks should be loaded.
+     */
+    public boolean add(final TrackModel track) {
+        if (mCancelled) {
+            return false;
+        }
+
+        mChunk.add(track);
+
+        if (mChunk.size() >= mChunkSize) {
+            flush();
+            mChunkSize = Math.min(mChunkSize * 2, MAX_CHUNK_SIZE);
+        }
+
+        return !mCancelled;
+    }
+
+    /**
+     * Adds all tracks of the given list.
+     *
+     * @param tracks The loaded tracks.
+     * @return False if the stream was cancelled and no further tracks should be loaded.
+     */
+    public boolean addAll(final List<TrackModel> tracks) {
+        for (TrackModel track : tracks) {
+            if (!add(track)) {
+                return false;
+            }
+        }
+
+        return !mCancelled;
+    }
+
+    /**
+     * Passes all remaining tracks to the receiver.
+     */
+    public void flush() {
+        if (!mCancelled && !mChunk.isEmpty()) {
+            final ArrayList<TrackModel> chunk = mChunk;
+            mChunk = new ArrayList<>(Math.min(mChunkSize * 2, MAX_CHUNK_SIZE));
+            mReceiver.onTracksLoaded(chunk);
+        }
+    }
+
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+}
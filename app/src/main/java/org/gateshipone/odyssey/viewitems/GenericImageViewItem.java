@@ -42,8 +42,9 @@ import com.google.android.material.color.MaterialColors;
 import org.gateshipone.odyssey.R;
 import org.gateshipone.odyssey.adapter.ScrollSpeedAdapter;
 import org.gateshipone.odyssey.artwork.ArtworkManager;
+import org.gateshipone.odyssey.artwork.BitmapCache;
 import org.gateshipone.odyssey.models.GenericModel;
-import org.gateshipone.odyssey.utils.AsyncLoader;
+import org.gateshipone.odyssey.utils.ArtworkDecodePipeline;
 
 public abstract class GenericImageViewItem extends RelativeLayout implements CoverLoadable {
     private static final String TAG = GenericImageViewItem.class.getSimpleName();
@@ -52,10 +53,10 @@ public abstract class GenericImageViewItem extends RelativeLayout implements Cov
     private Bitmap mBitmap = null;
     private final ViewSwitcher mSwitcher;
 
-    private AsyncLoader mLoaderTask;
+    private ArtworkDecodePipeline.Request mLoaderTask;
     private boolean mCoverDone;
 
-    private final AsyncLoader.CoverViewHolder mHolder;
+    private final ArtworkDecodePipeline.CoverViewHolder mHolder;
     final private Drawable mPlaceholder;
 
     final private int mPlaceholderPadding;
@@ -77,7 +78,7 @@ public abstract class GenericImageViewItem extends RelativeLayout implements Cov
         mImageView = findViewById(imageviewID);
         mSwitcher = findViewById(switcherID);
 
-        mHolder = new AsyncLoader.CoverViewHolder();
+        mHolder = new ArtworkDecodePipeline.CoverViewHolder();
         mHolder.coverLoadable = this;
         mHolder.mAdapter = adapter;
         mHolder.imageDimension = new Pair<>(0, 0);
@@ -98,12 +99,34 @@ public abstract class GenericImageViewItem extends RelativeLayout implements Cov
     }
 
     /**
-     * Starts the image retrieval task
+     * Starts the image retrieval task for a visible item
      */
     public void startCoverImageTask() {
-        if (mLoaderTask == null && mHolder.artworkManager != null && mHolder.modelItem != null && !mCoverDone) {
-            mLoaderTask = new AsyncLoader();
-            mLoaderTask.execute(mHolder);
+        startCoverImageTask(0);
+    }
+
+    /**
+     * Starts the image retrieval task or updates the priority of the running one.
+     *
+     * @param distance Distance of this item from the visible range, closer items are loaded first.
+     */
+    public void startCoverImageTask(final int distance) {
+        if (mLoaderTask != null) {
+            if (!mCoverDone) {
+                mLoaderTask.setPriority(distance);
+            }
+        } else if (mHolder.artworkManager != null && mHolder.modelItem != null && !mCoverDone) {
+            mLoaderTask = ArtworkDecodePipeline.getInstance().decode(mHolder, distance);
+        }
+    }
+
+    /**
+     * Cancels the image retrieval task, e.g. if this item is recycled.
+     */
+    public void cancelCoverImageTask() {
+        if (mLoaderTask != null) {
+            mLoaderTask.cancel();
+            mLoaderTask = null;
         }
     }
 
@@ -134,10 +157,7 @@ public abstract class GenericImageViewItem extends RelativeLayout implements Cov
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
-        if (mLoaderTask != null) {
-            mLoaderTask.cancel(true);
-            mLoaderTask = null;
-        }
+        cancelCoverImageTask();
     }
 
     /**
@@ -148,6 +168,10 @@ public abstract class GenericImageViewItem extends RelativeLayout implements Cov
      */
     @Override
     public void setImage(final Bitmap image) {
+        if (mBitmap != image) {
+            // The old image is not shown anymore and can be reused once it is evicted from the cache
+            BitmapCache.getInstance().releaseBitmap(mBitmap);
+        }
         mBitmap = image;
         if (image != null) {
             mCoverDone = true;
@@ -157,10 +181,7 @@ public abstract class GenericImageViewItem extends RelativeLayout implements Cov
             mSwitcher.setDisplayedChild(1);
         } else {
             // Cancel old task
-            if (mLoaderTask != null) {
-                mLoaderTask.cancel(true);
-            }
-            mLoaderTask = null;
+            cancelCoverImageTask();
 
             mCoverDone = false;
             mHolder.modelItem = null;
@@ -178,7 +199,12 @@ public abstract class GenericImageViewItem extends RelativeLayout implements Cov
         }
     }
 
+    /**
+     * Returns the current image. The image is retained in the {@link BitmapCache} so that it is
+     * never reused while the caller still shows it.
+     */
     public Bitmap getBitmap() {
+        BitmapCache.getInstance().retainBitmap(mBitmap);
         return mBitmap;
     }
 }
@@ -42,6 +42,10 @@ public class GenericViewItemHolder extends RecyclerView.ViewHolder {
         ((GenericImageViewItem) itemView).startCoverImageTask();
     }
 
+    public void cancelCoverImageTask() {
+        ((GenericImageViewItem) itemView).cancelCoverImageTask();
+    }
+
     public void setImageDimensions(final int width, final int height) {
         ((GenericImageViewItem) itemView).setImageDimension(width, height);
     }
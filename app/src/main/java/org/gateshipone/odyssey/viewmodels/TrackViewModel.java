@@ -73,7 +73,7 @@ public class TrackViewModel extends GenericViewModel<TrackModel> {
 
                 if (model.mAlbumId == -1) {
                     // load all tracks
-                    return MusicLibraryHelper.getAllTracks(null, application);
+                    return MusicLibraryHelper.getPagedTracks(application);
                 } else {
                     // load album tracks
 
@@ -81,7 +81,7 @@ public class TrackViewModel extends GenericViewModel<TrackModel> {
                     final SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(application);
                     final String orderKey = sharedPref.getString(application.getString(R.string.pref_album_tracks_sort_order_key), application.getString(R.string.pref_album_tracks_sort_default));
 
-                    return MusicLibraryHelper.getTracksForAlbum(model.mAlbumId, orderKey, application);
+                    return MusicLibraryHelper.getPagedTracksForAlbum(model.mAlbumId, orderKey, application);
                 }
             }
 
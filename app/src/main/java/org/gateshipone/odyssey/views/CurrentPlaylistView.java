@@ -38,8 +38,11 @@ import org.gateshipone.odyssey.adapter.CurrentPlaylistAdapter;
 import org.gateshipone.odyssey.models.TrackModel;
 import org.gateshipone.odyssey.playbackservice.NowPlayingInformation;
 import org.gateshipone.odyssey.playbackservice.PlaybackServiceConnection;
+import org.gateshipone.odyssey.playbackservice.PlaylistChangeEvent;
 import org.gateshipone.odyssey.utils.ScrollSpeedListener;
 
+import java.util.List;
+
 public class CurrentPlaylistView extends LinearLayout implements AdapterView.OnItemClickListener {
 
     private final ListView mListView;
@@ -53,6 +56,11 @@ public class CurrentPlaylistView extends LinearLayout implements AdapterView.OnI
 
     private boolean mHideArtwork;
 
+    /**
+     * Index of the current track of the last update. Used to keep the scroll position if only the playlist changed.
+     */
+    private int mLastPlayingIndex = -1;
+
     public CurrentPlaylistView(Context context) {
         this(context, null);
     }
@@ -133,13 +141,26 @@ public class CurrentPlaylistView extends LinearLayout implements AdapterView.OnI
 
     /**
      * The playlist has changed so update the view.
+     *
+     * @param info    The new state of the PBS.
+     * @param changes The playlist changes since the last update or null if they are unknown.
      */
-    public void playlistChanged(NowPlayingInformation info) {
+    public void playlistChanged(NowPlayingInformation info, @Nullable List<PlaylistChangeEvent> changes) {
+        boolean playlistReplaced = true;
+
         if (mCurrentPlaylistAdapter != null) {
+            if (changes != null) {
+                playlistReplaced = !mCurrentPlaylistAdapter.applyChanges(changes);
+            }
             mCurrentPlaylistAdapter.updateState(info);
         }
-        // set the selection to the current track, so the list view will positioned appropriately
-        mListView.setSelection(info.getPlayingIndex());
+
+        // set the selection to the current track, so the list view will positioned appropriately.
+        // If only some tracks were added or removed and the same track is still playing the user keeps the current scroll position.
+        if (playlistReplaced || info.getPlayingIndex() != CurrentPlaylistAdapter.getPositionAfterChanges(changes, mLastPlayingIndex)) {
+            mListView.setSelection(info.getPlayingIndex());
+        }
+        mLastPlayingIndex = info.getPlayingIndex();
     }
 
     /**
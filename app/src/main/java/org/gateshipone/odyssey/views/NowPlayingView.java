@@ -37,8 +37,10 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.provider.MediaStore;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.MotionEvent;
@@ -73,14 +75,14 @@ import org.gateshipone.odyssey.models.TrackModel;
 import org.gateshipone.odyssey.playbackservice.NowPlayingInformation;
 import org.gateshipone.odyssey.playbackservice.PlaybackService;
 import org.gateshipone.odyssey.playbackservice.PlaybackServiceConnection;
+import org.gateshipone.odyssey.playbackservice.PlaylistChangeEvent;
 import org.gateshipone.odyssey.playbackservice.managers.PlaybackServiceStatusHelper;
 import org.gateshipone.odyssey.utils.CoverBitmapLoader;
 import org.gateshipone.odyssey.utils.FormatHelper;
 import org.gateshipone.odyssey.utils.ThemeUtils;
 
+import java.util.List;
 import java.util.Locale;
-import java.util.Timer;
-import java.util.TimerTask;
 
 public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarChangeListener, PopupMenu.OnMenuItemClickListener, ArtworkManager.onNewAlbumImageListener,
         ArtworkManager.onNewArtistImageListener, SharedPreferences.OnSharedPreferenceChangeListener {
@@ -153,9 +155,28 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
     private CoverBitmapLoader mCoverLoader = null;
 
     /**
-     * Timer that periodically updates the state of the view (seekbar)
+     * Position anchor of the last status update. The position is extrapolated from it while playing.
      */
-    private Timer mRefreshTimer = null;
+    private int mAnchorPosition;
+
+    private long mAnchorTimestamp;
+
+    /**
+     * Frame callback that updates the seekbar while playing and the view is visible.
+     */
+    private final Choreographer.FrameCallback mPositionFrameCallback = this::onPositionFrame;
+
+    private boolean mPositionUpdatesActive = false;
+
+    /**
+     * Flag if the user is currently dragging the seekbar.
+     */
+    private boolean mUserSeeking = false;
+
+    /**
+     * Last second shown in the elapsed time view to avoid unnecessary text updates.
+     */
+    private int mLastElapsedSecond = -1;
 
     /**
      * Observer for information about the state of the draggable part of this view.
@@ -283,17 +304,21 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
                 // TODO Auto-generated catch block
                 e.printStackTrace();
             }
+
+            // move the anchor to the new position until the service sends its update
+            setPositionAnchor(progress, SystemClock.elapsedRealtime());
+            updateElapsedTime(progress);
         }
     }
 
     /**
-     * Called if the user starts moving the seekbar. We do not handle this for now.
+     * Called if the user starts moving the seekbar. The position updates stop moving the seekbar.
      *
      * @param seekBar SeekBar that is used for dragging.
      */
     @Override
     public void onStartTrackingTouch(SeekBar seekBar) {
-        // TODO Auto-generated method stub
+        mUserSeeking = true;
     }
 
     /**
@@ -303,7 +328,7 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
      */
     @Override
     public void onStopTrackingTouch(SeekBar seekBar) {
-        // TODO Auto-generated method stub
+        mUserSeeking = false;
         updateTrackPosition();
     }
 
@@ -571,7 +596,7 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
             if (child == mHeaderView) {
                 // start the refresh task if state is playing
                 if (mPlaybackServiceState == PlaybackService.PLAYSTATE.PLAYING) {
-                    startRefreshTask();
+                    startPositionUpdates();
                 }
                 // report the change of the view
                 if (mDragStatusReceiver != null) {
@@ -703,8 +728,8 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
                         mDragStatusReceiver.onStatusChanged(NowPlayingDragStatusReceiver.DRAG_STATUS.DRAGGED_DOWN);
                     }
 
-                    // stop refresh task
-                    stopRefreshTask();
+                    // stop position updates
+                    stopPositionUpdates();
                 }
             } else {
                 /*
@@ -1035,13 +1060,9 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
      * Unregister the receiver for NowPlayingInformation intends, not needed anylonger.
      */
     public void onPause() {
-        if (mRefreshTimer != null) {
-            // Cancel the running refresh timer
-            mRefreshTimer.cancel();
-            mRefreshTimer.purge();
-            // Clean the reference
-            mRefreshTimer = null;
-        }
+        // Stop the position updates
+        stopPositionUpdates();
+
         if (mNowPlayingReceiver != null) {
             // Unregister the broadcast receiver
             getContext().getApplicationContext().unregisterReceiver(mNowPlayingReceiver);
@@ -1106,9 +1127,10 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
     /**
      * Updates all sub-views with the new pbs states
      *
-     * @param info the new pbs states including the current track
+     * @param info            the new pbs states including the current track
+     * @param playlistChanges the playlist changes since the last update or null if unknown
      */
-    private void updateStatus(NowPlayingInformation info) {
+    private void updateStatus(NowPlayingInformation info, List<PlaylistChangeEvent> playlistChanges) {
 
         // If called without a nowplayinginformation, ask the PBS directly for the information.
         // After the establishing of the service connection it can be that a track is playing and we've not yet received the NowPlayingInformation
@@ -1124,7 +1146,7 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
         }
 
         // notify playlist has changed
-        mPlaylistView.playlistChanged(info);
+        mPlaylistView.playlistChanged(info, playlistChanges);
 
         // get current track
         TrackModel currentTrack = info.getCurrentTrack();
@@ -1177,12 +1199,13 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
         // set up seekbar (set maximum value, track total duration)
         mPositionSeekbar.setMax((int) currentTrack.getTrackDuration());
 
-        // update seekbar and elapsedview
-        updateTrackPosition();
-
         // save the state
         mPlaybackServiceState = info.getPlayState();
 
+        // update seekbar and elapsedview from the new position anchor
+        setPositionAnchor(info.getTrackPosition(), info.getPositionTimestamp());
+        updateTrackPosition();
+
         // update play buttons
         switch (mPlaybackServiceState) {
             case PLAYING:
@@ -1194,9 +1217,9 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
                     showHint();
                 }
 
-                // start refresh task if view is visible
+                // start position updates if view is visible
                 if (mDragOffset == 0.0f) {
-                    startRefreshTask();
+                    startPositionUpdates();
                 }
 
                 break;
@@ -1206,8 +1229,8 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
                 mTopPlayPauseButton.setImageResource(R.drawable.ic_play_arrow_48dp);
                 mBottomPlayPauseButton.setImageResource(R.drawable.ic_play_circle_fill_48dp);
 
-                // stop refresh task
-                stopRefreshTask();
+                // stop position updates
+                stopPositionUpdates();
 
                 break;
         }
@@ -1240,45 +1263,77 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
     }
 
     /**
-     * Get the current trackposition from the PBS and update the seekbar and the elapsed view.
+     * Saves the position anchor used to extrapolate the track position.
+     *
+     * @param position  Track position in milliseconds.
+     * @param timestamp {@link SystemClock#elapsedRealtime()} when the position was taken.
+     */
+    private void setPositionAnchor(int position, long timestamp) {
+        mAnchorPosition = position;
+        mAnchorTimestamp = timestamp;
+    }
+
+    /**
+     * Calculate the current track position from the anchor and update the seekbar and the elapsed view.
      */
     private void updateTrackPosition() {
-        // get trackposition
-        int trackPosition = 0;
-        try {
-            trackPosition = mServiceConnection.getPBS().getTrackPosition();
-        } catch (RemoteException e) {
-            e.printStackTrace();
+        int trackPosition = mAnchorPosition;
+        if (mPlaybackServiceState == PlaybackService.PLAYSTATE.PLAYING && mAnchorTimestamp > 0) {
+            trackPosition += (int) (SystemClock.elapsedRealtime() - mAnchorTimestamp);
         }
+        trackPosition = Math.max(0, Math.min(trackPosition, mPositionSeekbar.getMax()));
 
-        // update the seekbar
-        mPositionSeekbar.setProgress(trackPosition);
-        // update the elapsed view
-        mElapsedTime.setText(FormatHelper.formatTracktimeFromMS(getContext(), trackPosition));
+        if (!mUserSeeking) {
+            // only move the seekbar if the thumb moves at least one pixel
+            final int step = Math.max(1, mPositionSeekbar.getMax() / Math.max(1, mPositionSeekbar.getWidth()));
+            if (Math.abs(trackPosition - mPositionSeekbar.getProgress()) >= step) {
+                mPositionSeekbar.setProgress(trackPosition);
+            }
+            updateElapsedTime(trackPosition);
+        }
+    }
+
+    /**
+     * Update the elapsed view if the displayed second changed.
+     */
+    private void updateElapsedTime(int trackPosition) {
+        final int elapsedSecond = trackPosition / 1000;
+        if (elapsedSecond != mLastElapsedSecond) {
+            mLastElapsedSecond = elapsedSecond;
+            mElapsedTime.setText(FormatHelper.formatTracktimeFromMS(getContext(), trackPosition));
+        }
+    }
+
+    /**
+     * Called for every frame while the position updates are active.
+     */
+    private void onPositionFrame(long frameTimeNanos) {
+        if (!mPositionUpdatesActive) {
+            return;
+        }
+
+        updateTrackPosition();
+        Choreographer.getInstance().postFrameCallback(mPositionFrameCallback);
     }
 
     /**
-     * Stop the refresh task if one exists.
+     * Stop the position updates if they are active.
      */
-    private void stopRefreshTask() {
-        if (mRefreshTimer != null) {
-            mRefreshTimer.cancel();
-            mRefreshTimer.purge();
-            mRefreshTimer = null;
+    private void stopPositionUpdates() {
+        if (mPositionUpdatesActive) {
+            mPositionUpdatesActive = false;
+            Choreographer.getInstance().removeFrameCallback(mPositionFrameCallback);
         }
     }
 
     /**
-     * Start a periodically time to update the seekbar. If one is already existing overwrite it.
+     * Start updating the seekbar with every frame. No binder calls are necessary because the position is extrapolated.
      */
-    private void startRefreshTask() {
-        if (mRefreshTimer != null) {
-            mRefreshTimer.cancel();
-            mRefreshTimer.purge();
-            mRefreshTimer = null;
+    private void startPositionUpdates() {
+        if (!mPositionUpdatesActive) {
+            mPositionUpdatesActive = true;
+            Choreographer.getInstance().postFrameCallback(mPositionFrameCallback);
         }
-        mRefreshTimer = new Timer();
-        mRefreshTimer.scheduleAtFixedRate(new RefreshTask(), 0, 500);
     }
 
     /**
@@ -1360,7 +1415,7 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
             mPlaylistView.registerPBServiceConnection(mServiceConnection);
 
             // Already running in main UI thread handler here. No need for runOnUIThread
-            updateStatus(null);
+            updateStatus(null, null);
         }
 
         /**
@@ -1391,13 +1446,14 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
             if (intent.getAction().equals(PlaybackServiceStatusHelper.MESSAGE_NEWTRACKINFORMATION)) {
                 // Extract nowplaying info
                 final NowPlayingInformation info = intent.getParcelableExtra(PlaybackServiceStatusHelper.INTENT_NOWPLAYINGNAME);
+                final List<PlaylistChangeEvent> playlistChanges = intent.getParcelableArrayListExtra(PlaybackServiceStatusHelper.INTENT_PLAYLISTCHANGESNAME);
 
                 Activity activity = (Activity) getContext();
                 if (activity != null) {
                     // Run the updateStatus method in the UI thread because it touches all the gui elements.
                     activity.runOnUiThread(() -> {
                         // update views
-                        updateStatus(info);
+                        updateStatus(info, playlistChanges);
                     });
                 }
             }
@@ -1523,22 +1579,6 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
         getContext().startActivity(Intent.createChooser(shareIntent, getContext().getString(R.string.share_chooser_title)));
     }
 
-    /**
-     * Private class that handles periodically updates of the duration views (seekbar, textviews)
-     */
-    private class RefreshTask extends TimerTask {
-
-        @Override
-        public void run() {
-            Activity activity = (Activity) getContext();
-            // Run on the UI thread because we are updating gui elements
-            if (activity != null) {
-                activity.runOnUiThread(NowPlayingView.this::updateTrackPosition);
-            }
-
-        }
-    }
-
     /**
      * Public interface used by observers to be notified about a change in drag state or drag position.
      */